@@ -0,0 +1,29 @@
+package com.gmail.steffen1995.updateme.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts the bytes processed by a benchmark, JMH reports them as an additional throughput in
+ * bytes per second next to the operations per second.
+ * @author Steffen Schoen
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class ByteCounter {
+  /**
+   * The number of processed bytes.
+   */
+  public long bytes;
+
+  /**
+   * Resets the counter before every iteration.
+   */
+  @Setup(Level.Iteration)
+  public void reset() {
+    bytes = 0;
+  }
+}
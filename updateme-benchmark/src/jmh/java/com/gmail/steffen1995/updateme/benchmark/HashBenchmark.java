@@ -0,0 +1,103 @@
+package com.gmail.steffen1995.updateme.benchmark;
+
+import com.gmail.steffen1995.updateme.util.HashCalculator;
+import com.gmail.steffen1995.updateme.util.ParallelHashCalculator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks hashing the files of an update with {@link HashCalculator} and
+ * {@link ParallelHashCalculator}. The files are read from the page cache after the first
+ * iteration, so this measures the hashing rather than the disk.
+ * @author Steffen Schoen
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class HashBenchmark {
+  @Param({"SMALL_FILES", "LARGE_FILES", "MIXED"})
+  public SyntheticTree.Shape shape;
+
+  private Path directory;
+  private List<Path> files;
+  private byte[] checksum;
+
+  /**
+   * Generates the files to hash.
+   * @throws IOException when the files cannot be generated
+   */
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    directory = Files.createTempDirectory("updateme-bench");
+    // the content does not change the hashing speed
+    files = SyntheticTree.generate(directory, shape, SyntheticTree.Content.INCOMPRESSIBLE);
+    checksum = new byte[HashCalculator.SHA256_LENGTH];
+  }
+
+  /**
+   * Deletes the generated files.
+   * @throws IOException when the files cannot be deleted
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    SyntheticTree.delete(directory);
+  }
+
+  /**
+   * Hashes the files one after another into hex strings.
+   * @param counter counts the hashed bytes
+   * @param blackhole consumes the checksums
+   * @throws IOException when a file cannot be read
+   */
+  @Benchmark
+  public void sha256(ByteCounter counter, Blackhole blackhole) throws IOException {
+    for (Path file : files) {
+      blackhole.consume(HashCalculator.sha256(file.toFile()));
+    }
+    counter.bytes += shape.totalBytes();
+  }
+
+  /**
+   * Hashes the files one after another into a reused array.
+   * @param counter counts the hashed bytes
+   * @param blackhole consumes the checksums
+   * @throws IOException when a file cannot be read
+   */
+  @Benchmark
+  public void sha256Raw(ByteCounter counter, Blackhole blackhole) throws IOException {
+    for (Path file : files) {
+      HashCalculator.sha256(file, checksum, 0);
+      blackhole.consume(checksum);
+    }
+    counter.bytes += shape.totalBytes();
+  }
+
+  /**
+   * Hashes the files on the common pool of the parallel hash calculator.
+   * @param counter counts the hashed bytes
+   * @return the checksums
+   * @throws IOException when a file cannot be read
+   */
+  @Benchmark
+  public Map<Path, String> sha256Parallel(ByteCounter counter) throws IOException {
+    Map<Path, String> checksums = ParallelHashCalculator.common().sha256(files);
+    counter.bytes += shape.totalBytes();
+    return checksums;
+  }
+}
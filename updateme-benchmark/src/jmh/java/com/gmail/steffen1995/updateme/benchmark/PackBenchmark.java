@@ -0,0 +1,82 @@
+package com.gmail.steffen1995.updateme.benchmark;
+
+import com.gmail.steffen1995.updateme.update.PackOptions;
+import com.gmail.steffen1995.updateme.update.Update;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link Update#pack(String, PackOptions)}. The checksums of the files are calculated
+ * during the setup, so only the compression and writing of the package is measured.
+ * @author Steffen Schoen
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PackBenchmark {
+  @Param({"SMALL_FILES", "LARGE_FILES", "MIXED"})
+  public SyntheticTree.Shape shape;
+
+  @Param({"COMPRESSIBLE", "INCOMPRESSIBLE", "MIXED"})
+  public SyntheticTree.Content content;
+
+  @Param({"1", "4"})
+  public int parallelism;
+
+  private Path directory;
+  private Path target;
+  private Update update;
+  private ExecutorService executor;
+  private PackOptions options;
+
+  /**
+   * Generates the files of the update.
+   * @throws IOException when the files cannot be generated
+   */
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    directory = Files.createTempDirectory("updateme-bench");
+    update = SyntheticTree.update("1.0.0",
+            SyntheticTree.generate(directory.resolve("files"), shape, content));
+    target = directory.resolve("data.zip");
+
+    executor = Executors.newFixedThreadPool(parallelism);
+    options = PackOptions.builder().parallelism(parallelism).executor(executor).build();
+  }
+
+  /**
+   * Deletes the generated files.
+   * @throws IOException when the files cannot be deleted
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    executor.shutdown();
+    SyntheticTree.delete(directory);
+  }
+
+  /**
+   * Packs the update.
+   * @param counter counts the packed bytes
+   * @throws IOException when the package cannot be written
+   */
+  @Benchmark
+  public void pack(ByteCounter counter) throws IOException {
+    update.pack(target.toString(), options);
+    counter.bytes += shape.totalBytes();
+  }
+}
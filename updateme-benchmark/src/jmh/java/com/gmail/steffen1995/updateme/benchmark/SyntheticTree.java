@@ -0,0 +1,167 @@
+package com.gmail.steffen1995.updateme.benchmark;
+
+import com.gmail.steffen1995.updateme.update.Update;
+import com.gmail.steffen1995.updateme.update.UpdateObject;
+import com.gmail.steffen1995.updateme.util.PathUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates the files of an update locally, so benchmarks do not depend on real applications.
+ * The content is derived from a fixed seed, every run works on the same bytes.
+ * @author Steffen Schoen
+ */
+public final class SyntheticTree {
+  private static final long SEED = 0x5570646174654DL;
+  private static final int CHUNK_SIZE = 64 * 1024;
+  private static final String[] WORDS = {"update", "version", "channel", "package", "checksum",
+      "repository", "install", "file", "class", "public", "static", "return", "import", "final"};
+
+  /**
+   * The number and sizes of the generated files.
+   */
+  public enum Shape {
+    /**
+     * Many small files, like the classes and resources of an application.
+     */
+    SMALL_FILES(2000, 4 * 1024, 0, 0),
+    /**
+     * A few huge files, like bundled runtimes or data files.
+     */
+    LARGE_FILES(0, 0, 2, 32 * 1024 * 1024),
+    /**
+     * Small files together with a few huge files.
+     */
+    MIXED(1000, 4 * 1024, 1, 32 * 1024 * 1024);
+
+    private final int smallFiles;
+    private final int smallFileSize;
+    private final int largeFiles;
+    private final int largeFileSize;
+
+    Shape(int smallFiles, int smallFileSize, int largeFiles, int largeFileSize) {
+      this.smallFiles = smallFiles;
+      this.smallFileSize = smallFileSize;
+      this.largeFiles = largeFiles;
+      this.largeFileSize = largeFileSize;
+    }
+
+    /**
+     * Gets the total size of the generated files.
+     * @return the size in bytes
+     */
+    public long totalBytes() {
+      return (long) smallFiles * smallFileSize + (long) largeFiles * largeFileSize;
+    }
+  }
+
+  /**
+   * How well the generated files compress.
+   */
+  public enum Content {
+    /**
+     * Text-like content that deflates well.
+     */
+    COMPRESSIBLE,
+    /**
+     * Random content that does not deflate at all, like archives or media.
+     */
+    INCOMPRESSIBLE,
+    /**
+     * Every other file is compressible.
+     */
+    MIXED
+  }
+
+  private SyntheticTree() {
+  }
+
+  /**
+   * Generates the files of a tree. All files are written into the given directory, as packages
+   * only keep the file names.
+   * @param directory the directory to write the files to
+   * @param shape the number and sizes of the files
+   * @param content how well the files compress
+   * @return the generated files
+   * @throws IOException when the files cannot be written
+   */
+  public static List<Path> generate(Path directory, Shape shape, Content content)
+          throws IOException {
+    Files.createDirectories(directory);
+    Random random = new Random(SEED);
+    List<Path> files = new ArrayList<>();
+
+    for (int i = 0; i < shape.smallFiles + shape.largeFiles; i++) {
+      boolean large = i >= shape.smallFiles;
+      Path file = directory.resolve((large ? "large-" : "small-") + i + ".bin");
+      boolean compressible = content == Content.COMPRESSIBLE
+              || (content == Content.MIXED && i % 2 == 0);
+      write(file, large ? shape.largeFileSize : shape.smallFileSize, compressible, random);
+      files.add(file);
+    }
+    return files;
+  }
+
+  /**
+   * Creates an update of the generated files of a tree, the checksums are calculated upfront.
+   * @param version the version of the update
+   * @param files the generated files
+   * @return the update
+   * @throws IOException when the files cannot be hashed
+   */
+  public static Update update(String version, List<Path> files) throws IOException {
+    Update update = new Update(version);
+    for (Path file : files) {
+      update.getUpdateObjects().add(new UpdateObject(file.toFile(), "/"));
+    }
+    UpdateObject.calculateChecksums(update.getUpdateObjects());
+    return update;
+  }
+
+  /**
+   * Deletes a generated tree.
+   * @param directory the directory of the tree
+   * @throws IOException when the tree cannot be deleted
+   */
+  public static void delete(Path directory) throws IOException {
+    PathUtils.deleteRecursively(directory);
+  }
+
+  private static void write(Path file, int size, boolean compressible, Random random)
+          throws IOException {
+    byte[] chunk = new byte[CHUNK_SIZE];
+    try (OutputStream out = Files.newOutputStream(file)) {
+      int written = 0;
+      while (written < size) {
+        int length = Math.min(chunk.length, size - written);
+        if (compressible) {
+          fillText(chunk, length, random);
+        } else {
+          random.nextBytes(chunk);
+        }
+        out.write(chunk, 0, length);
+        written += length;
+      }
+    }
+  }
+
+  private static void fillText(byte[] chunk, int length, Random random) {
+    int position = 0;
+    while (position < length) {
+      byte[] word = WORDS[random.nextInt(WORDS.length)].getBytes(StandardCharsets.US_ASCII);
+      for (int i = 0; i < word.length && position < length; i++) {
+        chunk[position++] = word[i];
+      }
+      if (position < length) {
+        chunk[position++] = (byte) (random.nextInt(8) == 0 ? '\n' : ' ');
+      }
+    }
+  }
+}
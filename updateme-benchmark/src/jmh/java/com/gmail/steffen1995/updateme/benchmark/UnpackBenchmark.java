@@ -0,0 +1,88 @@
+package com.gmail.steffen1995.updateme.benchmark;
+
+import com.gmail.steffen1995.updateme.update.Update;
+import com.gmail.steffen1995.updateme.update.UpdateException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link Update#unpack(File)}, which extracts and verifies every file of a package.
+ * @author Steffen Schoen
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class UnpackBenchmark {
+  @Param({"SMALL_FILES", "LARGE_FILES", "MIXED"})
+  public SyntheticTree.Shape shape;
+
+  @Param({"COMPRESSIBLE", "INCOMPRESSIBLE", "MIXED"})
+  public SyntheticTree.Content content;
+
+  private Path directory;
+  private File updatePackage;
+  private Update unpacked;
+
+  /**
+   * Generates and packs the files of the update.
+   * @throws IOException when the package cannot be created
+   */
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    directory = Files.createTempDirectory("updateme-bench");
+    Path files = directory.resolve("files");
+    Update update = SyntheticTree.update("1.0.0", SyntheticTree.generate(files, shape, content));
+    updatePackage = directory.resolve("data.zip").toFile();
+    update.pack(updatePackage.toString());
+    SyntheticTree.delete(files);
+  }
+
+  /**
+   * Deletes the package.
+   * @throws IOException when the package cannot be deleted
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    SyntheticTree.delete(directory);
+  }
+
+  /**
+   * Deletes the files of the last unpack, so the benchmark does not fill the disk.
+   * @throws IOException when the files cannot be deleted
+   */
+  @TearDown(Level.Invocation)
+  public void deleteUnpacked() throws IOException {
+    if (unpacked != null && !unpacked.getUpdateObjects().isEmpty()) {
+      SyntheticTree.delete(unpacked.getUpdateObjects().get(0).getFile().getParentFile().toPath());
+    }
+    unpacked = null;
+  }
+
+  /**
+   * Unpacks the package.
+   * @param counter counts the extracted bytes
+   * @return the unpacked update
+   * @throws IOException when the package cannot be unpacked
+   * @throws UpdateException when the package is invalid
+   */
+  @Benchmark
+  public Update unpack(ByteCounter counter) throws IOException, UpdateException {
+    unpacked = Update.unpack(updatePackage);
+    counter.bytes += shape.totalBytes();
+    return unpacked;
+  }
+}
@@ -0,0 +1,95 @@
+package com.gmail.steffen1995.updateme.benchmark;
+
+import com.gmail.steffen1995.updateme.update.UpdateInfo;
+import com.gmail.steffen1995.updateme.util.HashCalculator;
+import com.gmail.steffen1995.updateme.util.PathUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link UpdateInfo#writeToFile(String, UpdateInfo.Format)} and
+ * {@link UpdateInfo#readFromFile(String)} for update infos with many files. The update infos are
+ * generated in memory, no files have to exist for them.
+ * @author Steffen Schoen
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class UpdateInfoBenchmark {
+  @Param({"100", "10000"})
+  public int fileCount;
+
+  @Param({"JSON", "BINARY"})
+  public UpdateInfo.Format format;
+
+  private Path directory;
+  private UpdateInfo info;
+  private String readFile;
+  private String writeFile;
+
+  /**
+   * Generates the update info and writes it once for the read benchmark.
+   * @throws IOException when the update info cannot be written
+   */
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    Random random = new Random(fileCount);
+    byte[] checksum = new byte[HashCalculator.SHA256_LENGTH];
+    info = new UpdateInfo("1.0.0", new Date(0));
+    for (int i = 0; i < fileCount; i++) {
+      random.nextBytes(checksum);
+      info.getFileUpdates().add(UpdateInfo.FileUpdate.builder()
+              .localPath("/lib/module-" + (i % 50) + "/file-" + i + ".class")
+              .checksum(HashCalculator.bytesToHex(checksum))
+              .sizeBytes(random.nextInt(1024 * 1024)).build());
+    }
+
+    directory = Files.createTempDirectory("updateme-bench");
+    readFile = directory.resolve("read").toString();
+    writeFile = directory.resolve("write").toString();
+    info.writeToFile(readFile, format);
+  }
+
+  /**
+   * Deletes the written update infos.
+   * @throws IOException when the files cannot be deleted
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    PathUtils.deleteRecursively(directory);
+  }
+
+  /**
+   * Writes the update info.
+   * @throws IOException when the update info cannot be written
+   */
+  @Benchmark
+  public void write() throws IOException {
+    info.writeToFile(writeFile, format);
+  }
+
+  /**
+   * Reads the update info.
+   * @return the parsed update info
+   * @throws IOException when the update info cannot be read
+   */
+  @Benchmark
+  public UpdateInfo read() throws IOException {
+    return UpdateInfo.readFromFile(readFile);
+  }
+}
@@ -41,4 +41,13 @@ public abstract class ConfigProperty<T> {
       }
     };
   }
+
+  public static ConfigProperty<Boolean> bool(String key) {
+    return new ConfigProperty<Boolean>(key) {
+      @Override
+      protected Boolean fromString(String valueString) {
+        return Boolean.parseBoolean(valueString.trim());
+      }
+    };
+  }
 }
@@ -0,0 +1,67 @@
+package com.gmail.steffen1995.updateme.config;
+
+import com.gmail.steffen1995.updateme.providers.HttpUpdateRepository;
+import com.gmail.steffen1995.updateme.util.HttpDownloader;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Configuration for HTTP repositories.
+ * @author Steffen Schön
+ */
+@Getter
+public class HttpConfig implements UpdateConfigExtension {
+  private List<ConfigProperty> configValues;
+
+  private static final ConfigProperty<String> BASE_URL = ConfigProperty.string("http.baseUrl");
+  private static final ConfigProperty<String> CACHE_DIR = ConfigProperty.string("http.cacheDir");
+  private static final ConfigProperty<Integer> PARALLEL_DOWNLOADS =
+          ConfigProperty.integer("http.parallelDownloads");
+  private static final ConfigProperty<Integer> SEGMENT_SIZE =
+          ConfigProperty.integer("http.segmentSize");
+
+  /**
+   * Constructor.
+   */
+  public HttpConfig() {
+    configValues = new ArrayList<>();
+    configValues.add(BASE_URL);
+    configValues.add(CACHE_DIR);
+    configValues.add(PARALLEL_DOWNLOADS);
+    configValues.add(SEGMENT_SIZE);
+  }
+
+  public String getBaseUrl() {
+    return BASE_URL.getValue();
+  }
+
+  public String getCacheDirectory() {
+    return CACHE_DIR.getValue();
+  }
+
+  /**
+   * The number of segments of a package that are downloaded at the same time.
+   * @return the configured value or {@link HttpUpdateRepository#DEFAULT_PARALLEL_DOWNLOADS} if it
+   *         is not set
+   */
+  public int getParallelDownloads() {
+    Integer value = PARALLEL_DOWNLOADS.getValue();
+    return value != null ? value : HttpUpdateRepository.DEFAULT_PARALLEL_DOWNLOADS;
+  }
+
+  /**
+   * The size of the segments packages are downloaded in, in bytes.
+   * @return the configured value or {@link HttpDownloader#DEFAULT_SEGMENT_SIZE} if it is not set
+   */
+  public long getSegmentSize() {
+    Integer value = SEGMENT_SIZE.getValue();
+    return value != null ? value : HttpDownloader.DEFAULT_SEGMENT_SIZE;
+  }
+
+  @Override
+  public List<ConfigProperty> getProperties() {
+    return configValues;
+  }
+}
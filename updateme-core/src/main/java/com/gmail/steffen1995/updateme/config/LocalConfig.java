@@ -14,16 +14,52 @@ public class LocalConfig implements UpdateConfigExtension {
   private List<ConfigProperty> configValues;
 
   private static final ConfigProperty<String> BASE_DIR = ConfigProperty.string("local.baseDir");
+  private static final ConfigProperty<Boolean> DELTA_UPDATES =
+          ConfigProperty.bool("local.deltaUpdates");
+  private static final ConfigProperty<Boolean> CONTENT_ADDRESSED =
+          ConfigProperty.bool("local.contentAddressed");
+  private static final ConfigProperty<Boolean> BINARY_MANIFEST =
+          ConfigProperty.bool("local.binaryManifest");
 
+  /**
+   * Constructor.
+   */
   public LocalConfig() {
     configValues = new ArrayList<>();
     configValues.add(BASE_DIR);
+    configValues.add(DELTA_UPDATES);
+    configValues.add(CONTENT_ADDRESSED);
+    configValues.add(BINARY_MANIFEST);
   }
 
   public String getBaseDirectory() {
     return BASE_DIR.getValue();
   }
 
+  /**
+   * Whether delta packages are created when updates are pushed.
+   * @return the configured value or {@code false} if it is not set
+   */
+  public boolean isDeltaUpdates() {
+    return Boolean.TRUE.equals(DELTA_UPDATES.getValue());
+  }
+
+  /**
+   * Whether pushed updates are stored content-addressed.
+   * @return the configured value or {@code false} if it is not set
+   */
+  public boolean isContentAddressed() {
+    return Boolean.TRUE.equals(CONTENT_ADDRESSED.getValue());
+  }
+
+  /**
+   * Whether binary update infos are written when updates are pushed.
+   * @return the configured value or {@code false} if it is not set
+   */
+  public boolean isBinaryManifest() {
+    return Boolean.TRUE.equals(BINARY_MANIFEST.getValue());
+  }
+
   @Override
   public List<ConfigProperty> getProperties() {
     return configValues;
@@ -1,8 +1,12 @@
 package com.gmail.steffen1995.updateme.config;
 
+import com.gmail.steffen1995.updateme.providers.HttpUpdateRepository;
 import com.gmail.steffen1995.updateme.providers.LocalUpdateRepository;
+import com.gmail.steffen1995.updateme.update.UpdateInfo;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.File;
+import java.net.URL;
 import java.nio.file.Paths;
 
 /**
@@ -26,11 +30,25 @@ public class UpdateConfigFactory {
 
     // register config extensions
     parser.getConfig().registerExtension(LocalConfig.class);
+    parser.getConfig().registerExtension(HttpConfig.class);
 
     // register repo instantiation
     parser.getConfig().registerRepositoryType("local", () -> {
-      String dir = parser.getConfig().getExtension(LocalConfig.class).getBaseDirectory();
-      return new LocalUpdateRepository(dir);
+      LocalConfig localConfig = parser.getConfig().getExtension(LocalConfig.class);
+      LocalUpdateRepository repository = new LocalUpdateRepository(
+              localConfig.getBaseDirectory());
+      repository.setDeltaUpdates(localConfig.isDeltaUpdates());
+      repository.setContentAddressed(localConfig.isContentAddressed());
+      if (localConfig.isBinaryManifest()) {
+        repository.setManifestFormat(UpdateInfo.Format.BINARY);
+      }
+      return repository;
+    });
+    parser.getConfig().registerRepositoryType("http", () -> {
+      HttpConfig httpConfig = parser.getConfig().getExtension(HttpConfig.class);
+      return new HttpUpdateRepository(new URL(httpConfig.getBaseUrl()),
+              new File(httpConfig.getCacheDirectory()), httpConfig.getParallelDownloads(),
+              httpConfig.getSegmentSize());
     });
 
     try {
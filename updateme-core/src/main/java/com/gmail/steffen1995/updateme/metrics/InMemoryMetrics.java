@@ -0,0 +1,177 @@
+package com.gmail.steffen1995.updateme.metrics;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Value;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps metrics in memory, with a latency histogram per phase, channel and version. Useful for
+ * tests, diagnostics or as a source that is exported to another metrics system periodically.
+ * @author Steffen Schoen
+ */
+public class InMemoryMetrics implements UpdateMetrics {
+  private final ConcurrentMap<Key, Recorder> recorders = new ConcurrentHashMap<>();
+
+  @Override
+  public void recordTime(Phase phase, String channel, String version, long nanos) {
+    recorder(phase, channel, version).durations.record(nanos);
+  }
+
+  @Override
+  public void recordBytes(Phase phase, String channel, String version, long bytes) {
+    recorder(phase, channel, version).bytes.add(bytes);
+  }
+
+  @Override
+  public void recordError(Phase phase, String channel, String version) {
+    recorder(phase, channel, version).errors.increment();
+  }
+
+  /**
+   * Gets the statistics of a phase for a channel and version.
+   * @param phase the phase
+   * @param channel the channel, may be {@code null}
+   * @param version the version, may be {@code null}
+   * @return the statistics, empty if nothing was recorded
+   */
+  public Statistics get(Phase phase, String channel, String version) {
+    Recorder recorder = recorders.get(new Key(phase, channel, version));
+    return recorder != null ? recorder.statistics() : Statistics.EMPTY;
+  }
+
+  /**
+   * Gets the statistics of a phase over all channels and versions.
+   * @param phase the phase
+   * @return the statistics, empty if nothing was recorded
+   */
+  public Statistics get(Phase phase) {
+    Statistics merged = Statistics.EMPTY;
+    for (Map.Entry<Key, Recorder> entry : recorders.entrySet()) {
+      if (entry.getKey().getPhase() == phase) {
+        merged = merged.merge(entry.getValue().statistics());
+      }
+    }
+    return merged;
+  }
+
+  /**
+   * Gets the statistics of all phases, channels and versions that were recorded.
+   * @return the statistics by phase, channel and version
+   */
+  public Map<Key, Statistics> snapshot() {
+    Map<Key, Statistics> snapshot = new HashMap<>();
+    for (Map.Entry<Key, Recorder> entry : recorders.entrySet()) {
+      snapshot.put(entry.getKey(), entry.getValue().statistics());
+    }
+    return snapshot;
+  }
+
+  /**
+   * Removes everything that was recorded.
+   */
+  public void reset() {
+    recorders.clear();
+  }
+
+  private Recorder recorder(Phase phase, String channel, String version) {
+    Key key = new Key(phase, channel, version);
+    Recorder recorder = recorders.get(key);
+    return recorder != null ? recorder : recorders.computeIfAbsent(key, k -> new Recorder());
+  }
+
+  /**
+   * The tags the statistics are kept for.
+   */
+  @Value
+  public static class Key {
+    private Phase phase;
+    private String channel;
+    private String version;
+  }
+
+  /**
+   * A snapshot of the values that were recorded for a phase.
+   */
+  @Getter
+  public static class Statistics {
+    static final Statistics EMPTY = new Statistics(0, 0, 0, 0, 0,
+            new LatencyHistogram().bucketCounts());
+
+    /**
+     * The number of times the phase ran.
+     */
+    private final long count;
+    /**
+     * The number of times the phase failed.
+     */
+    private final long errors;
+    /**
+     * The number of bytes processed by the phase.
+     */
+    private final long bytes;
+    /**
+     * The total duration of all runs in nanoseconds.
+     */
+    private final long totalNanos;
+    /**
+     * The duration of the longest run in nanoseconds.
+     */
+    private final long maxNanos;
+    @Getter(AccessLevel.NONE)
+    private final long[] buckets;
+
+    private Statistics(long count, long errors, long bytes, long totalNanos, long maxNanos,
+                       long[] buckets) {
+      this.count = count;
+      this.errors = errors;
+      this.bytes = bytes;
+      this.totalNanos = totalNanos;
+      this.maxNanos = maxNanos;
+      this.buckets = buckets;
+    }
+
+    /**
+     * Gets the average duration of a run.
+     * @return the duration in nanoseconds or 0 if the phase never ran
+     */
+    public long meanNanos() {
+      return count > 0 ? totalNanos / count : 0;
+    }
+
+    /**
+     * Gets a percentile of the durations, e.g. 0.99 for the 99th percentile. The result is
+     * accurate to 12.5%.
+     * @param quantile the quantile between 0 and 1
+     * @return the duration in nanoseconds or 0 if the phase never ran
+     */
+    public long percentileNanos(double quantile) {
+      return LatencyHistogram.valueAt(buckets, quantile, maxNanos);
+    }
+
+    private Statistics merge(Statistics other) {
+      long[] merged = buckets.clone();
+      for (int i = 0; i < merged.length; i++) {
+        merged[i] += other.buckets[i];
+      }
+      return new Statistics(count + other.count, errors + other.errors, bytes + other.bytes,
+              totalNanos + other.totalNanos, Math.max(maxNanos, other.maxNanos), merged);
+    }
+  }
+
+  private static class Recorder {
+    private final LatencyHistogram durations = new LatencyHistogram();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    private Statistics statistics() {
+      return new Statistics(durations.count(), errors.sum(), bytes.sum(), durations.total(),
+              durations.max(), durations.bucketCounts());
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package com.gmail.steffen1995.updateme.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * A lock-free histogram of durations. Every power of two is split into {@value #SUB_BUCKETS}
+ * buckets, so percentiles are accurate to 12.5% with a fixed amount of memory.
+ * @author Steffen Schoen
+ */
+class LatencyHistogram {
+  private static final int SUB_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BITS;
+  private static final int BUCKETS = SUB_BUCKETS + (64 - SUB_BITS - 1) * SUB_BUCKETS;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong total = new AtomicLong();
+  private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+  void record(long value) {
+    long v = Math.max(0, value);
+    buckets.incrementAndGet(index(v));
+    count.incrementAndGet();
+    total.addAndGet(v);
+    max.accumulate(v);
+  }
+
+  long[] bucketCounts() {
+    long[] counts = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = buckets.get(i);
+    }
+    return counts;
+  }
+
+  long count() {
+    return count.get();
+  }
+
+  long total() {
+    return total.get();
+  }
+
+  long max() {
+    return max.get();
+  }
+
+  /**
+   * Gets the value at a quantile of bucket counts.
+   * @param counts the bucket counts, see {@link #bucketCounts()}
+   * @param quantile the quantile between 0 and 1
+   * @param max the largest recorded value, percentiles never exceed it
+   * @return the upper bound of the bucket that contains the quantile or 0 if nothing was recorded
+   */
+  static long valueAt(long[] counts, double quantile, long max) {
+    long recorded = 0;
+    for (long c : counts) {
+      recorded += c;
+    }
+    if (recorded == 0) {
+      return 0;
+    }
+
+    long rank = Math.max(1, (long) Math.ceil(Math.min(1, Math.max(0, quantile)) * recorded));
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(upperBound(i), max);
+      }
+    }
+    return max;
+  }
+
+  static int index(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int sub = (int) ((value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1));
+    return SUB_BUCKETS + (exponent - SUB_BITS) * SUB_BUCKETS + sub;
+  }
+
+  static long upperBound(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int exponent = (index - SUB_BUCKETS) / SUB_BUCKETS + SUB_BITS;
+    int sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+    long lower = (long) (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+    return lower + (1L << (exponent - SUB_BITS)) - 1;
+  }
+}
@@ -0,0 +1,53 @@
+package com.gmail.steffen1995.updateme.metrics;
+
+import java.util.Iterator;
+import java.util.ServiceLoader;
+
+/**
+ * Holds the {@link UpdateMetrics} that all update operations report to. Unless an implementation
+ * is set or registered as a service, {@link UpdateMetrics#NOOP} is used and phases are not even
+ * timed.
+ * @author Steffen Schoen
+ */
+public final class Metrics {
+  private static volatile UpdateMetrics current = load();
+
+  private Metrics() {
+  }
+
+  /**
+   * Gets the metrics that are reported to.
+   * @return the metrics
+   */
+  public static UpdateMetrics get() {
+    return current;
+  }
+
+  /**
+   * Sets the metrics that are reported to.
+   * @param metrics the metrics, {@code null} disables reporting
+   */
+  public static void set(UpdateMetrics metrics) {
+    current = metrics != null ? metrics : UpdateMetrics.NOOP;
+  }
+
+  /**
+   * Starts timing a phase. The timer has to be closed when the phase ends.
+   * @param phase the phase
+   * @param channel the channel, may be {@code null}
+   * @param version the version, may be {@code null}
+   * @return the timer
+   */
+  public static PhaseTimer start(Phase phase, String channel, String version) {
+    UpdateMetrics metrics = current;
+    if (metrics == UpdateMetrics.NOOP) {
+      return PhaseTimer.NOOP;
+    }
+    return new PhaseTimer(metrics, phase, channel, version);
+  }
+
+  private static UpdateMetrics load() {
+    Iterator<UpdateMetrics> services = ServiceLoader.load(UpdateMetrics.class).iterator();
+    return services.hasNext() ? services.next() : UpdateMetrics.NOOP;
+  }
+}
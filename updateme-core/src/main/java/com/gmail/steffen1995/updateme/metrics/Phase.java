@@ -0,0 +1,56 @@
+package com.gmail.steffen1995.updateme.metrics;
+
+/**
+ * The phases of update operations that are reported to {@link UpdateMetrics}.
+ * @author Steffen Schoen
+ */
+public enum Phase {
+  /**
+   * Compressing the files of an update into a package.
+   */
+  PACK,
+  /**
+   * Extracting and verifying the files of a package.
+   */
+  UNPACK,
+  /**
+   * Verifying the files of a package without extracting them.
+   */
+  VERIFY,
+  /**
+   * Calculating the checksums of files.
+   */
+  HASH,
+  /**
+   * Parsing an update info.
+   */
+  PARSE_INFO,
+  /**
+   * Walking a directory to find files.
+   */
+  WALK_DIRECTORY,
+  /**
+   * Copying files, e.g. when a package is assembled from the content store.
+   */
+  COPY,
+  /**
+   * Pushing a package to a repository.
+   */
+  PUSH,
+  /**
+   * Pulling a package from a repository.
+   */
+  PULL,
+  /**
+   * Fetching an update, i.e. pulling and unpacking it.
+   */
+  FETCH,
+  /**
+   * Applying an update to an installation.
+   */
+  INSTALL,
+  /**
+   * Listing the available updates of a channel.
+   */
+  LIST_UPDATES
+}
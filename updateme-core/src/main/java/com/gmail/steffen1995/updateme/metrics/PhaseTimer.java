@@ -0,0 +1,86 @@
+package com.gmail.steffen1995.updateme.metrics;
+
+/**
+ * Times a phase of an update operation. The phase counts as failed unless {@link #success()} is
+ * called before the timer is closed:
+ *
+ * <pre>
+ * try (PhaseTimer timer = Metrics.start(Phase.PULL, channel, version)) {
+ *   ...
+ *   timer.addBytes(length);
+ *   timer.success();
+ * }
+ * </pre>
+ *
+ * <p>Timers are not thread-safe, each one belongs to the thread that runs the phase.
+ * @author Steffen Schoen
+ */
+public class PhaseTimer implements AutoCloseable {
+  /**
+   * A timer that records nothing, it is used while metrics are disabled.
+   */
+  static final PhaseTimer NOOP = new PhaseTimer(null, null, null, null);
+
+  private final UpdateMetrics metrics;
+  private final Phase phase;
+  private final String channel;
+  private final long start;
+  private String version;
+  private long bytes;
+  private boolean succeeded;
+
+  PhaseTimer(UpdateMetrics metrics, Phase phase, String channel, String version) {
+    this.metrics = metrics;
+    this.phase = phase;
+    this.channel = channel;
+    this.version = version;
+    this.start = metrics != null ? System.nanoTime() : 0;
+  }
+
+  /**
+   * Sets the version, for phases that only know it after they started.
+   * @param version the version
+   */
+  public void setVersion(String version) {
+    if (metrics != null) {
+      this.version = version;
+    }
+  }
+
+  /**
+   * Adds to the number of bytes processed by the phase.
+   * @param count the number of bytes
+   */
+  public void addBytes(long count) {
+    if (metrics != null) {
+      bytes += count;
+    }
+  }
+
+  /**
+   * Marks the phase as successful.
+   */
+  public void success() {
+    if (metrics != null) {
+      succeeded = true;
+    }
+  }
+
+  /**
+   * Ends the phase and records its duration, its bytes and whether it failed.
+   */
+  @Override
+  public void close() {
+    if (metrics == null) {
+      return;
+    }
+
+    metrics.recordTime(phase, channel, version, System.nanoTime() - start);
+    if (bytes > 0) {
+      metrics.recordBytes(phase, channel, version, bytes);
+    }
+    if (!succeeded) {
+      metrics.recordError(phase, channel, version);
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package com.gmail.steffen1995.updateme.metrics;
+
+/**
+ * Receives timings, byte counts and errors of update operations, e.g. to bridge them into a
+ * metrics library. Every value is tagged with the channel and the version it belongs to, both are
+ * {@code null} if they are unknown for an operation.
+ *
+ * <p>Implementations are installed with {@link Metrics#set(UpdateMetrics)} or found by the
+ * {@link java.util.ServiceLoader}. They are called from many threads at once and should return
+ * quickly.
+ * @author Steffen Schoen
+ */
+public interface UpdateMetrics {
+  /**
+   * Ignores all values, this is the default.
+   */
+  UpdateMetrics NOOP = new UpdateMetrics() {
+    @Override
+    public void recordTime(Phase phase, String channel, String version, long nanos) {
+    }
+
+    @Override
+    public void recordBytes(Phase phase, String channel, String version, long bytes) {
+    }
+
+    @Override
+    public void recordError(Phase phase, String channel, String version) {
+    }
+  };
+
+  /**
+   * Records the duration of a phase, it is recorded for failed phases as well.
+   * @param phase the phase
+   * @param channel the channel, may be {@code null}
+   * @param version the version, may be {@code null}
+   * @param nanos the duration in nanoseconds
+   */
+  void recordTime(Phase phase, String channel, String version, long nanos);
+
+  /**
+   * Records the number of bytes processed by a phase.
+   * @param phase the phase
+   * @param channel the channel, may be {@code null}
+   * @param version the version, may be {@code null}
+   * @param bytes the number of bytes
+   */
+  void recordBytes(Phase phase, String channel, String version, long bytes);
+
+  /**
+   * Records that a phase failed.
+   * @param phase the phase
+   * @param channel the channel, may be {@code null}
+   * @param version the version, may be {@code null}
+   */
+  void recordError(Phase phase, String channel, String version);
+}
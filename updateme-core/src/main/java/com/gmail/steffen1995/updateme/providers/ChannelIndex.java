@@ -0,0 +1,169 @@
+package com.gmail.steffen1995.updateme.providers;
+
+import com.gmail.steffen1995.updateme.update.UpdateInfo;
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Value;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The index of a deployment channel. It lists all versions of the channel in the order they were
+ * pushed, together with their metadata, so that the available updates can be listed without
+ * reading every update info.
+ * @author Steffen Schoen
+ */
+@EqualsAndHashCode
+public class ChannelIndex {
+  /**
+   * The name of the index file inside of a channel directory.
+   */
+  public static final String FILE_NAME = "index.json";
+
+  private final List<Entry> entries;
+
+  /**
+   * Constructor for an empty index.
+   */
+  public ChannelIndex() {
+    entries = new ArrayList<>();
+  }
+
+  /**
+   * Gets all entries in the order the versions were pushed.
+   * @return an unmodifiable list of all entries
+   */
+  public List<Entry> getEntries() {
+    return Collections.unmodifiableList(entries);
+  }
+
+  /**
+   * Gets the entry of a version.
+   * @param version the version
+   * @return the entry or an empty optional if the version is not indexed
+   */
+  public Optional<Entry> get(String version) {
+    return entries.stream().filter(e -> e.getVersion().equals(version)).findFirst();
+  }
+
+  /**
+   * Adds an entry to the end of the index. An existing entry of the same version is replaced.
+   * @param entry the entry to add
+   */
+  public void put(Entry entry) {
+    remove(entry.getVersion());
+    entries.add(entry);
+  }
+
+  /**
+   * Removes the entry of a version.
+   * @param version the version
+   * @return {@code true} if the version was indexed
+   */
+  public boolean remove(String version) {
+    return entries.removeIf(e -> e.getVersion().equals(version));
+  }
+
+  /**
+   * Writes the index to a file. The file is replaced atomically, so readers always see either the
+   * old or the new index.
+   * @param file the index file
+   * @throws IOException when the index cannot be written
+   */
+  public void writeToFile(Path file) throws IOException {
+    Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), FILE_NAME, ".tmp");
+    try {
+      Files.write(tmp, toJson().getBytes(StandardCharsets.UTF_8));
+      Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /**
+   * Serializes the index in the format of the index file.
+   * @return the JSON representation of the index
+   */
+  public String toJson() {
+    JSONArray versions = new JSONArray();
+    for (Entry entry : entries) {
+      JSONObject object = new JSONObject();
+      object.put("version", entry.getVersion());
+      object.put("publishDate", entry.getPublishDate().getTime());
+      object.put("files", entry.getFileCount());
+      object.put("size", entry.getTotalSize());
+      versions.put(object);
+    }
+
+    JSONObject root = new JSONObject();
+    root.put("versions", versions);
+    return root.toString();
+  }
+
+  /**
+   * Parses an index from a file.
+   * @param file the index file
+   * @return the parsed index
+   * @throws IOException when the file cannot be read or parsed
+   */
+  public static ChannelIndex readFromFile(Path file) throws IOException {
+    ChannelIndex index = new ChannelIndex();
+
+    try {
+      JSONObject root = new JSONObject(new String(Files.readAllBytes(file),
+              StandardCharsets.UTF_8));
+      JSONArray versions = root.getJSONArray("versions");
+
+      for (int i = 0; i < versions.length(); i++) {
+        JSONObject object = versions.getJSONObject(i);
+        index.entries.add(Entry.builder()
+                .version(object.getString("version"))
+                .publishDate(new Date(object.getLong("publishDate")))
+                .fileCount(object.getInt("files"))
+                .totalSize(object.getLong("size")).build());
+      }
+    } catch (JSONException e) {
+      throw new IOException("Could not parse channel index", e);
+    }
+
+    return index;
+  }
+
+  /**
+   * An indexed version.
+   */
+  @Value
+  @Builder
+  public static class Entry {
+    private String version;
+    private Date publishDate;
+    private int fileCount;
+    private long totalSize;
+
+    /**
+     * Creates the index entry of an update.
+     * @param info the info of the update
+     * @return the index entry
+     */
+    public static Entry of(UpdateInfo info) {
+      return Entry.builder()
+              .version(info.getVersion())
+              .publishDate(info.getPublishDate())
+              .fileCount(info.getFileUpdates().size())
+              .totalSize(info.getFileUpdates().stream()
+                      .mapToLong(UpdateInfo.FileUpdate::getSizeBytes).sum()).build();
+    }
+  }
+}
@@ -0,0 +1,186 @@
+package com.gmail.steffen1995.updateme.providers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A content-addressed store for update files. Every file is stored exactly once, keyed by its
+ * SHA-256 checksum, and is reference counted by the versions that contain it.
+ *
+ * <p>Objects are stored as {@code <root>/<first two hex digits>/<checksum>}, the reference count
+ * of an object is kept next to it in {@code <checksum>.refs}.
+ * @author Steffen Schoen
+ */
+public class ContentStore {
+  private static final String REFS_SUFFIX = ".refs";
+
+  private final Path root;
+
+  /**
+   * Constructor.
+   * @param root the directory that contains the objects
+   */
+  public ContentStore(Path root) {
+    this.root = root;
+  }
+
+  /**
+   * Adds a reference to an object. The content is only copied into the store when no object with
+   * the given checksum exists yet. New content is copied before the store is locked, so objects
+   * can be added from several threads at the same time.
+   * @param checksum the SHA-256 checksum of the content
+   * @param source the file that holds the content
+   * @throws IOException when the object cannot be written
+   */
+  public void add(String checksum, Path source) throws IOException {
+    Path tmp = Files.exists(objectPath(checksum)) ? null : copyToTemp(checksum, source);
+    insert(checksum, tmp, source);
+  }
+
+  /**
+   * Adds a reference to an object, taking over a file that already holds its content, e.g. one
+   * created by {@link #createTempFile()}. The file is moved into the store or deleted if an object
+   * with the given checksum exists already.
+   * @param checksum the SHA-256 checksum of the content, it is not verified
+   * @param file the file that holds the content
+   * @throws IOException when the object cannot be written
+   */
+  public void adopt(String checksum, Path file) throws IOException {
+    insert(checksum, file, null);
+  }
+
+  /**
+   * Creates an empty temporary file inside the store, so that it can be moved to an object
+   * without copying, see {@link #adopt(String, Path)}.
+   * @return the temporary file
+   * @throws IOException when the file cannot be created
+   */
+  public Path createTempFile() throws IOException {
+    Files.createDirectories(root);
+    return Files.createTempFile(root, "object-", ".tmp");
+  }
+
+  /**
+   * Removes a reference to an object. The object is deleted when it is not referenced anymore.
+   * @param checksum the SHA-256 checksum of the content
+   * @throws IOException when the object cannot be accessed
+   */
+  public synchronized void release(String checksum) throws IOException {
+    int references = references(checksum) - 1;
+
+    if (references > 0) {
+      writeReferences(checksum, references);
+    } else {
+      Files.deleteIfExists(objectPath(checksum));
+      Files.deleteIfExists(referencesPath(checksum));
+    }
+  }
+
+  /**
+   * Checks whether an object is available in the store.
+   * @param checksum the SHA-256 checksum of the content
+   * @return {@code true} if the object exists
+   */
+  public boolean contains(String checksum) {
+    return Files.exists(objectPath(checksum));
+  }
+
+  /**
+   * Opens the content of an object.
+   * @param checksum the SHA-256 checksum of the content
+   * @return a stream of the content
+   * @throws IOException when the object does not exist or cannot be read
+   */
+  public InputStream open(String checksum) throws IOException {
+    return Files.newInputStream(objectPath(checksum));
+  }
+
+  /**
+   * Gets the number of references to an object.
+   * @param checksum the SHA-256 checksum of the content
+   * @return the number of references or {@code 0} if the object does not exist
+   * @throws IOException when the reference count cannot be read
+   */
+  public synchronized int references(String checksum) throws IOException {
+    Path refs = referencesPath(checksum);
+    if (!Files.exists(refs)) {
+      return 0;
+    }
+
+    return Integer.parseInt(new String(Files.readAllBytes(refs), StandardCharsets.UTF_8).trim());
+  }
+
+  /**
+   * Gets the path of an object.
+   * @param checksum the SHA-256 checksum of the content
+   * @return the path of the object
+   */
+  public Path objectPath(String checksum) {
+    if (checksum.length() < 2 || checksum.contains("/") || checksum.contains("\\")
+            || checksum.contains(".")) {
+      throw new IllegalArgumentException("Invalid checksum '" + checksum + "'");
+    }
+
+    return root.resolve(checksum.substring(0, 2)).resolve(checksum);
+  }
+
+  /**
+   * Moves new content into the store or increments the references of an existing object.
+   * @param tmp a file with the content or {@code null} if it is copied from the source
+   * @param source the file to copy the content from when tmp is {@code null}
+   */
+  private void insert(String checksum, Path tmp, Path source) throws IOException {
+    Path object = objectPath(checksum);
+
+    try {
+      synchronized (this) {
+        if (Files.exists(object)) {
+          writeReferences(checksum, references(checksum) + 1);
+          return;
+        }
+
+        if (tmp == null) {
+          // the object was removed in the meantime
+          tmp = copyToTemp(checksum, source);
+        }
+        Files.createDirectories(object.getParent());
+        Files.move(tmp, object, StandardCopyOption.ATOMIC_MOVE);
+        tmp = null;
+        writeReferences(checksum, 1);
+      }
+    } finally {
+      if (tmp != null) {
+        Files.deleteIfExists(tmp);
+      }
+    }
+  }
+
+  private Path copyToTemp(String checksum, Path source) throws IOException {
+    Path directory = objectPath(checksum).getParent();
+    Files.createDirectories(directory);
+    Path tmp = Files.createTempFile(directory, checksum, ".tmp");
+    try {
+      Files.copy(source, tmp, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      Files.deleteIfExists(tmp);
+      throw e;
+    }
+    return tmp;
+  }
+
+  private Path referencesPath(String checksum) {
+    Path object = objectPath(checksum);
+    return object.resolveSibling(object.getFileName() + REFS_SUFFIX);
+  }
+
+  private void writeReferences(String checksum, int references) throws IOException {
+    Path refs = referencesPath(checksum);
+    Path tmp = Files.createTempFile(refs.getParent(), checksum, ".tmp");
+    Files.write(tmp, Integer.toString(references).getBytes(StandardCharsets.UTF_8));
+    Files.move(tmp, refs, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+  }
+}
@@ -0,0 +1,323 @@
+package com.gmail.steffen1995.updateme.providers;
+
+import com.gmail.steffen1995.updateme.update.PackageVerifier;
+import com.gmail.steffen1995.updateme.update.UpdateException;
+import com.gmail.steffen1995.updateme.util.HttpDownloader;
+import lombok.Getter;
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipInputStream;
+
+/**
+ * A read-only repository that is accessed over HTTP. The server has to provide the directory
+ * structure of a {@link LocalUpdateRepository}, including the channel indices, and a
+ * {@value #CHANNELS_FILE} file that lists the names of all channels.
+ *
+ * <p>Downloaded update infos and packages are kept in a local cache directory. Update packages are
+ * downloaded in segments in parallel and interrupted downloads are resumed, see
+ * {@link HttpDownloader}. Packages are verified before they are added to the cache, so a cached
+ * package is never corrupt.
+ * @author Steffen Schoen
+ */
+public class HttpUpdateRepository implements UpdateRepositoryManipulator {
+  /**
+   * The file that lists all channels of the repository as a JSON array.
+   */
+  public static final String CHANNELS_FILE = "channels.json";
+
+  /**
+   * The default number of segments of a package that are downloaded at the same time.
+   */
+  public static final int DEFAULT_PARALLEL_DOWNLOADS = 4;
+
+  private static final String UPDATE_INFO_FILE = "updateInfo.json";
+  private static final String PACKAGE_FILE = "data.zip";
+
+  @Getter
+  private final URL baseUrl;
+  @Getter
+  private final File cacheDirectory;
+  private final HttpDownloader downloader;
+
+  /**
+   * Constructor.
+   * @param baseUrl the URL of the repository root
+   * @param cacheDirectory the directory downloaded files are kept in
+   * @param parallelDownloads the number of segments of a package that are downloaded at the same
+   *                          time
+   * @param segmentSize the size of the segments of a package
+   */
+  public HttpUpdateRepository(URL baseUrl, File cacheDirectory, int parallelDownloads,
+                              long segmentSize) {
+    try {
+      // relative URLs are resolved against the base directory
+      String base = baseUrl.toString();
+      this.baseUrl = base.endsWith("/") ? baseUrl : new URL(base + "/");
+    } catch (MalformedURLException e) {
+      throw new IllegalArgumentException("Invalid repository URL", e);
+    }
+    this.cacheDirectory = cacheDirectory;
+    this.downloader = new HttpDownloader(parallelDownloads, segmentSize);
+  }
+
+  /**
+   * Constructor, packages are downloaded in {@value #DEFAULT_PARALLEL_DOWNLOADS} segments of
+   * {@value HttpDownloader#DEFAULT_SEGMENT_SIZE} bytes at the same time.
+   * @param baseUrl the URL of the repository root
+   * @param cacheDirectory the directory downloaded files are kept in
+   */
+  public HttpUpdateRepository(URL baseUrl, File cacheDirectory) {
+    this(baseUrl, cacheDirectory, DEFAULT_PARALLEL_DOWNLOADS, HttpDownloader.DEFAULT_SEGMENT_SIZE);
+  }
+
+  @Override
+  public void createChannel(String channelName, ProgressChangedListener progress)
+          throws UpdateRepositoryException {
+    throw new UpdateRepositoryException("HTTP repositories are read-only");
+  }
+
+  @Override
+  public void initStructure(ProgressChangedListener progress) throws UpdateRepositoryException {
+    throw new UpdateRepositoryException("HTTP repositories are read-only");
+  }
+
+  @Override
+  public void pushUpdate(File updatePackage, String channel, ProgressChangedListener progress)
+          throws UpdateRepositoryException {
+    throw new UpdateRepositoryException("HTTP repositories are read-only");
+  }
+
+  @Override
+  public List<String> availableChannels(ProgressChangedListener progress)
+          throws UpdateRepositoryException {
+    try {
+      JSONArray channels = new JSONArray(new String(get(url(CHANNELS_FILE)),
+              StandardCharsets.UTF_8));
+      List<String> names = new ArrayList<>();
+      for (int i = 0; i < channels.length(); i++) {
+        names.add(channels.getString(i));
+      }
+      return names;
+    } catch (IOException | JSONException e) {
+      throw new UpdateRepositoryException("Could not list available channels", e);
+    }
+  }
+
+  @Override
+  public List<File> updateInfoFiles(String channel, ProgressChangedListener progress)
+          throws UpdateRepositoryException {
+    ProgressTracker tracker = ProgressTracker.of(progress);
+    List<File> updateInfoFiles = new ArrayList<>();
+
+    try {
+      for (ChannelIndex.Entry entry : channelIndex(channel, null).getEntries()) {
+        // update infos of pushed versions never change, so cached ones are up to date
+        Path infoFile = cachePath(channel, entry.getVersion(), UPDATE_INFO_FILE);
+        downloader.download(url(channel, entry.getVersion(), UPDATE_INFO_FILE), infoFile,
+                tracker::advance, tracker::addTotal);
+        updateInfoFiles.add(infoFile.toFile());
+      }
+    } catch (IOException e) {
+      throw new UpdateRepositoryException("Could not fetch update infos", e);
+    }
+
+    if (tracker != progress) {
+      tracker.complete();
+    }
+    return updateInfoFiles;
+  }
+
+  @Override
+  public long lastModified(String channel) throws UpdateRepositoryException {
+    HttpURLConnection connection = null;
+    try {
+      connection = HttpDownloader.open(url(channel, ChannelIndex.FILE_NAME), "HEAD");
+      HttpDownloader.check(connection, HttpURLConnection.HTTP_OK);
+      long lastModified = connection.getLastModified();
+      return lastModified > 0 ? lastModified : -1;
+    } catch (FileNotFoundException e) {
+      throw new UpdateRepositoryException("Channel does not exist", e);
+    } catch (IOException e) {
+      throw new UpdateRepositoryException("Could not access channel", e);
+    } finally {
+      if (connection != null) {
+        HttpDownloader.release(connection);
+      }
+    }
+  }
+
+  @Override
+  public ChannelIndex channelIndex(String channel, ProgressChangedListener progress)
+          throws UpdateRepositoryException {
+    try {
+      byte[] index = get(url(channel, ChannelIndex.FILE_NAME));
+
+      // the index is parsed from a file, the latest one is kept in the cache
+      Path indexFile = cachePath(channel, ChannelIndex.FILE_NAME);
+      Files.createDirectories(indexFile.getParent());
+      Path temp = Files.createTempFile(indexFile.getParent(), ChannelIndex.FILE_NAME, ".tmp");
+      try {
+        Files.write(temp, index);
+        Files.move(temp, indexFile, StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+      return ChannelIndex.readFromFile(indexFile);
+    } catch (FileNotFoundException e) {
+      throw new UpdateRepositoryException("Channel does not exist", e);
+    } catch (IOException e) {
+      throw new UpdateRepositoryException("Could not read channel index", e);
+    }
+  }
+
+  @Override
+  public File pullUpdate(String version, String channel, ProgressChangedListener progress)
+          throws UpdateRepositoryException {
+    return pull(url(channel, version, PACKAGE_FILE), cachePath(channel, version, PACKAGE_FILE),
+            "The requested version does not exist", HttpUpdateRepository::verifyPackage, progress);
+  }
+
+  @Override
+  public File pullDeltaUpdate(String baseVersion, String version, String channel,
+                              ProgressChangedListener progress) throws UpdateRepositoryException {
+    String deltaFile = "delta-" + baseVersion + ".zip";
+    return pull(url(channel, version, deltaFile), cachePath(channel, version, deltaFile),
+            "No delta available from version " + baseVersion, HttpUpdateRepository::verifyZip,
+            progress);
+  }
+
+  private File pull(URL url, Path target, String notFoundMessage,
+                    HttpDownloader.Verifier verifier, ProgressChangedListener progress)
+          throws UpdateRepositoryException {
+    ProgressTracker tracker = ProgressTracker.of(progress);
+    try {
+      downloader.download(url, target, tracker::advance, tracker::addTotal, verifier);
+    } catch (FileNotFoundException e) {
+      throw new UpdateRepositoryException(notFoundMessage, e);
+    } catch (IOException e) {
+      throw new UpdateRepositoryException("Could not download update data", e);
+    }
+
+    if (tracker != progress) {
+      tracker.complete();
+    }
+    return target.toFile();
+  }
+
+  /**
+   * Checks the files of a downloaded update package against its update info.
+   */
+  private static void verifyPackage(Path file) throws IOException {
+    try {
+      PackageVerifier.verify(file.toFile());
+    } catch (UpdateException e) {
+      throw new IOException("Downloaded update package is invalid", e);
+    }
+  }
+
+  /**
+   * Checks the CRCs of all entries of a downloaded delta package. The files it reconstructs are
+   * verified when it is unpacked.
+   */
+  private static void verifyZip(Path file) throws IOException {
+    try (ZipInputStream zip = new ZipInputStream(Files.newInputStream(file))) {
+      byte[] buffer = new byte[8192];
+      int entries = 0;
+      while (zip.getNextEntry() != null) {
+        while (zip.read(buffer) >= 0) {
+          // the CRC is checked at the end of the entry
+        }
+        entries++;
+      }
+      if (entries == 0) {
+        throw new IOException("Downloaded delta package is empty");
+      }
+    }
+  }
+
+  /**
+   * Reads a small file completely.
+   */
+  private static byte[] get(URL url) throws IOException {
+    HttpURLConnection connection = HttpDownloader.open(url, "GET");
+    boolean consumed = false;
+    try {
+      HttpDownloader.check(connection, HttpURLConnection.HTTP_OK);
+      ByteArrayOutputStream content = new ByteArrayOutputStream();
+      try (InputStream in = connection.getInputStream()) {
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+          content.write(buffer, 0, read);
+        }
+      }
+      consumed = true;
+      return content.toByteArray();
+    } finally {
+      if (!consumed) {
+        connection.disconnect();
+      }
+    }
+  }
+
+  private URL url(String... segments) throws UpdateRepositoryException {
+    StringBuilder path = new StringBuilder();
+    for (String segment : segments) {
+      if (path.length() > 0) {
+        path.append('/');
+      }
+      path.append(encode(segment));
+    }
+
+    try {
+      return new URL(baseUrl, path.toString());
+    } catch (MalformedURLException e) {
+      throw new UpdateRepositoryException("Invalid repository path '" + path + "'", e);
+    }
+  }
+
+  private Path cachePath(String... segments) throws UpdateRepositoryException {
+    Path path = cacheDirectory.toPath().toAbsolutePath().normalize();
+    for (String segment : segments) {
+      if (segment.isEmpty() || segment.equals(".") || segment.equals("..")
+              || segment.contains("/") || segment.contains(File.separator)) {
+        throw new UpdateRepositoryException("Illegal name '" + segment + "'");
+      }
+      path = path.resolve(segment);
+    }
+    return path;
+  }
+
+  /**
+   * Percent-encodes a path segment, unreserved characters are kept as they are.
+   */
+  private static String encode(String segment) {
+    StringBuilder encoded = new StringBuilder();
+    for (byte b : segment.getBytes(StandardCharsets.UTF_8)) {
+      char c = (char) (b & 0xFF);
+      if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+              || c == '-' || c == '.' || c == '_' || c == '~') {
+        encoded.append(c);
+      } else {
+        encoded.append('%').append(String.format("%02X", b & 0xFF));
+      }
+    }
+    return encoded.toString();
+  }
+}
@@ -1,31 +1,114 @@
 package com.gmail.steffen1995.updateme.providers;
 
-import com.gmail.steffen1995.updateme.update.Update;
+import com.gmail.steffen1995.updateme.metrics.Metrics;
+import com.gmail.steffen1995.updateme.metrics.Phase;
+import com.gmail.steffen1995.updateme.metrics.PhaseTimer;
+import com.gmail.steffen1995.updateme.update.DeltaPackage;
+import com.gmail.steffen1995.updateme.update.PackageVerifier;
+import com.gmail.steffen1995.updateme.update.UpdateException;
 import com.gmail.steffen1995.updateme.update.UpdateInfo;
+import com.gmail.steffen1995.updateme.util.PathUtils;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
 /**
  * Manipulates a update directory structure on the local file system.
  * @author Steffen Schoen
  */
+@Slf4j
 public class LocalUpdateRepository implements UpdateRepositoryManipulator {
+  private static final String OBJECTS_DIR = ".objects";
+  private static final String BINARY_INFO_FILE = "updateInfo.bin";
+  private static final String STAGING_DIR = ".staging";
+  private static final String ASSEMBLED_DIR = "assembled";
+  // assembled packages that were not pulled within this time are deleted
+  private static final long ASSEMBLED_PACKAGE_LIFETIME_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+  @Getter
   private File baseDirectory;
 
+  /**
+   * Whether a delta package against the previously pushed version is created when a new version
+   * is pushed.
+   */
+  @Getter
+  @Setter
+  private boolean deltaUpdates;
+
+  /**
+   * Whether pushed versions are stored in the content-addressed {@link ContentStore} instead of
+   * as a full update package per version.
+   */
+  @Getter
+  @Setter
+  private boolean contentAddressed;
+
+  /**
+   * The encoding of the update infos of pushed versions. The JSON update info is always written,
+   * in {@link UpdateInfo.Format#BINARY} mode a binary update info is written next to it and is
+   * preferred when the update infos are read.
+   */
+  @Getter
+  @Setter
+  private UpdateInfo.Format manifestFormat = UpdateInfo.Format.JSON;
+
+  /**
+   * Whether pushed update packages are hard linked into the repository instead of copied, if the
+   * file system supports it. Packages must not be modified in place after they were pushed then,
+   * e.g. by packing a new version to the same path.
+   */
+  @Getter
+  @Setter
+  private boolean linkPackages;
+
+  private final ContentStore contentStore;
+  private final Object indexLock = new Object();
+  private final ConcurrentMap<String, CachedVersionIndex> versionIndexes =
+          new ConcurrentHashMap<>();
+
   public LocalUpdateRepository(File baseDirectory) {
     this.baseDirectory = baseDirectory;
+    this.contentStore = new ContentStore(Paths.get(baseDirectory.getAbsolutePath(), OBJECTS_DIR));
   }
 
   public LocalUpdateRepository(String baseDirectory) {
@@ -54,33 +137,406 @@ public class LocalUpdateRepository implements UpdateRepositoryManipulator {
     }
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The package is verified while it is read, nothing is extracted. It is read exactly once:
+   * the update package is written in the same pass, or the files are written to the content
+   * store if {@link #isContentAddressed()} is set. With {@link #isLinkPackages()} the package is
+   * hard linked instead of copied where possible.
+   */
   @Override
   public void pushUpdate(File updatePackage, String channel, ProgressChangedListener progress) throws UpdateRepositoryException {
+    try (PhaseTimer timer = Metrics.start(Phase.PUSH, channel, null)) {
+      checkChannelExistence(channel, false);
+
+      Path channelPath = Paths.get(baseDirectory.getAbsolutePath(), channel);
+      ProgressTracker tracker = ProgressTracker.of(progress);
+      Path stagePath = createStagingDirectory("push-");
+      StagedVersion staged = null;
+      Optional<Path> base = Optional.empty();
+      boolean committed = false;
+
+      try {
+        try {
+          staged = stage(updatePackage, stagePath, tracker);
+        } catch (UpdateException e) {
+          throw new UpdateRepositoryException("Could not parse update package", e);
+        } catch (IOException e) {
+          throw new UpdateRepositoryException("Could not push update package", e);
+        }
+        timer.setVersion(staged.getInfo().getVersion());
+
+        base = commit(channelPath, new StagedVersion[] {staged});
+        committed = true;
+        versionIndexes.remove(channel);
+      } finally {
+        if (!committed) {
+          discard(new StagedVersion[] {staged});
+        }
+        deleteStagingDirectory(stagePath);
+      }
+
+      if (deltaUpdates && base.isPresent()) {
+        createDelta(base.get(), channelPath, staged.getInfo());
+      }
+
+      if (tracker != progress) {
+        tracker.complete();
+      }
+      timer.addBytes(updatePackage.length());
+      timer.success();
+    }
+  }
+
+  /**
+   * Adds many update packages to a channel at once, e.g. to import the releases of another
+   * repository, with one thread per available processor.
+   * @param updatePackages the update packages
+   * @param channel the name of the deployment channel
+   * @return the pushed versions in the order of the packages
+   * @throws UpdateRepositoryException when one of the packages cannot be pushed, none of them is
+   *         pushed then
+   * @see #pushUpdates(List, String, int, ProgressChangedListener)
+   */
+  public List<String> pushUpdates(List<File> updatePackages, String channel,
+                                  ProgressChangedListener progress)
+          throws UpdateRepositoryException {
+    return pushUpdates(updatePackages, channel, Runtime.getRuntime().availableProcessors(),
+            progress);
+  }
+
+  /**
+   * Adds many update packages to a channel at once, e.g. to import the releases of another
+   * repository. The packages are unpacked, verified and stored in a staging directory in
+   * parallel. Only when all of them succeeded, the versions are moved into the channel and the
+   * channel index is written once. When a package fails, everything that was staged is removed
+   * again and the channel is left untouched.
+   *
+   * <p>The versions are indexed in the order of the given packages, delta packages are created
+   * between consecutive versions if {@link #isDeltaUpdates()} is set.
+   * @param updatePackages the update packages
+   * @param channel the name of the deployment channel
+   * @param parallelism the number of packages that are processed at the same time
+   * @return the pushed versions in the order of the packages
+   * @throws UpdateRepositoryException when one of the packages cannot be pushed, none of them is
+   *         pushed then
+   */
+  public List<String> pushUpdates(List<File> updatePackages, String channel, int parallelism,
+                                  ProgressChangedListener progress)
+          throws UpdateRepositoryException {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be at least 1");
+    }
     checkChannelExistence(channel, false);
+    if (updatePackages.isEmpty()) {
+      return new ArrayList<>();
+    }
 
     Path channelPath = Paths.get(baseDirectory.getAbsolutePath(), channel);
-    Update update;
+    ProgressTracker tracker = ProgressTracker.of(progress);
+    Path batchPath = createStagingDirectory("batch-");
+
+    AtomicInteger threadCount = new AtomicInteger();
+    ThreadFactory threadFactory = task -> {
+      Thread thread = new Thread(task, "updateme-push-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+    ExecutorService pool = Executors.newFixedThreadPool(
+            Math.min(parallelism, updatePackages.size()), threadFactory);
+    StagedVersion[] staged = new StagedVersion[updatePackages.size()];
+    boolean committed = false;
+
     try {
-      update = Update.unpack(updatePackage);
-    } catch (Exception e) {
-      throw new UpdateRepositoryException("Could not parse update package", e);
+      stageAll(updatePackages, channel, batchPath, staged, pool, tracker);
+      Optional<Path> base = commit(channelPath, staged);
+      committed = true;
+      versionIndexes.remove(channel);
+
+      if (deltaUpdates) {
+        createDeltas(channelPath, staged, base, pool);
+      }
+    } finally {
+      pool.shutdownNow();
+      if (!committed) {
+        discard(staged);
+      }
+      deleteStagingDirectory(batchPath);
     }
-    UpdateInfo updateInfo = UpdateInfo.fromUpdate(update);
-    Path versionPath = Paths.get(channelPath.toString(), updateInfo.getVersion());
 
+    if (tracker != progress) {
+      tracker.complete();
+    }
+    List<String> versions = new ArrayList<>();
+    for (StagedVersion version : staged) {
+      versions.add(version.getInfo().getVersion());
+    }
+    return versions;
+  }
+
+  /**
+   * Stages all packages of a batch. After the first failure, packages that did not start yet
+   * are skipped, but all running ones are awaited, so that nothing is written to the staging
+   * directory anymore when this method returns.
+   */
+  private void stageAll(List<File> updatePackages, String channel, Path batchPath,
+                        StagedVersion[] staged, ExecutorService pool, ProgressTracker tracker)
+          throws UpdateRepositoryException {
+    AtomicBoolean failed = new AtomicBoolean();
+    List<Future<StagedVersion>> futures = new ArrayList<>();
+    for (int i = 0; i < updatePackages.size(); i++) {
+      File updatePackage = updatePackages.get(i);
+      Path stagePath = batchPath.resolve(String.valueOf(i));
+      futures.add(pool.submit(() -> {
+        if (failed.get()) {
+          return null;
+        }
+        try (PhaseTimer timer = Metrics.start(Phase.PUSH, channel, null)) {
+          StagedVersion version = stage(updatePackage, stagePath, tracker);
+          timer.setVersion(version.getInfo().getVersion());
+          timer.addBytes(updatePackage.length());
+          timer.success();
+          return version;
+        } catch (IOException | UpdateException | RuntimeException e) {
+          failed.set(true);
+          throw new UpdateRepositoryException(
+                  "Could not push update package '" + updatePackage.getName() + "'", e);
+        }
+      }));
+    }
+
+    UpdateRepositoryException failure = null;
+    boolean interrupted = false;
+    for (int i = 0; i < futures.size(); i++) {
+      try {
+        staged[i] = futures.get(i).get();
+      } catch (ExecutionException e) {
+        if (failure == null) {
+          failure = e.getCause() instanceof UpdateRepositoryException
+                  ? (UpdateRepositoryException) e.getCause()
+                  : new UpdateRepositoryException("Could not push update packages", e.getCause());
+        }
+      } catch (InterruptedException e) {
+        interrupted = true;
+        failed.set(true);
+        if (failure == null) {
+          failure = new UpdateRepositoryException("Push was interrupted", e);
+        }
+        // keep waiting, the running tasks still write to the staging directory
+        i--;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    if (failure != null) {
+      throw failure;
+    }
+
+    Set<String> versions = new HashSet<>();
+    for (StagedVersion version : staged) {
+      if (!versions.add(version.getInfo().getVersion())) {
+        throw new UpdateRepositoryException(
+                "Version " + version.getInfo().getVersion() + " is pushed more than once");
+      }
+    }
+  }
+
+  /**
+   * Verifies a package and writes the version directory to the staging directory. The package is
+   * read once and nothing is extracted.
+   */
+  private StagedVersion stage(File updatePackage, Path stagePath, ProgressTracker tracker)
+          throws IOException, UpdateException {
+    Path versionPath = Files.createDirectories(stagePath.resolve("version"));
+    tracker.addTotal(updatePackage.length());
+
+    UpdateInfo updateInfo;
+    List<String> objects = new ArrayList<>();
+    boolean staged = false;
     try {
-      // create directory for version
-      Files.createDirectory(versionPath);
+      if (contentAddressed) {
+        // the objects are referenced from here on, they are released again if the push fails
+        updateInfo = ingestObjects(updatePackage, objects, tracker);
+      } else {
+        Path storedPackage = versionPath.resolve("data.zip");
+        if (linkPackages && link(updatePackage.toPath(), storedPackage)) {
+          try (InputStream in = Files.newInputStream(storedPackage)) {
+            updateInfo = PackageVerifier.verify(in, null, null, tracker::advance);
+          }
+        } else {
+          try (InputStream in = Files.newInputStream(updatePackage.toPath());
+               OutputStream out = Files.newOutputStream(storedPackage)) {
+            updateInfo = PackageVerifier.verify(in, out, null, tracker::advance);
+          }
+        }
+      }
 
-      // write update info to directory
-      updateInfo.writeToFile(Paths.get(versionPath.toString(), "updateInfo.json").toString());
+      updateInfo.writeToFile(versionPath.resolve("updateInfo.json").toString());
+      if (manifestFormat == UpdateInfo.Format.BINARY) {
+        updateInfo.writeToFile(versionPath.resolve(BINARY_INFO_FILE).toString(),
+                UpdateInfo.Format.BINARY);
+      }
+      staged = true;
+      return new StagedVersion(updateInfo, versionPath, objects);
+    } finally {
+      // the caller only knows about the objects of versions that were staged completely
+      if (!staged) {
+        release(objects);
+      }
+    }
+  }
+
+  /**
+   * Verifies a package and adds its files to the content store in the same pass. The content of
+   * every file is written to a temporary file of the store, which is moved to its object only
+   * after the whole package was verified.
+   * @param objects receives the checksums of all objects that were referenced
+   */
+  private UpdateInfo ingestObjects(File updatePackage, List<String> objects,
+                                   ProgressTracker tracker) throws IOException, UpdateException {
+    Map<String, Path> contents = new HashMap<>();
+    try {
+      UpdateInfo updateInfo;
+      try (InputStream in = Files.newInputStream(updatePackage.toPath())) {
+        updateInfo = PackageVerifier.verify(in, null, relativePath -> {
+          Path content = contentStore.createTempFile();
+          contents.put(relativePath, content);
+          return Files.newOutputStream(content);
+        }, tracker::advance);
+      }
 
-      // copy update package
-      Files.copy(Paths.get(updatePackage.getAbsolutePath()),
-              Paths.get(versionPath.toString(), "data.zip"),
-              StandardCopyOption.REPLACE_EXISTING);
+      for (UpdateInfo.FileUpdate fu : updateInfo.getFileUpdates()) {
+        contentStore.adopt(fu.getChecksum(), contents.remove(fu.getRelativePath()));
+        objects.add(fu.getChecksum());
+      }
+      return updateInfo;
+    } finally {
+      for (Path content : contents.values()) {
+        Files.deleteIfExists(content);
+      }
+    }
+  }
+
+  /**
+   * Creates a hard link to a file.
+   * @return {@code false} if the file system does not support hard links between the files
+   */
+  private static boolean link(Path source, Path link) {
+    try {
+      Files.createLink(link, source);
+      return true;
+    } catch (IOException | UnsupportedOperationException e) {
+      log.debug("Could not link {}, it is copied instead", source, e);
+      return false;
+    }
+  }
+
+  private Path createStagingDirectory(String prefix) throws UpdateRepositoryException {
+    try {
+      Path stagingPath = Files.createDirectories(
+              Paths.get(baseDirectory.getAbsolutePath(), STAGING_DIR));
+      return Files.createTempDirectory(stagingPath, prefix);
+    } catch (IOException e) {
+      throw new UpdateRepositoryException("Could not create staging directory", e);
+    }
+  }
+
+  private static void deleteStagingDirectory(Path stagePath) {
+    try {
+      PathUtils.deleteRecursively(stagePath);
     } catch (IOException e) {
-      throw new UpdateRepositoryException("Could not push update package", e);
+      log.warn("Could not delete staging directory {}", stagePath, e);
+    }
+  }
+
+  /**
+   * Moves the staged versions into the channel and indexes them. When a version cannot be moved,
+   * the versions that were moved already are deleted again and the index is not changed.
+   * @return the most recently pushed version before the commit, the base for the first delta
+   */
+  private Optional<Path> commit(Path channelPath, StagedVersion[] staged)
+          throws UpdateRepositoryException {
+    synchronized (indexLock) {
+      List<Path> moved = new ArrayList<>();
+      try {
+        ChannelIndex index = loadIndex(channelPath);
+        Optional<Path> base = previousVersion(channelPath, index);
+        for (StagedVersion version : staged) {
+          Path versionPath = channelPath.resolve(version.getInfo().getVersion());
+          if (Files.exists(versionPath)) {
+            throw new UpdateRepositoryException(
+                    "Version " + version.getInfo().getVersion() + " already exists");
+          }
+          Files.move(version.getPath(), versionPath, StandardCopyOption.ATOMIC_MOVE);
+          moved.add(versionPath);
+          index.put(ChannelIndex.Entry.of(version.getInfo()));
+        }
+        index.writeToFile(channelPath.resolve(ChannelIndex.FILE_NAME));
+        return base;
+      } catch (IOException | UpdateRepositoryException e) {
+        for (Path versionPath : moved) {
+          try {
+            PathUtils.deleteRecursively(versionPath);
+          } catch (IOException deleteFailure) {
+            e.addSuppressed(deleteFailure);
+          }
+        }
+        if (e instanceof UpdateRepositoryException) {
+          throw (UpdateRepositoryException) e;
+        }
+        throw new UpdateRepositoryException("Could not push update packages", e);
+      }
+    }
+  }
+
+  /**
+   * Creates the delta packages of a committed batch, each version against its predecessor. The
+   * first version is diffed against the version that was pushed before the batch, if any.
+   */
+  private void createDeltas(Path channelPath, StagedVersion[] staged, Optional<Path> base,
+                            ExecutorService pool) {
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < staged.length; i++) {
+      UpdateInfo updateInfo = staged[i].getInfo();
+      Optional<Path> previous = i > 0
+              ? Optional.of(channelPath.resolve(staged[i - 1].getInfo().getVersion())) : base;
+      if (previous.isPresent()) {
+        futures.add(pool.submit(() -> createDelta(previous.get(), channelPath, updateInfo)));
+      }
+    }
+
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      } catch (ExecutionException e) {
+        log.warn("Could not create delta package", e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Releases the objects of the versions of a failed batch.
+   */
+  private void discard(StagedVersion[] staged) {
+    for (StagedVersion version : staged) {
+      if (version != null) {
+        release(version.getObjects());
+      }
+    }
+  }
+
+  private void release(List<String> objects) {
+    for (String checksum : objects) {
+      try {
+        contentStore.release(checksum);
+      } catch (IOException e) {
+        log.warn("Could not release object {}", checksum, e);
+      }
     }
   }
 
@@ -90,6 +546,7 @@ public class LocalUpdateRepository implements UpdateRepositoryManipulator {
       List<Object> collect = Files
               .list(Paths.get(baseDirectory.getAbsolutePath()))
               .filter(f -> Files.isDirectory(f))
+              .filter(f -> !isInternal(f.getFileName().toString()))
               .map((Function<Path, Object>) Path::getFileName)
               .collect(Collectors.toList());
 
@@ -104,18 +561,33 @@ public class LocalUpdateRepository implements UpdateRepositoryManipulator {
     checkChannelExistence(channel, false);
 
     List<File> updateInfoFiles = new ArrayList<>();
+    Path channelPath = Paths.get(baseDirectory.getAbsolutePath(), channel);
 
-    try {
+    if (Files.exists(channelPath.resolve(ChannelIndex.FILE_NAME))) {
+      // the index lists all versions, no need to walk the channel
+      try {
+        for (ChannelIndex.Entry entry : loadIndex(channelPath).getEntries()) {
+          updateInfoFiles.add(infoFile(channelPath.resolve(entry.getVersion())));
+        }
+      } catch (IOException e) {
+        throw new UpdateRepositoryException("Could not fetch update infos", e);
+      }
+
+      return updateInfoFiles;
+    }
+
+    try (PhaseTimer timer = Metrics.start(Phase.WALK_DIRECTORY, channel, null)) {
       Files.walkFileTree(Paths.get(baseDirectory.toString(), channel), new SimpleFileVisitor<Path>() {
         @Override
         public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
           if (file.getFileName().toString().equals("updateInfo.json")) {
-            updateInfoFiles.add(file.toFile());
+            updateInfoFiles.add(infoFile(file.getParent()));
           }
 
           return FileVisitResult.CONTINUE;
         }
       });
+      timer.success();
     } catch (IOException e) {
       throw new UpdateRepositoryException("Could not fetch update infos", e);
     }
@@ -123,25 +595,380 @@ public class LocalUpdateRepository implements UpdateRepositoryManipulator {
     return updateInfoFiles;
   }
 
+  @Override
+  public long lastModified(String channel) throws UpdateRepositoryException {
+    if (isInternal(channel)) {
+      throw new UpdateRepositoryException("Illegal channel name '" + channel + "'");
+    }
+    Path channelPath = Paths.get(baseDirectory.getAbsolutePath(), channel);
+    Path indexPath = channelPath.resolve(ChannelIndex.FILE_NAME);
+
+    try {
+      // pushing or removing a version changes the channel directory and replaces the index
+      long lastModified = Files.getLastModifiedTime(channelPath).toMillis();
+      if (Files.exists(indexPath)) {
+        lastModified = Math.max(lastModified, Files.getLastModifiedTime(indexPath).toMillis());
+      }
+      return lastModified;
+    } catch (NoSuchFileException e) {
+      throw new UpdateRepositoryException("Channel does not exist", e);
+    } catch (IOException e) {
+      throw new UpdateRepositoryException("Could not access channel", e);
+    }
+  }
+
+  @Override
+  public ChannelIndex channelIndex(String channel, ProgressChangedListener progress)
+          throws UpdateRepositoryException {
+    checkChannelExistence(channel, false);
+
+    try {
+      return loadIndex(Paths.get(baseDirectory.getAbsolutePath(), channel));
+    } catch (IOException e) {
+      throw new UpdateRepositoryException("Could not read channel index", e);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The index is kept in memory until the channel is modified, so repeated lookups only check
+   * the modification time of the channel.
+   */
+  @Override
+  public VersionIndex versionIndex(String channel, ProgressChangedListener progress)
+          throws UpdateRepositoryException {
+    long lastModified = lastModified(channel);
+    CachedVersionIndex cached = versionIndexes.get(channel);
+    if (cached != null && cached.getLastModified() == lastModified) {
+      return cached.getIndex();
+    }
+
+    VersionIndex index = VersionIndex.of(channelIndex(channel, progress));
+    // changes within the grace time may not be visible in the modification time of a channel yet
+    if (System.currentTimeMillis() - lastModified >= PathUtils.MODIFICATION_GRACE_MILLIS) {
+      versionIndexes.put(channel, new CachedVersionIndex(lastModified, index));
+    }
+    return index;
+  }
+
   @Override
   public File pullUpdate(String version, String channel, ProgressChangedListener progress) throws UpdateRepositoryException {
+    try (PhaseTimer timer = Metrics.start(Phase.PULL, channel, version)) {
+      checkChannelExistence(channel, false);
+      Path channelPath = Paths.get(baseDirectory.getAbsolutePath(), channel);
+
+      if (!Files.exists(Paths.get(channelPath.toString(), version))) {
+        // version does not exist
+        throw new UpdateRepositoryException("The requested version does not exist");
+      }
+
+      ProgressTracker tracker = ProgressTracker.of(progress);
+      Path updatePackagePath = Paths.get(channelPath.toString(), version, "data.zip");
+      if (Files.exists(updatePackagePath)) {
+        // the package is available locally as is
+        tracker.addTotal(updatePackagePath.toFile().length());
+        tracker.advance(updatePackagePath.toFile().length());
+        if (tracker != progress) {
+          tracker.complete();
+        }
+        timer.addBytes(updatePackagePath.toFile().length());
+        timer.success();
+        return updatePackagePath.toFile();
+      }
+
+      Path updateInfoPath = Paths.get(channelPath.toString(), version, "updateInfo.json");
+      if (!Files.exists(updateInfoPath)) {
+        throw new UpdateRepositoryException("Update data not available");
+      }
+
+      // version is stored in the content store, reassemble the package
+      try {
+        File assembled = assemblePackage(channel, version, updateInfoPath, tracker).toFile();
+        if (tracker != progress) {
+          tracker.complete();
+        }
+        timer.addBytes(assembled.length());
+        timer.success();
+        return assembled;
+      } catch (IOException e) {
+        throw new UpdateRepositoryException("Update data not available", e);
+      }
+    }
+  }
+
+  /**
+   * Removes a version from a channel. Objects in the content store that are not referenced by any
+   * other version are deleted.
+   * @param version the version to remove
+   * @param channel the deployment channel of the update
+   * @throws UpdateRepositoryException when the version does not exist or cannot be removed
+   */
+  public void removeUpdate(String version, String channel, ProgressChangedListener progress)
+          throws UpdateRepositoryException {
     checkChannelExistence(channel, false);
-    Path channelPath = Paths.get(baseDirectory.getAbsolutePath(), channel);
+    Path channelPath = Paths.get(baseDirectory.getAbsolutePath(), channel).normalize();
+    Path versionPath;
+    try {
+      versionPath = PathUtils.resolveInside(channelPath, version);
+    } catch (IOException e) {
+      throw new UpdateRepositoryException("Illegal version '" + version + "'", e);
+    }
+    // a nested path would delete a part of another version
+    if (!versionPath.getParent().equals(channelPath)) {
+      throw new UpdateRepositoryException("Illegal version '" + version + "'");
+    }
 
-    if (!Files.exists(Paths.get(channelPath.toString(), version))) {
-      // version does not exist
+    if (!Files.exists(versionPath)) {
       throw new UpdateRepositoryException("The requested version does not exist");
     }
 
-    Path updatePackagePath = Paths.get(channelPath.toString(), version, "data.zip");
-    if (!Files.exists(updatePackagePath)) {
-      throw new UpdateRepositoryException("Update data not available");
+    try {
+      Path updateInfoPath = versionPath.resolve("updateInfo.json");
+      if (Files.exists(updateInfoPath) && !Files.exists(versionPath.resolve("data.zip"))) {
+        for (UpdateInfo.FileUpdate fu : UpdateInfo.readFromFile(updateInfoPath.toFile())
+                .getFileUpdates()) {
+          contentStore.release(fu.getChecksum());
+        }
+      }
+
+      PathUtils.deleteRecursively(versionPath);
+      Files.deleteIfExists(assembledPackagePath(channel, version));
+
+      synchronized (indexLock) {
+        ChannelIndex index = loadIndex(channelPath);
+        index.remove(version);
+        index.writeToFile(channelPath.resolve(ChannelIndex.FILE_NAME));
+        versionIndexes.remove(channel);
+      }
+    } catch (IOException e) {
+      throw new UpdateRepositoryException("Could not remove update", e);
     }
+  }
+
+  /**
+   * Assembles an update package from the content store. Assembled packages are kept in the
+   * staging directory and reused by later pulls, packages that were not pulled for
+   * {@value #ASSEMBLED_PACKAGE_LIFETIME_MILLIS} ms are deleted when the next one is assembled.
+   * @param channel the channel of the version
+   * @param version the version to assemble
+   * @param updateInfoPath the update info of the version to assemble
+   * @param tracker the tracker the copied bytes are reported to
+   * @return the path of the assembled package
+   * @throws IOException when the package cannot be assembled
+   */
+  private Path assemblePackage(String channel, String version, Path updateInfoPath,
+                               ProgressTracker tracker) throws IOException {
+    Path assembled = assembledPackagePath(channel, version);
+    long now = System.currentTimeMillis();
+    try {
+      if (Files.getLastModifiedTime(assembled).toMillis()
+              >= Files.getLastModifiedTime(updateInfoPath).toMillis()) {
+        // keeps the package from expiring while it is pulled
+        Files.setLastModifiedTime(assembled, FileTime.fromMillis(now));
+        tracker.addTotal(Files.size(assembled));
+        tracker.advance(Files.size(assembled));
+        return assembled;
+      }
+    } catch (NoSuchFileException e) {
+      // not assembled yet or expired
+    }
+
+    deleteExpiredPackages(now);
+    UpdateInfo updateInfo = UpdateInfo.readFromFile(updateInfoPath.toFile());
+    for (UpdateInfo.FileUpdate fu : updateInfo.getFileUpdates()) {
+      tracker.addTotal(fu.getSizeBytes());
+    }
+
+    Files.createDirectories(assembled.getParent());
+    Path updatePackage = Files.createTempFile(assembled.getParent(), version + "-", ".tmp");
 
-    return updatePackagePath.toFile();
+    try (PhaseTimer timer = Metrics.start(Phase.COPY, null, updateInfo.getVersion());
+         ZipOutputStream zipOut = new ZipOutputStream(Files.newOutputStream(updatePackage))) {
+      zipOut.putNextEntry(new ZipEntry("updateInfo.json"));
+      Files.copy(updateInfoPath, zipOut);
+
+      for (UpdateInfo.FileUpdate fu : updateInfo.getFileUpdates()) {
+        if (!contentStore.contains(fu.getChecksum())) {
+          throw new IOException("Object for file '" + fu.getLocalPath() + "' is missing");
+        }
+
+        zipOut.putNextEntry(new ZipEntry(fu.getRelativePath()));
+        PathUtils.copy(contentStore.objectPath(fu.getChecksum()), zipOut, tracker::advance);
+        timer.addBytes(fu.getSizeBytes());
+      }
+      timer.success();
+    } catch (IOException e) {
+      Files.deleteIfExists(updatePackage);
+      throw e;
+    }
+
+    // concurrent pulls of the same version replace each other with equal packages
+    Files.move(updatePackage, assembled, StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+    return assembled;
+  }
+
+  private Path assembledPackagePath(String channel, String version) {
+    return Paths.get(baseDirectory.getAbsolutePath(), STAGING_DIR, ASSEMBLED_DIR, channel,
+            version + ".zip");
+  }
+
+  /**
+   * Deletes the assembled packages and leftovers of failed assemblies that were not used within
+   * their lifetime.
+   */
+  private void deleteExpiredPackages(long now) {
+    Path assembledPath = Paths.get(baseDirectory.getAbsolutePath(), STAGING_DIR, ASSEMBLED_DIR);
+    if (!Files.isDirectory(assembledPath)) {
+      return;
+    }
+
+    try {
+      Files.walkFileTree(assembledPath, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+          if (now - attrs.lastModifiedTime().toMillis() >= ASSEMBLED_PACKAGE_LIFETIME_MILLIS) {
+            Files.deleteIfExists(file);
+          }
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    } catch (IOException e) {
+      log.warn("Could not delete expired packages in {}", assembledPath, e);
+    }
+  }
+
+  @Override
+  public File pullDeltaUpdate(String baseVersion, String version, String channel,
+                              ProgressChangedListener progress) throws UpdateRepositoryException {
+    checkChannelExistence(channel, false);
+    Path versionPath = Paths.get(baseDirectory.getAbsolutePath(), channel, version);
+
+    if (!Files.exists(versionPath)) {
+      throw new UpdateRepositoryException("The requested version does not exist");
+    }
+
+    Path deltaPath = versionPath.resolve(deltaFileName(baseVersion));
+    if (!Files.exists(deltaPath)) {
+      throw new UpdateRepositoryException("No delta available from version " + baseVersion);
+    }
+
+    return deltaPath.toFile();
+  }
+
+  /**
+   * Creates a delta package from a base version to the given version. Failing to create the
+   * delta does not fail the push.
+   * @param basePath the directory of the base version
+   * @param channelPath the channel directory
+   * @param updateInfo the info of the pushed version
+   */
+  private void createDelta(Path basePath, Path channelPath, UpdateInfo updateInfo) {
+    Path versionPath = channelPath.resolve(updateInfo.getVersion());
+
+    try {
+      UpdateInfo baseInfo = UpdateInfo.readFromFile(basePath.resolve("updateInfo.json").toFile());
+
+      try (ZipFile baseZip = openPackage(basePath);
+           ZipFile targetZip = openPackage(versionPath)) {
+        DeltaPackage.create(baseInfo, contentSource(baseZip),
+                updateInfo, contentSource(targetZip),
+                versionPath.resolve(deltaFileName(baseInfo.getVersion())).toFile());
+      }
+    } catch (IOException e) {
+      log.warn("Could not create delta package for version {}", updateInfo.getVersion(), e);
+    }
+  }
+
+  /**
+   * Opens the update package of a version.
+   * @param versionPath the version directory
+   * @return the opened package or {@code null} if the version is stored in the content store
+   * @throws IOException when the package cannot be opened
+   */
+  private ZipFile openPackage(Path versionPath) throws IOException {
+    Path updatePackage = versionPath.resolve("data.zip");
+    return Files.exists(updatePackage) ? new ZipFile(updatePackage.toFile()) : null;
+  }
+
+  private DeltaPackage.ContentSource contentSource(ZipFile updatePackage) {
+    if (updatePackage != null) {
+      return DeltaPackage.zipSource(updatePackage);
+    }
+    return file -> contentStore.open(file.getChecksum());
+  }
+
+  /**
+   * Finds the most recently pushed version of a channel.
+   * @param channelPath the channel directory
+   * @param index the index of the channel
+   * @return the directory of the previous version
+   */
+  private Optional<Path> previousVersion(Path channelPath, ChannelIndex index) {
+    List<ChannelIndex.Entry> entries = index.getEntries();
+
+    for (int i = entries.size() - 1; i >= 0; i--) {
+      Path versionPath = channelPath.resolve(entries.get(i).getVersion());
+      if (Files.exists(versionPath.resolve("updateInfo.json"))) {
+        return Optional.of(versionPath);
+      }
+    }
+
+    return Optional.empty();
+  }
+
+  /**
+   * Loads the index of a channel. Channels that were created before indices were introduced are
+   * indexed by reading the update infos of all versions, ordered by their modification time.
+   * @param channelPath the channel directory
+   * @return the channel index
+   * @throws IOException when the index or the update infos cannot be read
+   */
+  private ChannelIndex loadIndex(Path channelPath) throws IOException {
+    Path indexPath = channelPath.resolve(ChannelIndex.FILE_NAME);
+    if (Files.exists(indexPath)) {
+      return ChannelIndex.readFromFile(indexPath);
+    }
+
+    List<Path> updateInfoPaths;
+    try (Stream<Path> versions = Files.list(channelPath)) {
+      updateInfoPaths = versions
+              .map(p -> p.resolve("updateInfo.json"))
+              .filter(Files::exists)
+              .sorted(Comparator.comparingLong(p -> p.toFile().lastModified()))
+              .collect(Collectors.toList());
+    }
+
+    ChannelIndex index = new ChannelIndex();
+    for (Path updateInfoPath : updateInfoPaths) {
+      index.put(ChannelIndex.Entry.of(UpdateInfo.readFromFile(updateInfoPath.toFile())));
+    }
+    return index;
+  }
+
+  /**
+   * Gets the update info file of a version, the binary update info is preferred if it exists.
+   * @param versionPath the directory of the version
+   * @return the update info file
+   */
+  private static File infoFile(Path versionPath) {
+    Path binary = versionPath.resolve(BINARY_INFO_FILE);
+    if (Files.exists(binary)) {
+      return binary.toFile();
+    }
+    return versionPath.resolve("updateInfo.json").toFile();
+  }
+
+  private static String deltaFileName(String baseVersion) {
+    return "delta-" + baseVersion + ".zip";
   }
 
   private void checkChannelExistence(String channelName, boolean throwWhenExists) throws UpdateRepositoryException {
+    if (isInternal(channelName)) {
+      throw new UpdateRepositoryException("Illegal channel name '" + channelName + "'");
+    }
+
     try {
       boolean channelExists = Files
           .list(Paths.get(baseDirectory.getAbsolutePath()))
@@ -156,4 +983,25 @@ public class LocalUpdateRepository implements UpdateRepositoryManipulator {
       throw new UpdateRepositoryException("Could not access channels", e);
     }
   }
+
+  /**
+   * Checks whether a directory below the base directory belongs to the repository itself, like
+   * the content store or the staging directory, instead of being a channel.
+   */
+  private static boolean isInternal(String name) {
+    return name.startsWith(".");
+  }
+
+  @Value
+  private static class CachedVersionIndex {
+    private long lastModified;
+    private VersionIndex index;
+  }
+
+  @Value
+  private static class StagedVersion {
+    private UpdateInfo info;
+    private Path path;
+    private List<String> objects;
+  }
 }
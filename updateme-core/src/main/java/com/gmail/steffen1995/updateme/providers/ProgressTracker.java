@@ -0,0 +1,151 @@
+package com.gmail.steffen1995.updateme.providers;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Aggregates the byte-level progress of an operation and reports it to a
+ * {@link ProgressChangedListener} at a limited rate.
+ *
+ * <p>Operations call {@link #advance(long)} for every buffer they process, which is cheap and
+ * thread-safe. The listener is invoked at most once per reporting interval and once more when the
+ * operation is completed. A {@link ThroughputListener} additionally receives the smoothed transfer
+ * rate and the estimated remaining time.
+ *
+ * <p>The total may grow while an operation discovers more work, e.g. when a package is opened.
+ * @author Steffen Schoen
+ */
+public class ProgressTracker implements ProgressChangedListener {
+  /**
+   * The default minimum time between two reports.
+   */
+  public static final long DEFAULT_INTERVAL_MILLIS = 250;
+
+  // weight of the latest interval in the smoothed transfer rate
+  private static final double SMOOTHING = 0.3;
+
+  private final ProgressChangedListener listener;
+  private final long intervalNanos;
+  private final AtomicLong current = new AtomicLong();
+  private final AtomicLong total = new AtomicLong();
+
+  private volatile long lastReportNanos;
+  private long lastReportBytes;
+  private double bytesPerSecond = -1;
+
+  /**
+   * Constructor.
+   * @param listener the listener to report to, may be {@code null}
+   * @param intervalMillis the minimum time between two reports
+   */
+  public ProgressTracker(ProgressChangedListener listener, long intervalMillis) {
+    this.listener = listener;
+    this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+    this.lastReportNanos = System.nanoTime();
+  }
+
+  /**
+   * Constructor, reports at most every {@value #DEFAULT_INTERVAL_MILLIS} milliseconds.
+   * @param listener the listener to report to, may be {@code null}
+   */
+  public ProgressTracker(ProgressChangedListener listener) {
+    this(listener, DEFAULT_INTERVAL_MILLIS);
+  }
+
+  /**
+   * Gets a tracker that reports to the given listener. If the listener is a tracker already, it
+   * is returned as is, so nested operations contribute to the same progress.
+   * @param listener the listener to report to, may be {@code null}
+   * @return the tracker
+   */
+  public static ProgressTracker of(ProgressChangedListener listener) {
+    if (listener instanceof ProgressTracker) {
+      return (ProgressTracker) listener;
+    }
+    return new ProgressTracker(listener);
+  }
+
+  /**
+   * Adds work to the total.
+   * @param bytes the number of bytes to add
+   */
+  public void addTotal(long bytes) {
+    total.addAndGet(bytes);
+  }
+
+  /**
+   * Records processed bytes.
+   * @param bytes the number of bytes that were processed
+   */
+  public void advance(long bytes) {
+    current.addAndGet(bytes);
+    if (System.nanoTime() - lastReportNanos >= intervalNanos) {
+      report(false);
+    }
+  }
+
+  /**
+   * Marks the operation as completed and reports the final progress.
+   */
+  public void complete() {
+    long done = Math.max(current.get(), total.get());
+    current.set(done);
+    total.set(done);
+    report(true);
+  }
+
+  /**
+   * Takes over the absolute progress reported by another operation.
+   * @param currentProgress the current progress
+   * @param totalProgress the total progress
+   */
+  @Override
+  public void onChange(long currentProgress, long totalProgress) {
+    current.set(currentProgress);
+    total.set(totalProgress);
+    advance(0);
+  }
+
+  public long getCurrent() {
+    return current.get();
+  }
+
+  public long getTotal() {
+    return total.get();
+  }
+
+  /**
+   * Gets the smoothed transfer rate.
+   * @return the transfer rate in bytes per second or {@code -1} if it was not measured yet
+   */
+  public synchronized double getBytesPerSecond() {
+    return bytesPerSecond;
+  }
+
+  private synchronized void report(boolean force) {
+    long now = System.nanoTime();
+    long elapsed = now - lastReportNanos;
+    if (!force && elapsed < intervalNanos) {
+      // another thread reported in the meantime
+      return;
+    }
+
+    long bytes = current.get();
+    long totalBytes = Math.max(total.get(), bytes);
+    if (elapsed > 0) {
+      double rate = (bytes - lastReportBytes) * 1e9 / elapsed;
+      bytesPerSecond = bytesPerSecond < 0 ? rate : SMOOTHING * rate
+              + (1 - SMOOTHING) * bytesPerSecond;
+    }
+    lastReportNanos = now;
+    lastReportBytes = bytes;
+
+    if (listener instanceof ThroughputListener) {
+      long eta = bytesPerSecond > 0
+              ? (long) ((totalBytes - bytes) * 1000 / bytesPerSecond) : -1;
+      ((ThroughputListener) listener).onThroughput(bytes, totalBytes, bytesPerSecond, eta);
+    } else if (listener != null) {
+      listener.onChange(bytes, totalBytes);
+    }
+  }
+}
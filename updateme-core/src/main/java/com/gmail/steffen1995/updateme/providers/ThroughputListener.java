@@ -0,0 +1,24 @@
+package com.gmail.steffen1995.updateme.providers;
+
+/**
+ * A {@link ProgressChangedListener} that is additionally informed about the transfer rate and
+ * the estimated remaining time of an operation. The values are calculated by a
+ * {@link ProgressTracker}.
+ * @author Steffen Schoen
+ */
+@FunctionalInterface
+public interface ThroughputListener extends ProgressChangedListener {
+  /**
+   * Invoked when the progress of an operation is reported.
+   * @param currentBytes the number of bytes processed so far
+   * @param totalBytes the total number of bytes known so far
+   * @param bytesPerSecond the current transfer rate
+   * @param etaMillis the estimated remaining time in milliseconds or {@code -1} if it is unknown
+   */
+  void onThroughput(long currentBytes, long totalBytes, double bytesPerSecond, long etaMillis);
+
+  @Override
+  default void onChange(long currentProgress, long total) {
+    onThroughput(currentProgress, total, 0, -1);
+  }
+}
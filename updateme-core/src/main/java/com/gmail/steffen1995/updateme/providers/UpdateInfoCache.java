@@ -0,0 +1,166 @@
+package com.gmail.steffen1995.updateme.providers;
+
+import com.gmail.steffen1995.updateme.update.UpdateInfo;
+import com.gmail.steffen1995.updateme.util.PathUtils;
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A size bounded in-memory cache of parsed {@link UpdateInfo} objects, keyed by channel and
+ * version.
+ *
+ * <p>Besides the single update infos, the cache remembers the complete list of update infos of a
+ * channel together with the modification time of the channel it was read at. As long as the
+ * repository reports the same modification time, the list is served without accessing the
+ * repository at all.
+ * @author Steffen Schoen
+ */
+public class UpdateInfoCache {
+  private final Map<Key, CachedInfo> infos;
+  private final Map<String, Listing> listings = new HashMap<>();
+
+  /**
+   * Constructor.
+   * @param maxEntries the maximum number of update infos that are kept
+   */
+  public UpdateInfoCache(int maxEntries) {
+    this.infos = new LruMap<>(maxEntries);
+  }
+
+  /**
+   * Gets all update infos of a channel if the channel did not change since they were cached.
+   * @param channel the channel
+   * @param lastModified the current modification time of the channel or a negative value if it
+   *                     is unknown
+   * @return copies of the cached update infos or {@code null} if they have to be read again
+   */
+  public synchronized List<UpdateInfo> getChannel(String channel, long lastModified) {
+    Listing listing = listings.get(channel);
+    if (lastModified < 0 || listing == null || listing.getLastModified() != lastModified) {
+      return null;
+    }
+
+    List<UpdateInfo> result = new ArrayList<>();
+    for (String version : listing.getVersions()) {
+      CachedInfo cached = infos.get(new Key(channel, version));
+      if (cached == null) {
+        // evicted in the meantime
+        return null;
+      }
+      result.add(copy(cached.getInfo()));
+    }
+    return result;
+  }
+
+  /**
+   * Remembers all update infos of a channel.
+   * @param channel the channel
+   * @param lastModified the modification time of the channel the update infos were read at
+   * @param updateInfos the update infos of the channel
+   */
+  public synchronized void putChannel(String channel, long lastModified,
+                                      List<UpdateInfo> updateInfos) {
+    if (lastModified < 0
+            || System.currentTimeMillis() - lastModified < PathUtils.MODIFICATION_GRACE_MILLIS) {
+      listings.remove(channel);
+      return;
+    }
+
+    List<String> versions = new ArrayList<>();
+    for (UpdateInfo info : updateInfos) {
+      versions.add(info.getVersion());
+    }
+    listings.put(channel, new Listing(lastModified, versions));
+  }
+
+  /**
+   * Gets a single update info.
+   * @param channel the channel of the update
+   * @param version the version of the update
+   * @param lastModified the modification time of the update info file
+   * @return a copy of the cached update info or {@code null} if it is not cached or outdated
+   */
+  public synchronized UpdateInfo get(String channel, String version, long lastModified) {
+    CachedInfo cached = infos.get(new Key(channel, version));
+    if (cached == null || cached.getLastModified() != lastModified) {
+      return null;
+    }
+    return copy(cached.getInfo());
+  }
+
+  /**
+   * Caches a single update info.
+   * @param channel the channel of the update
+   * @param lastModified the modification time of the update info file
+   * @param info the update info
+   */
+  public synchronized void put(String channel, long lastModified, UpdateInfo info) {
+    infos.put(new Key(channel, info.getVersion()), new CachedInfo(lastModified, copy(info)));
+  }
+
+  /**
+   * Removes everything that is cached for a channel.
+   * @param channel the channel
+   */
+  public synchronized void invalidate(String channel) {
+    listings.remove(channel);
+    infos.keySet().removeIf(key -> key.getChannel().equals(channel));
+  }
+
+  /**
+   * Removes all cached update infos.
+   */
+  public synchronized void clear() {
+    listings.clear();
+    infos.clear();
+  }
+
+  private static UpdateInfo copy(UpdateInfo info) {
+    UpdateInfo copy = new UpdateInfo(info.getVersion(), info.getPublishDate());
+    copy.getFileUpdates().addAll(info.getFileUpdates());
+    return copy;
+  }
+
+  @Value
+  private static class Key {
+    private String channel;
+    private String version;
+  }
+
+  @Value
+  private static class CachedInfo {
+    private long lastModified;
+    private UpdateInfo info;
+  }
+
+  @Value
+  private static class Listing {
+    private long lastModified;
+    private List<String> versions;
+  }
+
+  /**
+   * A map that removes the least recently used entry once it holds more than a maximum number of
+   * entries.
+   */
+  private static final class LruMap<K, V> extends LinkedHashMap<K, V> {
+    private static final long serialVersionUID = 1L;
+
+    private final int maxEntries;
+
+    LruMap(int maxEntries) {
+      super(16, 0.75f, true);
+      this.maxEntries = maxEntries;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+      return size() > maxEntries;
+    }
+  }
+}
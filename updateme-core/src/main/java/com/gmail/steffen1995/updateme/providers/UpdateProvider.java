@@ -1,8 +1,14 @@
 package com.gmail.steffen1995.updateme.providers;
 
+import com.gmail.steffen1995.updateme.metrics.Metrics;
+import com.gmail.steffen1995.updateme.metrics.Phase;
+import com.gmail.steffen1995.updateme.metrics.PhaseTimer;
+import com.gmail.steffen1995.updateme.update.UnpackCache;
 import com.gmail.steffen1995.updateme.update.Update;
+import com.gmail.steffen1995.updateme.update.UpdateApplier;
 import com.gmail.steffen1995.updateme.update.UpdateException;
 import com.gmail.steffen1995.updateme.update.UpdateInfo;
+import lombok.Value;
 
 import java.io.File;
 import java.io.IOException;
@@ -10,33 +16,103 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * Base class for update providers.
+ *
+ * <p>All fetch operations run asynchronously on an executor, so independent fetches run
+ * concurrently. The executor can be supplied by the caller, e.g. a virtual thread per task
+ * executor on newer Java versions, otherwise the provider uses a bounded pool of daemon threads
+ * that is shut down by {@link #close()}.
+ *
+ * <p>Concurrent fetches of the same update share a single pull and unpack, see
+ * {@link #fetchUpdate(String, String)}.
  * @author Steffen Schoen
  */
-public class UpdateProvider {
+public class UpdateProvider implements AutoCloseable {
+  private static final int DEFAULT_CACHE_SIZE = 1024;
+  private static final int DEFAULT_MAX_THREADS = 4;
+
   private ProgressChangedListener updateProgressChangedListener;
   private ProgressChangedListener availableUpdateProgressChangedListener;
 
   private UpdateRepositoryManipulator repository;
-  private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+  private final Executor executor;
+  // the pool created by the provider itself, null if the executor is owned by the caller
+  private final ExecutorService ownedExecutor;
+  private final UpdateInfoCache updateInfoCache = new UpdateInfoCache(DEFAULT_CACHE_SIZE);
+  private final ConcurrentMap<FetchKey, SharedFetch> sharedFetches = new ConcurrentHashMap<>();
+  private volatile long fetchResultTtlMillis;
+  private volatile UnpackCache unpackCache;
+  private final UpdateApplier updateApplier = new UpdateApplier();
 
   /**
-   * Constructor.
+   * Constructor. Fetches run on a pool of up to {@value #DEFAULT_MAX_THREADS} threads.
    * @param repository The provider for update repository access that will be used
    */
   public UpdateProvider(UpdateRepositoryManipulator repository) {
+    this(repository, Math.min(DEFAULT_MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+  }
+
+  /**
+   * Constructor. Fetches run on a pool of daemon threads owned by the provider.
+   * @param repository The provider for update repository access that will be used
+   * @param maxThreads the maximum number of fetches that run at the same time
+   */
+  public UpdateProvider(UpdateRepositoryManipulator repository, int maxThreads) {
     this.repository = Objects.requireNonNull(repository);
+    this.ownedExecutor = newPool(maxThreads);
+    this.executor = ownedExecutor;
+  }
+
+  /**
+   * Constructor. Fetches run on the given executor, which is not shut down by {@link #close()}.
+   * @param repository The provider for update repository access that will be used
+   * @param executor the executor to run fetches on
+   */
+  public UpdateProvider(UpdateRepositoryManipulator repository, Executor executor) {
+    this.repository = Objects.requireNonNull(repository);
+    this.executor = Objects.requireNonNull(executor);
+    this.ownedExecutor = null;
+  }
+
+  private static ExecutorService newPool(int maxThreads) {
+    if (maxThreads < 1) {
+      throw new IllegalArgumentException("At least one thread is required");
+    }
+
+    AtomicInteger threadCount = new AtomicInteger();
+    ThreadFactory threadFactory = task -> {
+      Thread thread = new Thread(task, "updateme-provider-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+    ThreadPoolExecutor pool = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), threadFactory);
+    // idle threads are released again
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
   }
 
   /**
    * Registers a listener for the OnUpdateFetchingProgressChanged event. The event is fired when
    * the progress of fetching an {@link Update} changed after calling
    * {@link UpdateProvider#fetchUpdate(String, String)} or
-   * {@link UpdateProvider#fetchUpdate(UpdateInfo, String)}.
+   * {@link UpdateProvider#fetchUpdate(UpdateInfo, String)}. The progress is reported in bytes
+   * at a limited rate, a {@link ThroughputListener} additionally receives the transfer rate and
+   * the estimated remaining time.
    * @param listener the listener that will be invoked
    */
   public void setOnUpdateFetchingProgressChanged(ProgressChangedListener listener) {
@@ -53,6 +129,36 @@ public class UpdateProvider {
     this.availableUpdateProgressChangedListener = listener;
   }
 
+  /**
+   * Sets how long a fetched {@link Update} is handed out again to later calls of
+   * {@link #fetchUpdate(String, String)} for the same version. By default an update is only shared
+   * between calls while it is being fetched.
+   * @param ttlMillis the time in milliseconds, {@code 0} to share in-flight fetches only
+   */
+  public void setFetchResultTtlMillis(long ttlMillis) {
+    if (ttlMillis < 0) {
+      throw new IllegalArgumentException("The time to live must not be negative");
+    }
+    this.fetchResultTtlMillis = ttlMillis;
+  }
+
+  public long getFetchResultTtlMillis() {
+    return fetchResultTtlMillis;
+  }
+
+  /**
+   * Sets the cache that fetched updates are unpacked into. Without a cache every fetch unpacks the
+   * update into a new temporary directory.
+   * @param unpackCache the cache or {@code null} to not cache unpacked updates
+   */
+  public void setUnpackCache(UnpackCache unpackCache) {
+    this.unpackCache = unpackCache;
+  }
+
+  public UnpackCache getUnpackCache() {
+    return unpackCache;
+  }
+
   /**
    * Fetches the {@link Update} that corresponds with the given {@link UpdateInfo}.
    * @param updateToFetch the update to fetch
@@ -65,21 +171,122 @@ public class UpdateProvider {
 
   /**
    * Fetches the {@link Update} with the given version.
+   *
+   * <p>While a fetch of the same version and channel is in progress, no second fetch is started
+   * and all callers receive the same {@link Update}. Failed fetches are not shared with later
+   * calls, successful ones only within the time set by {@link #setFetchResultTtlMillis(long)}.
+   * Progress is reported for the fetch that is actually running only.
    * @param version the version to fetch
    * @param channel the deployment channel to fetch the update from
    * @return the fetched {@link Update}
    */
   public CompletableFuture<Update> fetchUpdate(String version, String channel) {
+    FetchKey key = new FetchKey(channel, version);
+    while (true) {
+      SharedFetch fetch = sharedFetches.get(key);
+      if (fetch != null && !fetch.isExpired()) {
+        // a dependent future, so that callers cannot complete the shared one
+        return fetch.getFuture().thenApply(Function.identity());
+      }
+
+      SharedFetch created = new SharedFetch(done -> {
+        long ttl = fetchResultTtlMillis;
+        if (done.getFetched().isCompletedExceptionally() || ttl <= 0) {
+          sharedFetches.remove(key, done);
+        } else {
+          done.setExpiresAt(System.currentTimeMillis() + ttl);
+        }
+      });
+      boolean registered = fetch == null
+              ? sharedFetches.putIfAbsent(key, created) == null
+              : sharedFetches.replace(key, fetch, created);
+      if (registered) {
+        if (fetch == null) {
+          sharedFetches.values().removeIf(SharedFetch::isExpired);
+        }
+        startFetch(version, channel, created.getFetched());
+        return created.getFuture().thenApply(Function.identity());
+      }
+    }
+  }
+
+  private void startFetch(String version, String channel, CompletableFuture<Update> future) {
+    submit(future, () -> {
+      // pulling and unpacking report to the same tracker
+      ProgressTracker tracker = new ProgressTracker(updateProgressChangedListener);
+      try (PhaseTimer timer = Metrics.start(Phase.FETCH, channel, version)) {
+        File updatePackage = repository.pullUpdate(version, channel, tracker);
+        UnpackCache cache = unpackCache;
+        Update update = cache != null
+                ? cache.unpack(updatePackage, tracker) : Update.unpack(updatePackage, tracker);
+        timer.addBytes(updatePackage.length());
+        timer.success();
+        future.complete(update);
+      } catch (UpdateRepositoryException | UpdateException | IOException | RuntimeException e) {
+        // the future is shared, so it must never be left incomplete
+        future.completeExceptionally(e);
+      } finally {
+        tracker.complete();
+      }
+    });
+  }
+
+  /**
+   * Fetches the update with the given version and applies it to an installation incrementally,
+   * i.e. only files that differ from the installed ones are written, see {@link UpdateApplier}.
+   * @param version the version to install
+   * @param channel the deployment channel to fetch the update from
+   * @param installDirectory the installation directory
+   * @return the changes made to the installation
+   */
+  public CompletableFuture<UpdateApplier.ApplyResult> installUpdate(String version,
+                                                                    String channel,
+                                                                    File installDirectory) {
+    CompletableFuture<UpdateApplier.ApplyResult> future = new CompletableFuture<>();
+
+    submit(future, () -> {
+      ProgressTracker tracker = new ProgressTracker(updateProgressChangedListener);
+      try (PhaseTimer timer = Metrics.start(Phase.INSTALL, channel, version)) {
+        File updatePackage = repository.pullUpdate(version, channel, tracker);
+        UpdateApplier.ApplyResult result =
+                updateApplier.apply(updatePackage, installDirectory.toPath(), tracker);
+        timer.addBytes(updatePackage.length());
+        timer.success();
+        future.complete(result);
+      } catch (UpdateRepositoryException | UpdateException | IOException | RuntimeException e) {
+        future.completeExceptionally(e);
+      } finally {
+        tracker.complete();
+      }
+    });
+
+    return future;
+  }
+
+  /**
+   * Fetches the {@link Update} with the given version as a delta against an installed base
+   * version. This requires the repository to provide delta packages, see
+   * {@link UpdateRepositoryManipulator#pullDeltaUpdate(String, String, String,
+   * ProgressChangedListener)}.
+   * @param baseVersion the installed version
+   * @param baseDirectory the directory that contains the files of the installed version
+   * @param version the version to fetch
+   * @param channel the deployment channel to fetch the update from
+   * @return the fetched {@link Update}
+   */
+  public CompletableFuture<Update> fetchDeltaUpdate(String baseVersion, File baseDirectory,
+                                                    String version, String channel) {
     CompletableFuture<Update> future = new CompletableFuture<>();
 
-    executorService.submit(() -> {
+    submit(future, () -> {
+      ProgressTracker tracker = new ProgressTracker(updateProgressChangedListener);
       try {
-        File updatePackage = repository.pullUpdate(version, channel, updateProgressChangedListener);
-        future.complete(Update.unpack(updatePackage));
-      } catch (UpdateRepositoryException | UpdateException | IOException e) {
+        File deltaPackage = repository.pullDeltaUpdate(baseVersion, version, channel, tracker);
+        future.complete(Update.unpackDelta(deltaPackage, baseDirectory));
+      } catch (UpdateRepositoryException | UpdateException | IOException | RuntimeException e) {
         future.completeExceptionally(e);
       } finally {
-        ProgressChangedListener.fireComplete(updateProgressChangedListener);
+        tracker.complete();
       }
     });
 
@@ -94,17 +301,127 @@ public class UpdateProvider {
   public CompletableFuture<List<UpdateInfo>> fetchAvailableUpdates(String channel) {
     CompletableFuture<List<UpdateInfo>> future = new CompletableFuture<>();
 
-    executorService.submit(() -> {
+    submit(future, () -> {
       List<UpdateInfo> updateInfos = new ArrayList<>();
-      try {
-        List<File> updateInfoFiles = repository.updateInfoFiles(channel, availableUpdateProgressChangedListener);
+      ProgressTracker tracker = new ProgressTracker(availableUpdateProgressChangedListener);
+      try (PhaseTimer timer = Metrics.start(Phase.LIST_UPDATES, channel, null)) {
+        long lastModified = repository.lastModified(channel);
+        List<UpdateInfo> cached = updateInfoCache.getChannel(channel, lastModified);
+        if (cached != null) {
+          timer.success();
+          future.complete(cached);
+          return;
+        }
+
+        List<File> updateInfoFiles = repository.updateInfoFiles(channel, tracker);
+        for (File f: updateInfoFiles) {
+          tracker.addTotal(f.length());
+        }
         for (File f: updateInfoFiles) {
-          updateInfos.add(UpdateInfo.readFromFile(f));
+          updateInfos.add(readUpdateInfo(channel, f));
+          tracker.advance(f.length());
         }
 
+        updateInfoCache.putChannel(channel, lastModified, updateInfos);
+        timer.success();
         future.complete(updateInfos);
       } catch (UpdateRepositoryException | IOException e) {
         future.completeExceptionally(e);
+      } finally {
+        tracker.complete();
+      }
+    });
+
+    return future;
+  }
+
+  /**
+   * Reads an update info file, reusing the cached update info if the file did not change. Update
+   * info files are expected to be located in a directory named after their version.
+   * @param channel the channel of the update
+   * @param file the update info file
+   * @return the update info
+   * @throws IOException when the file cannot be read
+   */
+  private UpdateInfo readUpdateInfo(String channel, File file) throws IOException {
+    long lastModified = file.lastModified();
+    UpdateInfo cached = updateInfoCache.get(channel, file.getParentFile().getName(), lastModified);
+    if (cached != null) {
+      return cached;
+    }
+
+    UpdateInfo info = UpdateInfo.readFromFile(file);
+    updateInfoCache.put(channel, lastModified, info);
+    return info;
+  }
+
+  /**
+   * Runs a fetch on the executor, the future fails if the executor rejects the fetch.
+   */
+  private void submit(CompletableFuture<?> future, Runnable task) {
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException e) {
+      future.completeExceptionally(e);
+    }
+  }
+
+  /**
+   * Shuts down the thread pool of the provider. Fetches that are already running are completed,
+   * new fetches are rejected. An executor supplied by the caller is left untouched.
+   */
+  @Override
+  public void close() {
+    if (ownedExecutor != null) {
+      ownedExecutor.shutdown();
+    }
+  }
+
+  /**
+   * Removes all cached update infos and fetched updates, so that they are read from the
+   * repository again. Fetches that are still in progress are shared nevertheless.
+   */
+  public void clearCache() {
+    updateInfoCache.clear();
+    sharedFetches.values().removeIf(fetch -> fetch.getFuture().isDone());
+  }
+
+  /**
+   * Fetches the index of a channel, i.e. all available versions with their metadata, without
+   * reading the update info of every version.
+   * @param channel the deployment channel to fetch the index from
+   * @return the {@link ChannelIndex} of the channel
+   */
+  public CompletableFuture<ChannelIndex> fetchUpdateIndex(String channel) {
+    CompletableFuture<ChannelIndex> future = new CompletableFuture<>();
+
+    submit(future, () -> {
+      try {
+        future.complete(repository.channelIndex(channel, availableUpdateProgressChangedListener));
+      } catch (UpdateRepositoryException e) {
+        future.completeExceptionally(e);
+      } finally {
+        ProgressChangedListener.fireComplete(availableUpdateProgressChangedListener);
+      }
+    });
+
+    return future;
+  }
+
+  /**
+   * Fetches the versions of a channel ordered by version, e.g. to check whether a version newer
+   * than the installed one is available, without reading the update info of every version.
+   * @param channel the deployment channel to fetch the versions from
+   * @return the {@link VersionIndex} of the channel
+   */
+  public CompletableFuture<VersionIndex> fetchVersionIndex(String channel) {
+    CompletableFuture<VersionIndex> future = new CompletableFuture<>();
+
+    submit(future, () -> {
+      try {
+        future.complete(repository.versionIndex(channel, availableUpdateProgressChangedListener));
+      } catch (UpdateRepositoryException e) {
+        future.completeExceptionally(e);
       } finally {
         ProgressChangedListener.fireComplete(availableUpdateProgressChangedListener);
       }
@@ -112,4 +429,41 @@ public class UpdateProvider {
 
     return future;
   }
+
+  @Value
+  private static class FetchKey {
+    private String channel;
+    private String version;
+  }
+
+  /**
+   * A fetch that is shared by all callers until it expires.
+   */
+  private static class SharedFetch {
+    private final CompletableFuture<Update> fetched = new CompletableFuture<>();
+    // completes after the fetch was expired or removed, so callers never see a stale entry
+    private final CompletableFuture<Update> future;
+    // the fetch is never expired while it is running
+    private volatile long expiresAt = Long.MAX_VALUE;
+
+    SharedFetch(Consumer<SharedFetch> onDone) {
+      this.future = fetched.whenComplete((update, error) -> onDone.accept(this));
+    }
+
+    CompletableFuture<Update> getFetched() {
+      return fetched;
+    }
+
+    CompletableFuture<Update> getFuture() {
+      return future;
+    }
+
+    void setExpiresAt(long expiresAt) {
+      this.expiresAt = expiresAt;
+    }
+
+    boolean isExpired() {
+      return System.currentTimeMillis() >= expiresAt;
+    }
+  }
 }
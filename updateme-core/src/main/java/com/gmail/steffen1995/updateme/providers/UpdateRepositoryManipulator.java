@@ -1,6 +1,9 @@
 package com.gmail.steffen1995.updateme.providers;
 
+import com.gmail.steffen1995.updateme.update.UpdateInfo;
+
 import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -44,6 +47,52 @@ public interface UpdateRepositoryManipulator {
    */
   List<File> updateInfoFiles(String channel, ProgressChangedListener progress) throws UpdateRepositoryException;
 
+  /**
+   * Gets the time the content of a channel was last changed. Callers use it to detect whether
+   * update infos they read before are still up to date.
+   * @param channel the channel to check
+   * @return the modification time in milliseconds or a negative value if the repository cannot
+   *         detect changes
+   */
+  default long lastModified(String channel) throws UpdateRepositoryException {
+    return -1;
+  }
+
+  /**
+   * Gets the index of a channel that lists all versions together with their metadata.
+   * Repositories that do not maintain an index build it from the update info files.
+   * @param channel the channel to get the index for
+   * @return the channel index
+   */
+  default ChannelIndex channelIndex(String channel, ProgressChangedListener progress)
+          throws UpdateRepositoryException {
+    ChannelIndex index = new ChannelIndex();
+
+    for (File updateInfoFile : updateInfoFiles(channel, progress)) {
+      try {
+        index.put(ChannelIndex.Entry.of(UpdateInfo.readFromFile(updateInfoFile)));
+      } catch (IOException e) {
+        throw new UpdateRepositoryException("Could not read update info", e);
+      }
+    }
+
+    return index;
+  }
+
+  /**
+   * Gets the versions of a channel ordered by
+   * {@link com.gmail.steffen1995.updateme.update.Version}, e.g. to look up the latest version or
+   * the versions newer than an installed one.
+   * @param channel the channel to get the index for
+   * @param progress the listener to report the progress to, may be {@code null}
+   * @return the version index
+   * @throws UpdateRepositoryException when the channel index cannot be read
+   */
+  default VersionIndex versionIndex(String channel, ProgressChangedListener progress)
+          throws UpdateRepositoryException {
+    return VersionIndex.of(channelIndex(channel, progress));
+  }
+
   /**
    * Gets the update package for the specified version.
    * @param version the version of the update
@@ -51,4 +100,16 @@ public interface UpdateRepositoryManipulator {
    * @return the update package file
    */
   File pullUpdate(String version, String channel, ProgressChangedListener progress) throws UpdateRepositoryException;
+
+  /**
+   * Gets a delta package that transforms the base version into the specified version.
+   * @param baseVersion the version the delta was created against
+   * @param version the version of the update
+   * @param channel the deployment channel of the update
+   * @return the delta package file
+   */
+  default File pullDeltaUpdate(String baseVersion, String version, String channel,
+                               ProgressChangedListener progress) throws UpdateRepositoryException {
+    throw new UpdateRepositoryException("Delta updates are not supported by this repository");
+  }
 }
@@ -0,0 +1,127 @@
+package com.gmail.steffen1995.updateme.providers;
+
+import com.gmail.steffen1995.updateme.update.Version;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * The versions of a channel ordered by {@link Version}. The index is built from a
+ * {@link ChannelIndex} once and answers all queries in logarithmic time, without reading update
+ * infos. It is immutable, so it can be shared between threads.
+ * @author Steffen Schoen
+ */
+@Slf4j
+public class VersionIndex {
+  private final NavigableMap<Version, ChannelIndex.Entry> versions;
+
+  private VersionIndex(NavigableMap<Version, ChannelIndex.Entry> versions) {
+    this.versions = Collections.unmodifiableNavigableMap(versions);
+  }
+
+  /**
+   * Builds the version index of a channel. Versions that cannot be parsed are left out.
+   * @param index the channel index
+   * @return the version index
+   */
+  public static VersionIndex of(ChannelIndex index) {
+    NavigableMap<Version, ChannelIndex.Entry> versions = new TreeMap<>();
+    for (ChannelIndex.Entry entry : index.getEntries()) {
+      Version version = Version.tryParse(entry.getVersion());
+      if (version == null) {
+        log.warn("Ignoring invalid version '{}'", entry.getVersion());
+        continue;
+      }
+      versions.put(version, entry);
+    }
+    return new VersionIndex(versions);
+  }
+
+  /**
+   * Gets the number of indexed versions.
+   * @return the number of versions
+   */
+  public int size() {
+    return versions.size();
+  }
+
+  /**
+   * Gets the entry of a version.
+   * @param version the version
+   * @return the entry or an empty optional if the version is not indexed
+   */
+  public Optional<ChannelIndex.Entry> get(String version) {
+    Version parsed = Version.tryParse(version);
+    return parsed != null ? Optional.ofNullable(versions.get(parsed)) : Optional.empty();
+  }
+
+  /**
+   * Gets the highest version.
+   * @return the entry of the highest version or an empty optional if the channel is empty
+   */
+  public Optional<ChannelIndex.Entry> latest() {
+    Map.Entry<Version, ChannelIndex.Entry> last = versions.lastEntry();
+    return last != null ? Optional.of(last.getValue()) : Optional.empty();
+  }
+
+  /**
+   * Checks whether a version higher than the installed one is available.
+   * @param installedVersion the installed version
+   * @return {@code true} if there is a higher version
+   * @throws IllegalArgumentException when the installed version is invalid
+   */
+  public boolean hasNewerThan(String installedVersion) {
+    return versions.higherKey(Version.parse(installedVersion)) != null;
+  }
+
+  /**
+   * Gets all versions higher than the installed one.
+   * @param installedVersion the installed version
+   * @return the entries in ascending order
+   * @throws IllegalArgumentException when the installed version is invalid
+   */
+  public List<ChannelIndex.Entry> newerThan(String installedVersion) {
+    return new ArrayList<>(versions.tailMap(Version.parse(installedVersion), false).values());
+  }
+
+  /**
+   * Gets all versions within a range.
+   * @param from the lowest version, {@code null} for no lower bound
+   * @param fromInclusive whether the lowest version itself is included
+   * @param to the highest version, {@code null} for no upper bound
+   * @param toInclusive whether the highest version itself is included
+   * @return the entries in ascending order
+   * @throws IllegalArgumentException when one of the bounds is invalid
+   */
+  public List<ChannelIndex.Entry> range(String from, boolean fromInclusive,
+                                        String to, boolean toInclusive) {
+    Version lower = from != null ? Version.parse(from) : null;
+    Version upper = to != null ? Version.parse(to) : null;
+    if (lower != null && upper != null && lower.compareTo(upper) > 0) {
+      return new ArrayList<>();
+    }
+
+    NavigableMap<Version, ChannelIndex.Entry> range = versions;
+    if (lower != null) {
+      range = range.tailMap(lower, fromInclusive);
+    }
+    if (upper != null) {
+      range = range.headMap(upper, toInclusive);
+    }
+    return new ArrayList<>(range.values());
+  }
+
+  /**
+   * Gets all versions in ascending order.
+   * @return the entries
+   */
+  public List<ChannelIndex.Entry> getEntries() {
+    return new ArrayList<>(versions.values());
+  }
+}
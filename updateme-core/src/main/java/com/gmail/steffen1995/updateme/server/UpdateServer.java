@@ -0,0 +1,498 @@
+package com.gmail.steffen1995.updateme.server;
+
+import com.gmail.steffen1995.updateme.providers.ChannelIndex;
+import com.gmail.steffen1995.updateme.providers.HttpUpdateRepository;
+import com.gmail.steffen1995.updateme.providers.LocalUpdateRepository;
+import com.gmail.steffen1995.updateme.providers.UpdateRepositoryException;
+import com.gmail.steffen1995.updateme.util.HashCalculator;
+import com.gmail.steffen1995.updateme.util.PathUtils;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+import org.json.JSONArray;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A small HTTP server that serves a {@link LocalUpdateRepository} in the layout expected by
+ * {@link HttpUpdateRepository}, based on the HTTP server of the JDK.
+ *
+ * <p>The files of the repository are served as they are, except for hidden files like the content
+ * store. The {@value HttpUpdateRepository#CHANNELS_FILE} file is generated from the channel
+ * directories, channel indices are generated if a channel has none, and the packages of versions
+ * that are stored content-addressed are assembled once and kept until the server is closed.
+ *
+ * <p>Update infos, indices and other small files are kept in memory and only read again when their
+ * size or modification time changes, so polling clients are mostly served without touching the
+ * disk. Every response carries an {@code ETag} and a {@code Last-Modified} header, requests with a
+ * matching {@code If-None-Match} header are answered with {@code 304 Not Modified}. Packages are
+ * streamed from their file with {@link FileChannel#transferTo}, single byte ranges are supported
+ * for resuming and segmented downloads.
+ * @author Steffen Schoen
+ */
+@Slf4j
+public class UpdateServer implements AutoCloseable {
+  /**
+   * The default number of threads that handle requests.
+   */
+  public static final int DEFAULT_THREADS = 16;
+
+  /**
+   * Files up to this size are kept in memory, except for packages.
+   */
+  private static final long MAX_CACHED_SIZE = 1024 * 1024;
+  private static final String PACKAGE_FILE = "data.zip";
+  private static final String UPDATE_INFO_FILE = "updateInfo.json";
+  private static final DateTimeFormatter HTTP_DATE =
+          DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+  private static final long[] UNSATISFIABLE = new long[0];
+
+  private final LocalUpdateRepository repository;
+  private final Path baseDirectory;
+  private final HttpServer server;
+  private final ExecutorService pool;
+
+  private final ConcurrentMap<Path, Resource> cachedFiles = new ConcurrentHashMap<>();
+  private final ConcurrentMap<Path, Resource> generated = new ConcurrentHashMap<>();
+  private final ConcurrentMap<Path, Path> assembledPackages = new ConcurrentHashMap<>();
+
+  /**
+   * Constructor, requests are handled by {@value #DEFAULT_THREADS} threads.
+   * @param repository the repository to serve
+   * @param address the address to listen on, port 0 selects a free port
+   * @throws IOException when the server cannot be bound to the address
+   */
+  public UpdateServer(LocalUpdateRepository repository, InetSocketAddress address)
+          throws IOException {
+    this(repository, address, DEFAULT_THREADS);
+  }
+
+  /**
+   * Constructor.
+   * @param repository the repository to serve
+   * @param address the address to listen on, port 0 selects a free port
+   * @param threads the number of threads that handle requests
+   * @throws IOException when the server cannot be bound to the address
+   */
+  public UpdateServer(LocalUpdateRepository repository, InetSocketAddress address, int threads)
+          throws IOException {
+    if (threads < 1) {
+      throw new IllegalArgumentException("At least one thread is required");
+    }
+    this.repository = repository;
+    this.baseDirectory = repository.getBaseDirectory().toPath().toAbsolutePath().normalize();
+
+    AtomicInteger threadCount = new AtomicInteger();
+    ThreadFactory threadFactory = task -> {
+      Thread thread = new Thread(task, "updateme-server-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), threadFactory);
+    // idle threads are released again
+    executor.allowCoreThreadTimeOut(true);
+    this.pool = executor;
+
+    this.server = HttpServer.create(address, 0);
+    this.server.setExecutor(pool);
+    this.server.createContext("/", this::handle);
+  }
+
+  /**
+   * Starts serving requests.
+   */
+  public void start() {
+    server.start();
+    log.info("Serving {} on {}", baseDirectory, server.getAddress());
+  }
+
+  /**
+   * Gets the address the server listens on.
+   * @return the address, including the selected port
+   */
+  public InetSocketAddress getAddress() {
+    return server.getAddress();
+  }
+
+  /**
+   * Stops the server and deletes the packages that were assembled from the content store.
+   */
+  @Override
+  public void close() {
+    server.stop(0);
+    pool.shutdown();
+    for (Path assembled : assembledPackages.values()) {
+      try {
+        Files.deleteIfExists(assembled);
+      } catch (IOException e) {
+        log.warn("Could not delete assembled package {}", assembled, e);
+      }
+    }
+    assembledPackages.clear();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      String method = exchange.getRequestMethod();
+      if (!method.equals("GET") && !method.equals("HEAD")) {
+        exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+
+      Resource resource = resolve(exchange.getRequestURI().getPath());
+      if (resource == null) {
+        exchange.sendResponseHeaders(404, -1);
+        return;
+      }
+      send(exchange, resource, method.equals("HEAD"));
+    } catch (IOException | UpdateRepositoryException e) {
+      if (exchange.getResponseCode() < 0) {
+        log.warn("Could not serve {}", exchange.getRequestURI(), e);
+        exchange.sendResponseHeaders(500, -1);
+      } else {
+        // most likely the client went away
+        log.debug("Could not send {}", exchange.getRequestURI(), e);
+      }
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /**
+   * Maps a request path to the resource to send.
+   * @return the resource or {@code null} if it does not exist
+   */
+  private Resource resolve(String requestPath) throws IOException, UpdateRepositoryException {
+    List<String> segments = new ArrayList<>();
+    for (String segment : requestPath.split("/")) {
+      if (segment.startsWith(".") || segment.contains("\\")) {
+        // hidden files and relative paths
+        return null;
+      } else if (!segment.isEmpty()) {
+        segments.add(segment);
+      }
+    }
+    if (segments.isEmpty()) {
+      return null;
+    }
+
+    if (segments.size() == 1 && segments.get(0).equals(HttpUpdateRepository.CHANNELS_FILE)) {
+      return channels();
+    }
+
+    Path file = baseDirectory;
+    for (String segment : segments) {
+      file = file.resolve(segment);
+    }
+    Resource resource = file(file);
+    if (resource != null) {
+      return resource;
+    }
+
+    // resources that are missing on disk but can be generated
+    String name = segments.get(segments.size() - 1);
+    if (segments.size() == 2 && name.equals(ChannelIndex.FILE_NAME)) {
+      return channelIndex(segments.get(0));
+    } else if (segments.size() == 3 && name.equals(PACKAGE_FILE)) {
+      return assembledPackage(segments.get(0), segments.get(1));
+    }
+    return null;
+  }
+
+  /**
+   * Gets a file of the repository, small files are taken from the memory cache as long as their
+   * size and modification time did not change. Files that were modified within
+   * {@link PathUtils#MODIFICATION_GRACE_MILLIS} are not cached.
+   */
+  private Resource file(Path file) throws IOException {
+    BasicFileAttributes attributes;
+    try {
+      attributes = Files.readAttributes(file, BasicFileAttributes.class);
+    } catch (NoSuchFileException | NotDirectoryException e) {
+      cachedFiles.remove(file);
+      return null;
+    }
+    if (!attributes.isRegularFile()) {
+      return null;
+    }
+
+    long size = attributes.size();
+    long modified = attributes.lastModifiedTime().toMillis();
+    if (size > MAX_CACHED_SIZE || file.getFileName().toString().endsWith(".zip")) {
+      return new Resource(file, null, size, modified,
+              "\"" + Long.toHexString(size) + "-" + Long.toHexString(modified) + "\"",
+              contentType(file.getFileName().toString()));
+    }
+
+    Resource cached = cachedFiles.get(file);
+    if (cached != null && cached.length == size && cached.modified == modified) {
+      return cached;
+    }
+    byte[] content = Files.readAllBytes(file);
+    Resource resource = memory(content, modified, contentType(file.getFileName().toString()));
+    if (content.length == size && settled(modified)) {
+      // otherwise it was modified while it was read or may change again without a new
+      // timestamp, a later request caches it
+      cachedFiles.put(file, resource);
+    }
+    return resource;
+  }
+
+  /**
+   * Lists the channels, the list is generated again when the base directory changes. The list is
+   * not cached while the base directory was modified within
+   * {@link PathUtils#MODIFICATION_GRACE_MILLIS}.
+   */
+  private Resource channels() throws UpdateRepositoryException {
+    Path key = baseDirectory.resolve(HttpUpdateRepository.CHANNELS_FILE);
+    long modified = baseDirectory.toFile().lastModified();
+    Resource cached = generated.get(key);
+    if (cached != null && cached.modified == modified) {
+      return cached;
+    }
+
+    JSONArray channels = new JSONArray(repository.availableChannels(null));
+    Resource resource = memory(channels.toString().getBytes(StandardCharsets.UTF_8), modified,
+            "application/json");
+    if (settled(modified)) {
+      generated.put(key, resource);
+    }
+    return resource;
+  }
+
+  /**
+   * Gets the index of a channel that has no index file, the index is generated again when the
+   * channel changes.
+   */
+  private Resource channelIndex(String channel) throws UpdateRepositoryException {
+    Path key = baseDirectory.resolve(channel).resolve(ChannelIndex.FILE_NAME);
+    if (!Files.isDirectory(key.getParent())) {
+      return null;
+    }
+    long modified = repository.lastModified(channel);
+    Resource cached = generated.get(key);
+    if (cached != null && cached.modified == modified) {
+      return cached;
+    }
+
+    ChannelIndex index = repository.channelIndex(channel, null);
+    Resource resource = memory(index.toJson().getBytes(StandardCharsets.UTF_8), modified,
+            "application/json");
+    generated.put(key, resource);
+    return resource;
+  }
+
+  /**
+   * Gets the package of a version that is stored in the content store. The package is assembled
+   * on the first request.
+   */
+  private Resource assembledPackage(String channel, String version)
+          throws IOException, UpdateRepositoryException {
+    Path versionPath = baseDirectory.resolve(channel).resolve(version);
+    if (!Files.isRegularFile(versionPath.resolve(UPDATE_INFO_FILE))) {
+      assembledPackages.remove(versionPath);
+      return null;
+    }
+
+    Path assembled = assembledPackages.get(versionPath);
+    if (assembled == null || !Files.exists(assembled)) {
+      synchronized (assembledPackages) {
+        assembled = assembledPackages.get(versionPath);
+        if (assembled == null || !Files.exists(assembled)) {
+          assembled = repository.pullUpdate(version, channel, null).toPath();
+          assembledPackages.put(versionPath, assembled);
+        }
+      }
+    }
+    return file(assembled);
+  }
+
+  /**
+   * Checks whether a modification time is old enough that another change within the timestamp
+   * granularity of the file system would be noticed.
+   */
+  private static boolean settled(long modified) {
+    return System.currentTimeMillis() - modified >= PathUtils.MODIFICATION_GRACE_MILLIS;
+  }
+
+  private static Resource memory(byte[] content, long modified, String contentType) {
+    byte[] digest = HashCalculator.sha256Digest().digest(content);
+    return new Resource(null, content, content.length, modified,
+            "\"" + HashCalculator.bytesToHex(digest).substring(0, 32) + "\"", contentType);
+  }
+
+  private static String contentType(String fileName) {
+    if (fileName.endsWith(".json")) {
+      return "application/json";
+    } else if (fileName.endsWith(".zip")) {
+      return "application/zip";
+    }
+    return "application/octet-stream";
+  }
+
+  private static void send(HttpExchange exchange, Resource resource, boolean head)
+          throws IOException {
+    Headers request = exchange.getRequestHeaders();
+    Headers response = exchange.getResponseHeaders();
+    String lastModified = HTTP_DATE.format(Instant.ofEpochMilli(resource.modified));
+    response.set("ETag", resource.etag);
+    response.set("Last-Modified", lastModified);
+    response.set("Accept-Ranges", "bytes");
+    response.set("Content-Type", resource.contentType);
+
+    String ifNoneMatch = request.getFirst("If-None-Match");
+    if (ifNoneMatch != null && matches(ifNoneMatch, resource.etag)) {
+      exchange.sendResponseHeaders(304, -1);
+      return;
+    }
+
+    long start = 0;
+    long end = resource.length - 1;
+    int status = 200;
+    String range = request.getFirst("Range");
+    String ifRange = request.getFirst("If-Range");
+    if (range != null && (ifRange == null || ifRange.equals(resource.etag)
+            || ifRange.equals(lastModified))) {
+      long[] bounds = parseRange(range, resource.length);
+      if (bounds == UNSATISFIABLE) {
+        response.set("Content-Range", "bytes */" + resource.length);
+        exchange.sendResponseHeaders(416, -1);
+        return;
+      } else if (bounds != null) {
+        start = bounds[0];
+        end = bounds[1];
+        status = 206;
+        response.set("Content-Range", "bytes " + start + "-" + end + "/" + resource.length);
+      }
+    }
+
+    long count = end - start + 1;
+    if (head || count == 0) {
+      response.set("Content-Length", String.valueOf(count));
+      exchange.sendResponseHeaders(status, -1);
+      return;
+    }
+
+    exchange.sendResponseHeaders(status, count);
+    try (OutputStream out = exchange.getResponseBody()) {
+      if (resource.content != null) {
+        out.write(resource.content, (int) start, (int) count);
+      } else {
+        transfer(resource.file, start, end, out);
+      }
+    }
+  }
+
+  private static void transfer(Path file, long start, long end, OutputStream out)
+          throws IOException {
+    try (FileChannel channel = FileChannel.open(file)) {
+      WritableByteChannel target = Channels.newChannel(out);
+      long position = start;
+      while (position <= end) {
+        long transferred = channel.transferTo(position, end - position + 1, target);
+        if (transferred <= 0) {
+          throw new IOException("File '" + file + "' was truncated while it was sent");
+        }
+        position += transferred;
+      }
+    }
+  }
+
+  private static boolean matches(String ifNoneMatch, String etag) {
+    for (String candidate : ifNoneMatch.split(",")) {
+      String tag = candidate.trim();
+      if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Parses a {@code Range} header with a single byte range.
+   * @return the first and last byte of the range, {@link #UNSATISFIABLE} if the range lies
+   *         outside of the resource or {@code null} if the header is not supported and the whole
+   *         resource is sent
+   */
+  private static long[] parseRange(String range, long length) {
+    if (!range.startsWith("bytes=") || range.contains(",")) {
+      return null;
+    }
+    String spec = range.substring("bytes=".length()).trim();
+    int dash = spec.indexOf('-');
+    if (dash < 0) {
+      return null;
+    }
+
+    try {
+      String first = spec.substring(0, dash).trim();
+      String last = spec.substring(dash + 1).trim();
+      if (first.isEmpty()) {
+        // the last n bytes
+        long suffix = Long.parseLong(last);
+        if (suffix <= 0 || length == 0) {
+          return UNSATISFIABLE;
+        }
+        return new long[] {Math.max(0, length - suffix), length - 1};
+      }
+
+      long start = Long.parseLong(first);
+      long end = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+      if (start >= length) {
+        return UNSATISFIABLE;
+      }
+      return start <= end ? new long[] {start, end} : null;
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Something that can be sent, either a file or content in memory.
+   */
+  private static final class Resource {
+    private final Path file;
+    private final byte[] content;
+    private final long length;
+    private final long modified;
+    private final String etag;
+    private final String contentType;
+
+    private Resource(Path file, byte[] content, long length, long modified, String etag,
+                     String contentType) {
+      this.file = file;
+      this.content = content;
+      this.length = length;
+      this.modified = modified;
+      this.etag = etag;
+      this.contentType = contentType;
+    }
+  }
+}
@@ -0,0 +1,361 @@
+package com.gmail.steffen1995.updateme.update;
+
+import com.gmail.steffen1995.updateme.util.HashCalculator;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+
+/**
+ * A compact binary encoding of an {@link UpdateInfo}.
+ *
+ * <p>The encoding starts with a header that holds the magic number, the format version, the
+ * number of file updates, the publish date and the version. Every file update is then stored as
+ * length-prefixed UTF-8 path, the raw 32 byte SHA-256 checksum and the size as variable length
+ * integer. A table with the offset of every file update and the position of that table complete
+ * the encoding, which allows random access through a {@link View}.
+ * @author Steffen Schoen
+ */
+public class BinaryUpdateInfo {
+  /**
+   * The magic number every binary update info starts with.
+   */
+  public static final int MAGIC = 0x554D4249;
+
+  private static final int FORMAT_VERSION = 1;
+  private static final int VERSION_POSITION = 17;
+
+  /**
+   * Checks whether the given bytes are the start of a binary update info.
+   * @param header the first bytes of a file
+   * @param length the number of valid bytes in {@code header}
+   * @return {@code true} if the bytes start with the magic number
+   */
+  public static boolean isBinary(byte[] header, int length) {
+    return length >= 4 && ((header[0] & 0xFF) << 24 | (header[1] & 0xFF) << 16
+            | (header[2] & 0xFF) << 8 | (header[3] & 0xFF)) == MAGIC;
+  }
+
+  /**
+   * Writes the binary encoding of an update info.
+   * @param info the update info to write
+   * @param out the stream to write to, it is not closed
+   * @throws IOException when the update info cannot be written or contains an invalid checksum
+   */
+  public static void write(UpdateInfo info, OutputStream out) throws IOException {
+    // the stream counts every byte written to it, which gives the offsets of the file updates
+    DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+
+    data.writeInt(MAGIC);
+    data.writeByte(FORMAT_VERSION);
+    data.writeInt(info.getFileUpdates().size());
+    data.writeLong(info.getPublishDate().getTime());
+    writeString(data, info.getVersion());
+
+    int[] offsets = new int[info.getFileUpdates().size()];
+    byte[] checksum = new byte[HashCalculator.SHA256_LENGTH];
+
+    for (int i = 0; i < offsets.length; i++) {
+      UpdateInfo.FileUpdate fu = info.getFileUpdates().get(i);
+      offsets[i] = data.size();
+
+      if (fu.getChecksum().length() != HashCalculator.SHA256_LENGTH * 2) {
+        throw new IOException("Invalid checksum for file '" + fu.getLocalPath() + "'");
+      }
+      try {
+        HashCalculator.hexToBytes(fu.getChecksum(), checksum, 0);
+      } catch (IllegalArgumentException e) {
+        throw new IOException("Invalid checksum for file '" + fu.getLocalPath() + "'", e);
+      }
+
+      writeString(data, fu.getLocalPath());
+      data.write(checksum);
+      writeVarLong(data, fu.getSizeBytes());
+    }
+
+    int tablePosition = data.size();
+    for (int offset : offsets) {
+      data.writeInt(offset);
+    }
+    data.writeInt(tablePosition);
+    data.flush();
+  }
+
+  /**
+   * Reads a complete update info from its binary encoding.
+   * @param in the stream to read from, it is not closed
+   * @return the update info
+   * @throws IOException when the stream cannot be read or is not a binary update info
+   */
+  public static UpdateInfo read(InputStream in) throws IOException {
+    DataInputStream data = new DataInputStream(in);
+
+    if (data.readInt() != MAGIC) {
+      throw new IOException("Not a binary update info");
+    }
+    if (data.readUnsignedByte() != FORMAT_VERSION) {
+      throw new IOException("Unsupported binary update info version");
+    }
+
+    int count = data.readInt();
+    Date publishDate = new Date(data.readLong());
+    UpdateInfo info = new UpdateInfo(readString(data), publishDate);
+
+    byte[] checksum = new byte[HashCalculator.SHA256_LENGTH];
+    for (int i = 0; i < count; i++) {
+      String path = readString(data);
+      data.readFully(checksum);
+      info.getFileUpdates().add(UpdateInfo.FileUpdate.builder()
+              .localPath(path)
+              .checksum(HashCalculator.bytesToHex(checksum))
+              .sizeBytes(readVarLong(data)).build());
+    }
+
+    return info;
+  }
+
+  private static void writeString(DataOutputStream data, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    writeVarLong(data, bytes.length);
+    data.write(bytes);
+  }
+
+  private static String readString(DataInputStream data) throws IOException {
+    long length = readVarLong(data);
+    if (length > Integer.MAX_VALUE) {
+      throw new IOException("Invalid string length");
+    }
+
+    byte[] bytes = new byte[(int) length];
+    data.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeVarLong(DataOutputStream data, long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      data.writeByte((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    data.writeByte((int) value);
+  }
+
+  private static long readVarLong(DataInputStream data) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = data.readUnsignedByte();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Invalid variable length integer");
+  }
+
+  /**
+   * A read-only view of a binary update info that decodes file updates on demand, without
+   * creating objects for the file updates that are not accessed.
+   */
+  public static class View {
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int tablePosition;
+    private final String version;
+    private final Date publishDate;
+
+    /**
+     * Constructor.
+     * @param buffer the buffer that contains the binary update info
+     * @throws IOException when the buffer does not contain a valid binary update info
+     */
+    public View(ByteBuffer buffer) throws IOException {
+      this.buffer = buffer.duplicate();
+
+      try {
+        if (this.buffer.getInt(0) != MAGIC) {
+          throw new IOException("Not a binary update info");
+        }
+        if (this.buffer.get(4) != FORMAT_VERSION) {
+          throw new IOException("Unsupported binary update info version");
+        }
+
+        count = this.buffer.getInt(5);
+        publishDate = new Date(this.buffer.getLong(9));
+        int versionLength = (int) varLong(VERSION_POSITION);
+        byte[] versionBytes = new byte[versionLength];
+        ByteBuffer versionBuffer = this.buffer.duplicate();
+        versionBuffer.position(VERSION_POSITION + varLongLength(VERSION_POSITION));
+        versionBuffer.get(versionBytes);
+        version = new String(versionBytes, StandardCharsets.UTF_8);
+
+        tablePosition = this.buffer.getInt(this.buffer.limit() - 4);
+        if (tablePosition < 0 || tablePosition + 4L * count + 4 != this.buffer.limit()) {
+          throw new IOException("Corrupt binary update info");
+        }
+      } catch (IndexOutOfBoundsException | BufferUnderflowException e) {
+        throw new IOException("Corrupt binary update info", e);
+      }
+    }
+
+    /**
+     * Maps a binary update info file into memory.
+     * @param file the binary update info
+     * @return the view of the file
+     * @throws IOException when the file cannot be mapped or is not a binary update info
+     */
+    public static View map(Path file) throws IOException {
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+        return new View(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+      }
+    }
+
+    public String getVersion() {
+      return version;
+    }
+
+    public Date getPublishDate() {
+      return publishDate;
+    }
+
+    /**
+     * Gets the number of file updates.
+     * @return the number of file updates
+     */
+    public int size() {
+      return count;
+    }
+
+    /**
+     * Decodes the local path of a file update.
+     * @param index the index of the file update
+     * @return the local path
+     */
+    public String getLocalPath(int index) {
+      int offset = offset(index);
+      byte[] bytes = new byte[(int) varLong(offset)];
+      ByteBuffer path = buffer.duplicate();
+      path.position(offset + varLongLength(offset));
+      path.get(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the size of a file update.
+     * @param index the index of the file update
+     * @return the size in bytes
+     */
+    public long getSizeBytes(int index) {
+      return varLong(checksumPosition(index) + HashCalculator.SHA256_LENGTH);
+    }
+
+    /**
+     * Copies the raw checksum of a file update into a caller provided array.
+     * @param index the index of the file update
+     * @param out the array the checksum is written to
+     * @param outOffset the offset in {@code out}
+     */
+    public void getChecksum(int index, byte[] out, int outOffset) {
+      int position = checksumPosition(index);
+      for (int i = 0; i < HashCalculator.SHA256_LENGTH; i++) {
+        out[outOffset + i] = buffer.get(position + i);
+      }
+    }
+
+    /**
+     * Compares the checksum of a file update with a raw checksum.
+     * @param index the index of the file update
+     * @param checksum the raw checksum to compare with
+     * @return {@code true} if both checksums are equal
+     */
+    public boolean checksumEquals(int index, byte[] checksum) {
+      int position = checksumPosition(index);
+      for (int i = 0; i < HashCalculator.SHA256_LENGTH; i++) {
+        if (buffer.get(position + i) != checksum[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Finds the file update with the given local path.
+     * @param localPath the local path to look for
+     * @return the index of the file update or {@code -1} if there is no such file update
+     */
+    public int indexOf(String localPath) {
+      byte[] expected = localPath.getBytes(StandardCharsets.UTF_8);
+
+      for (int i = 0; i < count; i++) {
+        int offset = offset(i);
+        if (varLong(offset) != expected.length) {
+          continue;
+        }
+
+        int start = offset + varLongLength(offset);
+        boolean equal = true;
+        for (int j = 0; j < expected.length && equal; j++) {
+          equal = buffer.get(start + j) == expected[j];
+        }
+        if (equal) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    /**
+     * Decodes a single file update.
+     * @param index the index of the file update
+     * @return the file update
+     */
+    public UpdateInfo.FileUpdate get(int index) {
+      byte[] checksum = new byte[HashCalculator.SHA256_LENGTH];
+      getChecksum(index, checksum, 0);
+
+      return UpdateInfo.FileUpdate.builder()
+              .localPath(getLocalPath(index))
+              .checksum(HashCalculator.bytesToHex(checksum))
+              .sizeBytes(getSizeBytes(index)).build();
+    }
+
+    private int offset(int index) {
+      if (index < 0 || index >= count) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+      }
+      return buffer.getInt(tablePosition + index * 4);
+    }
+
+    private int checksumPosition(int index) {
+      int offset = offset(index);
+      return offset + varLongLength(offset) + (int) varLong(offset);
+    }
+
+    private long varLong(int position) {
+      long value = 0;
+      for (int shift = 0; ; shift += 7) {
+        int b = buffer.get(position++) & 0xFF;
+        value |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+    }
+
+    private int varLongLength(int position) {
+      int length = 1;
+      while ((buffer.get(position++) & 0x80) != 0) {
+        length++;
+      }
+      return length;
+    }
+  }
+}
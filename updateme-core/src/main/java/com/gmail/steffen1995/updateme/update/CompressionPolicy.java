@@ -0,0 +1,132 @@
+package com.gmail.steffen1995.updateme.update;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Singular;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * Decides per file whether it is deflated or stored uncompressed in an update package.
+ *
+ * <p>Already compressed content like jars or images does not get smaller by deflating it again,
+ * so it is stored, which saves CPU time when packing as well as when unpacking. A file is stored
+ * if its extension is one of the stored extensions, if it is smaller than the size threshold or if
+ * a sample from its beginning does not compress well enough.
+ * @author Steffen Schoen
+ */
+@Getter
+@Builder
+public class CompressionPolicy {
+  /**
+   * Extensions of file formats that are compressed already.
+   */
+  public static final Set<String> COMPRESSED_EXTENSIONS = Collections.unmodifiableSet(
+          new HashSet<>(Arrays.asList(
+                  "jar", "war", "ear", "zip", "gz", "tgz", "bz2", "xz", "7z", "rar", "zst",
+                  "png", "jpg", "jpeg", "gif", "webp", "mp3", "mp4", "ogg", "webm", "woff",
+                  "woff2")));
+
+  /**
+   * The lower case extensions of files that are always stored.
+   */
+  @Singular
+  private final Set<String> storedExtensions;
+
+  /**
+   * Files smaller than this number of bytes are stored, because the zip overhead outweighs what
+   * compression could save.
+   */
+  @Builder.Default
+  private final long storeBelowSize = 0;
+
+  /**
+   * The number of bytes from the beginning of a file that are compressed to estimate how well the
+   * file compresses, {@code 0} disables sampling.
+   */
+  @Builder.Default
+  private final int sampleSize = 0;
+
+  /**
+   * Files whose sample compresses to more than this fraction of its size are stored.
+   */
+  @Builder.Default
+  private final double maxSampleRatio = 0.95;
+
+  /**
+   * Gets a policy that deflates every file.
+   * @return the policy
+   */
+  public static CompressionPolicy deflateAll() {
+    return CompressionPolicy.builder().build();
+  }
+
+  /**
+   * Gets a policy that stores files with {@link #COMPRESSED_EXTENSIONS}, files below 128 bytes and
+   * files whose first 64 KB do not compress.
+   * @return the policy
+   */
+  public static CompressionPolicy adaptive() {
+    return CompressionPolicy.builder()
+            .storedExtensions(COMPRESSED_EXTENSIONS)
+            .storeBelowSize(128)
+            .sampleSize(64 * 1024).build();
+  }
+
+  /**
+   * Decides whether a file is stored uncompressed.
+   * @param file the file to decide for
+   * @return {@code true} if the file is stored, {@code false} if it is deflated
+   * @throws IOException when the file cannot be read
+   */
+  public boolean isStored(Path file) throws IOException {
+    String name = file.getFileName().toString();
+    int dot = name.lastIndexOf('.');
+    if (dot >= 0 && storedExtensions.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT))) {
+      return true;
+    }
+
+    long size = Files.size(file);
+    if (size < storeBelowSize) {
+      return true;
+    }
+
+    return sampleSize > 0 && size > 0 && !compressesWell(file);
+  }
+
+  private boolean compressesWell(Path file) throws IOException {
+    byte[] sample = new byte[sampleSize];
+    int length = 0;
+    try (InputStream in = Files.newInputStream(file)) {
+      int read;
+      while (length < sample.length
+              && (read = in.read(sample, length, sample.length - length)) > 0) {
+        length += read;
+      }
+    }
+
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+    try {
+      deflater.setInput(sample, 0, length);
+      deflater.finish();
+
+      byte[] buffer = new byte[8192];
+      long compressed = 0;
+      while (!deflater.finished()) {
+        compressed += deflater.deflate(buffer);
+      }
+      return compressed <= length * maxSampleRatio;
+    } finally {
+      deflater.end();
+    }
+  }
+}
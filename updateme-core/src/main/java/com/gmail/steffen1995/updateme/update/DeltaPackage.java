@@ -0,0 +1,293 @@
+package com.gmail.steffen1995.updateme.update;
+
+import com.gmail.steffen1995.updateme.util.BinaryDelta;
+import com.gmail.steffen1995.updateme.util.HashCalculator;
+import com.gmail.steffen1995.updateme.util.PathUtils;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Creates and unpacks delta packages, i.e. update packages that only contain the differences
+ * between a base version and a target version.
+ *
+ * <p>Every file of the target version is stored in one of three modes: {@code unchanged} files
+ * are copied from the base version, {@code patch} files are reconstructed by applying a
+ * {@link BinaryDelta} to a file of the base version and {@code full} files are contained
+ * completely.
+ * @author Steffen Schoen
+ */
+public class DeltaPackage {
+  private static final String DELTA_INFO = "deltaInfo.json";
+  private static final String UPDATE_INFO = "updateInfo.json";
+  private static final String PATCH_PREFIX = "patches/";
+
+  private static final String MODE_UNCHANGED = "unchanged";
+  private static final String MODE_PATCH = "patch";
+  private static final String MODE_FULL = "full";
+
+  /**
+   * Patches that are not considerably smaller than the file itself are not worth the extra work
+   * on the client.
+   */
+  private static final double MAX_PATCH_RATIO = 0.9;
+
+  /**
+   * Both versions of a file are held in memory while their patch is computed, larger files are
+   * always contained completely.
+   */
+  private static final long MAX_PATCH_FILE_SIZE = 64L * 1024 * 1024;
+
+  /**
+   * Provides the content of the files of an update version.
+   */
+  @FunctionalInterface
+  public interface ContentSource {
+    /**
+     * Opens the content of a file of the update.
+     * @param file the file to open
+     * @return a stream of the file content
+     * @throws IOException when the file cannot be opened
+     */
+    InputStream open(UpdateInfo.FileUpdate file) throws IOException;
+  }
+
+  /**
+   * Creates a {@link ContentSource} that reads files from an update package.
+   * @param updatePackage the opened update package
+   * @return the content source
+   */
+  public static ContentSource zipSource(ZipFile updatePackage) {
+    return file -> {
+      ZipEntry entry = updatePackage.getEntry(file.getRelativePath());
+      if (entry == null) {
+        throw new IOException("File '" + file.getLocalPath() + "' is missing in the package");
+      }
+      return updatePackage.getInputStream(entry);
+    };
+  }
+
+  /**
+   * Creates a delta package that transforms the base version into the target version.
+   * @param baseInfo the info of the base version
+   * @param base the files of the base version
+   * @param targetInfo the info of the target version
+   * @param target the files of the target version
+   * @param deltaFile the delta package to create
+   * @throws IOException when a file cannot be read or the delta package cannot be written
+   */
+  public static void create(UpdateInfo baseInfo, ContentSource base, UpdateInfo targetInfo,
+                            ContentSource target, File deltaFile) throws IOException {
+    Map<String, UpdateInfo.FileUpdate> baseByPath = new HashMap<>();
+    Map<String, UpdateInfo.FileUpdate> baseByChecksum = new HashMap<>();
+    for (UpdateInfo.FileUpdate fu : baseInfo.getFileUpdates()) {
+      baseByPath.put(fu.getLocalPath(), fu);
+      baseByChecksum.putIfAbsent(fu.getChecksum(), fu);
+    }
+
+    JSONArray files = new JSONArray();
+
+    try (ZipOutputStream zipOut = new ZipOutputStream(new FileOutputStream(deltaFile))) {
+      zipOut.putNextEntry(new ZipEntry(UPDATE_INFO));
+      zipOut.write(targetInfo.toJsonBytes());
+
+      for (UpdateInfo.FileUpdate fu : targetInfo.getFileUpdates()) {
+        JSONObject file = new JSONObject();
+        file.put("path", fu.getLocalPath());
+
+        UpdateInfo.FileUpdate sameContent = baseByChecksum.get(fu.getChecksum());
+        UpdateInfo.FileUpdate samePath = baseByPath.get(fu.getLocalPath());
+
+        if (sameContent != null) {
+          // unchanged or only moved
+          file.put("mode", MODE_UNCHANGED);
+          file.put("base", sameContent.getLocalPath());
+        } else if (samePath != null && samePath.getSizeBytes() <= MAX_PATCH_FILE_SIZE
+                && fu.getSizeBytes() <= MAX_PATCH_FILE_SIZE) {
+          byte[] targetBytes = readAll(target, fu);
+          ByteArrayOutputStream patch = new ByteArrayOutputStream();
+          BinaryDelta.create(readAll(base, samePath), targetBytes, patch);
+
+          if (patch.size() < targetBytes.length * MAX_PATCH_RATIO) {
+            file.put("mode", MODE_PATCH);
+            file.put("base", samePath.getLocalPath());
+            zipOut.putNextEntry(new ZipEntry(PATCH_PREFIX + fu.getRelativePath()));
+            patch.writeTo(zipOut);
+          } else {
+            file.put("mode", MODE_FULL);
+            zipOut.putNextEntry(new ZipEntry(fu.getRelativePath()));
+            zipOut.write(targetBytes);
+          }
+        } else {
+          file.put("mode", MODE_FULL);
+          zipOut.putNextEntry(new ZipEntry(fu.getRelativePath()));
+          try (InputStream in = target.open(fu)) {
+            copy(in, zipOut);
+          }
+        }
+
+        files.put(file);
+      }
+
+      JSONObject deltaInfo = new JSONObject();
+      deltaInfo.put("baseVersion", baseInfo.getVersion());
+      deltaInfo.put("files", files);
+
+      zipOut.putNextEntry(new ZipEntry(DELTA_INFO));
+      zipOut.write(deltaInfo.toString().getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  /**
+   * Reconstructs the target version of a delta package. Every reconstructed file is verified
+   * against the checksum of the target version.
+   * @param deltaFile the delta package
+   * @param baseDirectory the directory that contains the files of the base version
+   * @return the unpacked target version
+   * @throws IOException when something went wrong while reading or writing files
+   * @throws UpdateException when the delta package is invalid or cannot be applied to the base
+   */
+  public static Update unpack(File deltaFile, File baseDirectory)
+          throws IOException, UpdateException {
+    Path tmpDir = Files.createTempDirectory("update-");
+
+    try {
+      return unpack(deltaFile, baseDirectory, tmpDir);
+    } catch (IOException | UpdateException e) {
+      PathUtils.deleteRecursively(tmpDir);
+      throw e;
+    }
+  }
+
+  private static Update unpack(File deltaFile, File baseDirectory, Path tmpDir)
+          throws IOException, UpdateException {
+    try (ZipFile zip = new ZipFile(deltaFile)) {
+      ZipEntry infoEntry = zip.getEntry(UPDATE_INFO);
+      ZipEntry deltaInfoEntry = zip.getEntry(DELTA_INFO);
+      if (infoEntry == null || deltaInfoEntry == null) {
+        throw new UpdateException("Not a delta package");
+      }
+
+      UpdateInfo targetInfo;
+      try (InputStream in = zip.getInputStream(infoEntry)) {
+        targetInfo = UpdateInfo.readFrom(in);
+      }
+      JSONObject deltaInfo = new JSONObject(new String(readAll(zip, deltaInfoEntry),
+              StandardCharsets.UTF_8));
+
+      Map<String, JSONObject> modes = new HashMap<>();
+      JSONArray files = deltaInfo.getJSONArray("files");
+      for (int i = 0; i < files.length(); i++) {
+        JSONObject file = files.getJSONObject(i);
+        modes.put(file.getString("path"), file);
+      }
+
+      Update update = new Update(targetInfo.getVersion());
+      update.setPublishDate(targetInfo.getPublishDate());
+
+      for (UpdateInfo.FileUpdate fu : targetInfo.getFileUpdates()) {
+        JSONObject file = modes.get(fu.getLocalPath());
+        if (file == null) {
+          throw new UpdateException("No delta for file '" + fu.getLocalPath() + "'");
+        }
+
+        Path targetPath = PathUtils.resolveInside(tmpDir, fu.getRelativePath());
+        Files.createDirectories(targetPath.getParent());
+
+        MessageDigest digest = HashCalculator.sha256Digest();
+        try (OutputStream out = new DigestOutputStream(
+                new FileOutputStream(targetPath.toFile()), digest)) {
+          String mode = file.getString("mode");
+          if (MODE_FULL.equals(mode)) {
+            try (InputStream in = zip.getInputStream(requireEntry(zip, fu.getRelativePath()))) {
+              copy(in, out);
+            }
+          } else {
+            // the base path is a local path of the base version, it must stay inside of it
+            File baseFile = PathUtils.resolveInside(baseDirectory.getAbsoluteFile().toPath(),
+                    file.getString("base").replaceFirst("^/+", "")).toFile();
+            if (!baseFile.isFile()) {
+              throw new UpdateException("Base file '" + file.getString("base") + "' is missing");
+            }
+
+            if (MODE_UNCHANGED.equals(mode)) {
+              Files.copy(baseFile.toPath(), out);
+            } else if (MODE_PATCH.equals(mode)) {
+              try (InputStream patch = zip.getInputStream(
+                      requireEntry(zip, PATCH_PREFIX + fu.getRelativePath()))) {
+                BinaryDelta.apply(baseFile, patch, out);
+              }
+            } else {
+              throw new UpdateException("Unknown delta mode '" + mode + "'");
+            }
+          }
+        }
+
+        String checksum = HashCalculator.bytesToHex(digest.digest());
+        if (!checksum.equals(fu.getChecksum())) {
+          throw new UpdateException("Checksum for file '" + fu.getLocalPath()
+                  + "' does not match after applying the delta");
+        }
+
+        String localPath = fu.getLocalPath();
+        String basePath = localPath.substring(0, localPath.lastIndexOf('/') + 1);
+        update.getUpdateObjects().add(new UpdateObject(targetPath.toFile(),
+                basePath.isEmpty() ? "/" : basePath, checksum));
+      }
+
+      return update;
+    } catch (JSONException e) {
+      throw new UpdateException("Invalid delta info", e);
+    }
+  }
+
+  private static ZipEntry requireEntry(ZipFile zip, String name) throws UpdateException {
+    ZipEntry entry = zip.getEntry(name);
+    if (entry == null) {
+      throw new UpdateException("Entry '" + name + "' is missing in the delta package");
+    }
+    return entry;
+  }
+
+  private static byte[] readAll(ContentSource source, UpdateInfo.FileUpdate file)
+          throws IOException {
+    try (InputStream in = source.open(file)) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.getSizeBytes());
+      copy(in, out);
+      return out.toByteArray();
+    }
+  }
+
+  private static byte[] readAll(ZipFile zip, ZipEntry entry) throws IOException {
+    try (InputStream in = zip.getInputStream(entry)) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      copy(in, out);
+      return out.toByteArray();
+    }
+  }
+
+  private static void copy(InputStream in, OutputStream out) throws IOException {
+    byte[] buffer = new byte[64 * 1024];
+    int length;
+    while ((length = in.read(buffer)) >= 0) {
+      out.write(buffer, 0, length);
+    }
+  }
+}
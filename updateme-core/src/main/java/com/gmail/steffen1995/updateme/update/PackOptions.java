@@ -0,0 +1,68 @@
+package com.gmail.steffen1995.updateme.update;
+
+import com.gmail.steffen1995.updateme.providers.ProgressChangedListener;
+import com.gmail.steffen1995.updateme.providers.ProgressTracker;
+import com.gmail.steffen1995.updateme.util.ParallelZipWriter;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.concurrent.ExecutorService;
+import java.util.zip.Deflater;
+
+/**
+ * Options for packaging an {@link Update}.
+ * @author Steffen Schoen
+ */
+@Getter
+@Builder
+public class PackOptions {
+  /**
+   * The encoding of the update info inside the package.
+   */
+  @Builder.Default
+  private UpdateInfo.Format infoFormat = UpdateInfo.Format.JSON;
+
+  /**
+   * The number of threads that compress the package. With a parallelism of 1 the package is
+   * compressed on the calling thread.
+   */
+  @Builder.Default
+  private int parallelism = 1;
+
+  /**
+   * The size of the blocks large files are split into for parallel compression.
+   */
+  @Builder.Default
+  private int blockSize = ParallelZipWriter.DEFAULT_BLOCK_SIZE;
+
+  /**
+   * The deflate compression level.
+   */
+  @Builder.Default
+  private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+  /**
+   * Decides which files are stored uncompressed instead of deflated.
+   */
+  @Builder.Default
+  private CompressionPolicy compressionPolicy = CompressionPolicy.deflateAll();
+
+  /**
+   * The listener the number of packaged bytes is reported to, see {@link ProgressTracker}.
+   */
+  private ProgressChangedListener progressListener;
+
+  /**
+   * The executor parallel compression runs on. If it is not set, a thread pool is created for
+   * the packaging and shut down afterwards.
+   */
+  private ExecutorService executor;
+
+  /**
+   * Gets the default options, which package serially with a JSON update info.
+   * @return the default options
+   */
+  public static PackOptions defaults() {
+    return PackOptions.builder().build();
+  }
+}
@@ -0,0 +1,248 @@
+package com.gmail.steffen1995.updateme.update;
+
+import com.gmail.steffen1995.updateme.metrics.Metrics;
+import com.gmail.steffen1995.updateme.metrics.Phase;
+import com.gmail.steffen1995.updateme.metrics.PhaseTimer;
+import com.gmail.steffen1995.updateme.util.HashCalculator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongConsumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Verifies update packages while they are read from a stream, without extracting them. Every
+ * file is hashed once and compared with the checksum in the update info of the package, the
+ * content can be passed on to a {@link ContentSink} at the same time. The raw package can be
+ * copied in the same pass, so a package is read exactly once.
+ * @author Steffen Schoen
+ */
+public final class PackageVerifier {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * Receives the content of the files of a package while it is verified.
+   */
+  @FunctionalInterface
+  public interface ContentSink {
+    /**
+     * Opens the target for the content of a file. The content is not verified yet while it is
+     * written, the caller must not use it before the verification succeeded.
+     * @param relativePath the path of the file inside of the package
+     * @return the stream to write the content to, it is closed after the file was read; or
+     *         {@code null} if the content of the file is not needed
+     * @throws IOException when the target cannot be opened
+     */
+    OutputStream open(String relativePath) throws IOException;
+  }
+
+  private PackageVerifier() {
+  }
+
+  /**
+   * Verifies an update package.
+   * @param updatePackage the update package
+   * @return the update info of the package, see {@link #verify(InputStream, OutputStream,
+   *         ContentSink, LongConsumer)}
+   * @throws IOException when the package cannot be read
+   * @throws UpdateException when the package is invalid or a file does not match its checksum
+   */
+  public static UpdateInfo verify(File updatePackage) throws IOException, UpdateException {
+    try (InputStream in = Files.newInputStream(updatePackage.toPath())) {
+      return verify(in, null, null, null);
+    }
+  }
+
+  /**
+   * Verifies an update package while it is read from a stream. The files may be contained in any
+   * order and the update info does not have to be the first entry.
+   *
+   * <p>The returned update info lists all files of the package in the order they are contained
+   * in it, with the checksums and sizes that were read. It is equal to the info of the
+   * {@link Update} that {@link Update#unpack(File)} would create.
+   * @param in the content of the update package, it is read until its end but not closed
+   * @param copy receives all bytes that are read from the package, may be {@code null}
+   * @param sink receives the content of the files, may be {@code null}
+   * @param progress receives the number of bytes read from the package, may be {@code null}
+   * @return the update info of the package
+   * @throws IOException when the package cannot be read or a target cannot be written
+   * @throws UpdateException when the package is invalid or a file does not match its checksum
+   */
+  public static UpdateInfo verify(InputStream in, OutputStream copy, ContentSink sink,
+                                  LongConsumer progress) throws IOException, UpdateException {
+    CopyingInputStream source = new CopyingInputStream(in, copy, progress);
+
+    try (PhaseTimer timer = Metrics.start(Phase.VERIFY, null, null)) {
+      ZipInputStream zip = new ZipInputStream(source);
+      byte[] buffer = new byte[BUFFER_SIZE];
+      byte[] info = null;
+      byte[] binaryInfo = null;
+      Map<String, UpdateInfo.FileUpdate> files = new LinkedHashMap<>();
+
+      ZipEntry entry;
+      while ((entry = zip.getNextEntry()) != null) {
+        String name = entry.getName();
+        if (entry.isDirectory()) {
+          continue;
+        }
+        if (name.equals(Update.UPDATE_INFO)) {
+          info = readAll(zip, buffer);
+          continue;
+        }
+        if (name.equals(Update.UPDATE_INFO_BINARY)) {
+          binaryInfo = readAll(zip, buffer);
+          continue;
+        }
+
+        checkPath(name);
+        if (files.containsKey(name)) {
+          throw new UpdateException("File '" + name + "' is contained more than once");
+        }
+
+        MessageDigest digest = HashCalculator.sha256Digest();
+        long size = 0;
+        try (OutputStream out = sink != null ? sink.open(name) : null) {
+          int length;
+          while ((length = zip.read(buffer)) >= 0) {
+            digest.update(buffer, 0, length);
+            if (out != null) {
+              out.write(buffer, 0, length);
+            }
+            size += length;
+          }
+        }
+
+        files.put(name, UpdateInfo.FileUpdate.builder()
+                .localPath("/" + name)
+                .checksum(HashCalculator.bytesToHex(digest.digest()))
+                .sizeBytes(size).build());
+        timer.addBytes(size);
+      }
+      // the central directory follows the entries, it is part of a copy as well
+      source.drain(buffer);
+
+      if (info == null && binaryInfo == null) {
+        throw new UpdateException("updateInfo.json missing");
+      }
+      UpdateInfo packaged = UpdateInfo.readFrom(
+              new ByteArrayInputStream(info != null ? info : binaryInfo));
+      timer.setVersion(packaged.getVersion());
+
+      for (UpdateInfo.FileUpdate expected : packaged.getFileUpdates()) {
+        UpdateInfo.FileUpdate actual = files.get(expected.getRelativePath());
+        if (actual == null) {
+          throw new UpdateException("File '" + expected.getLocalPath() + "' does not exist");
+        }
+        if (!actual.getChecksum().equals(expected.getChecksum())) {
+          throw new UpdateException(
+                  "Checksum for file '" + expected.getRelativePath() + "' does not match");
+        }
+      }
+
+      UpdateInfo verified = new UpdateInfo(packaged.getVersion(), packaged.getPublishDate());
+      verified.getFileUpdates().addAll(files.values());
+      timer.success();
+      return verified;
+    }
+  }
+
+  private static byte[] readAll(InputStream in, byte[] buffer) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int length;
+    while ((length = in.read(buffer)) >= 0) {
+      out.write(buffer, 0, length);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Makes sure that a file of a package cannot be written outside of a directory it is extracted
+   * to later.
+   */
+  private static void checkPath(String name) throws UpdateException {
+    if (name.isEmpty() || name.startsWith("/") || name.startsWith("\\") || name.contains(":")) {
+      throw new UpdateException("Illegal path '" + name + "'");
+    }
+    for (String segment : name.split("[/\\\\]")) {
+      if (segment.equals("..")) {
+        throw new UpdateException("Illegal path '" + name + "'");
+      }
+    }
+  }
+
+  /**
+   * Passes all bytes that are read on to a copy and reports them.
+   */
+  private static class CopyingInputStream extends FilterInputStream {
+    private final OutputStream copy;
+    private final LongConsumer progress;
+
+    CopyingInputStream(InputStream in, OutputStream copy, LongConsumer progress) {
+      super(in);
+      this.copy = copy;
+      this.progress = progress;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        if (copy != null) {
+          copy.write(b);
+        }
+        if (progress != null) {
+          progress.accept(1);
+        }
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int length = super.read(b, off, len);
+      if (length > 0) {
+        if (copy != null) {
+          copy.write(b, off, length);
+        }
+        if (progress != null) {
+          progress.accept(length);
+        }
+      }
+      return length;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      // skipped bytes have to be copied as well
+      byte[] buffer = new byte[(int) Math.min(n, BUFFER_SIZE)];
+      int length = read(buffer, 0, buffer.length);
+      return Math.max(length, 0);
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    @Override
+    public void close() {
+      // the stream of the caller is left open
+    }
+
+    void drain(byte[] buffer) throws IOException {
+      while (read(buffer, 0, buffer.length) >= 0) {
+        // read the rest
+      }
+    }
+  }
+}
@@ -0,0 +1,284 @@
+package com.gmail.steffen1995.updateme.update;
+
+import com.gmail.steffen1995.updateme.providers.ProgressChangedListener;
+import com.gmail.steffen1995.updateme.providers.ProgressTracker;
+import com.gmail.steffen1995.updateme.util.ChecksumCache;
+import com.gmail.steffen1995.updateme.util.HashCalculator;
+import com.gmail.steffen1995.updateme.util.ParallelHashCalculator;
+import com.gmail.steffen1995.updateme.util.PathUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Applies updates by building every version in a staging directory and switching to it
+ * atomically, so the installation never consists of files of different versions.
+ *
+ * <p>The installation root contains a {@value #VERSIONS_DIRECTORY} directory with one directory
+ * per version and a symbolic link named {@value #CURRENT_LINK} that points to the active version.
+ * Applications are started from the link. Files that did not change since the active version are
+ * hard linked into the new version instead of being copied, all other files are copied from the
+ * unpacked {@link Update}. Once the new version is complete, the link is replaced by a rename,
+ * which is atomic on POSIX file systems.
+ *
+ * <p>The previous version is kept, older versions are deleted. As unchanged files are shared
+ * between versions by hard links, installed files must not be modified in place.
+ * @author Steffen Schoen
+ */
+public class StagedApplier {
+  /**
+   * The name of the link that points to the active version.
+   */
+  public static final String CURRENT_LINK = "current";
+
+  /**
+   * The name of the directory that contains the installed versions.
+   */
+  public static final String VERSIONS_DIRECTORY = "versions";
+
+  private static final String STAGING_MARKER = ".staging";
+
+  private final Path root;
+  private final ParallelHashCalculator hashCalculator;
+
+  /**
+   * Constructor, files of the active version are hashed by the common hash calculator.
+   * @param root the installation root
+   */
+  public StagedApplier(Path root) {
+    this(root, ParallelHashCalculator.common());
+  }
+
+  /**
+   * Constructor.
+   * @param root the installation root
+   * @param hashCalculator the calculator that hashes the files of the active version
+   */
+  public StagedApplier(Path root, ParallelHashCalculator hashCalculator) {
+    this.root = Objects.requireNonNull(root);
+    this.hashCalculator = Objects.requireNonNull(hashCalculator);
+  }
+
+  /**
+   * Gets the path applications should use to access the active version.
+   * @return the path of the link to the active version
+   */
+  public Path getCurrentDirectory() {
+    return root.resolve(CURRENT_LINK);
+  }
+
+  /**
+   * Gets the directory of the active version.
+   * @return the directory or {@code null} if no version was applied yet
+   * @throws IOException when the link cannot be read
+   */
+  public Path activeVersionDirectory() throws IOException {
+    Path link = getCurrentDirectory();
+    if (!Files.isSymbolicLink(link)) {
+      return null;
+    }
+    return link.resolveSibling(Files.readSymbolicLink(link)).normalize();
+  }
+
+  /**
+   * Gets the version that is active.
+   * @return the version or {@code null} if no version was applied yet
+   * @throws IOException when the installation cannot be read
+   */
+  public String activeVersion() throws IOException {
+    Path active = activeVersionDirectory();
+    UpdateInfo info = active != null ? UpdateApplier.installedInfo(active) : null;
+    return info != null ? info.getVersion() : null;
+  }
+
+  /**
+   * Builds a new version from an unpacked update and switches to it.
+   * @param update the unpacked update
+   * @param progress the listener to report the copied bytes to, may be {@code null}
+   * @return the changes compared to the previously active version
+   * @throws IOException when the installation cannot be written
+   * @throws UpdateException when the version is active already
+   */
+  public UpdateApplier.ApplyResult apply(Update update, ProgressChangedListener progress)
+          throws IOException, UpdateException {
+    Path versions = Files.createDirectories(root.resolve(VERSIONS_DIRECTORY));
+    Path versionDirectory = PathUtils.resolveInside(versions, update.getVersion());
+    if (!versionDirectory.getParent().equals(versions.normalize())) {
+      throw new UpdateException("Illegal version '" + update.getVersion() + "'");
+    }
+
+    Path active = activeVersionDirectory();
+    if (versionDirectory.equals(active)) {
+      throw new UpdateException("Version " + update.getVersion() + " is active already");
+    }
+    deleteStagingLeftovers(versions);
+
+    // checksums of files that were created by hand are missing
+    List<UpdateObject> withoutChecksum = update.getUpdateObjects().stream()
+            .filter(uo -> uo.getChecksum() == null)
+            .collect(Collectors.toList());
+    UpdateObject.calculateChecksums(withoutChecksum, hashCalculator);
+    UpdateInfo target = UpdateInfo.fromUpdate(update);
+
+    Path stage = Files.createTempDirectory(versions, update.getVersion() + STAGING_MARKER);
+    try {
+      final UpdateApplier.ApplyResult result = stage(update, target, active, stage, progress);
+      PathUtils.deleteRecursively(versionDirectory);
+      Files.move(stage, versionDirectory, StandardCopyOption.ATOMIC_MOVE);
+      switchTo(versionDirectory);
+
+      deleteOldVersions(versions, versionDirectory, active);
+      return result;
+    } finally {
+      PathUtils.deleteRecursively(stage);
+    }
+  }
+
+  private UpdateApplier.ApplyResult stage(Update update, UpdateInfo target, Path active,
+                                          Path stage, ProgressChangedListener progress)
+          throws IOException, UpdateException {
+    UpdateInfo activeInfo = active != null ? UpdateApplier.installedInfo(active) : null;
+    Map<String, String> activeChecksums = new HashMap<>();
+    if (activeInfo != null) {
+      for (UpdateInfo.FileUpdate fu : activeInfo.getFileUpdates()) {
+        activeChecksums.put(fu.getRelativePath(), fu.getChecksum());
+      }
+    }
+
+    // files of the active version that should be unchanged, verified by their current checksum
+    List<Path> candidates = new ArrayList<>();
+    for (UpdateInfo.FileUpdate fu : target.getFileUpdates()) {
+      Path activeFile = active != null
+              ? PathUtils.resolveInside(active, fu.getRelativePath()) : null;
+      if (fu.getChecksum().equals(activeChecksums.get(fu.getRelativePath()))
+              && Files.isRegularFile(activeFile)) {
+        candidates.add(activeFile);
+      }
+    }
+    Map<Path, String> verified = new HashMap<>();
+    if (!candidates.isEmpty()) {
+      ChecksumCache activeCache = UpdateApplier.openChecksumCache(active);
+      verified = activeCache.sha256(candidates, hashCalculator);
+      activeCache.save();
+    }
+
+    ProgressTracker tracker = ProgressTracker.of(progress);
+    ChecksumCache stagedCache = UpdateApplier.openChecksumCache(stage);
+    List<String> written = new ArrayList<>();
+    int linked = 0;
+    long bytesWritten = 0;
+
+    for (int i = 0; i < target.getFileUpdates().size(); i++) {
+      UpdateInfo.FileUpdate fu = target.getFileUpdates().get(i);
+      Path staged = PathUtils.resolveInside(stage, fu.getRelativePath());
+      Files.createDirectories(staged.getParent());
+
+      Path activeFile = active != null
+              ? PathUtils.resolveInside(active, fu.getRelativePath()) : null;
+      if (fu.getChecksum().equals(verified.get(activeFile)) && link(staged, activeFile)) {
+        linked++;
+        stagedCache.put(staged, fu.getChecksum());
+      } else {
+        tracker.addTotal(fu.getSizeBytes());
+        MessageDigest digest = HashCalculator.sha256Digest();
+        try (OutputStream out = new DigestOutputStream(Files.newOutputStream(staged), digest)) {
+          PathUtils.copy(update.getUpdateObjects().get(i).getFile().toPath(), out,
+                  tracker::advance);
+        }
+        if (!fu.getChecksum().equals(HashCalculator.bytesToHex(digest.digest()))) {
+          throw new UpdateException("Checksum for file '" + fu.getLocalPath() + "' does not match");
+        }
+        // the stage is private until it is moved into place, so the copy can be cached right away
+        stagedCache.putVerified(staged, fu.getChecksum());
+        written.add(fu.getLocalPath());
+        bytesWritten += fu.getSizeBytes();
+      }
+    }
+
+    List<String> removed = new ArrayList<>();
+    if (activeInfo != null) {
+      Set<String> targetFiles = new HashSet<>();
+      for (UpdateInfo.FileUpdate fu : target.getFileUpdates()) {
+        targetFiles.add(fu.getRelativePath());
+      }
+      for (UpdateInfo.FileUpdate fu : activeInfo.getFileUpdates()) {
+        if (!targetFiles.contains(fu.getRelativePath())) {
+          removed.add(fu.getLocalPath());
+        }
+      }
+    }
+
+    UpdateApplier.writeInstalledInfo(target, stage);
+    stagedCache.save();
+    if (tracker != progress) {
+      tracker.complete();
+    }
+    return new UpdateApplier.ApplyResult(target.getVersion(), written, removed, linked,
+            bytesWritten);
+  }
+
+  /**
+   * Hard links a file of the active version into the staging directory.
+   * @return {@code false} if the file system does not support hard links, e.g. because the
+   *         versions are located on different devices
+   */
+  private static boolean link(Path staged, Path activeFile) {
+    try {
+      Files.createLink(staged, activeFile);
+      return true;
+    } catch (UnsupportedOperationException | IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Points the current link to the given version. A new link is created next to the current one
+   * and renamed over it, so there is no moment without a valid link.
+   */
+  private void switchTo(Path versionDirectory) throws IOException {
+    Path link = getCurrentDirectory();
+    Path newLink = root.resolve(CURRENT_LINK + STAGING_MARKER);
+    Files.deleteIfExists(newLink);
+    Files.createSymbolicLink(newLink, root.relativize(versionDirectory));
+    Files.move(newLink, link, StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private static void deleteStagingLeftovers(Path versions) throws IOException {
+    for (Path child : list(versions)) {
+      if (child.getFileName().toString().contains(STAGING_MARKER)) {
+        PathUtils.deleteRecursively(child);
+      }
+    }
+  }
+
+  private static void deleteOldVersions(Path versions, Path active, Path previous)
+          throws IOException {
+    for (Path child : list(versions)) {
+      Path version = child.normalize();
+      if (!version.equals(active) && !version.equals(previous)) {
+        PathUtils.deleteRecursively(child);
+      }
+    }
+  }
+
+  private static List<Path> list(Path directory) throws IOException {
+    try (Stream<Path> children = Files.list(directory)) {
+      return children.collect(Collectors.toList());
+    }
+  }
+}
@@ -0,0 +1,236 @@
+package com.gmail.steffen1995.updateme.update;
+
+import com.gmail.steffen1995.updateme.providers.ProgressChangedListener;
+import com.gmail.steffen1995.updateme.providers.ProgressTracker;
+import com.gmail.steffen1995.updateme.util.HashCalculator;
+import com.gmail.steffen1995.updateme.util.PathUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A size bounded directory of unpacked updates, keyed by the SHA-256 checksum of their package.
+ * Unpacking a package that was unpacked before returns the already verified files without
+ * extracting the package again.
+ *
+ * <p>Every package is unpacked into a temporary directory inside the cache and moved to its final
+ * place once all files were verified, so a crash never leaves a partially unpacked update behind
+ * that would be reused later. Leftovers of interrupted unpacks are deleted when the cache is
+ * opened, therefore a cache directory must not be used by several processes at the same time.
+ *
+ * <p>When the unpacked updates exceed the byte budget, the least recently used ones are deleted.
+ * The update that was requested last is never evicted, even if it exceeds the budget on its own.
+ * The files of updates that were handed out earlier may be deleted by an eviction.
+ * @author Steffen Schoen
+ */
+public class UnpackCache {
+  private static final String TEMP_MARKER = ".tmp";
+  private static final String INFO_FILE = "updateInfo.bin";
+  private static final String FILES_DIRECTORY = "files";
+
+  private final Path directory;
+  private final long maxBytes;
+  // sizes of the unpacked updates, least recently used first
+  private final Map<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long totalBytes;
+
+  /**
+   * Opens a cache directory, it is created if it does not exist yet.
+   * @param directory the directory to keep the unpacked updates in
+   * @param maxBytes the maximum number of bytes of all unpacked files
+   * @throws IOException when the directory cannot be created or read
+   */
+  public UnpackCache(Path directory, long maxBytes) throws IOException {
+    if (maxBytes < 0) {
+      throw new IllegalArgumentException("The byte budget must not be negative");
+    }
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+
+    Files.createDirectories(directory);
+    load();
+  }
+
+  /**
+   * Unpacks an update or returns it from the cache if the same package was unpacked before.
+   * @param updatePackage the compressed update to unpack
+   * @param progress the listener to report the extracted bytes to, may be {@code null}
+   * @return the unpacked update, its files are located inside the cache directory
+   * @throws IOException when something went wrong while unpacking the update
+   * @throws UpdateException when there is a problem with the update
+   */
+  public Update unpack(File updatePackage, ProgressChangedListener progress)
+          throws IOException, UpdateException {
+    String key = HashCalculator.sha256(updatePackage);
+    Path entry = directory.resolve(key);
+
+    ProgressTracker tracker = ProgressTracker.of(progress);
+    try {
+      Update cached = lookup(key, entry);
+      if (cached != null) {
+        return cached;
+      }
+
+      Path temp = Files.createTempDirectory(directory, key + TEMP_MARKER);
+      try {
+        Path files = Files.createDirectory(temp.resolve(FILES_DIRECTORY));
+        Update update = Update.unpack(updatePackage, files, tracker);
+        UpdateInfo.fromUpdate(update).writeToFile(temp.resolve(INFO_FILE).toString(),
+                UpdateInfo.Format.BINARY);
+        return publish(key, entry, temp);
+      } finally {
+        PathUtils.deleteRecursively(temp);
+      }
+    } finally {
+      if (tracker != progress) {
+        tracker.complete();
+      }
+    }
+  }
+
+  /**
+   * Gets the number of bytes of all unpacked files in the cache.
+   * @return the size of the cache
+   */
+  public synchronized long getTotalBytes() {
+    return totalBytes;
+  }
+
+  /**
+   * Deletes all unpacked updates.
+   * @throws IOException when an update cannot be deleted
+   */
+  public synchronized void clear() throws IOException {
+    for (String key : new ArrayList<>(entries.keySet())) {
+      remove(key);
+    }
+  }
+
+  private synchronized Update lookup(String key, Path entry) throws IOException {
+    // marks the update as used
+    if (entries.get(key) == null) {
+      return null;
+    }
+
+    try {
+      Update update = read(entry);
+      Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+      return update;
+    } catch (IOException e) {
+      // modified from outside, unpack it again
+      remove(key);
+      return null;
+    }
+  }
+
+  private synchronized Update publish(String key, Path entry, Path temp) throws IOException {
+    // another thread may have unpacked the same package in the meantime
+    if (entries.get(key) == null) {
+      Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE);
+      long size = size(UpdateInfo.readFromFile(entry.resolve(INFO_FILE).toFile()));
+      entries.put(key, size);
+      totalBytes += size;
+    }
+
+    Update update = read(entry);
+    Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+    evict(key);
+    return update;
+  }
+
+  private void evict(String keep) throws IOException {
+    Iterator<String> keys = new ArrayList<>(entries.keySet()).iterator();
+    while (totalBytes > maxBytes && keys.hasNext()) {
+      String key = keys.next();
+      if (!key.equals(keep)) {
+        remove(key);
+      }
+    }
+  }
+
+  private void remove(String key) throws IOException {
+    Long size = entries.remove(key);
+    if (size != null) {
+      totalBytes -= size;
+    }
+
+    // moved away first, so an interrupted deletion is cleaned up like an interrupted unpack
+    Path entry = directory.resolve(key);
+    if (Files.exists(entry)) {
+      Path trash = Files.createTempDirectory(directory, key + TEMP_MARKER);
+      Files.delete(trash);
+      Files.move(entry, trash, StandardCopyOption.ATOMIC_MOVE);
+      PathUtils.deleteRecursively(trash);
+    }
+  }
+
+  private void load() throws IOException {
+    List<Path> children;
+    try (Stream<Path> stream = Files.list(directory)) {
+      children = stream.collect(Collectors.toList());
+    }
+
+    List<Path> valid = new ArrayList<>();
+    for (Path child : children) {
+      if (child.getFileName().toString().contains(TEMP_MARKER)
+              || !Files.isRegularFile(child.resolve(INFO_FILE))) {
+        PathUtils.deleteRecursively(child);
+      } else {
+        valid.add(child);
+      }
+    }
+
+    // restore the order of use from the last access of every update
+    valid.sort(Comparator.comparing(p -> p.toFile().lastModified()));
+    for (Path entry : valid) {
+      long size;
+      try {
+        size = size(UpdateInfo.readFromFile(entry.resolve(INFO_FILE).toFile()));
+      } catch (IOException e) {
+        PathUtils.deleteRecursively(entry);
+        continue;
+      }
+      entries.put(entry.getFileName().toString(), size);
+      totalBytes += size;
+    }
+  }
+
+  private static Update read(Path entry) throws IOException {
+    UpdateInfo info = UpdateInfo.readFromFile(entry.resolve(INFO_FILE).toFile());
+    Path files = entry.resolve(FILES_DIRECTORY);
+
+    Update update = new Update(info.getVersion());
+    update.setPublishDate(info.getPublishDate());
+    for (UpdateInfo.FileUpdate fu : info.getFileUpdates()) {
+      File file = PathUtils.resolveInside(files, fu.getRelativePath()).toFile();
+      if (file.length() != fu.getSizeBytes() || !file.isFile()) {
+        throw new IOException("File '" + fu.getLocalPath() + "' was modified");
+      }
+
+      String localPath = fu.getLocalPath();
+      update.getUpdateObjects().add(new UpdateObject(file,
+              localPath.substring(0, localPath.lastIndexOf('/') + 1), fu.getChecksum()));
+    }
+    return update;
+  }
+
+  private static long size(UpdateInfo info) {
+    long size = 0;
+    for (UpdateInfo.FileUpdate fu : info.getFileUpdates()) {
+      size += fu.getSizeBytes();
+    }
+    return size;
+  }
+}
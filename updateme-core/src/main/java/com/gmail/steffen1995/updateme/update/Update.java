@@ -1,24 +1,45 @@
 package com.gmail.steffen1995.updateme.update;
 
+import com.gmail.steffen1995.updateme.metrics.Metrics;
+import com.gmail.steffen1995.updateme.metrics.Phase;
+import com.gmail.steffen1995.updateme.metrics.PhaseTimer;
+import com.gmail.steffen1995.updateme.providers.ProgressChangedListener;
+import com.gmail.steffen1995.updateme.providers.ProgressTracker;
 import com.gmail.steffen1995.updateme.util.HashCalculator;
+import com.gmail.steffen1995.updateme.util.ParallelZipWriter;
+import com.gmail.steffen1995.updateme.util.PathUtils;
+import com.gmail.steffen1995.updateme.util.ZipIndex;
 import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
 
 /**
@@ -28,10 +49,14 @@ import java.util.zip.ZipOutputStream;
 @EqualsAndHashCode
 @Getter
 public class Update {
-  @Setter(AccessLevel.PRIVATE)
+  static final String UPDATE_INFO = "updateInfo.json";
+  static final String UPDATE_INFO_BINARY = "updateInfo.bin";
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  @Setter(AccessLevel.PACKAGE)
   private String version;
   private List<UpdateObject> updateObjects;
-  @Setter(AccessLevel.PRIVATE)
+  @Setter(AccessLevel.PACKAGE)
   private Date publishDate;
 
   /**
@@ -48,71 +73,157 @@ public class Update {
 
   /**
    * Unpacks an update from a compressed update file.
+   *
+   * <p>The update info is read from the package first, every file is then verified while it is
+   * extracted, so the package content is only read once. Unpacking fails as soon as a file does
+   * not match its checksum. Stored entries are copied directly from the package without an
+   * inflating stream in between.
    * @param updateFile the compressed update to unpack
    * @return the unpacked update
    * @throws IOException when something went wrong while unpacking the update
    * @throws UpdateException when there is a problem with the update
    */
   public static Update unpack(File updateFile) throws IOException, UpdateException {
-    Update update = new Update("");
+    return unpack(updateFile, (ProgressChangedListener) null);
+  }
 
+  /**
+   * Unpacks an update from a compressed update file and reports the number of extracted bytes.
+   * @param updateFile the compressed update to unpack
+   * @param progress the listener to report the progress to, may be {@code null}, see
+   *                 {@link ProgressTracker}
+   * @return the unpacked update
+   * @throws IOException when something went wrong while unpacking the update
+   * @throws UpdateException when there is a problem with the update
+   */
+  public static Update unpack(File updateFile, ProgressChangedListener progress)
+          throws IOException, UpdateException {
     // create temp directory
     Path tmpDir = Files.createTempDirectory("update-");
 
-    // unzip all files
-    byte[] buffer = new byte[1024];
-    try (ZipInputStream zipIn = new ZipInputStream(new FileInputStream(updateFile))) {
-      ZipEntry entry = zipIn.getNextEntry();
-      while (entry != null) {
-        File exportedFile = new File(tmpDir.toString(), entry.getName());
-        try (FileOutputStream fos = new FileOutputStream(exportedFile)) {
-          int length;
-          while ((length = zipIn.read(buffer)) >= 0) {
-            fos.write(buffer, 0, length);
-          }
-        }
-
-        entry = zipIn.getNextEntry();
+    try {
+      ProgressTracker tracker = ProgressTracker.of(progress);
+      Update update = unpack(updateFile, tmpDir, tracker);
+      if (tracker != progress) {
+        tracker.complete();
       }
+      return update;
+    } catch (IOException | UpdateException e) {
+      PathUtils.deleteRecursively(tmpDir);
+      throw e;
     }
+  }
 
-    // read updateInfo
-    Path udpateInfoPath = Paths.get(tmpDir.toString(), "updateInfo.json");
-    if (!Files.exists(udpateInfoPath)) {
-      throw new UpdateException("updateInfo.json missing");
+  /**
+   * Unpacks an update from a compressed update file into the given directory, so that the caller
+   * decides when the extracted files are deleted.
+   * @param updateFile the compressed update to unpack
+   * @param targetDirectory the directory to extract the files to, it is created if necessary
+   * @param progress the listener to report the extracted bytes to, may be {@code null}
+   * @return the unpacked update
+   * @throws IOException when something went wrong while unpacking the update
+   * @throws UpdateException when there is a problem with the update
+   */
+  public static Update unpack(File updateFile, File targetDirectory,
+                              ProgressChangedListener progress)
+          throws IOException, UpdateException {
+    Files.createDirectories(targetDirectory.toPath());
+    ProgressTracker tracker = ProgressTracker.of(progress);
+    Update update = unpack(updateFile, targetDirectory.toPath(), tracker);
+    if (tracker != progress) {
+      tracker.complete();
     }
+    return update;
+  }
 
-    UpdateInfo updateInfo = UpdateInfo.readFromFile(udpateInfoPath.toString());
-    update.setVersion(updateInfo.getVersion());
-    update.setPublishDate(updateInfo.getPublishDate());
-
-    // check file hashes
-    for (UpdateInfo.FileUpdate fu : updateInfo.getFileUpdates()) {
-      Path filePath = Paths.get(tmpDir.toString(), fu.getLocalPath());
+  /**
+   * Unpacks an update into the given directory.
+   * @param updateFile the compressed update to unpack
+   * @param targetDir the directory to extract the files to
+   * @param tracker the tracker to report the extracted bytes to
+   * @return the unpacked update
+   * @throws IOException when something went wrong while unpacking the update
+   * @throws UpdateException when there is a problem with the update
+   */
+  static Update unpack(File updateFile, Path targetDir, ProgressTracker tracker)
+          throws IOException, UpdateException {
+    try (PhaseTimer timer = Metrics.start(Phase.UNPACK, null, null);
+         ZipFile zip = new ZipFile(updateFile);
+         ZipIndex index = ZipIndex.open(updateFile.toPath())) {
+      // read updateInfo
+      ZipEntry infoEntry = infoEntry(zip);
 
-      if (!Files.exists(filePath)) {
-        throw new UpdateException("File '" + fu.getLocalPath() + "' does not exist");
+      UpdateInfo updateInfo;
+      try (InputStream in = zip.getInputStream(infoEntry)) {
+        updateInfo = UpdateInfo.readFrom(in);
       }
+      timer.setVersion(updateInfo.getVersion());
 
-      String updateChecksum = HashCalculator.sha256(new File(filePath.toString()));
+      Update update = new Update(updateInfo.getVersion());
+      update.setPublishDate(updateInfo.getPublishDate());
 
-      if (!updateChecksum.equals(fu.getChecksum())) {
-        throw new UpdateException("Checksum for file '" + fu.getLocalPath() + "' does not match");
+      // all files of the update info have to be contained in the package
+      Map<String, String> expectedChecksums = new HashMap<>();
+      for (UpdateInfo.FileUpdate fu : updateInfo.getFileUpdates()) {
+        if (zip.getEntry(fu.getRelativePath()) == null) {
+          throw new UpdateException("File '" + fu.getLocalPath() + "' does not exist");
+        }
+        expectedChecksums.put(fu.getRelativePath(), fu.getChecksum());
       }
-    }
 
-    // add update objects to update
-    Files
-            .list(tmpDir)
-            .filter(path -> !path.getFileName().toString().equals("updateInfo.json"))
-            .forEach(f -> update.getUpdateObjects().add(new UpdateObject(f.toString(), "/")));
+      for (ZipIndex.Entry entry : index.getEntries()) {
+        if (!entry.getName().equals(infoEntry.getName())) {
+          tracker.addTotal(entry.getSize());
+        }
+      }
 
-    // calculate checksums for update objects
-    for (UpdateObject updateObject :update.getUpdateObjects()) {
-      updateObject.calculateChecksum();
-    }
+      // extract all files and check their hashes on the fly
+      byte[] buffer = new byte[BUFFER_SIZE];
+      Enumeration<? extends ZipEntry> entries = zip.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        if (entry.isDirectory() || entry.getName().equals(UPDATE_INFO)
+                || entry.getName().equals(UPDATE_INFO_BINARY)) {
+          continue;
+        }
 
-    return update;
+        Path exportedFile = PathUtils.resolveInside(targetDir, entry.getName());
+        Files.createDirectories(exportedFile.getParent());
+
+        MessageDigest digest = HashCalculator.sha256Digest();
+        ZipIndex.Entry rawEntry = index.getEntry(entry.getName());
+        if (rawEntry != null && rawEntry.isStored()) {
+          try (FileChannel out = FileChannel.open(exportedFile, StandardOpenOption.CREATE,
+                  StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            index.copyStored(rawEntry, digest, out, tracker::advance);
+          }
+        } else {
+          try (InputStream in = zip.getInputStream(entry);
+               OutputStream out = new FileOutputStream(exportedFile.toFile())) {
+            int length;
+            while ((length = in.read(buffer)) >= 0) {
+              digest.update(buffer, 0, length);
+              out.write(buffer, 0, length);
+              tracker.advance(length);
+            }
+          }
+        }
+
+        String checksum = HashCalculator.bytesToHex(digest.digest());
+        String expected = expectedChecksums.get(entry.getName());
+        if (expected != null && !expected.equals(checksum)) {
+          throw new UpdateException("Checksum for file '" + entry.getName() + "' does not match");
+        }
+
+        String name = entry.getName();
+        update.getUpdateObjects().add(new UpdateObject(exportedFile.toFile(),
+                "/" + name.substring(0, name.lastIndexOf('/') + 1), checksum));
+        timer.addBytes(entry.getSize());
+      }
+
+      timer.success();
+      return update;
+    }
   }
 
   /**
@@ -126,6 +237,36 @@ public class Update {
     return unpack(new File(updateFile));
   }
 
+  /**
+   * Finds the update info inside an update package, it is either encoded as JSON or binary.
+   * @param zip the update package
+   * @return the entry of the update info
+   * @throws UpdateException when the package does not contain an update info
+   */
+  static ZipEntry infoEntry(ZipFile zip) throws UpdateException {
+    ZipEntry infoEntry = zip.getEntry(UPDATE_INFO);
+    if (infoEntry == null) {
+      infoEntry = zip.getEntry(UPDATE_INFO_BINARY);
+    }
+    if (infoEntry == null) {
+      throw new UpdateException("updateInfo.json missing");
+    }
+    return infoEntry;
+  }
+
+  /**
+   * Reconstructs an update from a delta package that was created against the given base version.
+   * @param deltaPackage the delta package
+   * @param baseDirectory the directory that contains the files of the base version
+   * @return the unpacked update
+   * @throws IOException when something went wrong while unpacking the update
+   * @throws UpdateException when the delta cannot be applied or a checksum does not match
+   */
+  public static Update unpackDelta(File deltaPackage, File baseDirectory)
+          throws IOException, UpdateException {
+    return DeltaPackage.unpack(deltaPackage, baseDirectory);
+  }
+
   /**
    * Packages an update, i.e. all files associated with the update, including an update info into a
    * compressed file.
@@ -133,39 +274,135 @@ public class Update {
    * @throws IOException when something went wrong while packaging the update
    */
   public void pack(String filePath) throws IOException {
-    // create temp directory
-    Path tmpDir = Files.createTempDirectory(version);
+    pack(filePath, UpdateInfo.Format.JSON);
+  }
+
+  /**
+   * Packages an update, i.e. all files associated with the update, including an update info into a
+   * compressed file.
+   * @param filePath The path to the compressed update file
+   * @param infoFormat the encoding of the update info inside the package
+   * @throws IOException when something went wrong while packaging the update
+   */
+  public void pack(String filePath, UpdateInfo.Format infoFormat) throws IOException {
+    pack(filePath, PackOptions.builder().infoFormat(infoFormat).build());
+  }
 
-    // create update info file
-    UpdateInfo updateInfo = UpdateInfo.fromUpdate(this);
-    updateInfo.writeToFile(Paths.get(tmpDir.toString(), "updateInfo.json").toString());
+  /**
+   * Packages an update, i.e. all files associated with the update, including an update info into a
+   * compressed file.
+   *
+   * <p>With a parallelism above 1 the files are compressed on a thread pool, see
+   * {@link ParallelZipWriter}. The entries are written in the same order either way.
+   * @param filePath The path to the compressed update file
+   * @param options the options for packaging
+   * @throws IOException when something went wrong while packaging the update
+   */
+  public void pack(String filePath, PackOptions options) throws IOException {
+    try (PhaseTimer timer = Metrics.start(Phase.PACK, null, version)) {
+      // calculate missing checksums
+      List<UpdateObject> withoutChecksum = updateObjects.stream()
+              .filter(uo -> uo.getChecksum() == null)
+              .collect(Collectors.toList());
+      UpdateObject.calculateChecksums(withoutChecksum);
+
+      UpdateInfo updateInfo = UpdateInfo.fromUpdate(this);
+      String infoEntry = options.getInfoFormat() == UpdateInfo.Format.BINARY
+              ? UPDATE_INFO_BINARY : UPDATE_INFO;
+
+      ProgressTracker tracker = ProgressTracker.of(options.getProgressListener());
+      long totalBytes = 0;
+      for (UpdateObject uo : updateObjects) {
+        totalBytes += uo.getFile().length();
+      }
+      tracker.addTotal(totalBytes);
+
+      if (options.getParallelism() > 1) {
+        packParallel(filePath, options, updateInfo, infoEntry, tracker);
+      } else {
+        packSerial(filePath, options, updateInfo, infoEntry, tracker);
+      }
+
+      if (tracker != options.getProgressListener()) {
+        tracker.complete();
+      }
+      timer.addBytes(totalBytes);
+      timer.success();
+    }
+  }
+
+  private void packSerial(String filePath, PackOptions options, UpdateInfo updateInfo,
+                          String infoEntry, ProgressTracker tracker) throws IOException {
 
     // zip files
     try (ZipOutputStream zipOut = new ZipOutputStream(new FileOutputStream(filePath))) {
-      // updateInfo.json
-      try (FileInputStream fis = new FileInputStream(Paths.get(tmpDir.toString(),
-              "updateInfo.json").toString())) {
-        zipOut.putNextEntry(new ZipEntry("updateInfo.json"));
-
-        byte[] buffer = new byte[1024];
-        int length;
-        while ((length = fis.read(buffer)) >= 0) {
-          zipOut.write(buffer, 0, length);
-        }
-      }
+      zipOut.setLevel(options.getCompressionLevel());
 
+      // updateInfo.json or updateInfo.bin
+      zipOut.putNextEntry(new ZipEntry(infoEntry));
+      updateInfo.writeTo(zipOut, options.getInfoFormat());
+
+      byte[] buffer = new byte[BUFFER_SIZE];
       for (UpdateObject uo: updateObjects) {
+        ZipEntry entry = new ZipEntry(uo.getFile().getName());
+        if (options.getCompressionPolicy().isStored(uo.getFile().toPath())) {
+          // stored entries need their size and crc up front
+          entry.setMethod(ZipEntry.STORED);
+          entry.setSize(uo.getFile().length());
+          entry.setCompressedSize(uo.getFile().length());
+          entry.setCrc(crc32(uo.getFile(), buffer));
+        }
+
         try (FileInputStream fis =
                      new FileInputStream(Paths.get(uo.getFile().getAbsolutePath()).toString())) {
-          zipOut.putNextEntry(new ZipEntry(uo.getFile().getName()));
+          zipOut.putNextEntry(entry);
 
-          byte[] buffer = new byte[1024];
           int length;
           while ((length = fis.read(buffer)) >= 0) {
             zipOut.write(buffer, 0, length);
+            tracker.advance(length);
           }
         }
       }
     }
   }
+
+  private static long crc32(File file, byte[] buffer) throws IOException {
+    CRC32 crc = new CRC32();
+    try (InputStream in = new FileInputStream(file)) {
+      int length;
+      while ((length = in.read(buffer)) >= 0) {
+        crc.update(buffer, 0, length);
+      }
+    }
+    return crc.getValue();
+  }
+
+  private void packParallel(String filePath, PackOptions options, UpdateInfo updateInfo,
+                            String infoEntry, ProgressTracker tracker) throws IOException {
+    ExecutorService executor = options.getExecutor();
+    boolean ownExecutor = executor == null;
+    if (ownExecutor) {
+      executor = Executors.newFixedThreadPool(options.getParallelism());
+    }
+
+    try (ParallelZipWriter zipOut = new ParallelZipWriter(new FileOutputStream(filePath),
+            executor, options.getParallelism(), options.getBlockSize(),
+            options.getCompressionLevel())) {
+      zipOut.setProgress(tracker::advance);
+      ByteArrayOutputStream info = new ByteArrayOutputStream();
+      updateInfo.writeTo(info, options.getInfoFormat());
+      zipOut.putBytes(infoEntry, info.toByteArray(), publishDate.getTime());
+
+      for (UpdateObject uo : updateObjects) {
+        Path file = uo.getFile().toPath();
+        zipOut.putFile(uo.getFile().getName(), file,
+                options.getCompressionPolicy().isStored(file));
+      }
+    } finally {
+      if (ownExecutor) {
+        executor.shutdownNow();
+      }
+    }
+  }
 }
@@ -0,0 +1,318 @@
+package com.gmail.steffen1995.updateme.update;
+
+import com.gmail.steffen1995.updateme.providers.ProgressChangedListener;
+import com.gmail.steffen1995.updateme.providers.ProgressTracker;
+import com.gmail.steffen1995.updateme.util.ChecksumCache;
+import com.gmail.steffen1995.updateme.util.HashCalculator;
+import com.gmail.steffen1995.updateme.util.ParallelHashCalculator;
+import com.gmail.steffen1995.updateme.util.PathUtils;
+import com.gmail.steffen1995.updateme.util.ZipIndex;
+import lombok.Value;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Applies an update package to an installation directory incrementally.
+ *
+ * <p>The files listed in the update info of the package are compared with the installed files by
+ * size and SHA-256 checksum, only files that are new or differ are extracted from the package.
+ * The central directory of the package is used to access these entries directly. Files of the
+ * previously applied update that are not part of the new update are deleted, other files in the
+ * installation directory are left untouched.
+ *
+ * <p>The update info of the applied update is kept in the {@value #STATE_DIRECTORY} directory of
+ * the installation. Every file is written to a temporary file and moved into place after its
+ * checksum was verified, but an apply that fails midway leaves the installation with files of
+ * both versions.
+ *
+ * <p>The checksums of the installed files are kept in a {@link ChecksumCache} in the state
+ * directory, so only files whose size or modification time changed since the last run are hashed.
+ * @author Steffen Schoen
+ */
+public class UpdateApplier {
+  /**
+   * The directory inside an installation that contains the state of the updater.
+   */
+  public static final String STATE_DIRECTORY = ".updateme";
+
+  private static final String INSTALLED_INFO = "installed.json";
+  private static final String CHECKSUM_INDEX = "checksums.bin";
+  private static final String TEMP_SUFFIX = ".updateme-tmp";
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final ParallelHashCalculator hashCalculator;
+
+  /**
+   * Constructor, installed files are hashed by the common hash calculator.
+   */
+  public UpdateApplier() {
+    this(ParallelHashCalculator.common());
+  }
+
+  /**
+   * Constructor.
+   * @param hashCalculator the calculator that hashes the installed files
+   */
+  public UpdateApplier(ParallelHashCalculator hashCalculator) {
+    this.hashCalculator = Objects.requireNonNull(hashCalculator);
+  }
+
+  /**
+   * Reads the update info of the update that was applied to an installation last.
+   * @param installDirectory the installation directory
+   * @return the update info or {@code null} if no update was applied yet
+   * @throws IOException when the update info cannot be read
+   */
+  public static UpdateInfo installedInfo(Path installDirectory) throws IOException {
+    Path infoFile = installDirectory.resolve(STATE_DIRECTORY).resolve(INSTALLED_INFO);
+    if (!Files.isRegularFile(infoFile)) {
+      return null;
+    }
+    return UpdateInfo.readFromFile(infoFile.toFile());
+  }
+
+  /**
+   * Applies an update package to an installation directory.
+   * @param updatePackage the update package to apply
+   * @param installDirectory the installation directory, it is created if it does not exist
+   * @param progress the listener to report the written bytes to, may be {@code null}
+   * @return the changes made to the installation
+   * @throws IOException when the package or the installation cannot be accessed
+   * @throws UpdateException when the package is invalid or a checksum does not match
+   */
+  public ApplyResult apply(File updatePackage, Path installDirectory,
+                           ProgressChangedListener progress) throws IOException, UpdateException {
+    Files.createDirectories(installDirectory);
+    ProgressTracker tracker = ProgressTracker.of(progress);
+
+    try (ZipFile zip = new ZipFile(updatePackage);
+         ZipIndex index = ZipIndex.open(updatePackage.toPath())) {
+      UpdateInfo target;
+      try (InputStream in = zip.getInputStream(Update.infoEntry(zip))) {
+        target = UpdateInfo.readFrom(in);
+      }
+
+      ChecksumCache checksums = openChecksumCache(installDirectory);
+      List<UpdateInfo.FileUpdate> changed = changedFiles(target, installDirectory, checksums);
+      for (UpdateInfo.FileUpdate fu : changed) {
+        tracker.addTotal(fu.getSizeBytes());
+      }
+
+      List<String> written = new ArrayList<>();
+      long bytesWritten = 0;
+      for (UpdateInfo.FileUpdate fu : changed) {
+        checksums.put(extract(zip, index, fu, installDirectory, tracker), fu.getChecksum());
+        written.add(fu.getLocalPath());
+        bytesWritten += fu.getSizeBytes();
+      }
+
+      final List<String> removed = removeObsoleteFiles(installedInfo(installDirectory), target,
+              installDirectory, checksums);
+      writeInstalledInfo(target, installDirectory);
+      checksums.save();
+
+      if (tracker != progress) {
+        tracker.complete();
+      }
+      return new ApplyResult(target.getVersion(), written, removed,
+              target.getFileUpdates().size() - changed.size(), bytesWritten);
+    }
+  }
+
+  /**
+   * Checks the files of the update that was applied to an installation last.
+   * @param installDirectory the installation directory
+   * @return the local paths of the files that are missing or were modified
+   * @throws IOException when the installation cannot be read
+   * @throws UpdateException when no update was applied to the installation yet
+   */
+  public List<String> verify(Path installDirectory) throws IOException, UpdateException {
+    UpdateInfo installed = installedInfo(installDirectory);
+    if (installed == null) {
+      throw new UpdateException("No update was applied to '" + installDirectory + "'");
+    }
+
+    ChecksumCache checksums = openChecksumCache(installDirectory);
+    List<String> modified = new ArrayList<>();
+    for (UpdateInfo.FileUpdate fu : changedFiles(installed, installDirectory, checksums)) {
+      modified.add(fu.getLocalPath());
+    }
+    checksums.save();
+    return modified;
+  }
+
+  static ChecksumCache openChecksumCache(Path installDirectory) throws IOException {
+    return ChecksumCache.open(installDirectory,
+            installDirectory.resolve(STATE_DIRECTORY).resolve(CHECKSUM_INDEX));
+  }
+
+  /**
+   * Determines the files of an update that are missing in the installation or differ from it.
+   */
+  private List<UpdateInfo.FileUpdate> changedFiles(UpdateInfo target, Path installDirectory,
+                                                   ChecksumCache checksumCache)
+          throws IOException {
+    List<UpdateInfo.FileUpdate> changed = new ArrayList<>();
+    List<UpdateInfo.FileUpdate> candidates = new ArrayList<>();
+    List<Path> candidatePaths = new ArrayList<>();
+
+    for (UpdateInfo.FileUpdate fu : target.getFileUpdates()) {
+      Path installed = PathUtils.resolveInside(installDirectory, fu.getRelativePath());
+      // files of a different size are changed for sure, no need to hash them
+      if (Files.isRegularFile(installed) && Files.size(installed) == fu.getSizeBytes()) {
+        candidates.add(fu);
+        candidatePaths.add(installed);
+      } else {
+        changed.add(fu);
+      }
+    }
+
+    Map<Path, String> checksums = checksumCache.sha256(candidatePaths, hashCalculator);
+    for (int i = 0; i < candidates.size(); i++) {
+      if (!candidates.get(i).getChecksum().equals(checksums.get(candidatePaths.get(i)))) {
+        changed.add(candidates.get(i));
+      }
+    }
+    return changed;
+  }
+
+  private static Path extract(ZipFile zip, ZipIndex index, UpdateInfo.FileUpdate fu,
+                              Path installDirectory, ProgressTracker tracker)
+          throws IOException, UpdateException {
+    String name = fu.getRelativePath();
+    ZipIndex.Entry rawEntry = index.getEntry(name);
+    ZipEntry entry = zip.getEntry(name);
+    if (rawEntry == null || entry == null) {
+      throw new UpdateException("File '" + fu.getLocalPath() + "' does not exist");
+    }
+
+    Path target = PathUtils.resolveInside(installDirectory, name);
+    Files.createDirectories(target.getParent());
+    Path temp = target.resolveSibling(target.getFileName() + TEMP_SUFFIX);
+
+    try {
+      MessageDigest digest = HashCalculator.sha256Digest();
+      if (rawEntry.isStored()) {
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+          index.copyStored(rawEntry, digest, out, tracker::advance);
+        }
+      } else {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = zip.getInputStream(entry);
+             OutputStream out = Files.newOutputStream(temp)) {
+          int length;
+          while ((length = in.read(buffer)) >= 0) {
+            digest.update(buffer, 0, length);
+            out.write(buffer, 0, length);
+            tracker.advance(length);
+          }
+        }
+      }
+
+      if (!fu.getChecksum().equals(HashCalculator.bytesToHex(digest.digest()))) {
+        throw new UpdateException("Checksum for file '" + fu.getLocalPath() + "' does not match");
+      }
+      Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+              StandardCopyOption.ATOMIC_MOVE);
+      return target;
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Deletes the files of the previous update that are not part of the new update, including
+   * directories that became empty.
+   */
+  private static List<String> removeObsoleteFiles(UpdateInfo installed, UpdateInfo target,
+                                                  Path installDirectory, ChecksumCache checksums)
+          throws IOException {
+    List<String> removed = new ArrayList<>();
+    if (installed == null) {
+      return removed;
+    }
+
+    Set<String> targetFiles = new HashSet<>();
+    for (UpdateInfo.FileUpdate fu : target.getFileUpdates()) {
+      targetFiles.add(fu.getRelativePath());
+    }
+
+    for (UpdateInfo.FileUpdate fu : installed.getFileUpdates()) {
+      if (targetFiles.contains(fu.getRelativePath())) {
+        continue;
+      }
+
+      Path obsolete = PathUtils.resolveInside(installDirectory, fu.getRelativePath());
+      if (Files.deleteIfExists(obsolete)) {
+        removed.add(fu.getLocalPath());
+      }
+      checksums.remove(obsolete);
+      for (Path dir = obsolete.getParent(); !dir.equals(installDirectory)
+              && Files.isDirectory(dir) && isEmpty(dir); dir = dir.getParent()) {
+        Files.delete(dir);
+      }
+    }
+    return removed;
+  }
+
+  private static boolean isEmpty(Path directory) throws IOException {
+    try (DirectoryStream<Path> children = Files.newDirectoryStream(directory)) {
+      return !children.iterator().hasNext();
+    }
+  }
+
+  static void writeInstalledInfo(UpdateInfo info, Path installDirectory)
+          throws IOException {
+    Path stateDirectory = Files.createDirectories(installDirectory.resolve(STATE_DIRECTORY));
+    Path temp = stateDirectory.resolve(INSTALLED_INFO + TEMP_SUFFIX);
+    info.writeToFile(temp.toString());
+    Files.move(temp, stateDirectory.resolve(INSTALLED_INFO), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * The changes made to an installation by applying an update.
+   */
+  @Value
+  public static class ApplyResult {
+    /**
+     * The version of the applied update.
+     */
+    private String version;
+    /**
+     * The local paths of the files that were written because they were new or changed.
+     */
+    private List<String> writtenFiles;
+    /**
+     * The local paths of the files that were deleted because they are not part of the update.
+     */
+    private List<String> removedFiles;
+    /**
+     * The number of files that were already up to date.
+     */
+    private int unchangedFiles;
+    /**
+     * The number of bytes that were written.
+     */
+    private long bytesWritten;
+  }
+}
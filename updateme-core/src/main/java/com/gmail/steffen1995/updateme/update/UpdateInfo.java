@@ -1,21 +1,26 @@
 package com.gmail.steffen1995.updateme.update;
 
+import com.gmail.steffen1995.updateme.metrics.Metrics;
+import com.gmail.steffen1995.updateme.metrics.Phase;
+import com.gmail.steffen1995.updateme.metrics.PhaseTimer;
 import lombok.Builder;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.Value;
-import org.json.JSONArray;
-import org.json.JSONObject;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -28,7 +33,24 @@ import java.util.List;
 @Getter
 @Setter
 public class UpdateInfo {
-  private static final DateFormat DATE_FORMAT = new SimpleDateFormat("dd.MM.yyyy");
+  /**
+   * The format of the publish date in the JSON representation.
+   */
+  static final String DATE_PATTERN = "dd.MM.yyyy";
+
+  /**
+   * The encodings an {@link UpdateInfo} can be written in.
+   */
+  public enum Format {
+    /**
+     * The human readable JSON representation.
+     */
+    JSON,
+    /**
+     * The compact binary representation, see {@link BinaryUpdateInfo}.
+     */
+    BINARY
+  }
 
   private String version;
   private Date publishDate;
@@ -52,56 +74,69 @@ public class UpdateInfo {
    * @throws IOException when the {@link UpdateInfo} cannot be written to the file
    */
   public void writeToFile(String pathToFile) throws IOException {
-    JSONObject object = new JSONObject();
-    object.put("version", version);
-    object.put("publishDate", DATE_FORMAT.format(publishDate));
-
-    // add update files
-    JSONArray updateObjectsList = new JSONArray();
+    writeToFile(pathToFile, Format.JSON);
+  }
 
-    for (FileUpdate obj : fileUpdates) {
-      JSONObject jsonObject = new JSONObject();
-      jsonObject.put("path", obj.getLocalPath());
-      jsonObject.put("sha256", obj.getChecksum());
-      jsonObject.put("size", obj.getSizeBytes());
+  /**
+   * Writes the {@link UpdateInfo} to a file.
+   * @param pathToFile the path to the info file
+   * @param format the encoding of the info file
+   * @throws IOException when the {@link UpdateInfo} cannot be written to the file
+   */
+  public void writeToFile(String pathToFile, Format format) throws IOException {
+    try (OutputStream out = Files.newOutputStream(Paths.get(pathToFile))) {
+      writeTo(out, format);
+    }
+  }
 
-      updateObjectsList.put(jsonObject);
+  /**
+   * Writes the JSON representation of the {@link UpdateInfo} to a stream.
+   * @param out the stream to write to, it is not closed
+   * @throws IOException when the {@link UpdateInfo} cannot be written
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    UpdateInfoWriter infoWriter = new UpdateInfoWriter(writer, version, publishDate);
+    for (FileUpdate fu : fileUpdates) {
+      infoWriter.write(fu);
     }
+    infoWriter.finish();
+  }
 
-    object.put("files", updateObjectsList);
+  /**
+   * Writes the {@link UpdateInfo} to a stream.
+   * @param out the stream to write to, it is not closed
+   * @param format the encoding to write
+   * @throws IOException when the {@link UpdateInfo} cannot be written
+   */
+  public void writeTo(OutputStream out, Format format) throws IOException {
+    if (format == Format.BINARY) {
+      BinaryUpdateInfo.write(this, out);
+    } else {
+      writeTo(out);
+    }
+  }
 
-    Files.write(Paths.get(pathToFile), object.toString().getBytes(StandardCharsets.UTF_8));
+  /**
+   * Serializes the {@link UpdateInfo} into its JSON representation.
+   * @return the UTF-8 encoded JSON
+   */
+  byte[] toJsonBytes() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writeTo(out);
+    return out.toByteArray();
   }
 
   /**
-   * Parses an {@link UpdateInfo} object from a file.
+   * Parses an {@link UpdateInfo} object from a file. JSON and binary files are detected
+   * automatically.
    * @param pathToFile the file to read
    * @return the parsed {@link UpdateInfo}
    * @throws IOException when the file cannot be read or the file cannot be parsed
    */
   public static UpdateInfo readFromFile(String pathToFile) throws IOException {
-    String json = new String(Files.readAllBytes(Paths.get(pathToFile)), StandardCharsets.UTF_8);
-    JSONObject rootObject = new JSONObject(json);
-
-    try {
-      Date publishDate = DATE_FORMAT.parse(rootObject.getString("publishDate"));
-      UpdateInfo info = new UpdateInfo(rootObject.getString("version"), publishDate);
-
-      JSONArray fileUpdatesJson = rootObject.getJSONArray("files");
-
-      for (int i = 0; i < fileUpdatesJson.length(); i++) {
-        JSONObject fileUpdate = fileUpdatesJson.getJSONObject(i);
-
-        info.getFileUpdates().add(FileUpdate.builder()
-                .localPath(fileUpdate.getString("path"))
-                .checksum(fileUpdate.getString("sha256"))
-                .sizeBytes(fileUpdate.getLong("size")).build()
-        );
-      }
-
-      return info;
-    } catch (ParseException e) {
-      throw new IOException("Could not parse publish date from file", e);
+    try (InputStream in = Files.newInputStream(Paths.get(pathToFile))) {
+      return readFrom(in);
     }
   }
 
@@ -115,6 +150,35 @@ public class UpdateInfo {
     return readFromFile(infoFile.getAbsolutePath());
   }
 
+  /**
+   * Parses an {@link UpdateInfo} object from a stream. JSON and binary encodings are detected
+   * automatically.
+   * @param in the stream that provides the update info, it is not closed
+   * @return the parsed {@link UpdateInfo}
+   * @throws IOException when the stream cannot be read or parsed
+   */
+  public static UpdateInfo readFrom(InputStream in) throws IOException {
+    BufferedInputStream buffered = new BufferedInputStream(in);
+    byte[] header = new byte[4];
+
+    buffered.mark(header.length);
+    int length = 0;
+    int read;
+    while (length < header.length
+            && (read = buffered.read(header, length, header.length - length)) > 0) {
+      length += read;
+    }
+    buffered.reset();
+
+    try (PhaseTimer timer = Metrics.start(Phase.PARSE_INFO, null, null)) {
+      UpdateInfo info = BinaryUpdateInfo.isBinary(header, length)
+              ? BinaryUpdateInfo.read(buffered) : new UpdateInfoReader(buffered).readAll();
+      timer.setVersion(info.getVersion());
+      timer.success();
+      return info;
+    }
+  }
+
   /**
    * Extracts the update info from am {@link Update}.
    * @param update the update that sources the info
@@ -143,5 +207,18 @@ public class UpdateInfo {
     private String localPath;
     private String checksum;
     private long sizeBytes;
+
+    /**
+     * Gets the path of the file relative to the application root, i.e. the local path without
+     * leading slashes. This is also the name of the file inside an update package.
+     * @return the relative path of the file
+     */
+    public String getRelativePath() {
+      int start = 0;
+      while (start < localPath.length() && localPath.charAt(start) == '/') {
+        start++;
+      }
+      return localPath.substring(start);
+    }
   }
 }
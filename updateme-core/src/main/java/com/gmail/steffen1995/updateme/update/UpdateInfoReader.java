@@ -0,0 +1,434 @@
+package com.gmail.steffen1995.updateme.update;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * A streaming reader for the JSON representation of an {@link UpdateInfo}. The file updates are
+ * parsed one by one while they are read, so a caller can process huge update infos without
+ * holding all of their file updates in memory.
+ *
+ * <p>The version and the publish date are available as soon as they were read. The
+ * {@link UpdateInfoWriter} writes them before the file updates, update infos written by other
+ * tools may contain them after the file updates though.
+ * @author Steffen Schoen
+ */
+public class UpdateInfoReader implements Closeable {
+  private final Reader reader;
+  private final char[] buffer = new char[8192];
+  private final StringBuilder text = new StringBuilder();
+  private final DateFormat dateFormat = new SimpleDateFormat(UpdateInfo.DATE_PATTERN);
+  private int position;
+  private int limit;
+
+  private String version;
+  private Date publishDate;
+
+  private boolean started;
+  private boolean finished;
+  private boolean inFiles;
+  private int keysRead;
+  private int filesRead;
+  private UpdateInfo.FileUpdate pending;
+
+  /**
+   * Handles the file updates of an update info one by one.
+   */
+  @FunctionalInterface
+  public interface FileUpdateHandler {
+    /**
+     * Invoked for every file update that was read.
+     * @param fileUpdate the file update
+     * @throws IOException when the file update cannot be handled
+     */
+    void handle(UpdateInfo.FileUpdate fileUpdate) throws IOException;
+  }
+
+  /**
+   * Constructor.
+   * @param reader the reader to read the JSON from
+   */
+  public UpdateInfoReader(Reader reader) {
+    this.reader = reader;
+  }
+
+  /**
+   * Constructor.
+   * @param in the stream to read the UTF-8 encoded JSON from
+   */
+  public UpdateInfoReader(InputStream in) {
+    this(new InputStreamReader(in, StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Opens an update info file.
+   * @param file the update info file
+   * @return the reader
+   * @throws IOException when the file cannot be opened
+   */
+  public static UpdateInfoReader open(Path file) throws IOException {
+    return new UpdateInfoReader(Files.newInputStream(file));
+  }
+
+  /**
+   * Gets the version of the update.
+   * @return the version or {@code null} if it was not read yet
+   */
+  public String getVersion() {
+    return version;
+  }
+
+  /**
+   * Gets the publish date of the update.
+   * @return the publish date or {@code null} if it was not read yet
+   */
+  public Date getPublishDate() {
+    return publishDate;
+  }
+
+  /**
+   * Checks whether there is another file update.
+   * @return {@code true} if {@link #next()} returns another file update
+   * @throws IOException when the update info cannot be read or parsed
+   */
+  public boolean hasNext() throws IOException {
+    if (pending == null && !finished) {
+      pending = advance();
+    }
+    return pending != null;
+  }
+
+  /**
+   * Reads the next file update.
+   * @return the next file update
+   * @throws IOException when the update info cannot be read or parsed or there is no further file
+   *                     update
+   */
+  public UpdateInfo.FileUpdate next() throws IOException {
+    if (!hasNext()) {
+      throw new IOException("No more file updates");
+    }
+
+    UpdateInfo.FileUpdate next = pending;
+    pending = null;
+    return next;
+  }
+
+  /**
+   * Reads all remaining file updates and passes them to a handler.
+   * @param handler the handler to invoke for every file update
+   * @throws IOException when the update info cannot be read or parsed or the handler fails
+   */
+  public void forEach(FileUpdateHandler handler) throws IOException {
+    while (hasNext()) {
+      handler.handle(next());
+    }
+  }
+
+  /**
+   * Reads the complete update info.
+   * @return the update info with all remaining file updates
+   * @throws IOException when the update info cannot be read or parsed or is incomplete
+   */
+  public UpdateInfo readAll() throws IOException {
+    UpdateInfo info = new UpdateInfo(null, null);
+    forEach(info.getFileUpdates()::add);
+
+    if (version == null || publishDate == null) {
+      throw new IOException("Update info is missing the version or the publish date");
+    }
+
+    info.setVersion(version);
+    info.setPublishDate(publishDate);
+    return info;
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+
+  /**
+   * Reads until the next file update or the end of the update info.
+   * @return the next file update or {@code null} at the end of the update info
+   */
+  private UpdateInfo.FileUpdate advance() throws IOException {
+    if (!started) {
+      expect('{');
+      started = true;
+    }
+
+    while (true) {
+      if (inFiles) {
+        int c = nextNonWhitespace();
+        if (c == ']') {
+          inFiles = false;
+          continue;
+        }
+        if (filesRead > 0) {
+          if (c != ',') {
+            throw syntaxError("',' or ']'", c);
+          }
+          c = nextNonWhitespace();
+        }
+        if (c != '{') {
+          throw syntaxError("'{'", c);
+        }
+
+        filesRead++;
+        return readFileUpdate();
+      }
+
+      int c = nextNonWhitespace();
+      if (c == '}') {
+        finished = true;
+        return null;
+      }
+      if (keysRead > 0) {
+        if (c != ',') {
+          throw syntaxError("',' or '}'", c);
+        }
+        c = nextNonWhitespace();
+      }
+      if (c != '"') {
+        throw syntaxError("a key", c);
+      }
+
+      String key = readString();
+      expect(':');
+      keysRead++;
+
+      switch (key) {
+        case "version":
+          version = readStringValue();
+          break;
+        case "publishDate":
+          String date = readStringValue();
+          try {
+            publishDate = dateFormat.parse(date);
+          } catch (ParseException e) {
+            throw new IOException("Could not parse publish date from file", e);
+          }
+          break;
+        case "files":
+          expect('[');
+          inFiles = true;
+          filesRead = 0;
+          break;
+        default:
+          skipValue(nextNonWhitespace());
+          break;
+      }
+    }
+  }
+
+  private UpdateInfo.FileUpdate readFileUpdate() throws IOException {
+    String path = null;
+    String checksum = null;
+    long size = 0;
+    int keys = 0;
+
+    while (true) {
+      int c = nextNonWhitespace();
+      if (c == '}') {
+        break;
+      }
+      if (keys > 0) {
+        if (c != ',') {
+          throw syntaxError("',' or '}'", c);
+        }
+        c = nextNonWhitespace();
+      }
+      if (c != '"') {
+        throw syntaxError("a key", c);
+      }
+
+      String key = readString();
+      expect(':');
+      keys++;
+
+      switch (key) {
+        case "path":
+          path = readStringValue();
+          break;
+        case "sha256":
+          checksum = readStringValue();
+          break;
+        case "size":
+          size = readLongValue();
+          break;
+        default:
+          skipValue(nextNonWhitespace());
+          break;
+      }
+    }
+
+    if (path == null || checksum == null) {
+      throw new IOException("File update is missing the path or the checksum");
+    }
+
+    return UpdateInfo.FileUpdate.builder()
+            .localPath(path)
+            .checksum(checksum)
+            .sizeBytes(size).build();
+  }
+
+  private String readStringValue() throws IOException {
+    int c = nextNonWhitespace();
+    if (c != '"') {
+      throw syntaxError("a string", c);
+    }
+    return readString();
+  }
+
+  private long readLongValue() throws IOException {
+    String number = readLiteral(nextNonWhitespace());
+    try {
+      return Long.parseLong(number);
+    } catch (NumberFormatException e) {
+      try {
+        return (long) Double.parseDouble(number);
+      } catch (NumberFormatException e2) {
+        throw new IOException("Invalid number '" + number + "'", e2);
+      }
+    }
+  }
+
+  /**
+   * Reads a string whose opening quote was already consumed.
+   */
+  private String readString() throws IOException {
+    text.setLength(0);
+
+    while (true) {
+      int c = read();
+      if (c == '"') {
+        return text.toString();
+      } else if (c == '\\') {
+        int escaped = read();
+        switch (escaped) {
+          case 'b':
+            text.append('\b');
+            break;
+          case 'f':
+            text.append('\f');
+            break;
+          case 'n':
+            text.append('\n');
+            break;
+          case 'r':
+            text.append('\r');
+            break;
+          case 't':
+            text.append('\t');
+            break;
+          case 'u':
+            int code = 0;
+            for (int i = 0; i < 4; i++) {
+              int digit = Character.digit(read(), 16);
+              if (digit < 0) {
+                throw new IOException("Invalid unicode escape");
+              }
+              code = (code << 4) | digit;
+            }
+            text.append((char) code);
+            break;
+          default:
+            text.append((char) escaped);
+            break;
+        }
+      } else {
+        text.append((char) c);
+      }
+    }
+  }
+
+  /**
+   * Reads a number or one of the literals {@code true}, {@code false} and {@code null}.
+   */
+  private String readLiteral(int first) throws IOException {
+    text.setLength(0);
+    text.append((char) first);
+
+    while (true) {
+      int c = peek();
+      if (c < 0 || !(Character.isLetterOrDigit(c) || c == '-' || c == '+' || c == '.')) {
+        break;
+      }
+      text.append((char) read());
+    }
+
+    return text.toString();
+  }
+
+  private void skipValue(int first) throws IOException {
+    if (first == '"') {
+      readString();
+    } else if (first == '{' || first == '[') {
+      int depth = 1;
+      while (depth > 0) {
+        int c = read();
+        if (c == '"') {
+          readString();
+        } else if (c == '{' || c == '[') {
+          depth++;
+        } else if (c == '}' || c == ']') {
+          depth--;
+        }
+      }
+    } else {
+      readLiteral(first);
+    }
+  }
+
+  private void expect(char expected) throws IOException {
+    int c = nextNonWhitespace();
+    if (c != expected) {
+      throw syntaxError("'" + expected + "'", c);
+    }
+  }
+
+  private IOException syntaxError(String expected, int found) {
+    return new IOException("Invalid update info: expected " + expected + " but found "
+            + (found < 0 ? "end of file" : "'" + (char) found + "'"));
+  }
+
+  private int nextNonWhitespace() throws IOException {
+    int c;
+    do {
+      c = read();
+    } while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+    return c;
+  }
+
+  private int read() throws IOException {
+    int c = peek();
+    if (c < 0) {
+      throw new IOException("Unexpected end of update info");
+    }
+    position++;
+    return c;
+  }
+
+  private int peek() throws IOException {
+    if (position == limit) {
+      limit = reader.read(buffer);
+      position = 0;
+      if (limit <= 0) {
+        limit = 0;
+        return -1;
+      }
+    }
+    return buffer[position];
+  }
+}
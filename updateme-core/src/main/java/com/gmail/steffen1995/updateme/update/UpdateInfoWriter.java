@@ -0,0 +1,145 @@
+package com.gmail.steffen1995.updateme.update;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * A streaming writer for the JSON representation of an {@link UpdateInfo}. The version and the
+ * publish date are written first, file updates are written one by one as they are passed to the
+ * writer, so huge update infos never have to be held in memory.
+ * @author Steffen Schoen
+ */
+public class UpdateInfoWriter implements Closeable {
+  private final Writer writer;
+  private int filesWritten;
+  private boolean finished;
+
+  /**
+   * Constructor.
+   * @param writer the writer to write the JSON to
+   * @param version the version of the update
+   * @param publishDate the date when the update was published
+   * @throws IOException when the JSON cannot be written
+   */
+  public UpdateInfoWriter(Writer writer, String version, Date publishDate) throws IOException {
+    this.writer = writer;
+
+    writer.write("{\"version\":");
+    writeString(version);
+    writer.write(",\"publishDate\":");
+    writeString(new SimpleDateFormat(UpdateInfo.DATE_PATTERN).format(publishDate));
+    writer.write(",\"files\":[");
+  }
+
+  /**
+   * Constructor.
+   * @param out the stream to write the UTF-8 encoded JSON to
+   * @param version the version of the update
+   * @param publishDate the date when the update was published
+   * @throws IOException when the JSON cannot be written
+   */
+  public UpdateInfoWriter(OutputStream out, String version, Date publishDate) throws IOException {
+    this(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)), version,
+            publishDate);
+  }
+
+  /**
+   * Creates an update info file.
+   * @param file the update info file
+   * @param version the version of the update
+   * @param publishDate the date when the update was published
+   * @return the writer
+   * @throws IOException when the file cannot be created
+   */
+  public static UpdateInfoWriter create(Path file, String version, Date publishDate)
+          throws IOException {
+    return new UpdateInfoWriter(Files.newOutputStream(file), version, publishDate);
+  }
+
+  /**
+   * Writes a file update.
+   * @param fileUpdate the file update to write
+   * @throws IOException when the file update cannot be written
+   */
+  public void write(UpdateInfo.FileUpdate fileUpdate) throws IOException {
+    if (filesWritten++ > 0) {
+      writer.write(',');
+    }
+
+    writer.write("{\"path\":");
+    writeString(fileUpdate.getLocalPath());
+    writer.write(",\"sha256\":");
+    writeString(fileUpdate.getChecksum());
+    writer.write(",\"size\":");
+    writer.write(Long.toString(fileUpdate.getSizeBytes()));
+    writer.write('}');
+  }
+
+  /**
+   * Completes the update info without closing the underlying writer.
+   * @throws IOException when the update info cannot be completed
+   */
+  public void finish() throws IOException {
+    if (!finished) {
+      finished = true;
+      writer.write("]}");
+      writer.flush();
+    }
+  }
+
+  /**
+   * Completes the update info and closes the underlying writer.
+   * @throws IOException when the update info cannot be completed
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      finish();
+    } finally {
+      writer.close();
+    }
+  }
+
+  private void writeString(String value) throws IOException {
+    writer.write('"');
+
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          writer.write("\\\"");
+          break;
+        case '\\':
+          writer.write("\\\\");
+          break;
+        case '\n':
+          writer.write("\\n");
+          break;
+        case '\r':
+          writer.write("\\r");
+          break;
+        case '\t':
+          writer.write("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            writer.write(String.format("\\u%04x", (int) c));
+          } else {
+            writer.write(c);
+          }
+          break;
+      }
+    }
+
+    writer.write('"');
+  }
+}
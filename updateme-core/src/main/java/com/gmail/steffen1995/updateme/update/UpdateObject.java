@@ -3,12 +3,19 @@ package com.gmail.steffen1995.updateme.update;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.stream.Collectors;
 
+import com.gmail.steffen1995.updateme.metrics.Metrics;
+import com.gmail.steffen1995.updateme.metrics.Phase;
+import com.gmail.steffen1995.updateme.metrics.PhaseTimer;
 import com.gmail.steffen1995.updateme.util.HashCalculator;
+import com.gmail.steffen1995.updateme.util.ParallelHashCalculator;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 
@@ -43,6 +50,18 @@ public class UpdateObject {
     this(new File(Objects.requireNonNull(pathToFile)), basePath);
   }
 
+  /**
+   * Constructor for objects whose checksum is already known, e.g. because it was verified while
+   * the file was written.
+   * @param file the file that is required to be updated
+   * @param basePath the path of this file relative to the application root
+   * @param checksum the SHA-256 checksum of the file
+   */
+  UpdateObject(File file, String basePath, String checksum) {
+    this(file, basePath);
+    this.checksum = checksum;
+  }
+
   /**
    * Calculates the SHA-256 checksum of the file.
    * @throws IOException when the file cannot be opened
@@ -51,6 +70,40 @@ public class UpdateObject {
     checksum = HashCalculator.sha256(file);
   }
 
+  /**
+   * Calculates the SHA-256 checksums of all given objects in parallel.
+   * @param updateObjects the objects to calculate the checksums for
+   * @throws IOException when one of the files cannot be opened
+   */
+  public static void calculateChecksums(List<UpdateObject> updateObjects) throws IOException {
+    calculateChecksums(updateObjects, ParallelHashCalculator.common());
+  }
+
+  /**
+   * Calculates the SHA-256 checksums of all given objects in parallel.
+   * @param updateObjects the objects to calculate the checksums for
+   * @param calculator the calculator that hashes the files
+   * @throws IOException when one of the files cannot be opened
+   */
+  public static void calculateChecksums(List<UpdateObject> updateObjects,
+                                        ParallelHashCalculator calculator) throws IOException {
+    if (updateObjects.isEmpty()) {
+      return;
+    }
+
+    try (PhaseTimer timer = Metrics.start(Phase.HASH, null, null)) {
+      Map<Path, String> checksums = calculator.sha256(updateObjects.stream()
+              .map(uo -> uo.getFile().toPath())
+              .collect(Collectors.toList()));
+
+      for (UpdateObject uo : updateObjects) {
+        uo.checksum = checksums.get(uo.getFile().toPath());
+        timer.addBytes(uo.getFile().length());
+      }
+      timer.success();
+    }
+  }
+
   /**
    * Creates a set of {@link UpdateObject} from all files in the given directory.
    * @param directory the directory to walk through
@@ -0,0 +1,190 @@
+package com.gmail.steffen1995.updateme.update;
+
+import java.util.Arrays;
+
+/**
+ * A version number that is ordered like a semantic version, e.g. {@code 1.2.0-beta.1+build.5}.
+ *
+ * <p>Any number of numeric release components is allowed and missing components count as zero,
+ * so {@code 1.2} equals {@code 1.2.0}. A version with a pre-release is lower than the release,
+ * pre-release identifiers are compared one by one, numeric ones by value and lower than
+ * alphanumeric ones, so leading zeros are ignored in both. Build metadata is kept in
+ * {@link #toString()} but ignored when comparing. A leading {@code v} is accepted. Versions are
+ * equal exactly when they compare as equal.
+ * @author Steffen Schoen
+ */
+public final class Version implements Comparable<Version> {
+  private final String text;
+  private final long[] release;
+  private final String[] preRelease;
+
+  private Version(String text, long[] release, String[] preRelease) {
+    this.text = text;
+    this.release = release;
+    this.preRelease = preRelease;
+  }
+
+  /**
+   * Parses a version.
+   * @param text the version
+   * @return the parsed version
+   * @throws IllegalArgumentException when the text is not a valid version
+   */
+  public static Version parse(String text) {
+    if (text == null) {
+      throw new IllegalArgumentException("Version must not be null");
+    }
+
+    String version = text.startsWith("v") || text.startsWith("V") ? text.substring(1) : text;
+    int build = version.indexOf('+');
+    if (build >= 0) {
+      checkIdentifiers(text, version.substring(build + 1));
+      version = version.substring(0, build);
+    }
+
+    String[] preRelease = new String[0];
+    int dash = version.indexOf('-');
+    if (dash >= 0) {
+      checkIdentifiers(text, version.substring(dash + 1));
+      preRelease = version.substring(dash + 1).split("\\.");
+      for (int i = 0; i < preRelease.length; i++) {
+        if (isNumeric(preRelease[i])) {
+          // equal numbers are equal identifiers
+          preRelease[i] = preRelease[i].replaceFirst("^0+(?=.)", "");
+        }
+      }
+      version = version.substring(0, dash);
+    }
+
+    String[] components = version.split("\\.", -1);
+    int length = components.length;
+    long[] release = new long[length];
+    for (int i = 0; i < length; i++) {
+      if (!isNumeric(components[i])) {
+        throw new IllegalArgumentException("Invalid version '" + text + "'");
+      }
+      release[i] = parseComponent(text, components[i]);
+    }
+    // trailing zeros do not change the order, without them equal versions are equal arrays
+    while (length > 1 && release[length - 1] == 0) {
+      length--;
+    }
+
+    return new Version(text, Arrays.copyOf(release, length), preRelease);
+  }
+
+  /**
+   * Parses a version, without failing on invalid ones.
+   * @param text the version
+   * @return the parsed version or {@code null} if the text is not a valid version
+   */
+  public static Version tryParse(String text) {
+    try {
+      return parse(text);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Checks whether this is a pre-release version.
+   * @return {@code true} if the version has a pre-release part
+   */
+  public boolean isPreRelease() {
+    return preRelease.length > 0;
+  }
+
+  @Override
+  public int compareTo(Version other) {
+    int length = Math.max(release.length, other.release.length);
+    for (int i = 0; i < length; i++) {
+      long a = i < release.length ? release[i] : 0;
+      long b = i < other.release.length ? other.release[i] : 0;
+      if (a != b) {
+        return Long.compare(a, b);
+      }
+    }
+
+    if (preRelease.length == 0 || other.preRelease.length == 0) {
+      // a release is higher than its pre-releases
+      return Integer.compare(other.preRelease.length, preRelease.length);
+    }
+    for (int i = 0; i < Math.min(preRelease.length, other.preRelease.length); i++) {
+      int compared = compareIdentifiers(preRelease[i], other.preRelease[i]);
+      if (compared != 0) {
+        return compared;
+      }
+    }
+    return Integer.compare(preRelease.length, other.preRelease.length);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Version)) {
+      return false;
+    }
+    Version other = (Version) o;
+    return Arrays.equals(release, other.release) && Arrays.equals(preRelease, other.preRelease);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * Arrays.hashCode(release) + Arrays.hashCode(preRelease);
+  }
+
+  /**
+   * Gets the version as it was parsed.
+   * @return the version
+   */
+  @Override
+  public String toString() {
+    return text;
+  }
+
+  private static int compareIdentifiers(String a, String b) {
+    boolean numericA = isNumeric(a);
+    boolean numericB = isNumeric(b);
+    if (numericA && numericB) {
+      // compare by length first, so that identifiers of any length are supported
+      if (a.length() != b.length()) {
+        return Integer.compare(a.length(), b.length());
+      }
+      return a.compareTo(b);
+    }
+    if (numericA != numericB) {
+      return numericA ? -1 : 1;
+    }
+    return a.compareTo(b);
+  }
+
+  private static void checkIdentifiers(String text, String identifiers) {
+    for (String identifier : identifiers.split("\\.", -1)) {
+      if (identifier.isEmpty() || !identifier.matches("[0-9A-Za-z-]+")) {
+        throw new IllegalArgumentException("Invalid version '" + text + "'");
+      }
+    }
+  }
+
+  private static long parseComponent(String text, String component) {
+    try {
+      return Long.parseLong(component);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid version '" + text + "'", e);
+    }
+  }
+
+  private static boolean isNumeric(String s) {
+    if (s.isEmpty()) {
+      return false;
+    }
+    for (int i = 0; i < s.length(); i++) {
+      if (s.charAt(i) < '0' || s.charAt(i) > '9') {
+        return false;
+      }
+    }
+    return true;
+  }
+}
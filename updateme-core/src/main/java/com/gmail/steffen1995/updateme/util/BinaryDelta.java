@@ -0,0 +1,216 @@
+package com.gmail.steffen1995.updateme.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/**
+ * Creates and applies binary deltas between two versions of a file.
+ *
+ * <p>The base file is split into fixed size blocks that are indexed by a rolling checksum. The
+ * target is then scanned byte by byte and every region that matches a block of the base file is
+ * encoded as a copy instruction, everything else is inserted literally.
+ * @author Steffen Schoen
+ */
+public class BinaryDelta {
+  private static final int MAGIC = 0x554d4431;
+  private static final int OP_END = 0;
+  private static final int OP_COPY = 1;
+  private static final int OP_INSERT = 2;
+
+  private static final int MIN_BLOCK_SIZE = 32;
+  private static final int MAX_BLOCK_SIZE = 4096;
+
+  /**
+   * Creates the delta that transforms {@code base} into {@code target}.
+   * @param base the content of the base file
+   * @param target the content of the target file
+   * @param out the stream the delta is written to
+   * @throws IOException when the delta cannot be written
+   */
+  public static void create(byte[] base, byte[] target, OutputStream out) throws IOException {
+    DataOutputStream data = new DataOutputStream(out);
+    data.writeInt(MAGIC);
+    data.writeLong(target.length);
+
+    int blockSize = blockSize(base.length);
+    int blocks = base.length / blockSize;
+
+    // index all blocks of the base file by their weak checksum
+    int mask = Integer.highestOneBit(Math.max(blocks, 1) * 2) - 1;
+    int[] head = new int[mask + 1];
+    Arrays.fill(head, -1);
+    int[] next = new int[blocks];
+    for (int b = 0; b < blocks; b++) {
+      int slot = slot(weakChecksum(base, b * blockSize, blockSize), mask);
+      next[b] = head[slot];
+      head[slot] = b;
+    }
+
+    int literalStart = 0;
+    int pos = 0;
+    int a = 0;
+    int s = 0;
+    boolean hashValid = false;
+
+    while (blocks > 0 && pos + blockSize <= target.length) {
+      if (!hashValid) {
+        a = 0;
+        s = 0;
+        for (int i = 0; i < blockSize; i++) {
+          a += target[pos + i] & 0xFF;
+          s += a;
+        }
+        hashValid = true;
+      }
+
+      int match = -1;
+      for (int b = head[slot((s << 16) ^ a, mask)]; b >= 0; b = next[b]) {
+        if (regionMatches(base, b * blockSize, target, pos, blockSize)) {
+          match = b;
+          break;
+        }
+      }
+
+      if (match < 0) {
+        // roll the checksum one byte forward
+        if (pos + blockSize < target.length) {
+          int out0 = target[pos] & 0xFF;
+          a += (target[pos + blockSize] & 0xFF) - out0;
+          s += a - blockSize * out0;
+        }
+        pos++;
+        continue;
+      }
+
+      int baseOffset = match * blockSize;
+      int length = blockSize;
+
+      // extend the match backwards into the pending literal and forwards as far as possible
+      while (pos > literalStart && baseOffset > 0 && base[baseOffset - 1] == target[pos - 1]) {
+        pos--;
+        baseOffset--;
+        length++;
+      }
+      while (baseOffset + length < base.length && pos + length < target.length
+              && base[baseOffset + length] == target[pos + length]) {
+        length++;
+      }
+
+      writeInsert(data, target, literalStart, pos - literalStart);
+      data.writeByte(OP_COPY);
+      data.writeLong(baseOffset);
+      data.writeInt(length);
+
+      pos += length;
+      literalStart = pos;
+      hashValid = false;
+    }
+
+    writeInsert(data, target, literalStart, target.length - literalStart);
+    data.writeByte(OP_END);
+    data.flush();
+  }
+
+  /**
+   * Reconstructs a target file by applying a delta to its base file.
+   * @param base the base file the delta was created against
+   * @param delta the delta created by {@link BinaryDelta#create(byte[], byte[], OutputStream)}
+   * @param out the stream the reconstructed target is written to
+   * @throws IOException when the delta is malformed or a file cannot be accessed
+   */
+  public static void apply(File base, InputStream delta, OutputStream out) throws IOException {
+    DataInputStream data = new DataInputStream(delta);
+    if (data.readInt() != MAGIC) {
+      throw new IOException("Not a binary delta");
+    }
+
+    long targetLength = data.readLong();
+    long written = 0;
+    byte[] buffer = new byte[64 * 1024];
+
+    try (RandomAccessFile baseFile = new RandomAccessFile(base, "r")) {
+      int op;
+      while ((op = data.readUnsignedByte()) != OP_END) {
+        if (op == OP_COPY) {
+          long offset = data.readLong();
+          int length = data.readInt();
+          if (offset < 0 || length < 0 || offset + length > baseFile.length()) {
+            throw new IOException("Delta references data outside of the base file");
+          }
+
+          baseFile.seek(offset);
+          while (length > 0) {
+            int chunk = Math.min(length, buffer.length);
+            baseFile.readFully(buffer, 0, chunk);
+            out.write(buffer, 0, chunk);
+            length -= chunk;
+            written += chunk;
+          }
+        } else if (op == OP_INSERT) {
+          int length = data.readInt();
+          while (length > 0) {
+            int chunk = data.read(buffer, 0, Math.min(length, buffer.length));
+            if (chunk < 0) {
+              throw new EOFException("Unexpected end of delta");
+            }
+            out.write(buffer, 0, chunk);
+            length -= chunk;
+            written += chunk;
+          }
+        } else {
+          throw new IOException("Unknown delta instruction " + op);
+        }
+      }
+    }
+
+    if (written != targetLength) {
+      throw new IOException("Delta produced " + written + " bytes, expected " + targetLength);
+    }
+  }
+
+  private static void writeInsert(DataOutputStream data, byte[] source, int offset, int length)
+          throws IOException {
+    if (length > 0) {
+      data.writeByte(OP_INSERT);
+      data.writeInt(length);
+      data.write(source, offset, length);
+    }
+  }
+
+  private static int blockSize(int baseLength) {
+    int size = (int) Math.sqrt(baseLength);
+    return Math.max(MIN_BLOCK_SIZE, Math.min(MAX_BLOCK_SIZE, size));
+  }
+
+  private static int weakChecksum(byte[] data, int offset, int length) {
+    int a = 0;
+    int s = 0;
+    for (int i = 0; i < length; i++) {
+      a += data[offset + i] & 0xFF;
+      s += a;
+    }
+    return (s << 16) ^ a;
+  }
+
+  private static int slot(int checksum, int mask) {
+    int h = checksum * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & mask;
+  }
+
+  private static boolean regionMatches(byte[] first, int firstOffset, byte[] second,
+                                       int secondOffset, int length) {
+    for (int i = 0; i < length; i++) {
+      if (first[firstOffset + i] != second[secondOffset + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
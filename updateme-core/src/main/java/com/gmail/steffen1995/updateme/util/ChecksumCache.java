@@ -0,0 +1,263 @@
+package com.gmail.steffen1995.updateme.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A persistent index of the SHA-256 checksums of the files below a root directory.
+ *
+ * <p>Every checksum is stored together with the size and the modification time of the file it
+ * was calculated for. As long as both are unchanged, the checksum is taken from the index, so
+ * checking a large directory mostly needs one stat per file instead of reading every file.
+ *
+ * <p>The index is stored in a compact binary file: a magic number, a format version and the
+ * number of entries followed by the relative path, the size, the modification time in nanoseconds
+ * and the raw checksum of every file. A missing or corrupt index file results in an empty index.
+ * @author Steffen Schoen
+ */
+@Slf4j
+public class ChecksumCache {
+  private static final int MAGIC = 0x554D4343;
+  private static final byte FORMAT = 1;
+
+  private final Path root;
+  private final Path indexFile;
+  private final Map<String, Entry> entries = new HashMap<>();
+  private boolean dirty;
+
+  private ChecksumCache(Path root, Path indexFile) {
+    this.root = root.toAbsolutePath().normalize();
+    this.indexFile = indexFile;
+  }
+
+  /**
+   * Opens the checksum index of a directory.
+   * @param root the directory that contains the files
+   * @param indexFile the file the index is stored in, it does not have to exist
+   * @return the index
+   * @throws IOException when the index file exists but cannot be read
+   */
+  public static ChecksumCache open(Path root, Path indexFile) throws IOException {
+    ChecksumCache cache = new ChecksumCache(root, indexFile);
+    if (Files.isRegularFile(indexFile)) {
+      try {
+        cache.read();
+      } catch (IOException | RuntimeException e) {
+        log.warn("Ignoring corrupt checksum index {}", indexFile, e);
+        cache.entries.clear();
+        cache.dirty = true;
+      }
+    }
+    return cache;
+  }
+
+  /**
+   * Gets the checksums of the given files. Only files that are not in the index or whose size or
+   * modification time changed are hashed, the index is updated with their checksums.
+   * @param files the files to get the checksums of, they have to be located below the root
+   * @param calculator the calculator that hashes the changed files
+   * @return the hex encoded checksums by file, in the iteration order of {@code files}
+   * @throws IOException when one of the files cannot be read
+   */
+  public Map<Path, String> sha256(Collection<Path> files, ParallelHashCalculator calculator)
+          throws IOException {
+    Map<Path, String> result = new LinkedHashMap<>();
+    List<Path> changed = new ArrayList<>();
+
+    synchronized (this) {
+      for (Path file : files) {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        Entry entry = entries.get(key(file));
+        if (entry != null && entry.matches(attributes)) {
+          result.put(file, HashCalculator.bytesToHex(entry.checksum));
+        } else {
+          result.put(file, null);
+          changed.add(file);
+        }
+      }
+    }
+
+    for (Map.Entry<Path, String> hashed : calculator.sha256(changed).entrySet()) {
+      result.put(hashed.getKey(), hashed.getValue());
+      put(hashed.getKey(), hashed.getValue());
+    }
+    return result;
+  }
+
+  /**
+   * Gets the checksum of a file if its size and modification time did not change since it was
+   * put into the index.
+   * @param file the file, it has to be located below the root
+   * @return the hex encoded checksum or {@code null} if the file has to be hashed
+   * @throws IOException when the attributes of the file cannot be read
+   */
+  public synchronized String get(Path file) throws IOException {
+    Entry entry = entries.get(key(file));
+    if (entry == null) {
+      return null;
+    }
+
+    try {
+      BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+      return entry.matches(attributes) ? HashCalculator.bytesToHex(entry.checksum) : null;
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Puts the checksum of a file into the index, e.g. after the file was written and its content
+   * was verified. The current size and modification time of the file are recorded with it. Files
+   * that were modified within {@link PathUtils#MODIFICATION_GRACE_MILLIS} are not cached, because
+   * another change within the timestamp granularity of the file system would go unnoticed.
+   * @param file the file, it has to be located below the root
+   * @param checksum the hex encoded SHA-256 checksum of the file
+   * @throws IOException when the attributes of the file cannot be read
+   */
+  public synchronized void put(Path file, String checksum) throws IOException {
+    store(file, checksum, true);
+  }
+
+  /**
+   * Puts the checksum of a file that was just written and verified into the index, even if it was
+   * modified within {@link PathUtils#MODIFICATION_GRACE_MILLIS}. This is only safe for files in a
+   * directory that no other process writes to, e.g. a private staging directory, as a change
+   * within the timestamp granularity of the file system would go unnoticed.
+   * @param file the file, it has to be located below the root
+   * @param checksum the verified hex encoded SHA-256 checksum of the file
+   * @throws IOException when the attributes of the file cannot be read
+   */
+  public synchronized void putVerified(Path file, String checksum) throws IOException {
+    store(file, checksum, false);
+  }
+
+  private void store(Path file, String checksum, boolean graceTime) throws IOException {
+    String key = key(file);
+    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+    long modified = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+    long now = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    long grace = TimeUnit.MILLISECONDS.toNanos(PathUtils.MODIFICATION_GRACE_MILLIS);
+
+    if (graceTime && now - modified < grace) {
+      // hashed again next time
+      dirty |= entries.remove(key) != null;
+      return;
+    }
+
+    byte[] raw = new byte[HashCalculator.SHA256_LENGTH];
+    HashCalculator.hexToBytes(checksum, raw, 0);
+    entries.put(key, new Entry(attributes.size(), modified, raw));
+    dirty = true;
+  }
+
+  /**
+   * Removes a file from the index.
+   * @param file the file, it has to be located below the root
+   */
+  public synchronized void remove(Path file) {
+    dirty |= entries.remove(key(file)) != null;
+  }
+
+  /**
+   * Gets the number of files in the index.
+   * @return the number of files
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Writes the index to its file if it was changed. The file is replaced atomically.
+   * @throws IOException when the index cannot be written
+   */
+  public synchronized void save() throws IOException {
+    if (!dirty) {
+      return;
+    }
+
+    Path parent = indexFile.toAbsolutePath().getParent();
+    Files.createDirectories(parent);
+    Path temp = Files.createTempFile(parent, indexFile.getFileName().toString(), ".tmp");
+    try {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+              Files.newOutputStream(temp)))) {
+        out.writeInt(MAGIC);
+        out.writeByte(FORMAT);
+        out.writeInt(entries.size());
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+          out.writeUTF(e.getKey());
+          out.writeLong(e.getValue().size);
+          out.writeLong(e.getValue().modified);
+          out.write(e.getValue().checksum);
+        }
+      }
+      Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING,
+              StandardCopyOption.ATOMIC_MOVE);
+      dirty = false;
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private void read() throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+            Files.newInputStream(indexFile)))) {
+      if (in.readInt() != MAGIC || in.readByte() != FORMAT) {
+        throw new IOException("Unknown checksum index format");
+      }
+
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        String key = in.readUTF();
+        long size = in.readLong();
+        long modified = in.readLong();
+        byte[] checksum = new byte[HashCalculator.SHA256_LENGTH];
+        in.readFully(checksum);
+        entries.put(key, new Entry(size, modified, checksum));
+      }
+    }
+  }
+
+  private String key(Path file) {
+    Path relative = root.relativize(file.toAbsolutePath().normalize());
+    if (relative.startsWith("..")) {
+      throw new IllegalArgumentException("File '" + file + "' is not located below " + root);
+    }
+    return relative.toString().replace(File.separatorChar, '/');
+  }
+
+  private static final class Entry {
+    private final long size;
+    private final long modified;
+    private final byte[] checksum;
+
+    private Entry(long size, long modified, byte[] checksum) {
+      this.size = size;
+      this.modified = modified;
+      this.checksum = checksum;
+    }
+
+    private boolean matches(BasicFileAttributes attributes) {
+      return attributes.size() == size
+              && attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS) == modified;
+    }
+  }
+}
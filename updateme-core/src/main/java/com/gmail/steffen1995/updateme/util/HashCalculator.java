@@ -3,56 +3,170 @@ package com.gmail.steffen1995.updateme.util;
 import lombok.SneakyThrows;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 /**
  * Utility class for calculation checksums.
+ *
+ * <p>Files are read through a {@link FileChannel} into a direct buffer that is pooled per thread,
+ * large files are memory-mapped region by region. Every thread also reuses its own
+ * {@link MessageDigest}, so hashing many small files does not allocate per file.
  * @author Steffen Schoen
  */
 public class HashCalculator {
+  /**
+   * The length of a SHA-256 digest in bytes.
+   */
+  public static final int SHA256_LENGTH = 32;
+
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  private static final int BUFFER_SIZE = 256 * 1024;
+  private static final long MAPPED_THRESHOLD = 64L * 1024 * 1024;
+  private static final long MAPPED_REGION_SIZE = 256L * 1024 * 1024;
+
+  private static final ThreadLocal<MessageDigest> DIGESTS =
+          ThreadLocal.withInitial(HashCalculator::sha256Digest);
+  private static final ThreadLocal<ByteBuffer> BUFFERS =
+          ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
 
   /**
-   * Calculates the SHA-256 hash of the given file and encodes it in Base64.
+   * Calculates the SHA-256 hash of the given file and encodes it as hexadecimal string.
    * @param file the file to hash
-   * @return the Base64 encoded hash
+   * @return the hex encoded hash
    * @throws IOException when the file cannot be read
    */
-  @SneakyThrows(NoSuchAlgorithmException.class)
   public static String sha256(File file) throws IOException {
-    if (file.isDirectory()) {
+    return bytesToHex(sha256Bytes(file));
+  }
+
+  /**
+   * Calculates the SHA-256 hash of the given file and writes it into a caller provided array.
+   * This does not allocate any memory.
+   * @param file the file to hash
+   * @param out the array the raw hash is written to
+   * @param offset the offset in {@code out}
+   * @throws IOException when the file cannot be read
+   */
+  public static void sha256(Path file, byte[] out, int offset) throws IOException {
+    MessageDigest digest = DIGESTS.get();
+    digest.reset();
+    update(digest, file);
+
+    try {
+      digest.digest(out, offset, SHA256_LENGTH);
+    } catch (DigestException e) {
+      throw new IllegalArgumentException("The output array is too small", e);
+    }
+  }
+
+  /**
+   * Calculates the SHA-256 hash of the given file.
+   * @param file the file to hash
+   * @return the raw hash
+   * @throws IOException when the file cannot be read
+   */
+  public static byte[] sha256Bytes(File file) throws IOException {
+    byte[] hash = new byte[SHA256_LENGTH];
+    sha256(file.toPath(), hash, 0);
+    return hash;
+  }
+
+  /**
+   * Feeds the content of a file into a digest.
+   * @param digest the digest to update
+   * @param file the file to read
+   * @throws IOException when the file cannot be read
+   */
+  public static void update(MessageDigest digest, Path file) throws IOException {
+    if (file.toFile().isDirectory()) {
       throw new IllegalArgumentException("The file must not be a directory");
     }
 
-    try (InputStream inputStream = new FileInputStream(file)) {
-      MessageDigest digest = MessageDigest.getInstance("SHA-256");
-      byte[] buffer = new byte[4096];
-      int length;
-      while ((length = inputStream.read(buffer)) > 0) {
-        digest.update(buffer, 0, length);
-      }
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
 
-      return bytesToHex(digest.digest());
+      if (size >= MAPPED_THRESHOLD) {
+        for (long position = 0; position < size; position += MAPPED_REGION_SIZE) {
+          long length = Math.min(MAPPED_REGION_SIZE, size - position);
+          digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+        }
+      } else {
+        ByteBuffer buffer = BUFFERS.get();
+        buffer.clear();
+        while (channel.read(buffer) >= 0) {
+          buffer.flip();
+          digest.update(buffer);
+          buffer.clear();
+        }
+      }
     }
   }
 
+  /**
+   * Creates a new SHA-256 {@link MessageDigest}.
+   * @return the digest
+   */
+  @SneakyThrows(NoSuchAlgorithmException.class)
+  public static MessageDigest sha256Digest() {
+    return MessageDigest.getInstance("SHA-256");
+  }
+
   /**
    * Converts a byte array into its hexadecimal representation.
    * @param bytes the bytes to convert
    * @return a string that contains the hexadecimal representation of the byte array
    */
-  private static String bytesToHex(byte[] bytes) {
-    char[] hexArray = "0123456789abcdef".toCharArray();
-
+  public static String bytesToHex(byte[] bytes) {
     char[] hexChars = new char[bytes.length * 2];
-    for (int j = 0; j < bytes.length; j++) {
-      int v = bytes[j] & 0xFF;
-      hexChars[j * 2] = hexArray[v >>> 4];
-      hexChars[j * 2 + 1] = hexArray[v & 0x0F];
-    }
+    bytesToHex(bytes, 0, bytes.length, hexChars, 0);
     return new String(hexChars);
   }
+
+  /**
+   * Writes the hexadecimal representation of a byte array into a caller provided array. This does
+   * not allocate any memory.
+   * @param bytes the bytes to convert
+   * @param offset the offset of the first byte to convert
+   * @param length the number of bytes to convert
+   * @param out the array the characters are written to, it needs room for {@code 2 * length}
+   *            characters
+   * @param outOffset the offset in {@code out}
+   */
+  public static void bytesToHex(byte[] bytes, int offset, int length, char[] out, int outOffset) {
+    for (int j = 0; j < length; j++) {
+      int v = bytes[offset + j] & 0xFF;
+      out[outOffset + j * 2] = HEX_DIGITS[v >>> 4];
+      out[outOffset + j * 2 + 1] = HEX_DIGITS[v & 0x0F];
+    }
+  }
+
+  /**
+   * Parses the hexadecimal representation of a byte array into a caller provided array.
+   * @param hex the hexadecimal string
+   * @param out the array the bytes are written to
+   * @param offset the offset in {@code out}
+   * @throws IllegalArgumentException when the string is not a valid hexadecimal string
+   */
+  public static void hexToBytes(CharSequence hex, byte[] out, int offset) {
+    if (hex.length() % 2 != 0) {
+      throw new IllegalArgumentException("Invalid hex string");
+    }
+
+    for (int i = 0; i < hex.length() / 2; i++) {
+      int high = Character.digit(hex.charAt(i * 2), 16);
+      int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+      if (high < 0 || low < 0) {
+        throw new IllegalArgumentException("Invalid hex string");
+      }
+      out[offset + i] = (byte) ((high << 4) | low);
+    }
+  }
 }
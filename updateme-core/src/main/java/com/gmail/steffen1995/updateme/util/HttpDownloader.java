@@ -0,0 +1,453 @@
+package com.gmail.steffen1995.updateme.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+
+/**
+ * Downloads files over HTTP, large files are split into segments that are downloaded in parallel
+ * with HTTP range requests.
+ *
+ * <p>A download is written to a {@code .part} file next to the target and moved into place once it
+ * is complete. The completed segments are recorded in a {@code .state} file, so an interrupted
+ * download is resumed by the next call as long as the server reports the same length and
+ * validator (a strong {@code ETag} or {@code Last-Modified}). Range requests carry an
+ * {@code If-Range} header, a file that changed on the server in the meantime is downloaded from
+ * scratch. Weak ETags cannot be used with {@code If-Range}, files without a usable validator are
+ * downloaded in one piece. Failed segments are retried a few times before the download fails.
+ * A segment is only recorded as completed once its data was written to the storage device.
+ *
+ * <p>Connections are kept alive by the {@link HttpURLConnection} connection cache, every response
+ * body is read completely and closed so that its connection can be reused.
+ * @author Steffen Schoen
+ */
+public class HttpDownloader {
+  /**
+   * The default size of the segments of a download.
+   */
+  public static final long DEFAULT_SEGMENT_SIZE = 8 * 1024 * 1024;
+
+  private static final String PART_SUFFIX = ".part";
+  private static final String STATE_SUFFIX = ".state";
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int MAX_ATTEMPTS = 3;
+  private static final int TIMEOUT_MILLIS = 30_000;
+
+  private final ExecutorService pool;
+  private final long segmentSize;
+
+  /**
+   * Checks a completely downloaded file before it is moved into place.
+   */
+  @FunctionalInterface
+  public interface Verifier {
+    /**
+     * Checks a downloaded file.
+     * @param file the downloaded file
+     * @throws IOException when the file is invalid
+     */
+    void verify(Path file) throws IOException;
+  }
+
+  /**
+   * Constructor.
+   * @param parallelism the maximum number of segments that are downloaded at the same time
+   * @param segmentSize the size of the segments of a download
+   */
+  public HttpDownloader(int parallelism, long segmentSize) {
+    if (parallelism < 1 || segmentSize < 1) {
+      throw new IllegalArgumentException("Parallelism and segment size have to be positive");
+    }
+    this.segmentSize = segmentSize;
+
+    AtomicInteger threadCount = new AtomicInteger();
+    ThreadFactory threadFactory = task -> {
+      Thread thread = new Thread(task, "updateme-download-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(parallelism, parallelism, 60,
+            TimeUnit.SECONDS, new LinkedBlockingQueue<>(), threadFactory);
+    // idle threads are released again
+    executor.allowCoreThreadTimeOut(true);
+    this.pool = executor;
+  }
+
+  /**
+   * Downloads a file. Nothing is downloaded if the target exists already.
+   * @param url the URL of the file
+   * @param target the file to write
+   * @param progress receives the number of bytes of every downloaded chunk, may be {@code null}
+   * @param total receives the total number of bytes once it is known, may be {@code null}
+   * @throws FileNotFoundException when the server does not know the file
+   * @throws IOException when the file cannot be downloaded
+   */
+  public void download(URL url, Path target, LongConsumer progress, LongConsumer total)
+          throws IOException {
+    download(url, target, progress, total, null);
+  }
+
+  /**
+   * Downloads a file and verifies it before it is moved into place, so that the target always
+   * contains a verified file. Nothing is downloaded if the target exists already. A download
+   * that fails the verification is deleted and started from scratch by the next call.
+   * @param url the URL of the file
+   * @param target the file to write
+   * @param progress receives the number of bytes of every downloaded chunk, may be {@code null}
+   * @param total receives the total number of bytes once it is known, may be {@code null}
+   * @param verifier checks the downloaded file, may be {@code null}
+   * @throws FileNotFoundException when the server does not know the file
+   * @throws IOException when the file cannot be downloaded or is invalid
+   */
+  public void download(URL url, Path target, LongConsumer progress, LongConsumer total,
+                       Verifier verifier) throws IOException {
+    if (Files.exists(target)) {
+      return;
+    }
+    Files.createDirectories(target.toAbsolutePath().getParent());
+
+    HttpURLConnection head = open(url, "HEAD");
+    final long length;
+    final boolean ranges;
+    final String validator;
+    try {
+      check(head, HttpURLConnection.HTTP_OK);
+      length = head.getContentLengthLong();
+      ranges = "bytes".equalsIgnoreCase(head.getHeaderField("Accept-Ranges"));
+      validator = validator(head);
+    } finally {
+      release(head);
+    }
+
+    if (total != null) {
+      total.accept(Math.max(length, 0));
+    }
+    Path part = target.resolveSibling(target.getFileName() + PART_SUFFIX);
+    Path state = target.resolveSibling(target.getFileName() + PART_SUFFIX + STATE_SUFFIX);
+
+    if (ranges && length > 0 && validator != null) {
+      downloadSegments(url, part, state, length, validator, progress);
+    } else {
+      downloadWhole(url, part, progress);
+    }
+
+    if (verifier != null) {
+      try {
+        verifier.verify(part);
+      } catch (IOException e) {
+        Files.deleteIfExists(state);
+        Files.deleteIfExists(part);
+        throw e;
+      }
+    }
+    Files.move(part, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    Files.deleteIfExists(state);
+  }
+
+  private void downloadSegments(URL url, Path part, Path state, long length, String validator,
+                                LongConsumer progress) throws IOException {
+    int segments = (int) ((length + segmentSize - 1) / segmentSize);
+    BitSet completed = readState(state, length, validator);
+    if (completed == null) {
+      completed = new BitSet(segments);
+      Files.deleteIfExists(part);
+    }
+
+    try (FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE)) {
+      List<Future<?>> pending = new ArrayList<>();
+      AtomicBoolean failed = new AtomicBoolean();
+      for (int i = 0; i < segments; i++) {
+        long start = i * segmentSize;
+        long end = Math.min(length, start + segmentSize) - 1;
+        if (completed.get(i)) {
+          // downloaded before the interruption
+          if (progress != null) {
+            progress.accept(end - start + 1);
+          }
+          continue;
+        }
+
+        final int segment = i;
+        final BitSet done = completed;
+        pending.add(pool.submit(() -> {
+          if (failed.get()) {
+            // another segment failed, the download is aborted
+            return null;
+          }
+          try {
+            downloadSegment(url, channel, start, end, validator, progress);
+          } catch (IOException | RuntimeException e) {
+            failed.set(true);
+            throw e;
+          }
+          synchronized (done) {
+            // the state must never claim data that is lost on a crash
+            channel.force(false);
+            done.set(segment);
+            writeState(state, length, validator, done);
+          }
+          return null;
+        }));
+      }
+
+      await(pending, failed);
+    } catch (FileChangedException e) {
+      // start from scratch next time
+      Files.deleteIfExists(state);
+      Files.deleteIfExists(part);
+      throw e;
+    }
+  }
+
+  private void downloadSegment(URL url, FileChannel channel, long start, long end,
+                               String validator, LongConsumer progress) throws IOException {
+    IOException failure = null;
+    for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+      long written = 0;
+      boolean consumed = false;
+      HttpURLConnection connection = open(url, "GET");
+      try {
+        connection.setRequestProperty("Range", "bytes=" + start + "-" + end);
+        connection.setRequestProperty("If-Range", validator);
+        if (connection.getResponseCode() == HttpURLConnection.HTTP_OK) {
+          throw new FileChangedException("The file changed on the server while downloading");
+        }
+        check(connection, HttpURLConnection.HTTP_PARTIAL);
+
+        try (InputStream in = connection.getInputStream()) {
+          byte[] buffer = new byte[BUFFER_SIZE];
+          long position = start;
+          int read;
+          while (position <= end && (read = in.read(buffer)) >= 0) {
+            read = (int) Math.min(read, end - position + 1);
+            ByteBuffer data = ByteBuffer.wrap(buffer, 0, read);
+            while (data.hasRemaining()) {
+              position += channel.write(data, position);
+            }
+            written += read;
+            if (progress != null) {
+              progress.accept(read);
+            }
+          }
+          if (position <= end) {
+            throw new IOException("Connection closed after " + (position - start) + " bytes");
+          }
+        }
+        consumed = true;
+        return;
+      } catch (FileChangedException | FileNotFoundException e) {
+        throw e;
+      } catch (IOException e) {
+        // retried from the start of the segment, the progress is reported again
+        if (progress != null) {
+          progress.accept(-written);
+        }
+        failure = e;
+      } finally {
+        if (!consumed) {
+          connection.disconnect();
+        }
+      }
+    }
+    throw failure;
+  }
+
+  private static void downloadWhole(URL url, Path part, LongConsumer progress)
+          throws IOException {
+    HttpURLConnection connection = open(url, "GET");
+    boolean consumed = false;
+    try {
+      check(connection, HttpURLConnection.HTTP_OK);
+      try (InputStream in = connection.getInputStream();
+           OutputStream out = Files.newOutputStream(part)) {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+          out.write(buffer, 0, read);
+          if (progress != null) {
+            progress.accept(read);
+          }
+        }
+      }
+      consumed = true;
+    } finally {
+      if (!consumed) {
+        connection.disconnect();
+      }
+    }
+  }
+
+  /**
+   * Gets the validator of a response that can be sent with {@code If-Range}. Servers never answer
+   * a range request with a weak ETag as validator with a partial response.
+   * @param connection the connection of the response
+   * @return the strong ETag, the last modification date or {@code null} if there is neither
+   */
+  private static String validator(HttpURLConnection connection) {
+    String etag = connection.getHeaderField("ETag");
+    if (etag != null && !etag.startsWith("W/")) {
+      return etag;
+    }
+    return connection.getHeaderField("Last-Modified");
+  }
+
+  /**
+   * Opens a connection to a URL.
+   * @param url the URL to connect to
+   * @param method the request method
+   * @return the connection
+   * @throws IOException when the connection cannot be opened
+   */
+  public static HttpURLConnection open(URL url, String method) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    connection.setRequestMethod(method);
+    connection.setConnectTimeout(TIMEOUT_MILLIS);
+    connection.setReadTimeout(TIMEOUT_MILLIS);
+    return connection;
+  }
+
+  /**
+   * Checks the status of a response.
+   * @param connection the connection of the response
+   * @param expected the expected status code
+   * @throws FileNotFoundException when the server answered with 404
+   * @throws IOException when the server answered with another unexpected status
+   */
+  public static void check(HttpURLConnection connection, int expected) throws IOException {
+    int status = connection.getResponseCode();
+    if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+      throw new FileNotFoundException(connection.getURL().toString());
+    }
+    if (status != expected) {
+      throw new IOException("Unexpected response " + status + " from " + connection.getURL());
+    }
+  }
+
+  /**
+   * Reads the rest of a response whose body was not read yet and closes it, so that its
+   * connection can be reused.
+   * @param connection the connection to release
+   */
+  public static void release(HttpURLConnection connection) {
+    try {
+      InputStream in = connection.getResponseCode() >= 400
+              ? connection.getErrorStream() : connection.getInputStream();
+      if (in != null) {
+        try (InputStream body = in) {
+          byte[] buffer = new byte[BUFFER_SIZE];
+          while (body.read(buffer) >= 0) {
+            // drain
+          }
+        }
+      }
+    } catch (IOException e) {
+      // the connection is not reused
+      connection.disconnect();
+    }
+  }
+
+  /**
+   * Waits for all segments, as segments that are still running write to the channel that is
+   * closed afterwards. When the thread is interrupted, segments that did not start yet are skipped.
+   */
+  private static void await(List<Future<?>> pending, AtomicBoolean failed) throws IOException {
+    IOException failure = null;
+    boolean interrupted = false;
+    for (Future<?> future : pending) {
+      while (true) {
+        try {
+          future.get();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+          failed.set(true);
+        } catch (ExecutionException e) {
+          if (failure == null) {
+            failure = e.getCause() instanceof IOException
+                    ? (IOException) e.getCause() : new IOException("Download failed", e.getCause());
+          }
+          break;
+        }
+      }
+    }
+
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+      if (failure == null) {
+        failure = new IOException("Interrupted while downloading");
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private static BitSet readState(Path state, long length, String validator) {
+    if (!Files.exists(state)) {
+      return null;
+    }
+
+    try (DataInputStream in = new DataInputStream(Files.newInputStream(state))) {
+      long stateLength = in.readLong();
+      String stateValidator = in.readUTF();
+      byte[] bits = new byte[in.readInt()];
+      in.readFully(bits);
+      if (stateLength != length || validator == null || !validator.equals(stateValidator)) {
+        return null;
+      }
+      return BitSet.valueOf(bits);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private static void writeState(Path state, long length, String validator, BitSet completed)
+          throws IOException {
+    Path temp = state.resolveSibling(state.getFileName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temp))) {
+      byte[] bits = completed.toByteArray();
+      out.writeLong(length);
+      out.writeUTF(validator != null ? validator : "");
+      out.writeInt(bits.length);
+      out.write(bits);
+    }
+    Files.move(temp, state, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Thrown when the server delivers a different version of the file than the one that is being
+   * downloaded.
+   */
+  private static class FileChangedException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    FileChangedException(String message) {
+      super(message);
+    }
+  }
+}
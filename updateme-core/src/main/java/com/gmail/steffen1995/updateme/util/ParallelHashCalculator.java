@@ -0,0 +1,125 @@
+package com.gmail.steffen1995.updateme.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Calculates the checksums of many files in parallel on a {@link ForkJoinPool}. Every worker
+ * thread reuses its own digest and read buffer, see {@link HashCalculator}.
+ * @author Steffen Schoen
+ */
+public class ParallelHashCalculator implements AutoCloseable {
+  private static final ParallelHashCalculator COMMON =
+          new ParallelHashCalculator(ForkJoinPool.commonPool(), false);
+
+  /**
+   * The number of files below which a task is not split any further.
+   */
+  private static final int SEQUENTIAL_THRESHOLD = 8;
+
+  private final ForkJoinPool pool;
+  private final boolean ownsPool;
+
+  /**
+   * Constructor.
+   * @param parallelism the number of files that are hashed concurrently
+   */
+  public ParallelHashCalculator(int parallelism) {
+    this(new ForkJoinPool(parallelism), true);
+  }
+
+  /**
+   * Constructor.
+   * @param pool the pool that runs the hashing tasks, it is not shut down by {@link #close()}
+   */
+  public ParallelHashCalculator(ForkJoinPool pool) {
+    this(pool, false);
+  }
+
+  private ParallelHashCalculator(ForkJoinPool pool, boolean ownsPool) {
+    this.pool = pool;
+    this.ownsPool = ownsPool;
+  }
+
+  /**
+   * Gets a calculator that runs on the common {@link ForkJoinPool}.
+   * @return the shared calculator
+   */
+  public static ParallelHashCalculator common() {
+    return COMMON;
+  }
+
+  /**
+   * Calculates the SHA-256 checksums of the given files.
+   * @param files the files to hash
+   * @return the hex encoded checksums by file, in the iteration order of {@code files}
+   * @throws IOException when one of the files cannot be read
+   */
+  public Map<Path, String> sha256(Collection<Path> files) throws IOException {
+    List<Path> paths = new ArrayList<>(files);
+    String[] checksums = new String[paths.size()];
+
+    try {
+      pool.invoke(new HashTask(paths, checksums, 0, paths.size()));
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+
+    Map<Path, String> result = new LinkedHashMap<>();
+    for (int i = 0; i < checksums.length; i++) {
+      result.put(paths.get(i), checksums[i]);
+    }
+    return result;
+  }
+
+  /**
+   * Shuts down the pool if it was created by this calculator.
+   */
+  @Override
+  public void close() {
+    if (ownsPool) {
+      pool.shutdown();
+    }
+  }
+
+  private static final class HashTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final List<Path> paths;
+    private final String[] checksums;
+    private final int from;
+    private final int to;
+
+    HashTask(List<Path> paths, String[] checksums, int from, int to) {
+      this.paths = paths;
+      this.checksums = checksums;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= SEQUENTIAL_THRESHOLD) {
+        for (int i = from; i < to; i++) {
+          try {
+            checksums[i] = HashCalculator.sha256(paths.get(i).toFile());
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        }
+      } else {
+        int middle = (from + to) >>> 1;
+        invokeAll(new HashTask(paths, checksums, from, middle),
+                new HashTask(paths, checksums, middle, to));
+      }
+    }
+  }
+}
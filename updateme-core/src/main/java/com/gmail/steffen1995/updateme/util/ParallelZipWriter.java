@@ -0,0 +1,549 @@
+package com.gmail.steffen1995.updateme.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes zip files whose entries are compressed on a thread pool.
+ *
+ * <p>The content of every entry is split into blocks of a fixed size. Each block is deflated
+ * independently with the tail of its predecessor as preset dictionary and is terminated with a
+ * sync flush, so the compressed blocks concatenate into one valid deflate stream. Blocks of
+ * consecutive entries are compressed at the same time, which keeps all threads busy for large
+ * files as well as for many small files.
+ *
+ * <p>Entries can also be stored uncompressed, their checksum is then calculated on the thread
+ * pool and their content is copied into the zip file as is.
+ *
+ * <p>The compressed blocks are written in the order they were added, so the resulting file does
+ * not depend on the scheduling of the threads. Sizes and checksums of deflated entries are written
+ * in data descriptors, Zip64 records are used where the limits of the classic zip format are
+ * exceeded.
+ * @author Steffen Schoen
+ */
+public class ParallelZipWriter implements Closeable {
+  /**
+   * The default size of the blocks that are compressed independently.
+   */
+  public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+  private static final int DICTIONARY_SIZE = 32 * 1024;
+  private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+  private static final int ZIP64_ENTRY_LIMIT = 0xFFFF;
+
+  private static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+  private static final int FLAG_UTF8 = 1 << 11;
+  private static final int METHOD_STORED = 0;
+  private static final int METHOD_DEFLATED = 8;
+  private static final int VERSION_DEFLATE = 20;
+  private static final int VERSION_ZIP64 = 45;
+
+  private final OutputStream out;
+  private final ExecutorService executor;
+  private final int blockSize;
+  private final int level;
+  private final int maxPendingBlocks;
+
+  private final Deque<Block> pending = new ArrayDeque<>();
+  private final List<Entry> entries = new ArrayList<>();
+  private long position;
+  private boolean closed;
+  private LongConsumer progress;
+
+  /**
+   * Constructor.
+   * @param out the stream the zip file is written to, it is closed together with the writer
+   * @param executor the executor the blocks are compressed on
+   * @param parallelism the number of blocks that are compressed at the same time
+   * @param blockSize the size of the blocks that are compressed independently
+   * @param level the deflate compression level
+   */
+  public ParallelZipWriter(OutputStream out, ExecutorService executor, int parallelism,
+                           int blockSize, int level) {
+    if (blockSize <= DICTIONARY_SIZE) {
+      throw new IllegalArgumentException("Block size must be larger than " + DICTIONARY_SIZE);
+    }
+
+    this.out = new BufferedOutputStream(out, 64 * 1024);
+    this.executor = executor;
+    this.blockSize = blockSize;
+    this.level = level;
+    // allow every thread to work on a block while the next ones are read
+    this.maxPendingBlocks = Math.max(parallelism, 1) * 2;
+  }
+
+  /**
+   * Sets a consumer that receives the number of bytes of every block that was read.
+   * @param progress the consumer, may be {@code null}
+   */
+  public void setProgress(LongConsumer progress) {
+    this.progress = progress;
+  }
+
+  /**
+   * Adds an entry with the content of a file.
+   * @param name the name of the entry
+   * @param file the file to add
+   * @throws IOException when the file cannot be read or the zip file cannot be written
+   */
+  public void putFile(String name, Path file) throws IOException {
+    putFile(name, file, false);
+  }
+
+  /**
+   * Adds an entry with the content of a file.
+   * @param name the name of the entry
+   * @param file the file to add
+   * @param stored whether the file is stored uncompressed instead of deflated
+   * @throws IOException when the file cannot be read or the zip file cannot be written
+   */
+  public void putFile(String name, Path file, boolean stored) throws IOException {
+    long lastModified = Files.getLastModifiedTime(file).toMillis();
+    if (!stored) {
+      try (InputStream in = Files.newInputStream(file)) {
+        put(name, in, lastModified);
+      }
+      return;
+    }
+
+    checkOpen();
+    Entry entry = new Entry(name, lastModified);
+    entry.stored = true;
+    entry.size = Files.size(file);
+    entry.compressedSize = entry.size;
+
+    Future<Long> crc = executor.submit(() -> crc32(file));
+    pending.addLast(new Block(entry, crc, file, true, true));
+    drain();
+  }
+
+  /**
+   * Adds an entry with the given content.
+   * @param name the name of the entry
+   * @param content the content of the entry
+   * @param lastModified the modification time of the entry in milliseconds
+   * @throws IOException when the zip file cannot be written
+   */
+  public void putBytes(String name, byte[] content, long lastModified) throws IOException {
+    put(name, new ByteArrayInputStream(content), lastModified);
+  }
+
+  private void put(String name, InputStream in, long lastModified) throws IOException {
+    Entry entry = new Entry(name, lastModified);
+    CRC32 crc = new CRC32();
+
+    byte[] previous = null;
+    int previousLength = 0;
+    boolean first = true;
+    while (true) {
+      byte[] block = new byte[blockSize];
+      int length = readBlock(in, block);
+      crc.update(block, 0, length);
+      entry.size += length;
+      if (progress != null) {
+        progress.accept(length);
+      }
+
+      boolean last = length < blockSize;
+      if (last) {
+        entry.crc = crc.getValue();
+        if (length < blockSize / 2) {
+          // do not keep a whole block alive for the tail of a file
+          block = Arrays.copyOf(block, length);
+        }
+      }
+      submit(entry, block, length, dictionary(previous, previousLength), first, last);
+
+      if (last) {
+        return;
+      }
+      first = false;
+      previous = block;
+      previousLength = length;
+    }
+  }
+
+  private void submit(Entry entry, byte[] data, int length, byte[] dictionary, boolean first,
+                      boolean last) throws IOException {
+    checkOpen();
+
+    Future<byte[]> compressed = executor.submit(() -> deflate(data, length, dictionary, last));
+    pending.addLast(new Block(entry, compressed, null, first, last));
+    drain();
+  }
+
+  private void drain() throws IOException {
+    while (pending.size() > maxPendingBlocks) {
+      writeBlock(pending.removeFirst());
+    }
+  }
+
+  private byte[] deflate(byte[] data, int length, byte[] dictionary, boolean last) {
+    Deflater deflater = new Deflater(level, true);
+    try {
+      if (dictionary != null) {
+        deflater.setDictionary(dictionary);
+      }
+      deflater.setInput(data, 0, length);
+
+      ByteArrayOutputStream result = new ByteArrayOutputStream(Math.max(length / 2, 64));
+      byte[] buffer = new byte[16 * 1024];
+      if (last) {
+        deflater.finish();
+        while (!deflater.finished()) {
+          result.write(buffer, 0, deflater.deflate(buffer));
+        }
+      } else {
+        // a sync flush ends the block on a byte boundary without ending the deflate stream
+        int written;
+        do {
+          written = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+          result.write(buffer, 0, written);
+        } while (written == buffer.length);
+      }
+      return result.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private void writeBlock(Block block) throws IOException {
+    Object result;
+    try {
+      result = block.result.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while compressing");
+    } catch (ExecutionException e) {
+      throw new IOException("Could not compress '" + block.entry.name + "'", e.getCause());
+    }
+
+    Entry entry = block.entry;
+    if (block.storedFile != null) {
+      entry.crc = (Long) result;
+      writeStored(entry, block.storedFile);
+      entries.add(entry);
+      return;
+    }
+
+    byte[] compressed = (byte[]) result;
+    if (block.first) {
+      writeLocalHeader(entry);
+    }
+
+    out.write(compressed);
+    position += compressed.length;
+    entry.compressedSize += compressed.length;
+
+    if (block.last) {
+      writeDataDescriptor(entry);
+      entries.add(entry);
+    }
+  }
+
+  private void writeLocalHeader(Entry entry) throws IOException {
+    entry.offset = position;
+    final byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+
+    // crc and sizes follow in the data descriptor
+    writeInt(0x04034b50);
+    writeShort(VERSION_DEFLATE);
+    writeShort(FLAG_DATA_DESCRIPTOR | FLAG_UTF8);
+    writeShort(METHOD_DEFLATED);
+    writeInt((int) dosTime(entry.lastModified));
+    writeInt(0);
+    writeInt(0);
+    writeInt(0);
+    writeShort(name.length);
+    writeShort(0);
+    write(name);
+  }
+
+  private void writeStored(Entry entry, Path file) throws IOException {
+    entry.offset = position;
+    final byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+    boolean zip64 = entry.size >= ZIP64_LIMIT;
+
+    writeInt(0x04034b50);
+    writeShort(zip64 ? VERSION_ZIP64 : VERSION_DEFLATE);
+    writeShort(FLAG_UTF8);
+    writeShort(METHOD_STORED);
+    writeInt((int) dosTime(entry.lastModified));
+    writeInt((int) entry.crc);
+    writeInt(zip64 ? (int) ZIP64_LIMIT : (int) entry.size);
+    writeInt(zip64 ? (int) ZIP64_LIMIT : (int) entry.size);
+    writeShort(name.length);
+    writeShort(zip64 ? 20 : 0);
+    write(name);
+    if (zip64) {
+      writeShort(0x0001);
+      writeShort(16);
+      writeLong(entry.size);
+      writeLong(entry.size);
+    }
+
+    long copied = 0;
+    byte[] buffer = new byte[64 * 1024];
+    try (InputStream in = Files.newInputStream(file)) {
+      int length;
+      while ((length = in.read(buffer)) >= 0) {
+        out.write(buffer, 0, length);
+        copied += length;
+        if (progress != null) {
+          progress.accept(length);
+        }
+      }
+    }
+    position += copied;
+
+    if (copied != entry.size) {
+      throw new IOException("File '" + file + "' changed while it was added");
+    }
+  }
+
+  private void writeDataDescriptor(Entry entry) throws IOException {
+    writeInt(0x08074b50);
+    writeInt((int) entry.crc);
+    // like ZipOutputStream, the sizes decide whether the descriptor uses Zip64 fields
+    if (entry.size >= ZIP64_LIMIT || entry.compressedSize >= ZIP64_LIMIT) {
+      writeLong(entry.compressedSize);
+      writeLong(entry.size);
+    } else {
+      writeInt((int) entry.compressedSize);
+      writeInt((int) entry.size);
+    }
+  }
+
+  private void writeCentralDirectory() throws IOException {
+    long start = position;
+
+    for (Entry entry : entries) {
+      final byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+      boolean sizeOverflow = entry.size >= ZIP64_LIMIT || entry.compressedSize >= ZIP64_LIMIT;
+      boolean offsetOverflow = entry.offset >= ZIP64_LIMIT;
+      int extraLength = (sizeOverflow ? 16 : 0) + (offsetOverflow ? 8 : 0);
+      int version = extraLength > 0 ? VERSION_ZIP64 : VERSION_DEFLATE;
+
+      writeInt(0x02014b50);
+      writeShort(version);
+      writeShort(version);
+      writeShort(entry.stored ? FLAG_UTF8 : FLAG_DATA_DESCRIPTOR | FLAG_UTF8);
+      writeShort(entry.stored ? METHOD_STORED : METHOD_DEFLATED);
+      writeInt((int) dosTime(entry.lastModified));
+      writeInt((int) entry.crc);
+      writeInt(sizeOverflow ? (int) ZIP64_LIMIT : (int) entry.compressedSize);
+      writeInt(sizeOverflow ? (int) ZIP64_LIMIT : (int) entry.size);
+      writeShort(name.length);
+      writeShort(extraLength > 0 ? extraLength + 4 : 0);
+      writeShort(0);
+      writeShort(0);
+      writeShort(0);
+      writeInt(0);
+      writeInt(offsetOverflow ? (int) ZIP64_LIMIT : (int) entry.offset);
+      write(name);
+
+      if (extraLength > 0) {
+        writeShort(0x0001);
+        writeShort(extraLength);
+        if (sizeOverflow) {
+          writeLong(entry.size);
+          writeLong(entry.compressedSize);
+        }
+        if (offsetOverflow) {
+          writeLong(entry.offset);
+        }
+      }
+    }
+
+    long size = position - start;
+    if (entries.size() >= ZIP64_ENTRY_LIMIT || start >= ZIP64_LIMIT || size >= ZIP64_LIMIT) {
+      final long zip64End = position;
+
+      // Zip64 end of central directory record
+      writeInt(0x06064b50);
+      writeLong(44);
+      writeShort(VERSION_ZIP64);
+      writeShort(VERSION_ZIP64);
+      writeInt(0);
+      writeInt(0);
+      writeLong(entries.size());
+      writeLong(entries.size());
+      writeLong(size);
+      writeLong(start);
+
+      // Zip64 end of central directory locator
+      writeInt(0x07064b50);
+      writeInt(0);
+      writeLong(zip64End);
+      writeInt(1);
+    }
+
+    writeInt(0x06054b50);
+    writeShort(0);
+    writeShort(0);
+    writeShort(Math.min(entries.size(), ZIP64_ENTRY_LIMIT));
+    writeShort(Math.min(entries.size(), ZIP64_ENTRY_LIMIT));
+    writeInt((int) Math.min(size, ZIP64_LIMIT));
+    writeInt((int) Math.min(start, ZIP64_LIMIT));
+    writeShort(0);
+  }
+
+  /**
+   * Writes all pending blocks and the central directory and closes the underlying stream.
+   * @throws IOException when the zip file cannot be written
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+
+    try {
+      while (!pending.isEmpty()) {
+        writeBlock(pending.removeFirst());
+      }
+      writeCentralDirectory();
+      out.flush();
+    } finally {
+      abort();
+      out.close();
+    }
+  }
+
+  /**
+   * Cancels the compression of all pending blocks after a failure.
+   */
+  private void abort() {
+    for (Block block : pending) {
+      block.result.cancel(true);
+    }
+    pending.clear();
+  }
+
+  private void checkOpen() throws IOException {
+    if (closed) {
+      throw new IOException("Zip writer is closed");
+    }
+  }
+
+  private static byte[] dictionary(byte[] previous, int previousLength) {
+    if (previous == null) {
+      return null;
+    }
+
+    int length = Math.min(previousLength, DICTIONARY_SIZE);
+    byte[] dictionary = new byte[length];
+    System.arraycopy(previous, previousLength - length, dictionary, 0, length);
+    return dictionary;
+  }
+
+  private static long crc32(Path file) throws IOException {
+    CRC32 crc = new CRC32();
+    byte[] buffer = new byte[64 * 1024];
+    try (InputStream in = Files.newInputStream(file)) {
+      int length;
+      while ((length = in.read(buffer)) >= 0) {
+        crc.update(buffer, 0, length);
+      }
+    }
+    return crc.getValue();
+  }
+
+  private static int readBlock(InputStream in, byte[] block) throws IOException {
+    int length = 0;
+    int read;
+    while (length < block.length && (read = in.read(block, length, block.length - length)) > 0) {
+      length += read;
+    }
+    return length;
+  }
+
+  private static long dosTime(long millis) {
+    LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis),
+            ZoneId.systemDefault());
+    if (time.getYear() < 1980) {
+      return (1 << 21) | (1 << 16);
+    }
+
+    return (long) (time.getYear() - 1980) << 25 | time.getMonthValue() << 21
+            | time.getDayOfMonth() << 16 | time.getHour() << 11 | time.getMinute() << 5
+            | time.getSecond() >> 1;
+  }
+
+  private void write(byte[] bytes) throws IOException {
+    out.write(bytes);
+    position += bytes.length;
+  }
+
+  private void writeShort(int value) throws IOException {
+    out.write(value & 0xFF);
+    out.write((value >>> 8) & 0xFF);
+    position += 2;
+  }
+
+  private void writeInt(int value) throws IOException {
+    writeShort(value & 0xFFFF);
+    writeShort((value >>> 16) & 0xFFFF);
+  }
+
+  private void writeLong(long value) throws IOException {
+    writeInt((int) value);
+    writeInt((int) (value >>> 32));
+  }
+
+  private static class Entry {
+    private final String name;
+    private final long lastModified;
+    private boolean stored;
+    private long crc;
+    private long size;
+    private long compressedSize;
+    private long offset;
+
+    Entry(String name, long lastModified) {
+      this.name = name;
+      this.lastModified = lastModified;
+    }
+  }
+
+  private static class Block {
+    private final Entry entry;
+    // the compressed block or, for stored entries, the checksum of the file
+    private final Future<?> result;
+    private final Path storedFile;
+    private final boolean first;
+    private final boolean last;
+
+    Block(Entry entry, Future<?> result, Path storedFile, boolean first, boolean last) {
+      this.entry = entry;
+      this.result = result;
+      this.storedFile = storedFile;
+      this.first = first;
+      this.last = last;
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package com.gmail.steffen1995.updateme.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.LongConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Utility methods for working with paths.
+ * @author Steffen Schoen
+ */
+public class PathUtils {
+  /**
+   * Modification times that are this close to the current time are not trusted, because another
+   * change within the timestamp granularity of the file system would go unnoticed.
+   */
+  public static final long MODIFICATION_GRACE_MILLIS = 2000;
+
+  private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * Deletes a file or a directory including all of its content.
+   * @param path the file or directory to delete
+   * @throws IOException when something cannot be deleted
+   */
+  public static void deleteRecursively(Path path) throws IOException {
+    if (!Files.exists(path)) {
+      return;
+    }
+
+    List<Path> paths;
+    try (Stream<Path> files = Files.walk(path)) {
+      paths = files.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+    }
+
+    for (Path p : paths) {
+      Files.delete(p);
+    }
+  }
+
+  /**
+   * Copies a file to a stream and reports the copied bytes.
+   * @param source the file to copy
+   * @param out the stream to copy to, it is not closed
+   * @param progress receives the number of bytes of every copied chunk, may be {@code null}
+   * @return the number of copied bytes
+   * @throws IOException when the file cannot be read or the stream cannot be written
+   */
+  public static long copy(Path source, OutputStream out, LongConsumer progress)
+          throws IOException {
+    long copied = 0;
+    byte[] buffer = new byte[COPY_BUFFER_SIZE];
+    try (InputStream in = Files.newInputStream(source)) {
+      int length;
+      while ((length = in.read(buffer)) >= 0) {
+        out.write(buffer, 0, length);
+        copied += length;
+        if (progress != null) {
+          progress.accept(length);
+        }
+      }
+    }
+    return copied;
+  }
+
+  /**
+   * Copies a file and reports the copied bytes. An existing target file is replaced.
+   * @param source the file to copy
+   * @param target the file to create
+   * @param progress receives the number of bytes of every copied chunk, may be {@code null}
+   * @throws IOException when the file cannot be copied
+   */
+  public static void copy(Path source, Path target, LongConsumer progress) throws IOException {
+    try (OutputStream out = Files.newOutputStream(target)) {
+      copy(source, out, progress);
+    }
+  }
+
+  /**
+   * Resolves a relative path against a directory and makes sure that the result does not point
+   * outside of the directory.
+   * @param directory the directory
+   * @param relativePath the path to resolve
+   * @return the resolved path
+   * @throws IOException when the path points outside of the directory
+   */
+  public static Path resolveInside(Path directory, String relativePath) throws IOException {
+    Path resolved = directory.resolve(relativePath).normalize();
+    if (!resolved.startsWith(directory.normalize()) || resolved.equals(directory.normalize())) {
+      throw new IOException("Illegal path '" + relativePath + "'");
+    }
+    return resolved;
+  }
+}
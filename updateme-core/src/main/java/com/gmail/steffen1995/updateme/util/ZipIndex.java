@@ -0,0 +1,284 @@
+package com.gmail.steffen1995.updateme.util;
+
+import lombok.Value;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+/**
+ * Reads the central directory of a zip file and gives access to the raw data of its entries.
+ *
+ * <p>In contrast to {@link java.util.zip.ZipFile} the position of the data of every entry is
+ * known, so stored entries can be copied directly from the file channel without any stream
+ * in between.
+ * @author Steffen Schoen
+ */
+public class ZipIndex implements Closeable {
+  /**
+   * The compression method of entries that are stored uncompressed.
+   */
+  public static final int STORED = 0;
+
+  private static final int END_SIGNATURE = 0x06054b50;
+  private static final int END_SIZE = 22;
+  private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+  private static final int ZIP64_LOCATOR_SIZE = 20;
+  private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+  private static final int CENTRAL_SIGNATURE = 0x02014b50;
+  private static final int LOCAL_SIGNATURE = 0x04034b50;
+  private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+  private static final int COPY_BUFFER_SIZE = 256 * 1024;
+
+  // one copy buffer per thread, allocating direct buffers per entry is expensive
+  private static final ThreadLocal<ByteBuffer> COPY_BUFFERS =
+          ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(COPY_BUFFER_SIZE));
+
+  private final FileChannel channel;
+  private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+  private ZipIndex(FileChannel channel) {
+    this.channel = channel;
+  }
+
+  /**
+   * Opens a zip file and reads its central directory.
+   * @param file the zip file
+   * @return the index of the zip file
+   * @throws IOException when the file cannot be read or is not a valid zip file
+   */
+  public static ZipIndex open(Path file) throws IOException {
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+    try {
+      ZipIndex index = new ZipIndex(channel);
+      index.readCentralDirectory();
+      return index;
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Gets all entries in the order of the central directory.
+   * @return the entries
+   */
+  public List<Entry> getEntries() {
+    return Collections.unmodifiableList(new ArrayList<>(entries.values()));
+  }
+
+  /**
+   * Gets an entry by its name.
+   * @param name the name of the entry
+   * @return the entry or {@code null} if there is no such entry
+   */
+  public Entry getEntry(String name) {
+    return entries.get(name);
+  }
+
+  /**
+   * Gets the position of the data of an entry, right after its local header.
+   * @param entry the entry
+   * @return the position of the data in the zip file
+   * @throws IOException when the local header cannot be read
+   */
+  public long dataOffset(Entry entry) throws IOException {
+    ByteBuffer header = read(entry.getLocalHeaderOffset(), 30);
+    if (header.getInt(0) != LOCAL_SIGNATURE) {
+      throw new IOException("Invalid local header for entry '" + entry.getName() + "'");
+    }
+    return entry.getLocalHeaderOffset() + 30 + (header.getShort(26) & 0xFFFF)
+            + (header.getShort(28) & 0xFFFF);
+  }
+
+  /**
+   * Copies the content of a stored entry to a channel while it is digested.
+   * @param entry the stored entry
+   * @param digest the digest to update with the content
+   * @param target the channel to write the content to
+   * @throws IOException when the entry is not stored or cannot be copied
+   */
+  public void copyStored(Entry entry, MessageDigest digest, WritableByteChannel target)
+          throws IOException {
+    copyStored(entry, digest, target, null);
+  }
+
+  /**
+   * Copies the content of a stored entry to a channel while it is digested.
+   * @param entry the stored entry
+   * @param digest the digest to update with the content
+   * @param target the channel to write the content to
+   * @param progress receives the number of bytes of every copied chunk, may be {@code null}
+   * @throws IOException when the entry is not stored or cannot be copied
+   */
+  public void copyStored(Entry entry, MessageDigest digest, WritableByteChannel target,
+                         LongConsumer progress) throws IOException {
+    if (entry.getMethod() != STORED) {
+      throw new IOException("Entry '" + entry.getName() + "' is not stored");
+    }
+
+    long position = dataOffset(entry);
+    long end = position + entry.getSize();
+    ByteBuffer buffer = COPY_BUFFERS.get();
+
+    while (position < end) {
+      buffer.clear();
+      buffer.limit((int) Math.min(buffer.capacity(), end - position));
+      int read = channel.read(buffer, position);
+      if (read < 0) {
+        throw new EOFException("Unexpected end of zip file");
+      }
+      position += read;
+
+      buffer.flip();
+      digest.update(buffer.duplicate());
+      while (buffer.hasRemaining()) {
+        target.write(buffer);
+      }
+      if (progress != null) {
+        progress.accept(read);
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private void readCentralDirectory() throws IOException {
+    long fileSize = channel.size();
+    if (fileSize < END_SIZE) {
+      throw new IOException("Not a zip file");
+    }
+
+    // the end record is followed by a comment of at most 65535 bytes
+    int tailLength = (int) Math.min(fileSize, END_SIZE + 0xFFFF);
+    ByteBuffer tail = read(fileSize - tailLength, tailLength);
+    int end = -1;
+    for (int i = tailLength - END_SIZE; i >= 0; i--) {
+      if (tail.getInt(i) == END_SIGNATURE) {
+        end = i;
+        break;
+      }
+    }
+    if (end < 0) {
+      throw new IOException("Not a zip file");
+    }
+
+    long count = tail.getShort(end + 10) & 0xFFFF;
+    long size = tail.getInt(end + 12) & ZIP64_LIMIT;
+    long offset = tail.getInt(end + 16) & ZIP64_LIMIT;
+
+    long endPosition = fileSize - tailLength + end;
+    if ((count == 0xFFFF || size == ZIP64_LIMIT || offset == ZIP64_LIMIT)
+            && endPosition >= ZIP64_LOCATOR_SIZE) {
+      ByteBuffer locator = read(endPosition - ZIP64_LOCATOR_SIZE, ZIP64_LOCATOR_SIZE);
+      if (locator.getInt(0) == ZIP64_LOCATOR_SIGNATURE) {
+        ByteBuffer zip64End = read(locator.getLong(8), 56);
+        if (zip64End.getInt(0) != ZIP64_END_SIGNATURE) {
+          throw new IOException("Invalid Zip64 end of central directory record");
+        }
+        count = zip64End.getLong(32);
+        size = zip64End.getLong(40);
+        offset = zip64End.getLong(48);
+      }
+    }
+
+    if (size > Integer.MAX_VALUE || offset + size > fileSize) {
+      throw new IOException("Invalid central directory");
+    }
+
+    ByteBuffer directory = read(offset, (int) size);
+    int position = 0;
+    for (long i = 0; i < count; i++) {
+      if (directory.getInt(position) != CENTRAL_SIGNATURE) {
+        throw new IOException("Invalid central directory");
+      }
+
+      final int method = directory.getShort(position + 10) & 0xFFFF;
+      final long crc = directory.getInt(position + 16) & ZIP64_LIMIT;
+      long compressedSize = directory.getInt(position + 20) & ZIP64_LIMIT;
+      long uncompressedSize = directory.getInt(position + 24) & ZIP64_LIMIT;
+      int nameLength = directory.getShort(position + 28) & 0xFFFF;
+      int extraLength = directory.getShort(position + 30) & 0xFFFF;
+      final int commentLength = directory.getShort(position + 32) & 0xFFFF;
+      long localOffset = directory.getInt(position + 42) & ZIP64_LIMIT;
+
+      byte[] name = new byte[nameLength];
+      ByteBuffer nameBuffer = directory.duplicate();
+      nameBuffer.position(position + 46);
+      nameBuffer.get(name);
+
+      // Zip64 extra field, containing only the values that overflowed in that order
+      int extra = position + 46 + nameLength;
+      int extraEnd = extra + extraLength;
+      while (extra + 4 <= extraEnd) {
+        int id = directory.getShort(extra) & 0xFFFF;
+        int length = directory.getShort(extra + 2) & 0xFFFF;
+        if (id == 0x0001) {
+          int field = extra + 4;
+          if (uncompressedSize == ZIP64_LIMIT) {
+            uncompressedSize = directory.getLong(field);
+            field += 8;
+          }
+          if (compressedSize == ZIP64_LIMIT) {
+            compressedSize = directory.getLong(field);
+            field += 8;
+          }
+          if (localOffset == ZIP64_LIMIT) {
+            localOffset = directory.getLong(field);
+          }
+        }
+        extra += 4 + length;
+      }
+
+      String entryName = new String(name, StandardCharsets.UTF_8);
+      entries.put(entryName, new Entry(entryName, method, crc, compressedSize, uncompressedSize,
+              localOffset));
+      position = extraEnd + commentLength;
+    }
+  }
+
+  private ByteBuffer read(long position, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new EOFException("Unexpected end of zip file");
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * An entry of the central directory.
+   */
+  @Value
+  public static class Entry {
+    private String name;
+    private int method;
+    private long crc;
+    private long compressedSize;
+    private long size;
+    private long localHeaderOffset;
+
+    public boolean isStored() {
+      return method == STORED;
+    }
+  }
+}
@@ -1,23 +1,46 @@
 package com.gmail.steffen1995.updateme;
 
+import com.gmail.steffen1995.updateme.update.BinaryUpdateInfo;
+import com.gmail.steffen1995.updateme.update.CompressionPolicy;
+import com.gmail.steffen1995.updateme.update.PackOptions;
 import com.gmail.steffen1995.updateme.update.Update;
 import com.gmail.steffen1995.updateme.update.UpdateException;
 import com.gmail.steffen1995.updateme.update.UpdateInfo;
+import com.gmail.steffen1995.updateme.update.UpdateInfoReader;
+import com.gmail.steffen1995.updateme.update.UpdateInfoWriter;
 import com.gmail.steffen1995.updateme.update.UpdateObject;
 import com.gmail.steffen1995.updateme.util.HashCalculator;
+import com.gmail.steffen1995.updateme.util.ParallelHashCalculator;
 import com.gmail.steffen1995.updateme.util.TestUtils;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Tests for classes regarding updates.
@@ -57,6 +80,19 @@ public class UpdateTests {
     assertEquals(OBJ2_SHA256, object2.getChecksum());
   }
 
+  @Test
+  public void parallelChecksumCalculation() throws IOException {
+    List<UpdateObject> updateObjects = UpdateObject.fromDirectory(new File(UpdateTests.class.getResource("/testFiles").getPath()), "/");
+
+    try (ParallelHashCalculator calculator = new ParallelHashCalculator(2)) {
+      UpdateObject.calculateChecksums(updateObjects, calculator);
+    }
+
+    for (UpdateObject uo : updateObjects) {
+      assertEquals(HashCalculator.sha256(uo.getFile()), uo.getChecksum());
+    }
+  }
+
   @Test
   public void testInfoCreationFromUpdate() {
     UpdateInfo info = UpdateInfo.fromUpdate(update);
@@ -91,6 +127,134 @@ public class UpdateTests {
     assertEquals(2, parsed.getFileUpdates().size());
   }
 
+  @Test
+  public void updateInfoStreaming() throws IOException {
+    File infoFile = File.createTempFile("updateme", "junit");
+    infoFile.deleteOnExit();
+
+    try (UpdateInfoWriter writer = UpdateInfoWriter.create(infoFile.toPath(), "1.0.0", update.getPublishDate())) {
+      for (int i = 0; i < 1000; i++) {
+        writer.write(UpdateInfo.FileUpdate.builder().localPath("/dir \"" + i + "\"/file\u00e4" + i).checksum(OBJ1_SHA256).sizeBytes(i).build());
+      }
+    }
+
+    List<UpdateInfo.FileUpdate> read = new ArrayList<>();
+    try (UpdateInfoReader reader = UpdateInfoReader.open(infoFile.toPath())) {
+      assertTrue(reader.hasNext());
+      assertEquals("1.0.0", reader.getVersion());
+      reader.forEach(read::add);
+    }
+
+    assertEquals(1000, read.size());
+    assertEquals("/dir \"999\"/file\u00e4999", read.get(999).getLocalPath());
+    assertEquals(999, read.get(999).getSizeBytes());
+  }
+
+  @Test
+  public void updateInfoStreamingUnknownKeysAndTrailingHeader() throws IOException {
+    String json = "{\"files\": [ {\"extra\": {\"a\": [1, \"]\"]}, \"path\": \"/a\", \"sha256\": \"00\", \"size\": 3} ],"
+            + " \"other\": null, \"publishDate\": \"20.10.2019\", \"version\": \"2.0.0\"}";
+
+    UpdateInfo info = UpdateInfo.readFrom(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+
+    assertEquals("2.0.0", info.getVersion());
+    assertEquals(1, info.getFileUpdates().size());
+    assertEquals("/a", info.getFileUpdates().get(0).getLocalPath());
+    assertEquals(3, info.getFileUpdates().get(0).getSizeBytes());
+  }
+
+  @Test
+  public void binaryUpdateInfo() throws IOException {
+    Path tmpDir = Files.createTempDirectory("updateme");
+    String infoFile = Paths.get(tmpDir.toString(), "updateInfo.bin").toString();
+    UpdateInfo info = UpdateInfo.fromUpdate(update);
+
+    info.writeToFile(infoFile, UpdateInfo.Format.BINARY);
+    assertEquals(info, UpdateInfo.readFromFile(infoFile));
+
+    BinaryUpdateInfo.View view = BinaryUpdateInfo.View.map(Paths.get(infoFile));
+    assertEquals(info.getVersion(), view.getVersion());
+    assertEquals(info.getFileUpdates().size(), view.size());
+
+    UpdateInfo.FileUpdate second = info.getFileUpdates().get(1);
+    int index = view.indexOf(second.getLocalPath());
+    assertEquals(1, index);
+    assertEquals(second.getSizeBytes(), view.getSizeBytes(index));
+    assertTrue(view.checksumEquals(index, HashCalculator.sha256Bytes(object2.getFile())));
+    assertFalse(view.checksumEquals(0, HashCalculator.sha256Bytes(object2.getFile())));
+    assertEquals(second, view.get(index));
+    assertEquals(-1, view.indexOf("/missing"));
+  }
+
+  @Test
+  public void packWithBinaryUpdateInfo() throws IOException, UpdateException {
+    Path tmpDir = Files.createTempDirectory("updateme");
+    String updateFile = Paths.get(tmpDir.toString(), "update.zip").toString();
+
+    update.pack(updateFile, UpdateInfo.Format.BINARY);
+    Update unpacked = Update.unpack(updateFile);
+
+    assertEquals(update.getVersion(), unpacked.getVersion());
+    assertEquals(update.getUpdateObjects().size(), unpacked.getUpdateObjects().size());
+  }
+
+  @Test
+  public void parallelPack() throws IOException, UpdateException {
+    Path tmpDir = Files.createTempDirectory("updateme");
+    String updateFile = Paths.get(tmpDir.toString(), "update.zip").toString();
+
+    update.pack(updateFile, PackOptions.builder().parallelism(4).build());
+    Update unpacked = Update.unpack(updateFile);
+
+    assertEquals(update.getVersion(), unpacked.getVersion());
+    TestUtils.assertEqualDates(update.getPublishDate(), unpacked.getPublishDate());
+    assertEquals(update.getUpdateObjects().size(), unpacked.getUpdateObjects().size());
+    for (UpdateObject uo : unpacked.getUpdateObjects()) {
+      assertEquals(uo.getChecksum(), HashCalculator.sha256(uo.getFile()));
+    }
+  }
+
+  @Test
+  public void packWithCompressionPolicy() throws IOException, UpdateException {
+    Path tmpDir = Files.createTempDirectory("updateme");
+    CompressionPolicy policy = CompressionPolicy.builder().storedExtension("bin").build();
+
+    for (int parallelism : new int[] {1, 4}) {
+      String updateFile = Paths.get(tmpDir.toString(), "update" + parallelism + ".zip").toString();
+      update.pack(updateFile, PackOptions.builder()
+              .compressionPolicy(policy)
+              .parallelism(parallelism).build());
+
+      try (ZipFile zip = new ZipFile(updateFile)) {
+        assertEquals(ZipEntry.STORED, zip.getEntry("binaryFile.bin").getMethod());
+        assertEquals(ZipEntry.DEFLATED, zip.getEntry("textFile.txt").getMethod());
+      }
+
+      Update unpacked = Update.unpack(updateFile);
+      assertEquals(update.getUpdateObjects().size(), unpacked.getUpdateObjects().size());
+      for (UpdateObject uo : unpacked.getUpdateObjects()) {
+        assertEquals(uo.getChecksum(), HashCalculator.sha256(uo.getFile()));
+      }
+    }
+  }
+
+  @Test
+  public void compressionPolicySampling() throws IOException {
+    Path tmpDir = Files.createTempDirectory("updateme");
+    Path random = tmpDir.resolve("random.dat");
+    Path text = tmpDir.resolve("text.dat");
+    byte[] noise = new byte[32 * 1024];
+    new Random(1).nextBytes(noise);
+    Files.write(random, noise);
+    Files.write(text, String.join("", Collections.nCopies(2000, "some text ")).getBytes(StandardCharsets.UTF_8));
+
+    CompressionPolicy policy = CompressionPolicy.adaptive();
+    assertTrue(policy.isStored(random));
+    assertFalse(policy.isStored(text));
+    assertTrue(policy.isStored(tmpDir.resolve("archive.JAR")));
+    assertFalse(CompressionPolicy.deflateAll().isStored(random));
+  }
+
   @Test
   public void packTest() throws IOException, UpdateException {
     Path tmpDir = Files.createTempDirectory("updateme");
@@ -131,6 +295,80 @@ public class UpdateTests {
     Update.unpack(UpdateTests.class.getResource("/update_checksum_wrong.zip").getPath());
   }
 
+  @Test
+  public void unpackRejectsEntriesOutsideOfTarget() throws IOException, UpdateException {
+    String evil = "evil-" + System.nanoTime();
+    File updateFile = craftPackage(new UpdateInfo("1.0.0", new Date()), "../" + evil, new byte[1]);
+    Set<Path> before = tempDirectories();
+
+    try {
+      Update.unpack(updateFile);
+      fail("entry outside of the target should be rejected");
+    } catch (IOException e) {
+      // expected
+    }
+
+    assertFalse(Files.exists(Paths.get(System.getProperty("java.io.tmpdir"), evil)));
+    assertEquals(before, tempDirectories());
+  }
+
+  @Test
+  public void unpackChecksumWrongLeavesNoTempDirectory() throws IOException {
+    Set<Path> before = tempDirectories();
+
+    try {
+      Update.unpack(UpdateTests.class.getResource("/update_checksum_wrong.zip").getPath());
+      fail("checksum should not match");
+    } catch (UpdateException e) {
+      // expected
+    }
+
+    assertEquals(before, tempDirectories());
+  }
+
+  @Test
+  public void unpackCreatesParentDirectories() throws IOException, UpdateException {
+    byte[] content = "nested".getBytes(StandardCharsets.UTF_8);
+    Path source = Files.createTempFile("updateme", ".txt");
+    Files.write(source, content);
+    UpdateInfo info = new UpdateInfo("1.0.0", new Date());
+    info.getFileUpdates().add(UpdateInfo.FileUpdate.builder().localPath("/a/b/c.txt")
+            .checksum(HashCalculator.sha256(source.toFile())).sizeBytes(content.length).build());
+    Path target = Files.createTempDirectory("updateme").resolve("target");
+
+    Update unpacked = Update.unpack(craftPackage(info, "a/b/c.txt", content), target.toFile(),
+            null);
+
+    assertEquals(1, unpacked.getUpdateObjects().size());
+    assertEquals("/a/b/", unpacked.getUpdateObjects().get(0).getBasePath());
+    assertTrue(Files.isRegularFile(target.resolve("a").resolve("b").resolve("c.txt")));
+    assertArrayEquals(content, Files.readAllBytes(target.resolve("a/b/c.txt")));
+  }
+
+  /**
+   * Writes an update package with the given update info and a single entry, without any of the
+   * checks that packing an update does.
+   */
+  private static File craftPackage(UpdateInfo info, String name, byte[] content)
+          throws IOException {
+    File updateFile = Files.createTempFile("updateme", ".zip").toFile();
+    updateFile.deleteOnExit();
+    try (ZipOutputStream zipOut = new ZipOutputStream(new FileOutputStream(updateFile))) {
+      zipOut.putNextEntry(new ZipEntry("updateInfo.json"));
+      info.writeTo(zipOut);
+      zipOut.putNextEntry(new ZipEntry(name));
+      zipOut.write(content);
+    }
+    return updateFile;
+  }
+
+  private static Set<Path> tempDirectories() throws IOException {
+    try (Stream<Path> files = Files.list(Paths.get(System.getProperty("java.io.tmpdir")))) {
+      return files.filter(path -> path.getFileName().toString().startsWith("update-"))
+              .collect(Collectors.toCollection(HashSet::new));
+    }
+  }
+
   @Test(expected = IOException.class)
   public void updateInfoWrongDateFormat() throws IOException {
     UpdateInfo.readFromFile(UpdateTests.class.getResource("/updateInfo_wrong_data_format.json").getPath());
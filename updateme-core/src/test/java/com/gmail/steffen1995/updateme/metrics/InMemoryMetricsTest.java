@@ -0,0 +1,123 @@
+package com.gmail.steffen1995.updateme.metrics;
+
+import com.gmail.steffen1995.updateme.providers.ChannelIndex;
+import com.gmail.steffen1995.updateme.providers.LocalUpdateRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+/**
+ * test for com.gmail.steffen1995.updateme.metrics.InMemoryMetrics class
+ *
+ * @author Steffen Schoen
+ **/
+public class InMemoryMetricsTest {
+  private InMemoryMetrics metrics;
+
+  @Before
+  public void setup() {
+    metrics = new InMemoryMetrics();
+  }
+
+  @After
+  public void tearDown() {
+    Metrics.set(null);
+  }
+
+  @Test
+  public void percentilesAreApproximated() {
+    for (int i = 1; i <= 1000; i++) {
+      metrics.recordTime(Phase.HASH, null, null, i * 1000L);
+    }
+
+    InMemoryMetrics.Statistics statistics = metrics.get(Phase.HASH, null, null);
+    assertEquals(1000, statistics.getCount());
+    assertEquals(1_000_000, statistics.getMaxNanos());
+    assertEquals(500_500, statistics.meanNanos());
+    assertEquals(500_000, statistics.percentileNanos(0.5), 500_000 * 0.125);
+    assertEquals(990_000, statistics.percentileNanos(0.99), 990_000 * 0.125);
+    assertEquals(1_000_000, statistics.percentileNanos(1));
+  }
+
+  @Test
+  public void phasesAreMergedOverTags() {
+    metrics.recordTime(Phase.PULL, "stable", "1.0.0", 10);
+    metrics.recordBytes(Phase.PULL, "stable", "1.0.0", 100);
+    metrics.recordTime(Phase.PULL, "beta", "1.1.0", 30);
+    metrics.recordBytes(Phase.PULL, "beta", "1.1.0", 200);
+    metrics.recordTime(Phase.PUSH, "beta", "1.1.0", 50);
+
+    InMemoryMetrics.Statistics pulls = metrics.get(Phase.PULL);
+    assertEquals(2, pulls.getCount());
+    assertEquals(300, pulls.getBytes());
+    assertEquals(30, pulls.getMaxNanos());
+    assertEquals(3, metrics.snapshot().size());
+    assertEquals(0, metrics.get(Phase.UNPACK).getCount());
+  }
+
+  @Test
+  public void phasesWithoutSuccessAreErrors() {
+    Metrics.set(metrics);
+
+    try (PhaseTimer timer = Metrics.start(Phase.FETCH, "stable", "1.0.0")) {
+      timer.addBytes(10);
+    }
+    try (PhaseTimer timer = Metrics.start(Phase.FETCH, "stable", "1.0.0")) {
+      timer.success();
+    }
+
+    InMemoryMetrics.Statistics statistics = metrics.get(Phase.FETCH, "stable", "1.0.0");
+    assertEquals(2, statistics.getCount());
+    assertEquals(1, statistics.getErrors());
+    assertEquals(10, statistics.getBytes());
+  }
+
+  @Test
+  public void disabledMetricsRecordNothing() {
+    Metrics.set(null);
+
+    try (PhaseTimer timer = Metrics.start(Phase.FETCH, "stable", "1.0.0")) {
+      timer.addBytes(10);
+    }
+
+    assertTrue(metrics.snapshot().isEmpty());
+    assertSame(UpdateMetrics.NOOP, Metrics.get());
+  }
+
+  @Test
+  public void repositoryOperationsAreReported() throws Exception {
+    Metrics.set(metrics);
+    Path base = Files.createTempDirectory("updateme");
+    LocalUpdateRepository repo = new LocalUpdateRepository(base.toFile());
+    repo.initStructure(null);
+    File updatePackage = new File(getClass().getResource("/valid_update.zip").getFile());
+
+    repo.pushUpdate(updatePackage, "stable", null);
+    repo.pullUpdate("1.0.0", "stable", null);
+    // without an index the channel directory is walked
+    Files.delete(base.resolve("stable").resolve(ChannelIndex.FILE_NAME));
+    repo.updateInfoFiles("stable", null);
+
+    InMemoryMetrics.Statistics push = metrics.get(Phase.PUSH, "stable", "1.0.0");
+    assertEquals(1, push.getCount());
+    assertEquals(0, push.getErrors());
+    assertEquals(updatePackage.length(), push.getBytes());
+    assertEquals(1, metrics.get(Phase.VERIFY, null, "1.0.0").getCount());
+    assertEquals(1, metrics.get(Phase.PULL, "stable", "1.0.0").getCount());
+    assertEquals(1, metrics.get(Phase.WALK_DIRECTORY, "stable", null).getCount());
+
+    try {
+      repo.pullUpdate("9.9.9", "stable", null);
+      fail("pull should fail");
+    } catch (Exception e) {
+      // expected
+    }
+    assertEquals(1, metrics.get(Phase.PULL, "stable", "9.9.9").getErrors());
+  }
+}
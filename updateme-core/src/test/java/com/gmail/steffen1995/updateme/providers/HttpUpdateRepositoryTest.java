@@ -0,0 +1,242 @@
+package com.gmail.steffen1995.updateme.providers;
+
+import com.gmail.steffen1995.updateme.update.UpdateInfo;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONArray;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * test for com.gmail.steffen1995.updateme.providers.HttpUpdateRepository class
+ *
+ * @author Steffen Schoen
+ **/
+public class HttpUpdateRepositoryTest {
+  private static final int SEGMENT_SIZE = 100;
+
+  private Path served;
+  private Path cache;
+  private HttpServer server;
+  private HttpUpdateRepository repo;
+
+  private final AtomicInteger rangeRequests = new AtomicInteger();
+  private final AtomicBoolean failLastSegment = new AtomicBoolean();
+  private final AtomicBoolean weakEtag = new AtomicBoolean();
+  private final AtomicBoolean noValidators = new AtomicBoolean();
+
+  @Before
+  public void setup() throws Exception {
+    served = Files.createTempDirectory("updateme");
+    cache = Files.createTempDirectory("updateme");
+
+    LocalUpdateRepository local = new LocalUpdateRepository(served.toFile());
+    local.initStructure(null);
+    local.createChannel("beta", null);
+    local.pushUpdate(new File(getClass().getResource("/valid_update.zip").getFile()), "stable",
+            null);
+    Files.write(served.resolve(HttpUpdateRepository.CHANNELS_FILE),
+            new JSONArray(local.availableChannels(null)).toString().getBytes(StandardCharsets.UTF_8));
+
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/repo/", this::serve);
+    server.start();
+
+    URL baseUrl = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/repo");
+    repo = new HttpUpdateRepository(baseUrl, cache.toFile(), 4, SEGMENT_SIZE);
+  }
+
+  @After
+  public void tearDown() {
+    server.stop(0);
+  }
+
+  @Test
+  public void availableChannelsAreRead() throws UpdateRepositoryException {
+    List<String> channels = repo.availableChannels(null);
+
+    assertEquals(2, channels.size());
+    assertTrue(channels.contains("stable"));
+    assertTrue(channels.contains("beta"));
+  }
+
+  @Test
+  public void updateInfoFilesAreDownloaded() throws Exception {
+    List<File> infoFiles = repo.updateInfoFiles("stable", null);
+
+    assertEquals(1, infoFiles.size());
+    assertEquals("1.0.0", UpdateInfo.readFromFile(infoFiles.get(0)).getVersion());
+    assertTrue(repo.lastModified("stable") > 0);
+  }
+
+  @Test
+  public void packageIsDownloadedInSegments() throws Exception {
+    File pulled = repo.pullUpdate("1.0.0", "stable", null);
+
+    byte[] expected = Files.readAllBytes(served.resolve("stable/1.0.0/data.zip"));
+    assertArrayEquals(expected, Files.readAllBytes(pulled.toPath()));
+    assertEquals((expected.length + SEGMENT_SIZE - 1) / SEGMENT_SIZE, rangeRequests.get());
+
+    // downloaded files are taken from the cache
+    repo.pullUpdate("1.0.0", "stable", null);
+    assertEquals((expected.length + SEGMENT_SIZE - 1) / SEGMENT_SIZE, rangeRequests.get());
+  }
+
+  @Test
+  public void interruptedDownloadIsResumed() throws Exception {
+    failLastSegment.set(true);
+    try {
+      repo.pullUpdate("1.0.0", "stable", null);
+      fail("download should fail");
+    } catch (UpdateRepositoryException e) {
+      // expected
+    }
+
+    failLastSegment.set(false);
+    rangeRequests.set(0);
+    File pulled = repo.pullUpdate("1.0.0", "stable", null);
+
+    // only the missing segment is downloaded again
+    assertEquals(1, rangeRequests.get());
+    assertArrayEquals(Files.readAllBytes(served.resolve("stable/1.0.0/data.zip")),
+            Files.readAllBytes(pulled.toPath()));
+  }
+
+  @Test
+  public void invalidPackageIsNotCached() throws Exception {
+    Path data = served.resolve("stable/1.0.0/data.zip");
+    byte[] valid = Files.readAllBytes(data);
+    Files.copy(Paths.get(getClass().getResource("/update_checksum_wrong.zip").toURI()), data,
+            StandardCopyOption.REPLACE_EXISTING);
+    try {
+      repo.pullUpdate("1.0.0", "stable", null);
+      fail("pull should fail");
+    } catch (UpdateRepositoryException e) {
+      // expected
+    }
+    assertFalse(Files.exists(cache.resolve("stable/1.0.0/data.zip")));
+    assertFalse(Files.exists(cache.resolve("stable/1.0.0/data.zip.part")));
+
+    // the fixed package is downloaded again
+    Files.write(data, valid);
+    File pulled = repo.pullUpdate("1.0.0", "stable", null);
+    assertArrayEquals(valid, Files.readAllBytes(pulled.toPath()));
+  }
+
+  @Test
+  public void lastModifiedIsUsedWithWeakEtag() throws Exception {
+    weakEtag.set(true);
+
+    File pulled = repo.pullUpdate("1.0.0", "stable", null);
+
+    byte[] expected = Files.readAllBytes(served.resolve("stable/1.0.0/data.zip"));
+    assertArrayEquals(expected, Files.readAllBytes(pulled.toPath()));
+    assertEquals((expected.length + SEGMENT_SIZE - 1) / SEGMENT_SIZE, rangeRequests.get());
+  }
+
+  @Test
+  public void packageWithoutValidatorIsDownloadedWhole() throws Exception {
+    noValidators.set(true);
+
+    File pulled = repo.pullUpdate("1.0.0", "stable", null);
+
+    assertArrayEquals(Files.readAllBytes(served.resolve("stable/1.0.0/data.zip")),
+            Files.readAllBytes(pulled.toPath()));
+    assertEquals(0, rangeRequests.get());
+  }
+
+  @Test(expected = UpdateRepositoryException.class)
+  public void missingVersionFails() throws UpdateRepositoryException {
+    repo.pullUpdate("9.9.9", "stable", null);
+  }
+
+  @Test(expected = UpdateRepositoryException.class)
+  public void repositoryIsReadOnly() throws UpdateRepositoryException {
+    repo.pushUpdate(new File(getClass().getResource("/valid_update.zip").getFile()), "stable",
+            null);
+  }
+
+  /**
+   * Serves the files of the local repository with support for range requests. While
+   * {@link #failLastSegment} is set, the connection is closed in the middle of the last segment.
+   * Like real servers, it never answers with a part when {@code If-Range} is a weak ETag.
+   */
+  private void serve(HttpExchange exchange) throws IOException {
+    try {
+      String relative = exchange.getRequestURI().getPath().substring("/repo/".length());
+      Path file = served.resolve(Paths.get(relative)).normalize();
+      if (!file.startsWith(served) || !Files.isRegularFile(file)) {
+        exchange.sendResponseHeaders(404, -1);
+        return;
+      }
+
+      byte[] content = Files.readAllBytes(file);
+      String etag = "\"" + content.length + "-" + Files.getLastModifiedTime(file).toMillis() + "\"";
+      if (weakEtag.get()) {
+        etag = "W/" + etag;
+      }
+      String lastModified = "Sat, 19 Oct 2019 10:00:00 GMT";
+      exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+      if (!noValidators.get()) {
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.getResponseHeaders().set("Last-Modified", lastModified);
+      }
+
+      if (exchange.getRequestMethod().equals("HEAD")) {
+        exchange.getResponseHeaders().set("Content-Length", String.valueOf(content.length));
+        exchange.sendResponseHeaders(200, -1);
+        return;
+      }
+
+      String range = exchange.getRequestHeaders().getFirst("Range");
+      String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+      boolean validatorMatches = ifRange == null || ifRange.equals(lastModified)
+              || (ifRange.equals(etag) && !etag.startsWith("W/"));
+      if (range == null || !validatorMatches) {
+        exchange.sendResponseHeaders(200, content.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+          out.write(content);
+        }
+        return;
+      }
+
+      rangeRequests.incrementAndGet();
+      String[] bounds = range.substring("bytes=".length()).split("-");
+      int start = Integer.parseInt(bounds[0]);
+      int end = Math.min(Integer.parseInt(bounds[1]), content.length - 1);
+      byte[] body = Arrays.copyOfRange(content, start, end + 1);
+      exchange.getResponseHeaders().set("Content-Range",
+              "bytes " + start + "-" + end + "/" + content.length);
+      exchange.sendResponseHeaders(206, body.length);
+      OutputStream out = exchange.getResponseBody();
+      if (end == content.length - 1 && failLastSegment.get()) {
+        out.write(body, 0, body.length / 2);
+        out.flush();
+        // closing the exchange before all announced bytes were sent drops the connection
+        return;
+      }
+      out.write(body);
+      out.close();
+    } finally {
+      exchange.close();
+    }
+  }
+}
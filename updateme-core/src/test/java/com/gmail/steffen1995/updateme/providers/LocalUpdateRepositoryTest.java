@@ -1,8 +1,11 @@
 package com.gmail.steffen1995.updateme.providers;
 
+import com.gmail.steffen1995.updateme.update.PackageVerifier;
 import com.gmail.steffen1995.updateme.update.Update;
 import com.gmail.steffen1995.updateme.update.UpdateException;
 import com.gmail.steffen1995.updateme.update.UpdateInfo;
+import com.gmail.steffen1995.updateme.update.UpdateObject;
+import com.gmail.steffen1995.updateme.util.HashCalculator;
 import com.gmail.steffen1995.updateme.util.TestUtils;
 import org.apache.commons.io.FileUtils;
 import org.junit.After;
@@ -12,11 +15,15 @@ import org.junit.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.*;
 
@@ -127,4 +134,393 @@ public class LocalUpdateRepositoryTest {
     assertEquals(1, updateInfos.size());
     assertEquals(Paths.get(tmp.toString(), "stable", "1.0.0", "updateInfo.json").toString(), updateInfos.get(0).getAbsolutePath());
   }
-}
\ No newline at end of file
+
+  private static File createPackage(Path workDir, String version, String... contents) throws IOException {
+    Path files = Files.createDirectories(workDir.resolve(version));
+    Update update = new Update(version);
+
+    for (int i = 0; i < contents.length; i++) {
+      Path file = files.resolve("file" + i + ".txt");
+      Files.write(file, contents[i].getBytes(StandardCharsets.UTF_8));
+
+      UpdateObject object = new UpdateObject(file.toFile(), "/");
+      object.calculateChecksum();
+      update.getUpdateObjects().add(object);
+    }
+
+    File updatePackage = workDir.resolve(version + ".zip").toFile();
+    update.pack(updatePackage.getAbsolutePath());
+    return updatePackage;
+  }
+
+  @Test
+  public void pushAndPullReportProgress() throws UpdateRepositoryException, IOException {
+    Path workDir = Files.createTempDirectory("updateme");
+    File updatePackage = createPackage(workDir, "1.0.0", "first file", "second file");
+    long[] last = new long[2];
+    ProgressChangedListener listener = (current, total) -> {
+      last[0] = current;
+      last[1] = total;
+    };
+
+    repo.createChannel("progress", null);
+    repo.pushUpdate(updatePackage, "progress", listener);
+
+    // the package is read once
+    assertEquals(updatePackage.length(), last[1]);
+    assertEquals(last[1], last[0]);
+
+    repo.pullUpdate("1.0.0", "progress", listener);
+    assertEquals(updatePackage.length(), last[1]);
+    assertEquals(last[1], last[0]);
+  }
+
+  @Test
+  public void pushAndPullDeltaUpdate() throws UpdateRepositoryException, IOException, UpdateException {
+    Path workDir = Files.createTempDirectory("updateme");
+    StringBuilder large = new StringBuilder();
+    for (int i = 0; i < 2000; i++) {
+      large.append("line ").append(i).append('\n');
+    }
+
+    File v1 = createPackage(workDir, "1.0.0", "unchanged", large.toString(), "removed");
+    File v2 = createPackage(workDir, "1.1.0", "unchanged", large.toString().replace("line 1000", "changed"));
+
+    LocalUpdateRepository deltaRepo = new LocalUpdateRepository(tmp.toFile());
+    deltaRepo.setDeltaUpdates(true);
+    deltaRepo.createChannel("delta", null);
+    deltaRepo.pushUpdate(v1, "delta", null);
+    deltaRepo.pushUpdate(v2, "delta", null);
+
+    File delta = deltaRepo.pullDeltaUpdate("1.0.0", "1.1.0", "delta", null);
+    assertTrue(delta.length() < v2.length());
+
+    Update base = Update.unpack(v1);
+    Update reconstructed = Update.unpackDelta(delta, base.getUpdateObjects().get(0).getFile().getParentFile());
+    Update expected = Update.unpack(v2);
+
+    assertEquals("1.1.0", reconstructed.getVersion());
+    assertEquals(expected.getUpdateObjects().size(), reconstructed.getUpdateObjects().size());
+    for (UpdateObject uo : reconstructed.getUpdateObjects()) {
+      assertEquals(uo.getChecksum(), HashCalculator.sha256(uo.getFile()));
+      assertTrue(expected.getUpdateObjects().stream().anyMatch(e -> e.getChecksum().equals(uo.getChecksum())));
+    }
+  }
+
+  @Test(expected = UpdateRepositoryException.class)
+  public void pullDeltaUpdateNotAvailable() throws UpdateRepositoryException {
+    repo.pullDeltaUpdate("0.9.0", "1.0.0", "stable", null);
+  }
+
+  @Test
+  public void contentAddressedStorage() throws UpdateRepositoryException, IOException, UpdateException {
+    Path workDir = Files.createTempDirectory("updateme");
+    File v1 = createPackage(workDir, "1.0.0", "shared", "old");
+    File v2 = createPackage(workDir, "1.1.0", "shared", "new");
+
+    LocalUpdateRepository casRepo = new LocalUpdateRepository(tmp.toFile());
+    casRepo.setContentAddressed(true);
+    casRepo.createChannel("cas", null);
+    casRepo.pushUpdate(v1, "cas", null);
+    casRepo.pushUpdate(v2, "cas", null);
+
+    assertFalse(Files.exists(Paths.get(tmp.toString(), "cas", "1.0.0", "data.zip")));
+    assertFalse(casRepo.availableChannels(null).contains(".objects"));
+
+    ContentStore store = new ContentStore(tmp.resolve(".objects"));
+    String shared = HashCalculator.sha256(workDir.resolve("1.0.0").resolve("file0.txt").toFile());
+    String old = HashCalculator.sha256(workDir.resolve("1.0.0").resolve("file1.txt").toFile());
+    assertEquals(2, store.references(shared));
+    assertEquals(1, store.references(old));
+
+    Update pulled = Update.unpack(casRepo.pullUpdate("1.1.0", "cas", null));
+    assertEquals("1.1.0", pulled.getVersion());
+    assertEquals(2, pulled.getUpdateObjects().size());
+
+    casRepo.removeUpdate("1.0.0", "cas", null);
+    assertFalse(Files.exists(Paths.get(tmp.toString(), "cas", "1.0.0")));
+    assertEquals(1, store.references(shared));
+    assertFalse(store.contains(old));
+  }
+
+  @Test
+  public void assembledPackagesAreReusedAndExpire() throws Exception {
+    Path workDir = Files.createTempDirectory("updateme");
+    LocalUpdateRepository casRepo = new LocalUpdateRepository(tmp.toFile());
+    casRepo.setContentAddressed(true);
+    casRepo.createChannel("cas", null);
+    casRepo.pushUpdate(createPackage(workDir, "1.0.0", "a"), "cas", null);
+    casRepo.pushUpdate(createPackage(workDir, "1.1.0", "b"), "cas", null);
+
+    File first = casRepo.pullUpdate("1.0.0", "cas", null);
+    assertTrue(first.toPath().startsWith(tmp.resolve(".staging")));
+    assertEquals(first, casRepo.pullUpdate("1.0.0", "cas", null));
+    assertEquals("1.0.0", Update.unpack(first).getVersion());
+
+    // packages that were not pulled for a long time are deleted by the next assembly
+    Files.setLastModifiedTime(first.toPath(),
+            FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1)));
+    File second = casRepo.pullUpdate("1.1.0", "cas", null);
+    assertFalse(first.exists());
+
+    casRepo.removeUpdate("1.1.0", "cas", null);
+    assertFalse(second.exists());
+  }
+
+  @Test
+  public void removeRejectsVersionsOutsideOfChannel() throws IOException {
+    Files.createDirectories(tmp.resolve(".objects"));
+
+    for (String version : new String[] {"..", ""}) {
+      try {
+        repo.removeUpdate(version, "stable", null);
+        fail("'" + version + "' should be rejected");
+      } catch (UpdateRepositoryException e) {
+        // expected
+      }
+    }
+
+    assertTrue(Files.isDirectory(tmp.resolve(".objects")));
+    assertTrue(Files.isDirectory(tmp.resolve("stable")));
+  }
+
+  @Test
+  public void internalDirectoriesAreNoChannels() throws UpdateRepositoryException, IOException {
+    Path workDir = Files.createTempDirectory("updateme");
+    File updatePackage = createPackage(workDir, "1.0.0", "a");
+    LocalUpdateRepository casRepo = new LocalUpdateRepository(tmp.toFile());
+    casRepo.setContentAddressed(true);
+    casRepo.createChannel("cas", null);
+    casRepo.pushUpdate(updatePackage, "cas", null);
+    String shard = HashCalculator.sha256(workDir.resolve("1.0.0").resolve("file0.txt").toFile())
+            .substring(0, 2);
+
+    for (String channel : new String[] {".objects", ".staging"}) {
+      try {
+        casRepo.pushUpdate(updatePackage, channel, null);
+        fail("push to '" + channel + "' should be rejected");
+      } catch (UpdateRepositoryException e) {
+        // expected
+      }
+      try {
+        casRepo.lastModified(channel);
+        fail("'" + channel + "' should not be a channel");
+      } catch (UpdateRepositoryException e) {
+        // expected
+      }
+    }
+    try {
+      casRepo.removeUpdate(shard, ".objects", null);
+      fail("remove from the content store should be rejected");
+    } catch (UpdateRepositoryException e) {
+      // expected
+    }
+
+    assertTrue(Files.isDirectory(tmp.resolve(".objects").resolve(shard)));
+  }
+
+  @Test
+  public void channelIndex() throws UpdateRepositoryException, IOException {
+    Path workDir = Files.createTempDirectory("updateme");
+    repo.createChannel("indexed", null);
+    repo.pushUpdate(createPackage(workDir, "1.0.0", "a", "b"), "indexed", null);
+    repo.pushUpdate(createPackage(workDir, "1.1.0", "abc"), "indexed", null);
+
+    assertTrue(Files.exists(Paths.get(tmp.toString(), "indexed", ChannelIndex.FILE_NAME)));
+
+    ChannelIndex index = repo.channelIndex("indexed", null);
+    assertEquals(2, index.getEntries().size());
+    assertEquals("1.0.0", index.getEntries().get(0).getVersion());
+    assertEquals(2, index.getEntries().get(0).getFileCount());
+    assertEquals(2, index.getEntries().get(0).getTotalSize());
+    assertEquals("1.1.0", index.getEntries().get(1).getVersion());
+
+    List<File> updateInfos = repo.updateInfoFiles("indexed", null);
+    assertEquals(2, updateInfos.size());
+    assertEquals(Paths.get(tmp.toString(), "indexed", "1.1.0", "updateInfo.json").toString(), updateInfos.get(1).getAbsolutePath());
+  }
+
+  @Test
+  public void versionIndexIsCachedUntilChannelChanges() throws UpdateRepositoryException, IOException {
+    Path workDir = Files.createTempDirectory("updateme");
+    repo.createChannel("indexed", null);
+    repo.pushUpdate(createPackage(workDir, "1.10.0", "a"), "indexed", null);
+    repo.pushUpdate(createPackage(workDir, "1.9.0", "b"), "indexed", null);
+    ageChannel("indexed");
+
+    VersionIndex index = repo.versionIndex("indexed", null);
+    assertEquals("1.10.0", index.latest().get().getVersion());
+    assertSame(index, repo.versionIndex("indexed", null));
+
+    repo.pushUpdate(createPackage(workDir, "2.0.0", "c"), "indexed", null);
+    VersionIndex updated = repo.versionIndex("indexed", null);
+    assertEquals("2.0.0", updated.latest().get().getVersion());
+    assertEquals(1, updated.newerThan("1.10.0").size());
+  }
+
+  private static void ageChannel(String channel) throws IOException {
+    FileTime past = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+    Path channelPath = Paths.get(tmp.toString(), channel);
+    Files.setLastModifiedTime(channelPath, past);
+    Files.setLastModifiedTime(channelPath.resolve(ChannelIndex.FILE_NAME), past);
+  }
+
+  @Test
+  public void pushLinksPackage() throws UpdateRepositoryException, IOException {
+    Path workDir = Files.createTempDirectory("updateme");
+    File updatePackage = createPackage(workDir, "1.0.0", "a", "b");
+
+    LocalUpdateRepository linkRepo = new LocalUpdateRepository(tmp.toFile());
+    linkRepo.setLinkPackages(true);
+    linkRepo.createChannel("linked", null);
+    linkRepo.pushUpdate(updatePackage, "linked", null);
+
+    Path stored = Paths.get(tmp.toString(), "linked", "1.0.0", "data.zip");
+    assertArrayEquals(Files.readAllBytes(updatePackage.toPath()), Files.readAllBytes(stored));
+    if (Files.getFileStore(workDir).equals(Files.getFileStore(tmp))) {
+      assertTrue(Files.isSameFile(updatePackage.toPath(), stored));
+    }
+  }
+
+  @Test
+  public void invalidPackageLeavesNoObjects() throws IOException {
+    LocalUpdateRepository casRepo = new LocalUpdateRepository(tmp.toFile());
+    casRepo.setContentAddressed(true);
+    try {
+      casRepo.pushUpdate(new File(LocalUpdateRepositoryTest.class.getResource("/update_checksum_wrong.zip").getPath()), "stable", null);
+      fail("push should fail");
+    } catch (UpdateRepositoryException e) {
+      // expected
+    }
+
+    try (Stream<Path> objects = Files.walk(tmp.resolve(".objects"))) {
+      assertFalse(objects.anyMatch(Files::isRegularFile));
+    }
+    try (Stream<Path> staging = Files.list(tmp.resolve(".staging"))) {
+      assertEquals(0, staging.count());
+    }
+  }
+
+  @Test
+  public void failedAdoptionReleasesAdoptedObjects() throws Exception {
+    Path workDir = Files.createTempDirectory("updateme");
+    File updatePackage = createPackage(workDir, "1.0.0", "first", "second");
+    List<UpdateInfo.FileUpdate> files = PackageVerifier.verify(updatePackage).getFileUpdates();
+    String adopted = files.get(0).getChecksum();
+    String blocked = files.get(1).getChecksum();
+    assertNotEquals(adopted.substring(0, 2), blocked.substring(0, 2));
+
+    // a file in place of its directory makes adopting the second object fail
+    Files.createDirectories(tmp.resolve(".objects"));
+    Files.createFile(tmp.resolve(".objects").resolve(blocked.substring(0, 2)));
+    LocalUpdateRepository casRepo = new LocalUpdateRepository(tmp.toFile());
+    casRepo.setContentAddressed(true);
+    try {
+      casRepo.pushUpdate(updatePackage, "stable", null);
+      fail("push should fail");
+    } catch (UpdateRepositoryException e) {
+      // expected
+    }
+
+    ContentStore store = new ContentStore(tmp.resolve(".objects"));
+    assertEquals(0, store.references(adopted));
+    assertFalse(store.contains(adopted));
+  }
+
+  @Test
+  public void batchPush() throws UpdateRepositoryException, IOException, UpdateException {
+    Path workDir = Files.createTempDirectory("updateme");
+    List<File> packages = Arrays.asList(createPackage(workDir, "1.0.0", "shared", "a"),
+            createPackage(workDir, "1.1.0", "shared", "b"),
+            createPackage(workDir, "1.2.0", "shared", "c"));
+
+    LocalUpdateRepository batchRepo = new LocalUpdateRepository(tmp.toFile());
+    batchRepo.setContentAddressed(true);
+    batchRepo.setDeltaUpdates(true);
+    batchRepo.createChannel("batch", null);
+    batchRepo.pushUpdate(createPackage(workDir, "0.9.0", "shared", "z"), "batch", null);
+    List<String> versions = batchRepo.pushUpdates(packages, "batch", 2, null);
+
+    assertEquals(Arrays.asList("1.0.0", "1.1.0", "1.2.0"), versions);
+    ChannelIndex index = batchRepo.channelIndex("batch", null);
+    assertEquals(4, index.getEntries().size());
+    assertEquals("1.1.0", index.getEntries().get(2).getVersion());
+
+    String shared = HashCalculator.sha256(workDir.resolve("1.0.0").resolve("file0.txt").toFile());
+    assertEquals(4, new ContentStore(tmp.resolve(".objects")).references(shared));
+    Path channelPath = Paths.get(tmp.toString(), "batch");
+    assertTrue(Files.exists(channelPath.resolve("1.0.0").resolve("delta-0.9.0.zip")));
+    assertTrue(Files.exists(channelPath.resolve("1.1.0").resolve("delta-1.0.0.zip")));
+    assertTrue(Files.exists(channelPath.resolve("1.2.0").resolve("delta-1.1.0.zip")));
+    // deltas only go from lower to higher versions
+    assertFalse(Files.exists(channelPath.resolve("1.0.0").resolve("delta-1.1.0.zip")));
+    assertFalse(Files.exists(channelPath.resolve("1.0.0").resolve("delta-1.2.0.zip")));
+    assertFalse(Files.exists(channelPath.resolve("1.1.0").resolve("delta-1.2.0.zip")));
+    assertFalse(batchRepo.availableChannels(null).contains(".staging"));
+
+    Update pulled = Update.unpack(batchRepo.pullUpdate("1.1.0", "batch", null));
+    assertEquals(2, pulled.getUpdateObjects().size());
+  }
+
+  @Test
+  public void failedBatchPushIsRolledBack() throws UpdateRepositoryException, IOException {
+    Path workDir = Files.createTempDirectory("updateme");
+    List<File> packages = Arrays.asList(createPackage(workDir, "1.0.0", "a"),
+            new File(LocalUpdateRepositoryTest.class.getResource("/update_checksum_wrong.zip").getPath()),
+            createPackage(workDir, "1.2.0", "c"));
+
+    LocalUpdateRepository batchRepo = new LocalUpdateRepository(tmp.toFile());
+    batchRepo.setContentAddressed(true);
+    batchRepo.createChannel("batch", null);
+    try {
+      batchRepo.pushUpdates(packages, "batch", 2, null);
+      fail("batch should fail");
+    } catch (UpdateRepositoryException e) {
+      // expected
+    }
+
+    try (Stream<Path> channel = Files.list(Paths.get(tmp.toString(), "batch"))) {
+      assertEquals(0, channel.count());
+    }
+    try (Stream<Path> staging = Files.list(tmp.resolve(".staging"))) {
+      assertEquals(0, staging.count());
+    }
+    String object = HashCalculator.sha256(workDir.resolve("1.0.0").resolve("file0.txt").toFile());
+    assertFalse(new ContentStore(tmp.resolve(".objects")).contains(object));
+  }
+
+  @Test
+  public void batchPushRejectsExistingVersions() throws UpdateRepositoryException, IOException {
+    Path workDir = Files.createTempDirectory("updateme");
+    File existing = createPackage(workDir, "1.0.0", "a");
+    File added = createPackage(workDir, "1.1.0", "b");
+
+    repo.createChannel("batch", null);
+    repo.pushUpdate(existing, "batch", null);
+    try {
+      repo.pushUpdates(Arrays.asList(added, existing), "batch", null);
+      fail("batch should fail");
+    } catch (UpdateRepositoryException e) {
+      // expected
+    }
+
+    assertEquals(1, repo.channelIndex("batch", null).getEntries().size());
+    assertFalse(Files.exists(Paths.get(tmp.toString(), "batch", "1.1.0")));
+
+    try {
+      repo.pushUpdates(Arrays.asList(added, added), "batch", null);
+      fail("batch should fail");
+    } catch (UpdateRepositoryException e) {
+      // expected
+    }
+    assertFalse(Files.exists(Paths.get(tmp.toString(), "batch", "1.1.0")));
+  }
+
+  @Test
+  public void channelIndexWithoutIndexFile() throws UpdateRepositoryException {
+    ChannelIndex index = repo.channelIndex("stable", null);
+
+    assertEquals(1, index.getEntries().size());
+    assertEquals("1.0.0", index.getEntries().get(0).getVersion());
+  }
+}
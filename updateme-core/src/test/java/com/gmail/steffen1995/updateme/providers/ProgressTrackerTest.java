@@ -0,0 +1,62 @@
+package com.gmail.steffen1995.updateme.providers;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * test for com.gmail.steffen1995.updateme.providers.ProgressTracker class
+ *
+ * @author Steffen Schoen
+ **/
+public class ProgressTrackerTest {
+  @Test
+  public void reportsAreRateLimited() {
+    List<long[]> reports = new ArrayList<>();
+    ProgressTracker tracker = new ProgressTracker((current, total) -> reports.add(new long[] {current, total}), 60_000);
+
+    tracker.addTotal(1000);
+    for (int i = 0; i < 100; i++) {
+      tracker.advance(10);
+    }
+    assertEquals(0, reports.size());
+
+    tracker.complete();
+    assertEquals(1, reports.size());
+    assertEquals(1000, reports.get(0)[0]);
+    assertEquals(1000, reports.get(0)[1]);
+  }
+
+  @Test
+  public void reportsThroughput() throws InterruptedException {
+    List<Double> rates = new ArrayList<>();
+    List<Long> etas = new ArrayList<>();
+    ProgressTracker tracker = new ProgressTracker((ThroughputListener) (current, total, bytesPerSecond, etaMillis) -> {
+      rates.add(bytesPerSecond);
+      etas.add(etaMillis);
+    }, 0);
+
+    tracker.addTotal(2000);
+    Thread.sleep(5);
+    tracker.advance(1000);
+
+    assertEquals(1, rates.size());
+    assertTrue(rates.get(0) > 0);
+    assertTrue(etas.get(0) >= 0);
+  }
+
+  @Test
+  public void nestedOperationsShareTracker() {
+    ProgressTracker tracker = new ProgressTracker(null);
+
+    assertTrue(ProgressTracker.of(tracker) == tracker);
+    tracker.addTotal(10);
+    ProgressTracker.of(tracker).advance(4);
+    assertEquals(4, tracker.getCurrent());
+    assertEquals(10, tracker.getTotal());
+  }
+}
@@ -0,0 +1,75 @@
+package com.gmail.steffen1995.updateme.providers;
+
+import com.gmail.steffen1995.updateme.update.UpdateInfo;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * test for com.gmail.steffen1995.updateme.providers.UpdateInfoCache class
+ *
+ * @author Steffen Schoen
+ **/
+public class UpdateInfoCacheTest {
+  private static final long LAST_MODIFIED = 1000;
+
+  private UpdateInfoCache cache;
+  private UpdateInfo info1, info2;
+
+  @Before
+  public void beforeTest() {
+    cache = new UpdateInfoCache(2);
+    info1 = new UpdateInfo("1.0.0", new Date());
+    info2 = new UpdateInfo("2.0.0", new Date());
+  }
+
+  @Test
+  public void channelUnchanged() {
+    cache.put("stable", 1, info1);
+    cache.put("stable", 1, info2);
+    cache.putChannel("stable", LAST_MODIFIED, Arrays.asList(info1, info2));
+
+    List<UpdateInfo> cached = cache.getChannel("stable", LAST_MODIFIED);
+
+    assertNotNull(cached);
+    assertEquals(2, cached.size());
+    assertEquals("1.0.0", cached.get(0).getVersion());
+    assertNotSame(info1, cached.get(0));
+  }
+
+  @Test
+  public void channelChanged() {
+    cache.put("stable", 1, info1);
+    cache.putChannel("stable", LAST_MODIFIED, Arrays.asList(info1));
+
+    assertNull(cache.getChannel("stable", LAST_MODIFIED + 1));
+    assertNull(cache.getChannel("stable", -1));
+    assertNotNull(cache.get("stable", "1.0.0", 1));
+    assertNull(cache.get("stable", "1.0.0", 2));
+  }
+
+  @Test
+  public void recentlyModifiedChannelIsNotCached() {
+    long now = System.currentTimeMillis();
+    cache.put("stable", 1, info1);
+    cache.putChannel("stable", now, Arrays.asList(info1));
+
+    assertNull(cache.getChannel("stable", now));
+  }
+
+  @Test
+  public void sizeBound() {
+    cache.put("stable", 1, info1);
+    cache.put("stable", 1, info2);
+    cache.put("test", 1, new UpdateInfo("3.0.0", new Date()));
+
+    assertNull(cache.get("stable", "1.0.0", 1));
+    assertNotNull(cache.get("stable", "2.0.0", 1));
+    assertNotNull(cache.get("test", "3.0.0", 1));
+  }
+}
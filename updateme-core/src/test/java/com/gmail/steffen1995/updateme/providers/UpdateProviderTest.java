@@ -0,0 +1,171 @@
+package com.gmail.steffen1995.updateme.providers;
+
+import com.gmail.steffen1995.updateme.update.UnpackCache;
+import com.gmail.steffen1995.updateme.update.Update;
+import com.gmail.steffen1995.updateme.update.UpdateInfo;
+import com.gmail.steffen1995.updateme.util.PathUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * test for com.gmail.steffen1995.updateme.providers.UpdateProvider class
+ *
+ * @author Steffen Schoen
+ **/
+public class UpdateProviderTest {
+  private UpdateRepositoryManipulator repository;
+  private CountDownLatch pullStarted;
+  private CountDownLatch releasePull;
+
+  @Before
+  public void setup() throws UpdateRepositoryException {
+    repository = mock(UpdateRepositoryManipulator.class);
+    pullStarted = new CountDownLatch(1);
+    releasePull = new CountDownLatch(1);
+
+    // pulling blocks until the test releases it
+    when(repository.pullUpdate(anyString(), eq("slow"), any())).thenAnswer(invocation -> {
+      pullStarted.countDown();
+      releasePull.await();
+      throw new UpdateRepositoryException("released");
+    });
+    when(repository.pullUpdate(anyString(), eq("stable"), any())).thenReturn(
+            new File(UpdateProviderTest.class.getResource("/valid_update.zip").getPath()));
+    when(repository.lastModified(anyString())).thenReturn(-1L);
+    when(repository.updateInfoFiles(eq("fast"), any())).thenReturn(Collections.<File>emptyList());
+  }
+
+  @After
+  public void release() {
+    releasePull.countDown();
+  }
+
+  @Test
+  public void independentFetchesRunConcurrently() throws Exception {
+    try (UpdateProvider provider = new UpdateProvider(repository, 2)) {
+      CompletableFuture<?> slow = provider.fetchUpdate("1.0.0", "slow");
+      assertTrue(pullStarted.await(5, TimeUnit.SECONDS));
+
+      List<UpdateInfo> infos = provider.fetchAvailableUpdates("fast").get(5, TimeUnit.SECONDS);
+      assertTrue(infos.isEmpty());
+      assertFalse(slow.isDone());
+    }
+  }
+
+  @Test
+  public void suppliedExecutorIsUsedAndNotShutDown() throws Exception {
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      UpdateProvider provider = new UpdateProvider(repository, executor);
+      provider.fetchAvailableUpdates("fast").get(5, TimeUnit.SECONDS);
+      provider.close();
+
+      assertFalse(executor.isShutdown());
+      provider.fetchAvailableUpdates("fast").get(5, TimeUnit.SECONDS);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void closedProviderRejectsFetches() throws Exception {
+    UpdateProvider provider = new UpdateProvider(repository, 1);
+    provider.close();
+
+    try {
+      provider.fetchAvailableUpdates("fast").get(5, TimeUnit.SECONDS);
+      fail("Fetch on a closed provider succeeded");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof RejectedExecutionException);
+    }
+  }
+
+  @Test
+  public void concurrentFetchesAreCoalesced() throws Exception {
+    try (UpdateProvider provider = new UpdateProvider(repository, 2)) {
+      CompletableFuture<Update> first = provider.fetchUpdate("1.0.0", "slow");
+      assertTrue(pullStarted.await(5, TimeUnit.SECONDS));
+      CompletableFuture<Update> second = provider.fetchUpdate("1.0.0", "slow");
+      releasePull.countDown();
+
+      Throwable firstError = failure(first);
+      assertSame(firstError, failure(second));
+      verify(repository, times(1)).pullUpdate(anyString(), eq("slow"), any());
+
+      // failures are not shared with later fetches
+      failure(provider.fetchUpdate("1.0.0", "slow"));
+      verify(repository, times(2)).pullUpdate(anyString(), eq("slow"), any());
+    }
+  }
+
+  @Test
+  public void fetchedUpdatesAreKeptForTtl() throws Exception {
+    try (UpdateProvider provider = new UpdateProvider(repository, 2)) {
+      Update first = provider.fetchUpdate("1.0.0", "stable").get(5, TimeUnit.SECONDS);
+      Update second = provider.fetchUpdate("1.0.0", "stable").get(5, TimeUnit.SECONDS);
+      assertNotSame(first, second);
+
+      provider.setFetchResultTtlMillis(60_000);
+      Update third = provider.fetchUpdate("1.0.0", "stable").get(5, TimeUnit.SECONDS);
+      assertSame(third, provider.fetchUpdate("1.0.0", "stable").get(5, TimeUnit.SECONDS));
+      verify(repository, times(3)).pullUpdate(anyString(), eq("stable"), any());
+
+      provider.clearCache();
+      assertNotSame(third, provider.fetchUpdate("1.0.0", "stable").get(5, TimeUnit.SECONDS));
+      assertEquals("1.0.0", third.getVersion());
+    }
+  }
+
+  @Test
+  public void fetchedUpdatesAreUnpackedIntoCache() throws Exception {
+    Path cacheDir = Files.createTempDirectory("provider-cache-test");
+    try (UpdateProvider provider = new UpdateProvider(repository, 1)) {
+      provider.setUnpackCache(new UnpackCache(cacheDir, Long.MAX_VALUE));
+      Update first = provider.fetchUpdate("1.0.0", "stable").get(5, TimeUnit.SECONDS);
+      Update second = provider.fetchUpdate("1.0.0", "stable").get(5, TimeUnit.SECONDS);
+
+      assertEquals(first, second);
+      assertTrue(first.getUpdateObjects().get(0).getFile().toPath().startsWith(cacheDir));
+    } finally {
+      PathUtils.deleteRecursively(cacheDir);
+    }
+  }
+
+  private static Throwable failure(CompletableFuture<?> future) throws Exception {
+    try {
+      future.get(5, TimeUnit.SECONDS);
+    } catch (ExecutionException e) {
+      return e.getCause();
+    }
+    fail("Fetch succeeded");
+    return null;
+  }
+}
@@ -0,0 +1,70 @@
+package com.gmail.steffen1995.updateme.providers;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * test for com.gmail.steffen1995.updateme.providers.VersionIndex class
+ *
+ * @author Steffen Schoen
+ **/
+public class VersionIndexTest {
+  private VersionIndex index;
+
+  @Before
+  public void setup() {
+    ChannelIndex channelIndex = new ChannelIndex();
+    // pushed out of order, e.g. a hotfix for an older release
+    for (String version : new String[] {"1.0.0", "2.0.0", "1.10.0", "1.2.0", "2.1.0-beta",
+        "invalid"}) {
+      channelIndex.put(ChannelIndex.Entry.builder().version(version).publishDate(new Date())
+              .build());
+    }
+    index = VersionIndex.of(channelIndex);
+  }
+
+  @Test
+  public void invalidVersionsAreIgnored() {
+    assertEquals(5, index.size());
+    assertFalse(index.get("invalid").isPresent());
+    assertTrue(index.get("1.2").isPresent());
+  }
+
+  @Test
+  public void latestIsHighestVersion() {
+    assertEquals("2.1.0-beta", index.latest().get().getVersion());
+    assertFalse(VersionIndex.of(new ChannelIndex()).latest().isPresent());
+  }
+
+  @Test
+  public void newerVersionsAreFound() {
+    assertEquals(versions("1.10.0", "2.0.0", "2.1.0-beta"), versions(index.newerThan("1.2.0")));
+    assertTrue(index.hasNewerThan("2.0.0"));
+    assertFalse(index.hasNewerThan("2.1.0"));
+    assertTrue(index.newerThan("3.0.0").isEmpty());
+  }
+
+  @Test
+  public void rangesAreFound() {
+    assertEquals(versions("1.2.0", "1.10.0"), versions(index.range("1.2.0", true, "2.0.0", false)));
+    assertEquals(versions("1.10.0", "2.0.0"), versions(index.range("1.2.0", false, "2.0.0", true)));
+    assertEquals(versions("1.0.0", "1.2.0"), versions(index.range(null, true, "1.2.0", true)));
+    assertEquals(versions("2.0.0", "2.1.0-beta"), versions(index.range("2", true, null, true)));
+    assertTrue(index.range("2.0.0", true, "1.0.0", true).isEmpty());
+  }
+
+  private static List<String> versions(String... versions) {
+    return Arrays.asList(versions);
+  }
+
+  private static List<String> versions(List<ChannelIndex.Entry> entries) {
+    return entries.stream().map(ChannelIndex.Entry::getVersion).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,172 @@
+package com.gmail.steffen1995.updateme.server;
+
+import com.gmail.steffen1995.updateme.providers.ChannelIndex;
+import com.gmail.steffen1995.updateme.providers.HttpUpdateRepository;
+import com.gmail.steffen1995.updateme.providers.LocalUpdateRepository;
+import com.gmail.steffen1995.updateme.update.Update;
+import org.apache.commons.io.IOUtils;
+import org.json.JSONArray;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * test for com.gmail.steffen1995.updateme.server.UpdateServer class
+ *
+ * @author Steffen Schoen
+ **/
+public class UpdateServerTest {
+  private Path base;
+  private LocalUpdateRepository repo;
+  private UpdateServer server;
+  private String url;
+
+  @Before
+  public void setup() throws Exception {
+    base = Files.createTempDirectory("updateme");
+    repo = new LocalUpdateRepository(base.toFile());
+    repo.initStructure(null);
+    repo.pushUpdate(new File(getClass().getResource("/valid_update.zip").getFile()), "stable",
+            null);
+
+    server = new UpdateServer(repo, new InetSocketAddress("127.0.0.1", 0), 2);
+    server.start();
+    url = "http://127.0.0.1:" + server.getAddress().getPort();
+  }
+
+  @After
+  public void tearDown() {
+    server.close();
+  }
+
+  @Test
+  public void channelsAreListed() throws Exception {
+    repo.createChannel("beta", null);
+
+    JSONArray channels = new JSONArray(new String(get("/channels.json", null, 200),
+            StandardCharsets.UTF_8));
+
+    assertEquals(2, channels.length());
+  }
+
+  @Test
+  public void unchangedFilesAreNotSentAgain() throws Exception {
+    HttpURLConnection connection = open("/stable/1.0.0/updateInfo.json");
+    assertEquals(200, connection.getResponseCode());
+    String etag = connection.getHeaderField("ETag");
+    IOUtils.toByteArray(connection.getInputStream());
+    assertNotNull(etag);
+    assertNotNull(connection.getHeaderField("Last-Modified"));
+
+    connection = open("/stable/1.0.0/updateInfo.json");
+    connection.setRequestProperty("If-None-Match", etag);
+    assertEquals(304, connection.getResponseCode());
+  }
+
+  @Test
+  public void recentlyModifiedFilesAreNotCached() throws Exception {
+    Path file = base.resolve("stable/notes.txt");
+    FileTime modified = FileTime.fromMillis(System.currentTimeMillis());
+    Files.write(file, "first".getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(file, modified);
+    assertEquals("first", new String(get("/stable/notes.txt", null, 200), StandardCharsets.UTF_8));
+
+    // a change within the timestamp granularity keeps size and modification time
+    Files.write(file, "again".getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(file, modified);
+
+    assertEquals("again", new String(get("/stable/notes.txt", null, 200), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void rangesAreServed() throws Exception {
+    byte[] content = Files.readAllBytes(base.resolve("stable/1.0.0/data.zip"));
+
+    assertArrayEquals(Arrays.copyOfRange(content, 10, 20),
+            get("/stable/1.0.0/data.zip", "bytes=10-19", 206));
+    assertArrayEquals(Arrays.copyOfRange(content, content.length - 5, content.length),
+            get("/stable/1.0.0/data.zip", "bytes=-5", 206));
+    assertArrayEquals(Arrays.copyOfRange(content, 100, content.length),
+            get("/stable/1.0.0/data.zip", "bytes=100-", 206));
+    get("/stable/1.0.0/data.zip", "bytes=" + content.length + "-", 416);
+  }
+
+  @Test
+  public void missingIndexIsGenerated() throws Exception {
+    Files.delete(base.resolve("stable").resolve(ChannelIndex.FILE_NAME));
+
+    String index = new String(get("/stable/index.json", null, 200), StandardCharsets.UTF_8);
+
+    assertTrue(index.contains("1.0.0"));
+  }
+
+  @Test
+  public void contentAddressedPackagesAreAssembled() throws Exception {
+    repo.setContentAddressed(true);
+    repo.createChannel("beta", null);
+    repo.pushUpdate(new File(getClass().getResource("/valid_update.zip").getFile()), "beta", null);
+    assertFalse(Files.exists(base.resolve("beta/1.0.0/data.zip")));
+
+    Path download = Files.createTempFile("update", ".zip");
+    Files.write(download, get("/beta/1.0.0/data.zip", null, 200));
+
+    Update update = Update.unpack(download.toString());
+    assertEquals("1.0.0", update.getVersion());
+    assertEquals(2, update.getUpdateObjects().size());
+  }
+
+  @Test
+  public void hiddenFilesAreNotServed() throws Exception {
+    repo.setContentAddressed(true);
+    repo.createChannel("beta", null);
+    repo.pushUpdate(new File(getClass().getResource("/valid_update.zip").getFile()), "beta", null);
+
+    get("/.objects", null, 404);
+    get("/stable/../.objects", null, 404);
+    get("/stable/9.9.9/data.zip", null, 404);
+  }
+
+  @Test
+  public void httpRepositoryCanPullFromServer() throws Exception {
+    HttpUpdateRepository http = new HttpUpdateRepository(new URL(url),
+            Files.createTempDirectory("updateme").toFile(), 2, 128);
+
+    assertEquals(1, http.updateInfoFiles("stable", null).size());
+    File pulled = http.pullUpdate("1.0.0", "stable", null);
+
+    assertArrayEquals(Files.readAllBytes(base.resolve("stable/1.0.0/data.zip")),
+            Files.readAllBytes(pulled.toPath()));
+  }
+
+  private HttpURLConnection open(String path) throws IOException {
+    return (HttpURLConnection) new URL(url + path).openConnection();
+  }
+
+  private byte[] get(String path, String range, int expectedStatus) throws IOException {
+    HttpURLConnection connection = open(path);
+    if (range != null) {
+      connection.setRequestProperty("Range", range);
+    }
+    assertEquals(expectedStatus, connection.getResponseCode());
+    if (expectedStatus >= 400) {
+      return null;
+    }
+    try (InputStream in = connection.getInputStream()) {
+      return IOUtils.toByteArray(in);
+    }
+  }
+}
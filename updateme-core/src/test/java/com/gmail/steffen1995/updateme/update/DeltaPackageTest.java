@@ -0,0 +1,140 @@
+package com.gmail.steffen1995.updateme.update;
+
+import com.gmail.steffen1995.updateme.util.HashCalculator;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * test for com.gmail.steffen1995.updateme.update.DeltaPackage class
+ *
+ * @author Steffen Schoen
+ **/
+public class DeltaPackageTest {
+  private static final byte[] CONTENT = "content".getBytes(StandardCharsets.UTF_8);
+
+  /**
+   * Writes a delta package that takes the single file of its target version from the given base
+   * path.
+   */
+  private static File createDelta(Path workDir, String mode, String base) throws IOException {
+    UpdateInfo info = new UpdateInfo("1.1.0", new Date());
+    Path content = workDir.resolve("content.txt");
+    Files.write(content, CONTENT);
+    info.getFileUpdates().add(UpdateInfo.FileUpdate.builder().localPath("/a.txt")
+            .checksum(HashCalculator.sha256(content.toFile())).sizeBytes(CONTENT.length).build());
+
+    JSONObject file = new JSONObject();
+    file.put("path", "/a.txt");
+    file.put("mode", mode);
+    file.put("base", base);
+    JSONObject deltaInfo = new JSONObject();
+    deltaInfo.put("baseVersion", "1.0.0");
+    deltaInfo.put("files", new JSONArray().put(file));
+
+    File delta = workDir.resolve("delta.zip").toFile();
+    try (ZipOutputStream zipOut = new ZipOutputStream(new FileOutputStream(delta))) {
+      zipOut.putNextEntry(new ZipEntry("updateInfo.json"));
+      zipOut.write(info.toJsonBytes());
+      zipOut.putNextEntry(new ZipEntry("deltaInfo.json"));
+      zipOut.write(deltaInfo.toString().getBytes(StandardCharsets.UTF_8));
+    }
+    return delta;
+  }
+
+  private static Set<Path> tempDirectories() throws IOException {
+    try (Stream<Path> files = Files.list(Paths.get(System.getProperty("java.io.tmpdir")))) {
+      return files.filter(path -> path.getFileName().toString().startsWith("update-"))
+              .collect(Collectors.toCollection(HashSet::new));
+    }
+  }
+
+  @Test
+  public void unchangedFileIsCopiedFromBase() throws Exception {
+    Path workDir = Files.createTempDirectory("updateme");
+    Path baseDir = Files.createDirectories(workDir.resolve("base"));
+    Files.write(baseDir.resolve("a.txt"), CONTENT);
+
+    Update update = DeltaPackage.unpack(createDelta(workDir, "unchanged", "/a.txt"),
+            baseDir.toFile());
+
+    assertEquals("1.1.0", update.getVersion());
+    assertArrayEquals(CONTENT,
+            Files.readAllBytes(update.getUpdateObjects().get(0).getFile().toPath()));
+  }
+
+  @Test(expected = IOException.class)
+  public void baseOutsideOfBaseDirectoryIsRejected() throws Exception {
+    Path workDir = Files.createTempDirectory("updateme");
+    Path baseDir = Files.createDirectories(workDir.resolve("base"));
+    // a file with the expected content right next to the base directory
+    Files.write(workDir.resolve("secret.txt"), CONTENT);
+
+    DeltaPackage.unpack(createDelta(workDir, "unchanged", "/../secret.txt"), baseDir.toFile());
+  }
+
+  @Test
+  public void failedUnpackLeavesNoTempDirectory() throws Exception {
+    Path workDir = Files.createTempDirectory("updateme");
+    Path baseDir = Files.createDirectories(workDir.resolve("base"));
+    Files.write(baseDir.resolve("a.txt"), "changed".getBytes(StandardCharsets.UTF_8));
+    File delta = createDelta(workDir, "unchanged", "/a.txt");
+    Set<Path> before = tempDirectories();
+
+    try {
+      DeltaPackage.unpack(delta, baseDir.toFile());
+      fail("checksum should not match");
+    } catch (UpdateException e) {
+      // expected
+    }
+
+    assertEquals(before, tempDirectories());
+  }
+
+  @Test
+  public void largeFilesAreNotPatched() throws Exception {
+    Path workDir = Files.createTempDirectory("updateme");
+    long size = 3L * 1024 * 1024 * 1024;
+    UpdateInfo baseInfo = new UpdateInfo("1.0.0", new Date());
+    baseInfo.getFileUpdates().add(UpdateInfo.FileUpdate.builder().localPath("/big.bin")
+            .checksum("00").sizeBytes(size).build());
+    UpdateInfo targetInfo = new UpdateInfo("1.1.0", new Date());
+    targetInfo.getFileUpdates().add(UpdateInfo.FileUpdate.builder().localPath("/big.bin")
+            .checksum("01").sizeBytes(size).build());
+    File delta = workDir.resolve("delta.zip").toFile();
+
+    DeltaPackage.create(baseInfo, file -> {
+      throw new IOException("the base must not be read");
+    }, targetInfo, file -> new ByteArrayInputStream(CONTENT), delta);
+
+    try (ZipFile zip = new ZipFile(delta);
+         Reader reader = new InputStreamReader(zip.getInputStream(zip.getEntry("deltaInfo.json")),
+                 StandardCharsets.UTF_8)) {
+      JSONObject deltaInfo = new JSONObject(new JSONTokener(reader));
+      assertEquals("full", deltaInfo.getJSONArray("files").getJSONObject(0).getString("mode"));
+      assertNotNull(zip.getEntry("big.bin"));
+    }
+  }
+}
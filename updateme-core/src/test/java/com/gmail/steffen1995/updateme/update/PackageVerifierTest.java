@@ -0,0 +1,72 @@
+package com.gmail.steffen1995.updateme.update;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * test for com.gmail.steffen1995.updateme.update.PackageVerifier class
+ *
+ * @author Steffen Schoen
+ **/
+public class PackageVerifierTest {
+  private File resource(String name) {
+    return new File(PackageVerifierTest.class.getResource(name).getFile());
+  }
+
+  @Test
+  public void infoMatchesUnpackedUpdate() throws Exception {
+    File updatePackage = resource("/valid_update.zip");
+
+    UpdateInfo verified = PackageVerifier.verify(updatePackage);
+
+    assertEquals(UpdateInfo.fromUpdate(Update.unpack(updatePackage)), verified);
+  }
+
+  @Test
+  public void packageIsCopiedAndFilesArePassedOn() throws Exception {
+    File updatePackage = resource("/valid_update.zip");
+    ByteArrayOutputStream copy = new ByteArrayOutputStream();
+    Map<String, ByteArrayOutputStream> contents = new HashMap<>();
+    AtomicLong read = new AtomicLong();
+
+    UpdateInfo verified;
+    try (InputStream in = Files.newInputStream(updatePackage.toPath())) {
+      verified = PackageVerifier.verify(in, copy, path -> {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        contents.put(path, content);
+        return content;
+      }, read::addAndGet);
+    }
+
+    assertArrayEquals(Files.readAllBytes(updatePackage.toPath()), copy.toByteArray());
+    assertEquals(updatePackage.length(), read.get());
+    assertEquals(verified.getFileUpdates().size(), contents.size());
+    for (UpdateInfo.FileUpdate fu : verified.getFileUpdates()) {
+      assertEquals(fu.getSizeBytes(), contents.get(fu.getRelativePath()).size());
+    }
+  }
+
+  @Test(expected = UpdateException.class)
+  public void wrongChecksumIsRejected() throws Exception {
+    PackageVerifier.verify(resource("/update_checksum_wrong.zip"));
+  }
+
+  @Test(expected = UpdateException.class)
+  public void missingFileIsRejected() throws Exception {
+    PackageVerifier.verify(resource("/update_file_missing.zip"));
+  }
+
+  @Test(expected = UpdateException.class)
+  public void missingInfoIsRejected() throws Exception {
+    PackageVerifier.verify(resource("/update_info_missing.zip"));
+  }
+}
@@ -0,0 +1,141 @@
+package com.gmail.steffen1995.updateme.update;
+
+import com.gmail.steffen1995.updateme.util.ChecksumCache;
+import com.gmail.steffen1995.updateme.util.HashCalculator;
+import com.gmail.steffen1995.updateme.util.PathUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * test for com.gmail.steffen1995.updateme.update.StagedApplier class
+ *
+ * @author Steffen Schoen
+ **/
+public class StagedApplierTest {
+  private Path workDir;
+  private Path root;
+  private StagedApplier applier;
+
+  @Before
+  public void setup() throws IOException {
+    workDir = Files.createTempDirectory("staged-applier-test");
+    root = workDir.resolve("app");
+    applier = new StagedApplier(root);
+  }
+
+  @After
+  public void cleanup() throws IOException {
+    PathUtils.deleteRecursively(workDir);
+  }
+
+  @Test
+  public void firstVersionIsCopied() throws IOException, UpdateException {
+    UpdateApplier.ApplyResult result = applier.apply(update("1.0.0", "lib.jar", "app.jar"), null);
+
+    assertEquals(Arrays.asList("/lib.jar", "/app.jar"), result.getWrittenFiles());
+    assertEquals("1.0.0", applier.activeVersion());
+    assertTrue(Files.isSymbolicLink(root.resolve(StagedApplier.CURRENT_LINK)));
+    assertEquals("app.jar 1.0.0", read("app.jar"));
+  }
+
+  @Test
+  public void stagedFilesAreCached() throws IOException, UpdateException {
+    applier.apply(update("1.0.0", "lib.jar", "app.jar"), null);
+
+    ChecksumCache cache = UpdateApplier.openChecksumCache(applier.activeVersionDirectory());
+    assertEquals(2, cache.size());
+    assertNotNull(cache.get(applier.activeVersionDirectory().resolve("app.jar")));
+  }
+
+  @Test
+  public void corruptCopyIsRejected() throws IOException {
+    Path file = Files.write(Files.createDirectories(workDir.resolve("source")).resolve("app.jar"),
+            "app.jar".getBytes(StandardCharsets.UTF_8));
+    Update update = new Update("1.0.0");
+    update.getUpdateObjects().add(new UpdateObject(file.toFile(), "/",
+            HashCalculator.sha256(file.toFile()).replace('a', 'b')));
+
+    try {
+      applier.apply(update, null);
+      fail("checksum should not match");
+    } catch (UpdateException e) {
+      // expected
+    }
+
+    assertNull(applier.activeVersion());
+  }
+
+  @Test
+  public void unchangedFilesAreHardLinked() throws IOException, UpdateException {
+    applier.apply(update("1.0.0", "lib.jar", "app.jar", "old.jar"), null);
+    Path previous = applier.activeVersionDirectory();
+
+    UpdateApplier.ApplyResult result = applier.apply(update("2.0.0", "lib.jar", "app.jar"), null);
+
+    assertEquals("2.0.0", applier.activeVersion());
+    assertEquals(Collections.singletonList("/app.jar"), result.getWrittenFiles());
+    assertEquals(Collections.singletonList("/old.jar"), result.getRemovedFiles());
+    assertEquals(1, result.getUnchangedFiles());
+    assertTrue(Files.isSameFile(previous.resolve("lib.jar"),
+            applier.activeVersionDirectory().resolve("lib.jar")));
+    assertEquals("app.jar 2.0.0", read("app.jar"));
+    assertFalse(Files.exists(applier.getCurrentDirectory().resolve("old.jar")));
+
+    // the previous version stays available
+    assertEquals("app.jar 1.0.0",
+            new String(Files.readAllBytes(previous.resolve("app.jar")), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void olderVersionsAreDeleted() throws IOException, UpdateException {
+    applier.apply(update("1.0.0", "app.jar"), null);
+    Path first = applier.activeVersionDirectory();
+    applier.apply(update("2.0.0", "app.jar"), null);
+    applier.apply(update("3.0.0", "app.jar"), null);
+
+    assertFalse(Files.exists(first));
+    assertEquals(2, root.resolve(StagedApplier.VERSIONS_DIRECTORY).toFile().list().length);
+    assertEquals("app.jar 3.0.0", read("app.jar"));
+  }
+
+  @Test(expected = UpdateException.class)
+  public void activeVersionCannotBeStagedAgain() throws IOException, UpdateException {
+    applier.apply(update("1.0.0", "app.jar"), null);
+    applier.apply(update("1.0.0", "app.jar"), null);
+  }
+
+  /**
+   * Creates an update whose files contain their name, except for lib.jar, which is the same in
+   * every version.
+   */
+  private Update update(String version, String... names) throws IOException {
+    Path source = Files.createDirectories(workDir.resolve("source-" + version));
+    Update update = new Update(version);
+    for (String name : names) {
+      String content = name.equals("lib.jar") ? name : name + " " + version;
+      Path file = Files.write(source.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+      update.getUpdateObjects().add(new UpdateObject(file.toFile(), "/"));
+    }
+    return update;
+  }
+
+  private String read(String name) throws IOException {
+    return new String(Files.readAllBytes(applier.getCurrentDirectory().resolve(name)),
+            StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,116 @@
+package com.gmail.steffen1995.updateme.update;
+
+import com.gmail.steffen1995.updateme.providers.ProgressTracker;
+import com.gmail.steffen1995.updateme.util.PathUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * test for com.gmail.steffen1995.updateme.update.UnpackCache class
+ *
+ * @author Steffen Schoen
+ **/
+public class UnpackCacheTest {
+  private Path cacheDir;
+  private File validPackage;
+  private File smallPackage;
+
+  @Before
+  public void setup() throws IOException {
+    cacheDir = Files.createTempDirectory("unpack-cache-test");
+    validPackage = new File(UnpackCacheTest.class.getResource("/valid_update.zip").getPath());
+
+    Update small = new Update("2.0.0");
+    UpdateObject text = new UpdateObject(
+            UnpackCacheTest.class.getResource("/testFiles/textFile.txt").getPath(), "/");
+    text.calculateChecksum();
+    small.getUpdateObjects().add(text);
+    smallPackage = Files.createTempFile("small-update", ".zip").toFile();
+    small.pack(smallPackage.getAbsolutePath());
+  }
+
+  @After
+  public void cleanup() throws IOException {
+    PathUtils.deleteRecursively(cacheDir);
+    Files.deleteIfExists(smallPackage.toPath());
+  }
+
+  @Test
+  public void unpackedUpdateIsReused() throws IOException, UpdateException {
+    UnpackCache cache = new UnpackCache(cacheDir, Long.MAX_VALUE);
+    Update unpacked = cache.unpack(validPackage, null);
+    Update expected = Update.unpack(validPackage);
+
+    ProgressTracker tracker = new ProgressTracker(null);
+    Update cached = cache.unpack(validPackage, tracker);
+    assertEquals(0, tracker.getCurrent());
+    assertEquals(unpacked, cached);
+    assertEquals(UpdateInfo.fromUpdate(expected), UpdateInfo.fromUpdate(cached));
+    assertTrue(cached.getUpdateObjects().get(0).getFile().toPath().startsWith(cacheDir));
+
+    // survives reopening the cache
+    tracker = new ProgressTracker(null);
+    assertEquals(unpacked, new UnpackCache(cacheDir, Long.MAX_VALUE).unpack(validPackage, tracker));
+    assertEquals(0, tracker.getCurrent());
+  }
+
+  @Test
+  public void updateInfoIsRestored() throws IOException, UpdateException {
+    Update cached = new UnpackCache(cacheDir, Long.MAX_VALUE).unpack(smallPackage, null);
+
+    assertEquals("2.0.0", cached.getVersion());
+    assertEquals("/", cached.getUpdateObjects().get(0).getBasePath());
+    assertEquals("/textFile.txt",
+            UpdateInfo.fromUpdate(cached).getFileUpdates().get(0).getLocalPath());
+  }
+
+  @Test
+  public void leastRecentlyUsedUpdateIsEvicted() throws IOException, UpdateException {
+    UnpackCache cache = new UnpackCache(cacheDir, 0);
+    Update first = cache.unpack(validPackage, null);
+    assertTrue(first.getUpdateObjects().get(0).getFile().exists());
+
+    cache.unpack(smallPackage, null);
+    assertFalse(first.getUpdateObjects().get(0).getFile().exists());
+    assertEquals(20, cache.getTotalBytes());
+
+    cache.clear();
+    assertEquals(0, cache.getTotalBytes());
+    assertEquals(0, cacheDir.toFile().list().length);
+  }
+
+  @Test
+  public void modifiedUpdateIsUnpackedAgain() throws IOException, UpdateException {
+    UnpackCache cache = new UnpackCache(cacheDir, Long.MAX_VALUE);
+    Update unpacked = cache.unpack(validPackage, null);
+    Files.delete(unpacked.getUpdateObjects().get(0).getFile().toPath());
+
+    ProgressTracker tracker = new ProgressTracker(null);
+    Update again = cache.unpack(validPackage, tracker);
+    assertTrue(tracker.getCurrent() > 0);
+    assertTrue(again.getUpdateObjects().get(0).getFile().exists());
+  }
+
+  @Test
+  public void interruptedUnpacksAreCleanedUp() throws IOException, UpdateException {
+    new UnpackCache(cacheDir, Long.MAX_VALUE).unpack(validPackage, null);
+    Path stale = Files.createDirectories(cacheDir.resolve("0123.tmp456/files"));
+    Path incomplete = Files.createDirectories(cacheDir.resolve("4567/files"));
+
+    UnpackCache cache = new UnpackCache(cacheDir, Long.MAX_VALUE);
+    assertFalse(Files.exists(stale.getParent()));
+    assertFalse(Files.exists(incomplete.getParent()));
+    assertEquals(1, cacheDir.toFile().list().length);
+    assertTrue(cache.getTotalBytes() > 0);
+  }
+}
@@ -0,0 +1,142 @@
+package com.gmail.steffen1995.updateme.update;
+
+import com.gmail.steffen1995.updateme.util.PathUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * test for com.gmail.steffen1995.updateme.update.UpdateApplier class
+ *
+ * @author Steffen Schoen
+ **/
+public class UpdateApplierTest {
+  private Path workDir;
+  private Path installDir;
+  private File version1;
+  private File version2;
+  private UpdateApplier applier;
+
+  @Before
+  public void setup() throws IOException {
+    workDir = Files.createTempDirectory("applier-test");
+    installDir = workDir.resolve("install");
+    applier = new UpdateApplier();
+
+    Path text = Files.write(workDir.resolve("textFile.txt"),
+            "unchanged content".getBytes(StandardCharsets.UTF_8));
+    Path removed = Files.write(workDir.resolve("removed.txt"),
+            "removed in 2.0.0".getBytes(StandardCharsets.UTF_8));
+    Path added = Files.write(workDir.resolve("added.txt"),
+            "added in 2.0.0".getBytes(StandardCharsets.UTF_8));
+
+    version1 = pack("1.0.0", text, removed);
+    version2 = pack("2.0.0", text, added);
+  }
+
+  @After
+  public void cleanup() throws IOException {
+    PathUtils.deleteRecursively(workDir);
+  }
+
+  @Test
+  public void freshInstallWritesAllFiles() throws IOException, UpdateException {
+    UpdateApplier.ApplyResult result = applier.apply(version1, installDir, null);
+
+    assertEquals("1.0.0", result.getVersion());
+    assertEquals(Arrays.asList("/textFile.txt", "/removed.txt"), result.getWrittenFiles());
+    assertEquals(0, result.getUnchangedFiles());
+    assertEquals("unchanged content", read("textFile.txt"));
+    assertEquals("1.0.0", UpdateApplier.installedInfo(installDir).getVersion());
+  }
+
+  @Test
+  public void onlyChangedFilesAreWritten() throws IOException, UpdateException {
+    applier.apply(version1, installDir, null);
+    FileTime old = FileTime.fromMillis(1_000_000_000_000L);
+    Files.setLastModifiedTime(installDir.resolve("textFile.txt"), old);
+
+    UpdateApplier.ApplyResult result = applier.apply(version2, installDir, null);
+
+    assertEquals(Collections.singletonList("/added.txt"), result.getWrittenFiles());
+    assertEquals(Collections.singletonList("/removed.txt"), result.getRemovedFiles());
+    assertEquals(1, result.getUnchangedFiles());
+    assertEquals(14, result.getBytesWritten());
+    assertEquals(old, Files.getLastModifiedTime(installDir.resolve("textFile.txt")));
+    assertFalse(Files.exists(installDir.resolve("removed.txt")));
+    assertEquals("added in 2.0.0", read("added.txt"));
+    assertEquals("2.0.0", UpdateApplier.installedInfo(installDir).getVersion());
+  }
+
+  @Test
+  public void modifiedFilesAreRestored() throws IOException, UpdateException {
+    applier.apply(version1, installDir, null);
+    // same size, different content
+    Files.write(installDir.resolve("textFile.txt"),
+            "modified content!".getBytes(StandardCharsets.UTF_8));
+
+    UpdateApplier.ApplyResult result = applier.apply(version1, installDir, null);
+
+    assertEquals(Collections.singletonList("/textFile.txt"), result.getWrittenFiles());
+    assertEquals("unchanged content", read("textFile.txt"));
+  }
+
+  @Test
+  public void unknownFilesAreKept() throws IOException, UpdateException {
+    Files.createDirectories(installDir);
+    Files.write(installDir.resolve("settings.conf"), new byte[] {1, 2, 3});
+
+    applier.apply(version1, installDir, null);
+    applier.apply(version2, installDir, null);
+
+    assertTrue(Files.exists(installDir.resolve("settings.conf")));
+  }
+
+  @Test
+  public void verifyReportsModifiedFiles() throws IOException, UpdateException {
+    applier.apply(version1, installDir, null);
+    assertEquals(Collections.emptyList(), applier.verify(installDir));
+
+    Files.write(installDir.resolve("textFile.txt"),
+            "modified content!".getBytes(StandardCharsets.UTF_8));
+    Files.delete(installDir.resolve("removed.txt"));
+    assertEquals(Arrays.asList("/removed.txt", "/textFile.txt"), applier.verify(installDir));
+  }
+
+  @Test(expected = UpdateException.class)
+  public void checksumMismatchFails() throws IOException, UpdateException {
+    applier.apply(new File(UpdateApplierTest.class.getResource("/update_checksum_wrong.zip")
+            .getPath()), installDir, null);
+  }
+
+  private File pack(String version, Path... files) throws IOException {
+    Update update = new Update(version);
+    for (Path file : files) {
+      UpdateObject uo = new UpdateObject(file.toFile(), "/");
+      uo.calculateChecksum();
+      update.getUpdateObjects().add(uo);
+    }
+
+    File updatePackage = workDir.resolve(version + ".zip").toFile();
+    update.pack(updatePackage.getAbsolutePath());
+    assertEquals(files.length, update.getUpdateObjects().size());
+    return updatePackage;
+  }
+
+  private String read(String name) throws IOException {
+    return new String(Files.readAllBytes(installDir.resolve(name)), StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,70 @@
+package com.gmail.steffen1995.updateme.update;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * test for com.gmail.steffen1995.updateme.update.Version class
+ *
+ * @author Steffen Schoen
+ **/
+public class VersionTest {
+  @Test
+  public void versionsAreOrderedSemantically() {
+    List<String> ordered = Arrays.asList("0.9", "1.0.0-alpha", "1.0.0-alpha.1", "1.0.0-alpha.beta",
+            "1.0.0-beta", "1.0.0-beta.2", "1.0.0-beta.11", "1.0.0-rc.1", "1.0.0", "1.2.0", "1.10.0",
+            "2.0.0.1", "10.0.0");
+
+    List<Version> versions = new ArrayList<>();
+    for (String v : ordered) {
+      versions.add(Version.parse(v));
+    }
+    Collections.shuffle(versions);
+    Collections.sort(versions);
+
+    for (int i = 0; i < ordered.size(); i++) {
+      assertEquals(ordered.get(i), versions.get(i).toString());
+    }
+  }
+
+  @Test
+  public void trailingZerosAndBuildMetadataAreIgnored() {
+    assertEquals(Version.parse("1.2"), Version.parse("1.2.0"));
+    assertEquals(Version.parse("1.2").hashCode(), Version.parse("1.2.0").hashCode());
+    assertEquals(0, Version.parse("v1.2.0+build.5").compareTo(Version.parse("1.2.0")));
+    assertEquals("v1.2.0+build.5", Version.parse("v1.2.0+build.5").toString());
+    assertTrue(Version.parse("1.0.0-rc.1").isPreRelease());
+    assertFalse(Version.parse("1.0.0").isPreRelease());
+  }
+
+  @Test
+  public void equalsMatchesCompareTo() {
+    Version padded = Version.parse("1.0.0-rc.01");
+    Version plain = Version.parse("1.0.0-rc.1");
+
+    assertEquals(0, padded.compareTo(plain));
+    assertEquals(plain, padded);
+    assertEquals(plain.hashCode(), padded.hashCode());
+    assertTrue(Version.parse("1.0.0-rc.010").compareTo(Version.parse("1.0.0-rc.9")) > 0);
+    assertEquals("1.0.0-rc.01", padded.toString());
+  }
+
+  @Test
+  public void invalidVersionsAreRejected() {
+    for (String invalid : new String[] {"", "1..0", "1.a", "1.0-", "1.0+", "1.0-beta..1", "latest"}) {
+      try {
+        Version.parse(invalid);
+        fail("'" + invalid + "' should be rejected");
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+      assertNull(Version.tryParse(invalid));
+    }
+  }
+}
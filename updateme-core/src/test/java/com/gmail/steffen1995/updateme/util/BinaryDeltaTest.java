@@ -0,0 +1,81 @@
+package com.gmail.steffen1995.updateme.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * test for com.gmail.steffen1995.updateme.util.BinaryDelta class
+ *
+ * @author Steffen Schoen
+ **/
+public class BinaryDeltaTest {
+  private static byte[] randomBytes(int length, long seed) {
+    byte[] bytes = new byte[length];
+    new Random(seed).nextBytes(bytes);
+    return bytes;
+  }
+
+  private static byte[] roundTrip(byte[] base, byte[] target, ByteArrayOutputStream delta) throws IOException {
+    BinaryDelta.create(base, target, delta);
+
+    File baseFile = File.createTempFile("updateme", "junit");
+    baseFile.deleteOnExit();
+    Files.write(baseFile.toPath(), base);
+
+    ByteArrayOutputStream reconstructed = new ByteArrayOutputStream();
+    BinaryDelta.apply(baseFile, new ByteArrayInputStream(delta.toByteArray()), reconstructed);
+    return reconstructed.toByteArray();
+  }
+
+  @Test
+  public void smallChange() throws IOException {
+    byte[] base = randomBytes(256 * 1024, 1);
+    byte[] target = base.clone();
+    // modify a few bytes in the middle and append some data
+    target[1000] ^= 0x55;
+    target[100000] ^= 0x55;
+    ByteArrayOutputStream extended = new ByteArrayOutputStream();
+    extended.write(target);
+    extended.write(randomBytes(500, 2));
+    target = extended.toByteArray();
+
+    ByteArrayOutputStream delta = new ByteArrayOutputStream();
+    assertArrayEquals(target, roundTrip(base, target, delta));
+    assertTrue(delta.size() < target.length / 10);
+  }
+
+  @Test
+  public void shiftedContent() throws IOException {
+    byte[] base = randomBytes(64 * 1024, 3);
+    byte[] target = new byte[base.length + 7];
+    System.arraycopy(base, 0, target, 7, base.length);
+
+    ByteArrayOutputStream delta = new ByteArrayOutputStream();
+    assertArrayEquals(target, roundTrip(base, target, delta));
+    assertTrue(delta.size() < 1024);
+  }
+
+  @Test
+  public void unrelatedContent() throws IOException {
+    byte[] base = randomBytes(10000, 4);
+    byte[] target = randomBytes(12345, 5);
+
+    assertArrayEquals(target, roundTrip(base, target, new ByteArrayOutputStream()));
+  }
+
+  @Test
+  public void emptyFiles() throws IOException {
+    assertArrayEquals(new byte[0], roundTrip(new byte[0], new byte[0], new ByteArrayOutputStream()));
+    byte[] target = randomBytes(10, 6);
+    assertArrayEquals(target, roundTrip(new byte[0], target, new ByteArrayOutputStream()));
+  }
+}
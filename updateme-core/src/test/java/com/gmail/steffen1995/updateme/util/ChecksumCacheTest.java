@@ -0,0 +1,119 @@
+package com.gmail.steffen1995.updateme.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * test for com.gmail.steffen1995.updateme.util.ChecksumCache class
+ *
+ * @author Steffen Schoen
+ **/
+public class ChecksumCacheTest {
+  private static final String FAKE_SHA256 =
+          "0000000000000000000000000000000000000000000000000000000000000001";
+  private static final FileTime OLD = FileTime.fromMillis(1_000_000_000_000L);
+
+  private Path root;
+  private Path indexFile;
+  private Path file;
+
+  @Before
+  public void setup() throws IOException {
+    root = Files.createTempDirectory("checksum-cache-test");
+    indexFile = root.resolve(".state/checksums.bin");
+    file = Files.write(Files.createDirectories(root.resolve("lib")).resolve("app.jar"),
+            "content".getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(file, OLD);
+  }
+
+  @After
+  public void cleanup() throws IOException {
+    PathUtils.deleteRecursively(root);
+  }
+
+  @Test
+  public void unchangedFilesAreNotHashed() throws IOException {
+    ChecksumCache cache = ChecksumCache.open(root, indexFile);
+    // a wrong checksum proves that the file is not read again
+    cache.put(file, FAKE_SHA256);
+
+    assertEquals(FAKE_SHA256, sha256(cache));
+    assertEquals(FAKE_SHA256, cache.get(file));
+  }
+
+  @Test
+  public void changedFilesAreHashed() throws IOException {
+    ChecksumCache cache = ChecksumCache.open(root, indexFile);
+    cache.put(file, FAKE_SHA256);
+    Files.setLastModifiedTime(file, FileTime.fromMillis(OLD.toMillis() + 1000));
+
+    assertNull(cache.get(file));
+    assertEquals(HashCalculator.sha256(file.toFile()), sha256(cache));
+  }
+
+  @Test
+  public void indexIsPersisted() throws IOException {
+    ChecksumCache cache = ChecksumCache.open(root, indexFile);
+    cache.put(file, FAKE_SHA256);
+    cache.save();
+
+    ChecksumCache reopened = ChecksumCache.open(root, indexFile);
+    assertEquals(1, reopened.size());
+    assertEquals(FAKE_SHA256, reopened.get(file));
+
+    reopened.remove(file);
+    reopened.save();
+    assertEquals(0, ChecksumCache.open(root, indexFile).size());
+  }
+
+  @Test
+  public void recentlyModifiedFilesAreNotCached() throws IOException {
+    Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+    ChecksumCache cache = ChecksumCache.open(root, indexFile);
+    cache.put(file, FAKE_SHA256);
+
+    assertNull(cache.get(file));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void verifiedFilesAreCachedRightAway() throws IOException {
+    Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+    ChecksumCache cache = ChecksumCache.open(root, indexFile);
+    cache.putVerified(file, FAKE_SHA256);
+
+    assertEquals(FAKE_SHA256, cache.get(file));
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void corruptIndexIsIgnored() throws IOException {
+    Files.createDirectories(indexFile.getParent());
+    Files.write(indexFile, new byte[] {1, 2, 3});
+
+    ChecksumCache cache = ChecksumCache.open(root, indexFile);
+    assertEquals(0, cache.size());
+    assertEquals(HashCalculator.sha256(file.toFile()), sha256(cache));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void filesOutsideOfRootAreRejected() throws IOException {
+    ChecksumCache.open(root.resolve("lib"), indexFile).put(indexFile, FAKE_SHA256);
+  }
+
+  private String sha256(ChecksumCache cache) throws IOException {
+    return cache.sha256(Collections.singletonList(file), ParallelHashCalculator.common())
+            .get(file);
+  }
+}
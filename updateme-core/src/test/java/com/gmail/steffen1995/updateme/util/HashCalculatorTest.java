@@ -0,0 +1,112 @@
+package com.gmail.steffen1995.updateme.util;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * test for com.gmail.steffen1995.updateme.util.HashCalculator class
+ *
+ * @author Steffen Schoen
+ **/
+public class HashCalculatorTest {
+  // SHA-256 of "abc"
+  private static final String ABC_HASH =
+          "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+  private static String streamHash(Path file) throws Exception {
+    MessageDigest digest = MessageDigest.getInstance("SHA-256");
+    try (InputStream in = Files.newInputStream(file)) {
+      byte[] buffer = new byte[64 * 1024];
+      int read;
+      while ((read = in.read(buffer)) >= 0) {
+        digest.update(buffer, 0, read);
+      }
+    }
+    return HashCalculator.bytesToHex(digest.digest());
+  }
+
+  @Test
+  public void hashIsCalculated() throws Exception {
+    File file = Files.createTempFile("updateme", ".txt").toFile();
+    file.deleteOnExit();
+    Files.write(file.toPath(), "abc".getBytes(StandardCharsets.UTF_8));
+
+    assertEquals(ABC_HASH, HashCalculator.sha256(file));
+  }
+
+  @Test
+  public void rawHashIsWrittenAtOffset() throws Exception {
+    Path file = Files.createTempFile("updateme", ".txt");
+    file.toFile().deleteOnExit();
+    Files.write(file, "abc".getBytes(StandardCharsets.UTF_8));
+    byte[] out = new byte[HashCalculator.SHA256_LENGTH + 4];
+    Arrays.fill(out, (byte) 0x7F);
+
+    HashCalculator.sha256(file, out, 2);
+
+    assertEquals(0x7F, out[0]);
+    assertEquals(0x7F, out[1]);
+    assertEquals(0x7F, out[out.length - 2]);
+    assertEquals(0x7F, out[out.length - 1]);
+    char[] hex = new char[HashCalculator.SHA256_LENGTH * 2];
+    HashCalculator.bytesToHex(out, 2, HashCalculator.SHA256_LENGTH, hex, 0);
+    assertEquals(ABC_HASH, new String(hex));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rawHashNeedsRoom() throws Exception {
+    Path file = Files.createTempFile("updateme", ".txt");
+    file.toFile().deleteOnExit();
+
+    HashCalculator.sha256(file, new byte[HashCalculator.SHA256_LENGTH], 1);
+  }
+
+  @Test
+  public void largeFilesAreMapped() throws Exception {
+    Path file = Files.createTempFile("updateme", ".bin");
+    file.toFile().deleteOnExit();
+    // a sparse file above the threshold for memory mapping
+    try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+      raf.write("start".getBytes(StandardCharsets.UTF_8));
+      raf.setLength(64L * 1024 * 1024 + 3);
+      raf.seek(raf.length() - 3);
+      raf.write("end".getBytes(StandardCharsets.UTF_8));
+    }
+
+    assertEquals(streamHash(file), HashCalculator.sha256(file.toFile()));
+  }
+
+  @Test
+  public void hexRoundTrip() {
+    byte[] bytes = {0, 1, 0x7F, (byte) 0x80, (byte) 0xAB, (byte) 0xFF};
+
+    String hex = HashCalculator.bytesToHex(bytes);
+    assertEquals("00017f80abff", hex);
+
+    byte[] parsed = new byte[bytes.length + 1];
+    HashCalculator.hexToBytes(hex, parsed, 1);
+    assertArrayEquals(bytes, Arrays.copyOfRange(parsed, 1, parsed.length));
+    HashCalculator.hexToBytes("00017F80ABFF", parsed, 0);
+    assertArrayEquals(bytes, Arrays.copyOf(parsed, bytes.length));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void oddHexLengthIsRejected() {
+    HashCalculator.hexToBytes("abc", new byte[2], 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidHexDigitIsRejected() {
+    HashCalculator.hexToBytes("0g", new byte[1], 0);
+  }
+}
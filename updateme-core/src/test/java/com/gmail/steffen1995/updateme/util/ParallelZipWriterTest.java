@@ -0,0 +1,157 @@
+package com.gmail.steffen1995.updateme.util;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * test for com.gmail.steffen1995.updateme.util.ParallelZipWriter class
+ *
+ * @author Steffen Schoen
+ **/
+public class ParallelZipWriterTest {
+  private static final int BLOCK_SIZE = 64 * 1024;
+
+  private ExecutorService executor;
+  private Path tmpDir;
+  private byte[] large;
+  private byte[] exactBlocks;
+
+  @Before
+  public void setup() throws IOException {
+    executor = Executors.newFixedThreadPool(4);
+    tmpDir = Files.createTempDirectory("updateme");
+
+    // a mix of compressible text and random data spanning several blocks
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    Random random = new Random(1);
+    for (int i = 0; i < 20; i++) {
+      byte[] noise = new byte[5000];
+      random.nextBytes(noise);
+      content.write(noise);
+      for (int j = 0; j < 500; j++) {
+        content.write(("line " + j + " of chunk " + i + "\n").getBytes(StandardCharsets.UTF_8));
+      }
+    }
+    large = content.toByteArray();
+
+    exactBlocks = new byte[BLOCK_SIZE * 2];
+    random.nextBytes(exactBlocks);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    executor.shutdownNow();
+    PathUtils.deleteRecursively(tmpDir);
+  }
+
+  private Path write(String fileName) throws IOException {
+    Path largeFile = tmpDir.resolve("large.bin");
+    if (!Files.exists(largeFile)) {
+      Files.write(largeFile, large);
+    }
+    Path zip = tmpDir.resolve(fileName);
+
+    try (ParallelZipWriter writer = new ParallelZipWriter(Files.newOutputStream(zip), executor,
+            4, BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION)) {
+      writer.putBytes("info.txt", "info".getBytes(StandardCharsets.UTF_8), 0);
+      writer.putFile("dir/large.bin", largeFile);
+      writer.putBytes("empty", new byte[0], 0);
+      writer.putBytes("exact", exactBlocks, 0);
+      writer.putFile("stored.bin", largeFile, true);
+    }
+    return zip;
+  }
+
+  @Test
+  public void readableWithZipFile() throws IOException {
+    Path zip = write("test.zip");
+
+    try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+      assertEquals(5, zipFile.size());
+      assertArrayEquals("info".getBytes(StandardCharsets.UTF_8), read(zipFile, "info.txt"));
+      assertArrayEquals(large, read(zipFile, "dir/large.bin"));
+      assertArrayEquals(new byte[0], read(zipFile, "empty"));
+      assertArrayEquals(exactBlocks, read(zipFile, "exact"));
+      assertEquals(ZipEntry.STORED, zipFile.getEntry("stored.bin").getMethod());
+      assertArrayEquals(large, read(zipFile, "stored.bin"));
+    }
+  }
+
+  @Test
+  public void copyStoredEntry() throws IOException {
+    Path zip = write("test.zip");
+
+    try (ZipIndex index = ZipIndex.open(zip)) {
+      assertEquals(5, index.getEntries().size());
+      assertFalse(index.getEntry("dir/large.bin").isStored());
+
+      ZipIndex.Entry stored = index.getEntry("stored.bin");
+      assertTrue(stored.isStored());
+      assertEquals(large.length, stored.getSize());
+
+      ByteArrayOutputStream copy = new ByteArrayOutputStream();
+      MessageDigest digest = HashCalculator.sha256Digest();
+      index.copyStored(stored, digest, Channels.newChannel(copy));
+      assertArrayEquals(large, copy.toByteArray());
+      assertArrayEquals(HashCalculator.sha256Digest().digest(large), digest.digest());
+    }
+  }
+
+  @Test
+  public void readableWithZipInputStream() throws IOException {
+    Path zip = write("test.zip");
+
+    try (ZipInputStream in = new ZipInputStream(Files.newInputStream(zip))) {
+      assertEquals("info.txt", in.getNextEntry().getName());
+      assertEquals("dir/large.bin", in.getNextEntry().getName());
+      assertArrayEquals(large, IOUtils.toByteArray(in));
+      assertEquals("empty", in.getNextEntry().getName());
+      assertEquals("exact", in.getNextEntry().getName());
+      assertArrayEquals(exactBlocks, IOUtils.toByteArray(in));
+      assertEquals("stored.bin", in.getNextEntry().getName());
+      assertArrayEquals(large, IOUtils.toByteArray(in));
+      assertNull(in.getNextEntry());
+    }
+  }
+
+  @Test
+  public void deterministicOutput() throws IOException {
+    byte[] first = Files.readAllBytes(write("first.zip"));
+    byte[] second = Files.readAllBytes(write("second.zip"));
+
+    assertArrayEquals(first, second);
+  }
+
+  private static byte[] read(ZipFile zipFile, String name) throws IOException {
+    ZipEntry entry = zipFile.getEntry(name);
+    try (InputStream in = zipFile.getInputStream(entry)) {
+      byte[] content = IOUtils.toByteArray(in);
+      assertEquals(entry.getSize(), content.length);
+      return content;
+    }
+  }
+}